@@ -0,0 +1,121 @@
+import java.util.Arrays;
+
+/**
+ * The BatchHandEvaluator class is used to evaluate many sets of cards at once, such as the millions of
+ * candidate hands of a simulation or of an analysis of recorded games. It gives the same values as
+ * BigTwoRules.evaluate(), i.e. the type and the top card of every hand, but without a branch on the
+ * cards: the number of cards of every rank is counted 4 bits at a time within one long, the straights
+ * are found by comparing the ranks present with a run of 5 ranks, the flushes by comparing the cards with
+ * one suit, and the type is looked up in a table indexed by these facts.
+ * <p>
+ * The JDK Vector API is still an incubator module, which needs extra flags to compile and to run, so the
+ * loops are kept simple enough for the JIT compiler, and large batches are split between processors.
+ *
+ * @author Kwok Chun Yu
+ */
+public class BatchHandEvaluator {
+
+	// bits 0, 4, 8, ..., 48, i.e. the Diamonds of every rank
+	private static final long DIAMONDS = 0x1111111111111L;
+	private static final long ODD_BITS = 0x5555555555555L;
+	private static final long PAIRS_OF_BITS = 0x3333333333333L;
+	// the third bit of the count of every rank, set if the count is 4
+	private static final long FOUR_OF_A_RANK = 0x4444444444444L;
+	// the lowest 5 ranks, one bit per rank as in DIAMONDS
+	private static final long FIVE_RANKS = 0x11111L;
+
+	// the index of the type table: the number of cards (up to 6, for more than 5), the number of ranks,
+	// and whether the cards are a run of 5 ranks, of one suit, and hold 4 cards of a rank
+	private static final int RANKS_SHIFT = 3;
+	private static final int STRAIGHT_SHIFT = 6;
+	private static final int FLUSH_SHIFT = 7;
+	private static final int QUAD_SHIFT = 8;
+	private static final int[] TYPES = new int[1 << 9];
+
+	static {
+		for (int i = 0; i < TYPES.length; i++) {
+			int size = i & 7;
+			int numOfRanks = (i >>> RANKS_SHIFT) & 7;
+			boolean straight = (i >>> STRAIGHT_SHIFT & 1) != 0;
+			boolean flush = (i >>> FLUSH_SHIFT & 1) != 0;
+			boolean quad = (i >>> QUAD_SHIFT & 1) != 0;
+			int type = BigTwoRules.INVALID;
+			if (size == 1) {
+				type = BigTwoRules.SINGLE;
+			} else if (size == 2 && numOfRanks == 1) {
+				type = BigTwoRules.PAIR;
+			} else if (size == 3 && numOfRanks == 1) {
+				type = BigTwoRules.TRIPLE;
+			} else if (size == 5 && straight && flush) {
+				type = BigTwoRules.STRAIGHT_FLUSH;
+			} else if (size == 5 && straight) {
+				type = BigTwoRules.STRAIGHT;
+			} else if (size == 5 && flush) {
+				type = BigTwoRules.FLUSH;
+			} else if (size == 5 && numOfRanks == 2) {
+				type = quad ? BigTwoRules.QUAD : BigTwoRules.FULL_HOUSE;
+			}
+			TYPES[i] = type;
+		}
+	}
+
+	private BatchHandEvaluator() {
+	}
+
+	/**
+	 * a method for evaluating one set of cards.
+	 * @param mask a set of cards
+	 * @return the value of the hand (see BigTwoRules), or BigTwoRules.INVALID if the cards do not form a
+	 * hand
+	 */
+	public static int evaluate(long mask) {
+		int size = Math.min(Long.bitCount(mask), 6);
+		// the number of cards of every rank, 4 bits per rank
+		long counts = mask - ((mask >>> 1) & ODD_BITS);
+		counts = (counts & PAIRS_OF_BITS) + ((counts >>> 2) & PAIRS_OF_BITS);
+		long ranks = (counts | (counts >>> 1) | (counts >>> 2)) & DIAMONDS;
+		int low = Long.numberOfTrailingZeros(mask);
+		int straight = (ranks == FIVE_RANKS << (low & ~3)) ? 1 : 0;
+		int flush = ((mask & (DIAMONDS << (low & 3))) == mask) ? 1 : 0;
+		int quad = ((counts & FOUR_OF_A_RANK) != 0) ? 1 : 0;
+		int type = TYPES[size | Long.bitCount(ranks) << RANKS_SHIFT | straight << STRAIGHT_SHIFT
+				| flush << FLUSH_SHIFT | quad << QUAD_SHIFT];
+		int value = type << 6 | (63 - Long.numberOfLeadingZeros(mask));
+		return (type < 0) ? BigTwoRules.INVALID : value;
+	}
+
+	/**
+	 * a method for evaluating a range of sets of cards.
+	 * @param hands the sets of cards
+	 * @param from the index of the first set to be evaluated
+	 * @param to the index after the last set to be evaluated
+	 * @param values the array receiving the value of every set at the same index
+	 */
+	public static void evaluate(long[] hands, int from, int to, int[] values) {
+		for (int i = from; i < to; i++) {
+			values[i] = evaluate(hands[i]);
+		}
+	}
+
+	/**
+	 * a method for evaluating sets of cards.
+	 * @param hands the sets of cards
+	 * @return the value of every set at the same index
+	 */
+	public static int[] evaluate(long[] hands) {
+		int[] values = new int[hands.length];
+		evaluate(hands, 0, hands.length, values);
+		return values;
+	}
+
+	/**
+	 * a method for evaluating sets of cards on all the processors (on the common ForkJoinPool).
+	 * @param hands the sets of cards
+	 * @return the value of every set at the same index
+	 */
+	public static int[] evaluateParallel(long[] hands) {
+		int[] values = new int[hands.length];
+		Arrays.parallelSetAll(values, i -> evaluate(hands[i]));
+		return values;
+	}
+}
@@ -0,0 +1,263 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The BigTwoBot class is used to model a computer player of Big Two. It chooses its moves by
+ * information set Monte Carlo tree search (SO-ISMCTS): each iteration deals the cards it cannot see
+ * randomly to the other players, in numbers consistent with the cards they hold, and then walks down a
+ * single tree shared by all these deals, choosing among the moves legal in the deal by UCB and finishing
+ * with a random playout on a BigTwoState. The search runs on several threads, each growing its own tree
+ * until the time budget runs out, and the visits of the moves at the roots are added up. As a
+ * BigTwoStrategy, it plays in SelfPlaySimulator.
+ *
+ * @author Kwok Chun Yu
+ */
+public class BigTwoBot implements BigTwoStrategy {
+
+	private static final double EXPLORATION = 0.7;
+
+	private final long timeBudget;
+	private final int numOfThreads;
+	private final ExecutorService executor;
+
+	/**
+	 * a constructor for creating a bot with the specified time budget per move.
+	 * @param timeBudgetMillis the time to search per move in milliseconds
+	 * @param numOfThreads the number of threads searching in parallel
+	 */
+	public BigTwoBot(long timeBudgetMillis, int numOfThreads) {
+		this.timeBudget = timeBudgetMillis;
+		this.numOfThreads = Math.max(1, numOfThreads);
+		this.executor = Executors.newFixedThreadPool(this.numOfThreads, runnable -> {
+			Thread thread = new Thread(runnable, "bot");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * a method for choosing the move of the current player of a game.
+	 * @param game the game, whose players hold their cards sorted in the order of Big Two
+	 * @return the indices of the cards to play, or null for a pass
+	 */
+	public int[] chooseMove(CardGame game) {
+		BigTwoState state = new BigTwoState(game);
+		long move = search(state);
+		return BigTwoState.toCardIdx(state.getHand(state.getCurrentIdx()), move);
+	}
+
+	/**
+	 * a method for choosing the move of the current player of a state. Only the cards of the current
+	 * player and the numbers of cards of the others are used by the search.
+	 * @param state the state
+	 * @return the set of cards to play, or BigTwoState.PASS
+	 */
+	public long search(BigTwoState state) {
+		long[] moves = new long[BigTwoState.MAX_MOVES];
+		int numOfMoves = state.generateMoves(moves);
+		if (numOfMoves == 1) {
+			return moves[0];
+		}
+		long deadline = System.nanoTime() + timeBudget * 1000000L;
+		ArrayList<Future<Node>> futures = new ArrayList<Future<Node>>();
+		for (int i = 0; i < numOfThreads; i++) {
+			futures.add(executor.submit(new Search(state, deadline)));
+		}
+		HashMap<Long, Integer> visits = new HashMap<Long, Integer>();
+		for (Future<Node> future : futures) {
+			try {
+				for (Map.Entry<Long, Node> child : future.get().children.entrySet()) {
+					visits.merge(child.getKey(), child.getValue().visits, Integer::sum);
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException ex) {
+				ex.printStackTrace();
+			}
+		}
+		long best = moves[0];
+		int bestVisits = -1;
+		for (Map.Entry<Long, Integer> entry : visits.entrySet()) {
+			if (entry.getValue() > bestVisits) {
+				best = entry.getKey();
+				bestVisits = entry.getValue();
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * a method for choosing the move of the current player of a state, searching in the calling thread
+	 * only, as the threads of SelfPlaySimulator already keep every processor busy.
+	 */
+	@Override
+	public long chooseMove(BigTwoState state, long[] moves, int numOfMoves, Random random) {
+		if (numOfMoves == 1) {
+			return moves[0];
+		}
+		Node root = new Search(state, System.nanoTime() + timeBudget * 1000000L).call();
+		long best = moves[0];
+		int bestVisits = -1;
+		for (Map.Entry<Long, Node> child : root.children.entrySet()) {
+			if (child.getValue().visits > bestVisits) {
+				best = child.getKey();
+				bestVisits = child.getValue().visits;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * a method for stopping the threads of the bot.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * a method for dealing the cards the current player cannot see randomly to the other players, each
+	 * getting as many cards as it holds in the state.
+	 * @param state the state, which is changed
+	 * @param random the source of randomness
+	 */
+	public static void determinize(BigTwoState state, ThreadLocalRandom random) {
+		determinize(state, state.getCurrentIdx(), random);
+	}
+
+	/**
+	 * a method for dealing the cards the specified player cannot see randomly to the other players, each
+	 * getting as many cards as it holds in the state.
+	 * @param state the state, which is changed
+	 * @param observer the index of the player whose cards are known
+	 * @param random the source of randomness
+	 */
+	public static void determinize(BigTwoState state, int observer, ThreadLocalRandom random) {
+		long unknown = 0;
+		for (int i = 0; i < state.getNumOfPlayers(); i++) {
+			if (i != observer) {
+				unknown |= state.getHand(i);
+			}
+		}
+		int[] codes = new int[Long.bitCount(unknown)];
+		for (int i = 0; unknown != 0; i++) {
+			codes[i] = Long.numberOfTrailingZeros(unknown);
+			unknown &= unknown - 1;
+		}
+		int next = 0;
+		for (int i = 0; i < state.getNumOfPlayers(); i++) {
+			if (i == observer) {
+				continue;
+			}
+			long hand = 0;
+			for (int j = Long.bitCount(state.getHand(i)); j > 0; j--) {
+				int k = next + random.nextInt(codes.length - next);
+				int code = codes[k];
+				codes[k] = codes[next];
+				codes[next++] = code;
+				hand |= 1L << code;
+			}
+			state.setHand(i, hand);
+		}
+	}
+
+	/*
+	 * a node of the tree, reached by a move of a player. The reward counts the wins of that player.
+	 */
+	private static class Node {
+		private final int playerID;
+		private final HashMap<Long, Node> children = new HashMap<Long, Node>();
+		private int visits;
+		private int availability = 1;
+		private int reward;
+
+		private Node(int playerID) {
+			this.playerID = playerID;
+		}
+
+		private double ucb() {
+			return (double) reward / visits + EXPLORATION * Math.sqrt(Math.log(availability) / visits);
+		}
+	}
+
+	/*
+	 * a search growing one tree until the deadline, or until its thread is interrupted.
+	 */
+	private static class Search implements Callable<Node> {
+		private final BigTwoState rootState;
+		private final long deadline;
+
+		private Search(BigTwoState rootState, long deadline) {
+			this.rootState = new BigTwoState(rootState);
+			this.deadline = deadline;
+		}
+
+		@Override
+		public Node call() {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			Node root = new Node(-1);
+			BigTwoState state = new BigTwoState(rootState);
+			long[] moves = new long[BigTwoState.MAX_MOVES];
+			long[] untried = new long[BigTwoState.MAX_MOVES];
+			ArrayList<Node> path = new ArrayList<Node>();
+			do {
+				state.copyFrom(rootState);
+				determinize(state, random);
+				path.clear();
+				path.add(root);
+				Node node = root;
+				// selection and expansion
+				while (!state.isTerminal()) {
+					int numOfMoves = state.generateMoves(moves);
+					int numOfUntried = 0;
+					for (int i = 0; i < numOfMoves; i++) {
+						if (!node.children.containsKey(moves[i])) {
+							untried[numOfUntried++] = moves[i];
+						}
+					}
+					if (numOfUntried > 0) {
+						long move = untried[random.nextInt(numOfUntried)];
+						Node child = new Node(state.getCurrentIdx());
+						node.children.put(move, child);
+						path.add(child);
+						state.play(move);
+						break;
+					}
+					Node best = null;
+					long bestMove = 0;
+					double bestScore = Double.NEGATIVE_INFINITY;
+					for (int i = 0; i < numOfMoves; i++) {
+						Node child = node.children.get(moves[i]);
+						child.availability++;
+						double score = child.ucb();
+						if (score > bestScore) {
+							best = child;
+							bestMove = moves[i];
+							bestScore = score;
+						}
+					}
+					node = best;
+					path.add(node);
+					state.play(bestMove);
+				}
+				// simulation and backpropagation
+				int winner = state.playout(random, moves);
+				for (Node visited : path) {
+					visited.visits++;
+					if (visited.playerID == winner) {
+						visited.reward++;
+					}
+				}
+			} while (System.nanoTime() < deadline && !Thread.currentThread().isInterrupted());
+			return root;
+		}
+	}
+}
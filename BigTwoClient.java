@@ -2,8 +2,10 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.Socket;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 /**
  * The BigTwoClient class implements the CardGame interface and NetworkGame interface. 
@@ -27,6 +29,7 @@ public class BigTwoClient implements CardGame, NetworkGame {
 	private ObjectOutputStream oos;
 	private int currentIdx;
 	private BigTwoTable table;
+	private CardTracker tracker; // the cards not seen yet by the local player
 	
 	/**
 	 * a constructor for creating a Big Two client.
@@ -157,14 +160,22 @@ public class BigTwoClient implements CardGame, NetworkGame {
 		case CardGameMessage.JOIN:
 			String name = (String) message.getData();
 			playerList.get(message.getPlayerID()).setName(name);
-			setPlayerName(name);
-			table.setActivePlayer(message.getPlayerID());
+			//bots join the game at the empty seats too
+			if (message.getPlayerID() == playerID) {
+				setPlayerName(name);
+				table.setActivePlayer(message.getPlayerID());
+			}
 			table.printMsg("HERE COMES A NEW CHALLENGER!!\nWelcome to the Big Two Game, " + (String) message.getData() + "\n");
 			table.repaint();
 			break;
 			
 		case CardGameMessage.FULL:
-			table.printMsg("The server is FULL!!\nWhat a pity!!\n");
+			if (message.getData() == null) {
+				table.printMsg("The server is FULL!!\nWhat a pity!!\n");
+			} else {
+				//the server keeps the connection until a seat is free
+				table.printMsg("The server is FULL!!\nYou are number " + message.getData() + " in the queue...\n");
+			}
 			break;
 			
 		case CardGameMessage.QUIT:
@@ -190,6 +201,7 @@ public class BigTwoClient implements CardGame, NetworkGame {
 			break;
 			
 		case CardGameMessage.MOVE:
+			table.cancelHint();
 			checkMove(message.getPlayerID(), (int[]) message.getData());
 			table.repaint();
 			break;
@@ -198,6 +210,34 @@ public class BigTwoClient implements CardGame, NetworkGame {
 			table.printChat((String) message.getData());
 			break;
 			
+		case CardGameMessage.RESUME:
+			try {
+				TableSnapshot snapshot = TableSnapshot.fromByteArray((byte[]) message.getData());
+				currentIdx = snapshot.restore(playerList, handsOnTable);
+				resetTracker();
+				for (int id = 0; id < numOfPlayers; id++) {
+					playerList.get(id).setName(snapshot.getName(id));
+				}
+				table.setActivePlayer(playerID);
+				table.enable();
+				table.printMsg("GAME RESUMES!!!\n");
+				table.printMsg(playerList.get(currentIdx).getName() + "\'s turn:\n");
+				table.prepareHint();
+				table.updateWinProbabilities();
+			} catch (Exception ex) {
+				ex.printStackTrace();
+				table.printMsg("Fail to resume the game.\n");
+			}
+			table.repaint();
+			break;
+			
+		case CardGameMessage.PING:
+			//answers at once, so that the server measures the round-trip time
+			long[] ping = (long[]) message.getData();
+			sendMessage(new CardGameMessage(CardGameMessage.PONG,-1,ping[0]));
+			table.setLatencies(Arrays.copyOfRange(ping, 1, ping.length));
+			break;
+			
 		default: //invalid message
 			table.printMsg("Wrong message type: " + message.getType());
 			break;
@@ -206,12 +246,17 @@ public class BigTwoClient implements CardGame, NetworkGame {
 	}
 
 	/**
-	 * a method for sending the specified message to the game server
+	 * a method for sending the specified message to the game server. Both the thread receiving the
+	 * messages (for the PONG messages) and the event dispatching thread (for the moves) send messages.
 	 */
 	@Override
-	public void sendMessage(GameMessage message) {
+	public synchronized void sendMessage(GameMessage message) {
 		try{
 			oos.writeObject(message);
+			if (message.getType() == CardGameMessage.PONG) {
+				//forgets the objects sent so far, so that the stream does not keep every PONG message
+				oos.reset();
+			}
 		}
 		catch (Exception ex) {
 			ex.printStackTrace();
@@ -295,6 +340,25 @@ public class BigTwoClient implements CardGame, NetworkGame {
 	 * @return a valid hand
 	 */
 	public static Hand composeHand(CardGamePlayer player, CardList cards) {
+		ComposeHandEvent event = new ComposeHandEvent();
+		event.begin();
+		Hand hand = findHand(player, cards);
+		if (event.shouldCommit()) {
+			event.numOfCards = cards.size();
+			event.handType = (hand == null) ? null : hand.getType();
+			event.valid = hand != null;
+			event.commit();
+		}
+		return hand;
+	}
+	
+	/**
+	 * a method for finding the type of hand formed by the specified list of cards.
+	 * @param player the player playing this hand
+	 * @param cards the cards played
+	 * @return a valid hand, or null if the cards do not form a valid hand
+	 */
+	private static Hand findHand(CardGamePlayer player, CardList cards) {
 		if (cards.size() == 1) {
 			Single single = new Single(player, cards);
 			if (single.isValid()) {
@@ -355,33 +419,21 @@ public class BigTwoClient implements CardGame, NetworkGame {
 		
 		this.deck = deck;
 		
-		//(i) remove all the cards from the players as well as from the table
+		//(i) remove all the cards from the table
 		handsOnTable.clear();
-		for (int i = 0; i < numOfPlayers; i++) {
-			playerList.get(i).removeAllCards();
-		}
 		
 		//(ii) distribute the cards to the players and (iii)  identify the player who holds the 3 of Diamonds
-		Card diamondThree = new Card(0,2);
-		for (int i = 0; i < playerList.size(); i++) {
-			for (int j = 0; j < 13; j++) {
-				playerList.get(i).getCardsInHand().addCard(deck.getCard(j + i * 13));
-			}
-			playerList.get(i).sortCardsInHand();
-			while (playerList.get(i).getCardsInHand().getCard(0).rank < 2) {
-				playerList.get(i).getCardsInHand().addCard(playerList.get(i).getCardsInHand().getCard(0));
-				playerList.get(i).getCardsInHand().removeCard(0);
-			}
-		}
-		for (int i = 0; i < getPlayerList().size(); i++) {
-			if (playerList.get(i).getCardsInHand().getCard(0).equals(diamondThree)) {
-					currentIdx = i;// (iv) set the currentIdx of the BigTwoClient instance to the player who holds the 3 of Diamonds
-					table.printMsg(playerList.get(i).getName() + "\'s turn:\n");
-					break;
-				}
+		int holder = BigTwoGame.deal(playerList, deck);
+		tracker = new CardTracker(playerID, numOfPlayers);
+		tracker.start(BigTwoRules.maskOf(playerList.get(playerID).getCardsInHand()), 13);
+		if (holder >= 0) {
+			currentIdx = holder;// (iv) set the currentIdx of the BigTwoClient instance to the player who holds the 3 of Diamonds
+			table.printMsg(playerList.get(holder).getName() + "\'s turn:\n");
 		}
 		// (v) set the activePlayer of the BigTwoTable instance to the playerID
 		table.setActivePlayer(playerID);
+		table.prepareHint();
+		table.updateWinProbabilities();
 	}
 
 	/**
@@ -401,62 +453,40 @@ public class BigTwoClient implements CardGame, NetworkGame {
 	 */
 	@Override
 	public void checkMove(int playerID, int[] cardIdx) {
-		CardGamePlayer lastPlayedPlayer = (handsOnTable.isEmpty()) ? null : handsOnTable
-				.get(handsOnTable.size() - 1).getPlayer();
-		Hand composedHand = null;
-		CardList selectedCards = null;
-		boolean isNextPlayerTurn = true;
-		boolean goodFormat = true;
-			
-		if (cardIdx == null && playerList.get(playerID) != lastPlayedPlayer) {
+		CheckMoveEvent event = new CheckMoveEvent();
+		event.begin();
+		int result = BigTwoGame.playMove(playerList, handsOnTable, currentIdx, playerID, cardIdx);
+		boolean isNextPlayerTurn = result != BigTwoRules.INVALID;
+		event.end();
+		if (event.shouldCommit()) {
+			event.playerID = playerID;
+			event.numOfCards = (cardIdx == null) ? 0 : cardIdx.length;
+			event.handType = BigTwoRules.getTypeName(BigTwoRules.typeOfValue(result));
+			event.legal = isNextPlayerTurn;
+			event.commit();
+		}
+		
+		if (result == BigTwoRules.PASS) {
+			if (tracker != null) {
+				tracker.passed(playerID);
+			}
 			table.printMsg("{Pass}\n");
-		} 
-		// Define goodFormat as "The player played last hand cannot pass" and "The player should played same number of cards as the last hand if the player does not play the last hand".
-		else if (playerList.get(playerID) == lastPlayedPlayer && cardIdx == null ||
-				playerList.get(playerID) != lastPlayedPlayer && handsOnTable.size() != 0 && 
-				cardIdx.length != handsOnTable.get(handsOnTable.size() - 1).size()) {
+		} else if (result == BigTwoRules.INVALID) {
 			table.printMsg("Not a legal move!!!\n");
-			isNextPlayerTurn = false;
-			goodFormat = false;
-		}
-		//if the hand is in good format, play or check the cards
-		if (cardIdx != null && goodFormat) {
-			selectedCards = new CardList();
-			for (int i = 0; i < cardIdx.length; i++) {
-				selectedCards.addCard(playerList.get(playerID).getCardsInHand().getCard(cardIdx[i]));
+		} else {
+			Hand composedHand = handsOnTable.get(handsOnTable.size() - 1);
+			if (tracker != null) {
+				tracker.played(playerID, BigTwoRules.maskOf(composedHand));
 			}
-			composedHand = composeHand(playerList.get(playerID), selectedCards);
+			table.printMsg("{" + composedHand.getType() + "} ");
 			
-			if (handsOnTable.size() < 1 && composedHand != null || playerList.get(currentIdx) == lastPlayedPlayer) {
-				for (int i = 0; i < selectedCards.size(); i++) {
-					playerList.get(playerID).getCardsInHand().removeCard(selectedCards.getCard(i));
-				}
-				handsOnTable.add(composedHand);
-				table.printMsg("{" + composedHand.getType() + "} ");
-				
-				//print hand
-				for (int i = 0; i < composedHand.size(); i++) {
-					table.printMsg(" [" + composedHand.getCard(i) +"]");
-				}
-				table.printMsg("\n");
-				
-			} 
-			//check whether one hand beats another hand
-			else if (composedHand != null && handsOnTable.get(handsOnTable.size() - 1).beats(composedHand)){
-				for (int i = 0; i < selectedCards.size(); i++) {
-					playerList.get(playerID).getCardsInHand().removeCard(selectedCards.getCard(i));
-				}
-				handsOnTable.add(composedHand);
-				table.printMsg("{" + composedHand.getType() + "} ");
-				
-				//print hand
-				for (int i = 0; i < composedHand.size(); i++) {
-					table.printMsg(" [" + composedHand.getCard(i) +"]");
-				}
-				table.printMsg("\n");
-			} else {
-				table.printMsg("Not a legal move!!!\n");
-				isNextPlayerTurn = false;
+			//print hand
+			for (int i = 0; i < composedHand.size(); i++) {
+				table.printMsg(" [" + composedHand.getCard(i) +"]");
+			}
+			table.printMsg("\n");
+			if (playerID == this.playerID && tracker != null && !tracker.canAnyOpponentBeat(result, false)) {
+				table.printMsg("No one can beat it!\n");
 			}
 		}
 
@@ -479,14 +509,50 @@ public class BigTwoClient implements CardGame, NetworkGame {
 						gameOverMessage += (playerList.get(i).getName() + " wins the game.\n");
 					}
 				}
-				JOptionPane.showMessageDialog(null, gameOverMessage);
+				//the dialog is shown by the event dispatching thread, so that the heartbeats are still answered
+				final String shownMessage = gameOverMessage;
+				SwingUtilities.invokeLater(() -> {
+					JOptionPane.showMessageDialog(null, shownMessage);
+					//the server removes the players who do not get ready for the next game in time
+					sendMessage(new CardGameMessage(CardGameMessage.READY,-1,null));
+				});
 				
 			} else {
 				table.printMsg(playerList.get(currentIdx).getName() + "\'s turn:\n");
+				table.prepareHint();
 			}
+			table.updateWinProbabilities();
 			table.repaint();
 	}
 
+	/**
+	 * a method for retrieving the tracker of the cards not seen yet by the local player.
+	 * @return the tracker, or null before the first game
+	 */
+	public CardTracker getCardTracker() { return tracker; }
+
+	/**
+	 * a method for tracking the cards of a game in progress from what the local player can see.
+	 */
+	private void resetTracker() {
+		int[] counts = new int[numOfPlayers];
+		long held = 0;
+		for (int i = 0; i < numOfPlayers; i++) {
+			counts[i] = playerList.get(i).getNumOfCards();
+			held |= BigTwoRules.maskOf(playerList.get(i).getCardsInHand());
+		}
+		long lastHand = 0;
+		int lastOwner = -1;
+		if (!handsOnTable.isEmpty()) {
+			Hand hand = handsOnTable.get(handsOnTable.size() - 1);
+			lastHand = BigTwoRules.maskOf(hand);
+			lastOwner = playerList.indexOf(hand.getPlayer());
+		}
+		tracker = new CardTracker(playerID, numOfPlayers);
+		tracker.reset(BigTwoRules.maskOf(playerList.get(playerID).getCardsInHand()), counts,
+				BigTwoRules.ALL_CARDS & ~held, lastHand, lastOwner);
+	}
+
 	/**
 	 * a method for checking if the game ends.
 	 */
@@ -0,0 +1,180 @@
+import java.util.ArrayList;
+
+/**
+ * The BigTwoGame class implements the CardGame interface without any GUI or
+ * network connection. It is used to model a Big Two card game being replayed
+ * or simulated, and applies the same rules as BigTwoClient through the
+ * static methods deal() and playMove(), which BigTwoClient also uses.
+ * 
+ * @author Kwok Chun Yu
+ */
+public class BigTwoGame implements CardGame {
+	
+	private static final Card DIAMOND_THREE = new Card(0, 2);
+	
+	private int numOfPlayers = 4;
+	private Deck deck;
+	private ArrayList<CardGamePlayer> playerList;
+	private ArrayList<Hand> handsOnTable;
+	private int currentIdx;
+	private int lastResult = BigTwoRules.INVALID;
+	
+	/**
+	 * a constructor for creating a Big Two game with 4 players.
+	 */
+	public BigTwoGame() {
+		playerList = new ArrayList<CardGamePlayer>();
+		handsOnTable = new ArrayList<Hand>();
+		for (int i = 0; i < numOfPlayers; i++) {
+			playerList.add(new CardGamePlayer("Player " + i));
+		}
+	}
+	
+	/**
+	 * a method for dealing the specified deck to the specified players, as done at the start of a game.
+	 * Each player gets 13 consecutive cards of the deck, sorted in the order of Big Two.
+	 * @param playerList the players, whose cards are removed first
+	 * @param deck the shuffled deck
+	 * @return the index of the player who holds the 3 of Diamonds, or -1 if no player holds it
+	 */
+	public static int deal(ArrayList<CardGamePlayer> playerList, Deck deck) {
+		int holder = -1;
+		for (int i = 0; i < playerList.size(); i++) {
+			CardGamePlayer player = playerList.get(i);
+			player.removeAllCards();
+			for (int j = 0; j < 13; j++) {
+				player.getCardsInHand().addCard(deck.getCard(j + i * 13));
+			}
+			player.sortCardsInHand();
+			// moves the Aces and 2s behind the Kings
+			while (player.getCardsInHand().getCard(0).rank < 2) {
+				player.getCardsInHand().addCard(player.getCardsInHand().getCard(0));
+				player.getCardsInHand().removeCard(0);
+			}
+			if (player.getCardsInHand().getCard(0).equals(DIAMOND_THREE)) {
+				holder = i;
+			}
+		}
+		return holder;
+	}
+	
+	/**
+	 * a method for checking a move and, if it is legal, playing it: the cards are removed from the player
+	 * and the hand is added to the table.
+	 * @param playerList the players
+	 * @param handsOnTable the hands played on the table
+	 * @param currentIdx the index of the current player
+	 * @param playerID the playerID of the player who makes the move
+	 * @param cardIdx the indices of the cards played, or null for a pass
+	 * @return the value of the hand played (see BigTwoRules), BigTwoRules.PASS for a legal pass, or
+	 *         BigTwoRules.INVALID for an illegal move
+	 */
+	public static int playMove(ArrayList<CardGamePlayer> playerList, ArrayList<Hand> handsOnTable,
+			int currentIdx, int playerID, int[] cardIdx) {
+		Hand lastHand = (handsOnTable.isEmpty()) ? null : handsOnTable.get(handsOnTable.size() - 1);
+		CardGamePlayer lastPlayedPlayer = (lastHand == null) ? null : lastHand.getPlayer();
+		CardGamePlayer player = playerList.get(playerID);
+		
+		// validate the move without creating any object
+		int result = BigTwoRules.checkMove(player.getCardsInHand(), cardIdx, lastHand,
+				player == lastPlayedPlayer, playerList.get(currentIdx) == lastPlayedPlayer);
+		if (result >= 0) {
+			CardList selectedCards = player.play(cardIdx);
+			handsOnTable.add(BigTwoClient.composeHand(player, selectedCards));
+			player.removeCards(selectedCards);
+		}
+		return result;
+	}
+	
+	/**
+	 * a method for getting the number of players.
+	 */
+	@Override
+	public int getNumOfPlayers() { return playerList.size(); }
+	
+	/**
+	 * a method for retrieving the deck of cards being used.
+	 */
+	@Override
+	public Deck getDeck() { return deck; }
+	
+	/**
+	 * a method for retrieving the list of players.
+	 */
+	@Override
+	public ArrayList<CardGamePlayer> getPlayerList() { return playerList; }
+	
+	/**
+	 * a method for retrieving the list of hands played on the table.
+	 */
+	@Override
+	public ArrayList<Hand> getHandsOnTable() { return handsOnTable; }
+	
+	/**
+	 * a method for retrieving the index of the current player.
+	 */
+	@Override
+	public int getCurrentIdx() { return currentIdx; }
+	
+	/**
+	 * a method for retrieving the result of the last move checked.
+	 * @return the value of the hand played, BigTwoRules.PASS or BigTwoRules.INVALID
+	 */
+	public int getLastResult() { return lastResult; }
+	
+	/**
+	 * a method for starting/restarting the game with a given shuffled deck of cards.
+	 */
+	@Override
+	public void start(Deck deck) {
+		this.deck = deck;
+		handsOnTable.clear();
+		currentIdx = Math.max(deal(playerList, deck), 0);
+		lastResult = BigTwoRules.INVALID;
+	}
+	
+	/**
+	 * a method for resuming the game captured in the specified snapshot.
+	 * @param snapshot the snapshot of a table at which a game is in progress
+	 */
+	public void resume(TableSnapshot snapshot) {
+		currentIdx = snapshot.restore(playerList, handsOnTable);
+		lastResult = BigTwoRules.INVALID;
+	}
+	
+	/**
+	 * a method for making a move by a player. The move is checked only if it is the player's turn.
+	 */
+	@Override
+	public void makeMove(int playerID, int[] cardIdx) {
+		if (currentIdx == playerID) {
+			checkMove(playerID, cardIdx);
+		} else {
+			lastResult = BigTwoRules.INVALID;
+		}
+	}
+	
+	/**
+	 * a method for checking a move made by a player, as BigTwoClient.checkMove() does.
+	 */
+	@Override
+	public void checkMove(int playerID, int[] cardIdx) {
+		lastResult = playMove(playerList, handsOnTable, currentIdx, playerID, cardIdx);
+		if (lastResult != BigTwoRules.INVALID) {
+			currentIdx = (currentIdx + 1) % numOfPlayers;
+		}
+	}
+	
+	/**
+	 * a method for checking if the game ends.
+	 */
+	@Override
+	public boolean endOfGame() {
+		for (int i = 0; i < playerList.size(); i++) {
+			if (playerList.get(i).getCardsInHand().size() == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,566 @@
+/**
+ * The BigTwoRules class provides the rules of Big Two on a compact encoding of
+ * cards, so that a move can be validated without creating any object.
+ * <p>
+ * A card is encoded as an int code between 0 and 51, equal to 4 * (Big Two
+ * order of its rank) + suit, so that codes follow the order of BigTwoCard: 0
+ * is the 3 of Diamonds and 51 is the 2 of Spades. A set of cards is a long
+ * whose bit i is set if the card with code i is in the set; each rank occupies
+ * four consecutive bits.
+ * <p>
+ * A hand is evaluated into an int value equal to (type << 6) | code of its top
+ * card, or INVALID. Two hands of the same size compare by value, so that a
+ * hand beats another hand of the same size if and only if its value is
+ * greater.
+ * 
+ * @author Kwok Chun Yu
+ */
+public final class BigTwoRules {
+	/** The value of a list of cards which does not form a valid hand. */
+	public static final int INVALID = -1;
+	/** The result of checkMove() for a legal pass. */
+	public static final int PASS = -2;
+
+	/** The type of a hand of one card. */
+	public static final int SINGLE = 0;
+	/** The type of a hand of two cards of the same rank. */
+	public static final int PAIR = 1;
+	/** The type of a hand of three cards of the same rank. */
+	public static final int TRIPLE = 2;
+	/** The type of a hand of five cards of consecutive ranks. */
+	public static final int STRAIGHT = 3;
+	/** The type of a hand of five cards of the same suit. */
+	public static final int FLUSH = 4;
+	/** The type of a hand of three cards of one rank and two of another. */
+	public static final int FULL_HOUSE = 5;
+	/** The type of a hand of four cards of one rank and one of another. */
+	public static final int QUAD = 6;
+	/** The type of a hand being both a straight and a flush. */
+	public static final int STRAIGHT_FLUSH = 7;
+
+	/** The number of cards in a deck. */
+	public static final int NUM_OF_CARDS = 52;
+	/** A set holding all the cards in a deck. */
+	public static final long ALL_CARDS = (1L << NUM_OF_CARDS) - 1;
+
+	private static final String[] TYPE_NAMES = { "Single", "Pair", "Triple",
+			"Straight", "Flush", "FullHouse", "Quad", "StraightFlush" };
+
+	// bits 0, 4, 8, ..., 48, i.e. the Diamonds of every rank
+	private static final long DIAMONDS = 0x1111111111111L;
+
+	// the card of every code, shared as cards are immutable
+	private static final Card[] CARDS = new Card[NUM_OF_CARDS];
+	static {
+		for (int code = 0; code < NUM_OF_CARDS; code++) {
+			CARDS[code] = new BigTwoCard(suitOf(code), rankOf(code));
+		}
+	}
+
+	private BigTwoRules() {
+	}
+
+	/**
+	 * Returns the code of the specified card.
+	 * 
+	 * @param card
+	 *            the card
+	 * @return the code of the card, between 0 and 51
+	 */
+	public static int codeOf(Card card) {
+		return codeOf(card.getSuit(), card.getRank());
+	}
+
+	/**
+	 * Returns the code of the card with the specified suit and rank.
+	 * 
+	 * @param suit
+	 *            the suit of the card, as in the Card class
+	 * @param rank
+	 *            the rank of the card, as in the Card class
+	 * @return the code of the card, between 0 and 51
+	 */
+	public static int codeOf(int suit, int rank) {
+		return ((rank + 11) % 13) * 4 + suit;
+	}
+
+	/**
+	 * Returns the suit of the card with the specified code.
+	 * 
+	 * @param code
+	 *            the code of the card
+	 * @return the suit of the card, as in the Card class
+	 */
+	public static int suitOf(int code) {
+		return code & 3;
+	}
+
+	/**
+	 * Returns the rank of the card with the specified code.
+	 * 
+	 * @param code
+	 *            the code of the card
+	 * @return the rank of the card, as in the Card class
+	 */
+	public static int rankOf(int code) {
+		return ((code >> 2) + 2) % 13;
+	}
+
+	/**
+	 * Returns the card with the specified code. The same instance is returned
+	 * for the same code.
+	 * 
+	 * @param code
+	 *            the code of the card
+	 * @return the card
+	 */
+	public static Card cardOf(int code) {
+		return CARDS[code];
+	}
+
+	/**
+	 * Adds the cards in the specified set to the specified list, in the order
+	 * of Big Two.
+	 * 
+	 * @param mask
+	 *            the set of cards
+	 * @param cards
+	 *            the list to which the cards are added
+	 */
+	public static void addCards(long mask, CardList cards) {
+		while (mask != 0) {
+			cards.addCard(CARDS[Long.numberOfTrailingZeros(mask)]);
+			mask &= mask - 1;
+		}
+	}
+
+	/**
+	 * Compares two cards in the order of Big Two, as BigTwoCard.compareTo()
+	 * does, without creating any object.
+	 * 
+	 * @param a
+	 *            the first card
+	 * @param b
+	 *            the second card
+	 * @return a negative integer, zero, or a positive integer as the first card
+	 *         is less than, equal to, or greater than the second card
+	 */
+	public static int compare(Card a, Card b) {
+		return codeOf(a) - codeOf(b);
+	}
+
+	/**
+	 * Returns the set of all the cards in the specified list.
+	 * 
+	 * @param cards
+	 *            the list of cards
+	 * @return the set of the cards in the list
+	 */
+	public static long maskOf(CardList cards) {
+		long mask = 0;
+		for (int i = 0; i < cards.size(); i++) {
+			mask |= 1L << codeOf(cards.getCard(i));
+		}
+		return mask;
+	}
+
+	/**
+	 * Returns the set of the cards at the specified indices of the specified
+	 * list.
+	 * 
+	 * @param cards
+	 *            the list of cards
+	 * @param cardIdx
+	 *            the indices of the cards
+	 * @return the set of the selected cards, or 0 if an index is invalid or
+	 *         repeated
+	 */
+	public static long maskOf(CardList cards, int[] cardIdx) {
+		long mask = 0;
+		for (int i = 0; i < cardIdx.length; i++) {
+			Card card = cards.getCard(cardIdx[i]);
+			if (card == null) {
+				return 0;
+			}
+			long bit = 1L << codeOf(card);
+			if ((mask & bit) != 0) {
+				return 0;
+			}
+			mask |= bit;
+		}
+		return mask;
+	}
+
+	/**
+	 * Returns the code of the highest card in the specified set.
+	 * 
+	 * @param mask
+	 *            a non-empty set of cards
+	 * @return the code of the highest card in the set
+	 */
+	public static int topCard(long mask) {
+		return 63 - Long.numberOfLeadingZeros(mask);
+	}
+
+	/**
+	 * Returns the set of ranks (in the order of Big Two) present in the
+	 * specified set of cards, as a 13-bit mask.
+	 * 
+	 * @param mask
+	 *            a set of cards
+	 * @return the set of ranks present in the set of cards
+	 */
+	public static int ranksOf(long mask) {
+		// folds the four suit bits of each rank into the lowest one
+		long folded = (mask | (mask >>> 1) | (mask >>> 2) | (mask >>> 3))
+				& DIAMONDS;
+		int ranks = 0;
+		while (folded != 0) {
+			int bit = Long.numberOfTrailingZeros(folded);
+			ranks |= 1 << (bit >> 2);
+			folded &= folded - 1;
+		}
+		return ranks;
+	}
+
+	/**
+	 * Returns the number of cards of the specified rank (in the order of Big
+	 * Two) in the specified set of cards.
+	 * 
+	 * @param mask
+	 *            a set of cards
+	 * @param rank
+	 *            a rank in the order of Big Two, between 0 (3) and 12 (2)
+	 * @return the number of cards of that rank in the set
+	 */
+	public static int countOf(long mask, int rank) {
+		return Long.bitCount((mask >>> (rank * 4)) & 0xF);
+	}
+
+	/**
+	 * Returns true if the specified set holds five cards of consecutive ranks,
+	 * from 3-4-5-6-7 up to J-Q-K-A-2.
+	 * 
+	 * @param mask
+	 *            a set of cards
+	 * @return true if the set is a straight
+	 */
+	public static boolean isStraight(long mask) {
+		if (Long.bitCount(mask) != 5) {
+			return false;
+		}
+		int ranks = ranksOf(mask);
+		return ranks == 0x1F << Integer.numberOfTrailingZeros(ranks);
+	}
+
+	/**
+	 * Returns true if the specified set holds five cards of the same suit.
+	 * 
+	 * @param mask
+	 *            a set of cards
+	 * @return true if the set is a flush
+	 */
+	public static boolean isFlush(long mask) {
+		if (Long.bitCount(mask) != 5) {
+			return false;
+		}
+		long suit = DIAMONDS << (Long.numberOfTrailingZeros(mask) & 3);
+		return (mask & suit) == mask;
+	}
+
+	/**
+	 * Returns true if the specified set holds five cards of exactly two ranks,
+	 * with the first one (in the order of Big Two) appearing the specified
+	 * number of times or five minus that number of times.
+	 */
+	private static boolean isTwoRanks(long mask, int count) {
+		if (Long.bitCount(mask) != 5) {
+			return false;
+		}
+		int ranks = ranksOf(mask);
+		if (Integer.bitCount(ranks) != 2) {
+			return false;
+		}
+		int first = countOf(mask, Integer.numberOfTrailingZeros(ranks));
+		return first == count || first == 5 - count;
+	}
+
+	/**
+	 * Returns true if the specified set holds three cards of one rank and two
+	 * cards of another rank.
+	 * 
+	 * @param mask
+	 *            a set of cards
+	 * @return true if the set is a full house
+	 */
+	public static boolean isFullHouse(long mask) {
+		return isTwoRanks(mask, 3);
+	}
+
+	/**
+	 * Returns true if the specified set holds four cards of one rank and one
+	 * card of another rank.
+	 * 
+	 * @param mask
+	 *            a set of cards
+	 * @return true if the set is a quad
+	 */
+	public static boolean isQuad(long mask) {
+		return isTwoRanks(mask, 4);
+	}
+
+	/**
+	 * Returns the type of hand formed by the specified set of cards, checking
+	 * the types in the same order as BigTwoClient.composeHand().
+	 * 
+	 * @param mask
+	 *            a set of cards
+	 * @return the type of the hand, or INVALID if the cards do not form a hand
+	 */
+	public static int typeOf(long mask) {
+		switch (Long.bitCount(mask)) {
+		case 1:
+			return SINGLE;
+		case 2:
+			return Integer.bitCount(ranksOf(mask)) == 1 ? PAIR : INVALID;
+		case 3:
+			return Integer.bitCount(ranksOf(mask)) == 1 ? TRIPLE : INVALID;
+		case 5:
+			boolean straight = isStraight(mask);
+			boolean flush = isFlush(mask);
+			if (straight && flush) {
+				return STRAIGHT_FLUSH;
+			} else if (straight) {
+				return STRAIGHT;
+			} else if (flush) {
+				return FLUSH;
+			} else if (isFullHouse(mask)) {
+				return FULL_HOUSE;
+			} else if (isQuad(mask)) {
+				return QUAD;
+			}
+			return INVALID;
+		default:
+			return INVALID;
+		}
+	}
+
+	/**
+	 * Returns the value of the hand formed by the specified set of cards.
+	 * 
+	 * @param mask
+	 *            a set of cards
+	 * @return the value of the hand, or INVALID if the cards do not form a hand
+	 */
+	public static int evaluate(long mask) {
+		int type = typeOf(mask);
+		if (type == INVALID) {
+			return INVALID;
+		}
+		return (type << 6) | topCard(mask);
+	}
+
+	/**
+	 * Returns the value of the specified hand.
+	 * 
+	 * @param hand
+	 *            the hand
+	 * @return the value of the hand, or INVALID if the cards do not form a hand
+	 */
+	public static int evaluate(CardList hand) {
+		return evaluate(maskOf(hand));
+	}
+
+	/**
+	 * Returns the type of the hand with the specified value.
+	 * 
+	 * @param value
+	 *            the value of a hand
+	 * @return the type of the hand
+	 */
+	public static int typeOfValue(int value) {
+		return value >> 6;
+	}
+
+	/**
+	 * Returns the code of the top card of the hand with the specified value.
+	 * 
+	 * @param value
+	 *            the value of a hand
+	 * @return the code of the top card of the hand
+	 */
+	public static int topCardOfValue(int value) {
+		return value & 63;
+	}
+
+	/**
+	 * Returns the number of cards in a hand of the specified type.
+	 * 
+	 * @param type
+	 *            the type of a hand
+	 * @return the number of cards in a hand of that type
+	 */
+	public static int sizeOf(int type) {
+		return (type < STRAIGHT) ? type + 1 : 5;
+	}
+
+	/**
+	 * Returns the name of the specified type, as returned by Hand.getType().
+	 * 
+	 * @param type
+	 *            the type of a hand
+	 * @return the name of the type
+	 */
+	public static String getTypeName(int type) {
+		return (type >= 0 && type < TYPE_NAMES.length) ? TYPE_NAMES[type]
+				: null;
+	}
+
+	/**
+	 * Returns true if a hand with the first value beats a hand with the
+	 * second value.
+	 * 
+	 * @param value
+	 *            the value of the hand being played
+	 * @param lastValue
+	 *            the value of the last hand on the table
+	 * @return true if the hand being played beats the last hand on the table
+	 */
+	public static boolean beats(int value, int lastValue) {
+		return sizeOf(typeOfValue(value)) == sizeOf(typeOfValue(lastValue))
+				&& value > lastValue;
+	}
+
+	/**
+	 * Returns true if some hand formed by cards of the specified set beats a
+	 * hand with the specified value, without enumerating the hands. For
+	 * five-card hands, the types are checked from the highest one down, so
+	 * that a set of cards only forming a straight flush where a straight or
+	 * a flush is looked for is still found.
+	 * 
+	 * @param mask
+	 *            a set of cards
+	 * @param value
+	 *            the value of the hand to beat
+	 * @return true if a hand of the same size with a higher value can be
+	 *         formed
+	 */
+	public static boolean canBeat(long mask, int value) {
+		int type = typeOfValue(value);
+		int top = topCardOfValue(value);
+		if (sizeOf(type) < 5) {
+			// the top card of a single, pair or triple is the highest card of
+			// its rank
+			for (int rank = 12; rank >= 0; rank--) {
+				long cards = (mask >>> (rank * 4)) & 0xF;
+				if (Long.bitCount(cards) >= sizeOf(type)) {
+					return topCard(cards) + rank * 4 > top;
+				}
+			}
+			return false;
+		}
+		for (int t = STRAIGHT_FLUSH; t >= type; t--) {
+			int maxTop = maxTopCard(mask, t);
+			if (maxTop >= 0 && (t > type || maxTop > top)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the highest top card of the five-card hands of the specified
+	 * type formed by cards of the specified set, or -1 if there is none. A
+	 * straight or flush found may also be a straight flush.
+	 */
+	private static int maxTopCard(long mask, int type) {
+		int maxTop = -1;
+		switch (type) {
+		case STRAIGHT_FLUSH:
+			for (int suit = 0; suit < 4; suit++) {
+				int ranks = ranksOf(mask & (DIAMONDS << suit));
+				for (int low = 8; low >= 0; low--) {
+					if (((ranks >>> low) & 0x1F) == 0x1F) {
+						maxTop = Math.max(maxTop, (low + 4) * 4 + suit);
+						break;
+					}
+				}
+			}
+			return maxTop;
+		case STRAIGHT:
+			int ranks = ranksOf(mask);
+			for (int low = 8; low >= 0; low--) {
+				if (((ranks >>> low) & 0x1F) == 0x1F) {
+					return topCard(mask & (0xFL << ((low + 4) * 4)));
+				}
+			}
+			return -1;
+		case FLUSH:
+			for (int suit = 0; suit < 4; suit++) {
+				long suited = mask & (DIAMONDS << suit);
+				if (Long.bitCount(suited) >= 5) {
+					maxTop = Math.max(maxTop, topCard(suited));
+				}
+			}
+			return maxTop;
+		case FULL_HOUSE:
+		case QUAD:
+			int count = (type == FULL_HOUSE) ? 3 : 4;
+			for (int rank = 0; rank < 13; rank++) {
+				long set = mask & (0xFL << (rank * 4));
+				if (Long.bitCount(set) < count) {
+					continue;
+				}
+				// the highest set of the rank and the highest other cards
+				long others = mask & ~set;
+				for (int other = 12; other >= 0; other--) {
+					long cards = others & (0xFL << (other * 4));
+					if (Long.bitCount(cards) >= 5 - count) {
+						maxTop = Math.max(maxTop, topCard(set | cards));
+						break;
+					}
+				}
+			}
+			return maxTop;
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Checks a move in the same way as BigTwoClient.checkMove(), without
+	 * creating any object.
+	 * 
+	 * @param cardsInHand
+	 *            the cards held by the player making the move
+	 * @param cardIdx
+	 *            the indices of the cards played, or null for a pass
+	 * @param lastHand
+	 *            the last hand on the table, or null if no hand is played yet
+	 * @param playedLastHand
+	 *            true if the player making the move played the last hand
+	 * @param tableCleared
+	 *            true if every other player has passed since the last hand was
+	 *            played, so that any valid hand may be played
+	 * @return the value of the hand played, PASS for a legal pass, or INVALID
+	 *         for an illegal move
+	 */
+	public static int checkMove(CardList cardsInHand, int[] cardIdx,
+			CardList lastHand, boolean playedLastHand, boolean tableCleared) {
+		if (cardIdx == null) {
+			return playedLastHand ? INVALID : PASS;
+		}
+		if (lastHand != null && !playedLastHand
+				&& cardIdx.length != lastHand.size()) {
+			return INVALID;
+		}
+		int value = evaluate(maskOf(cardsInHand, cardIdx));
+		if (value == INVALID) {
+			return INVALID;
+		}
+		if (lastHand == null || tableCleared) {
+			return value;
+		}
+		return beats(value, evaluate(lastHand)) ? value : INVALID;
+	}
+}
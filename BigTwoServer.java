@@ -19,6 +19,15 @@ public class BigTwoServer extends CardGameServer {
 		return new BigTwoDeck(); 
 	}
 	
+	/**
+	 * Creates and returns an instance of the BigTwoGame class, which tracks the
+	 * game in progress so that it can be restored after a restart.
+	 * @return an instance of the BigTwoGame class
+	 */
+	public BigTwoGame createGame() {
+		return new BigTwoGame();
+	}
+	
 	/**
 	 * main() method for starting the server.
 	 * 
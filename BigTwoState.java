@@ -0,0 +1,393 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The BigTwoState class is used to model the state of a Big Two game as bitboards (see BigTwoRules):
+ * the set of cards of every player, the current player and the last hand on the table. It is cheap to
+ * copy and to play on, and is used by BigTwoBot to run playouts. The legal moves are generated with the
+ * same rules as BigTwoRules.checkMove().
+ *
+ * @author Kwok Chun Yu
+ */
+public class BigTwoState {
+
+	/** The move of passing. */
+	public static final long PASS = 0;
+	/** The maximum number of legal moves in any state. */
+	public static final int MAX_MOVES = 2048;
+
+	private static final long DIAMONDS = 0x1111111111111L;
+
+	private final long[] hands;
+	private int currentIdx;
+	private int lastValue = BigTwoRules.INVALID;
+	private int lastOwner = -1;
+
+	/**
+	 * a constructor for creating the state of a game with the specified hands.
+	 * @param hands the set of cards of every player
+	 * @param currentIdx the index of the current player
+	 * @param lastHand the set of cards of the last hand on the table, or 0 if no hand is played yet
+	 * @param lastOwner the index of the player who played the last hand, or -1
+	 */
+	public BigTwoState(long[] hands, int currentIdx, long lastHand, int lastOwner) {
+		this.hands = hands.clone();
+		this.currentIdx = currentIdx;
+		if (lastHand != 0) {
+			this.lastValue = BigTwoRules.evaluate(lastHand);
+			this.lastOwner = lastOwner;
+		}
+	}
+
+	/**
+	 * a constructor for capturing the state of the specified game through the CardGame interface.
+	 * @param game the game
+	 */
+	public BigTwoState(CardGame game) {
+		ArrayList<CardGamePlayer> playerList = game.getPlayerList();
+		hands = new long[playerList.size()];
+		for (int i = 0; i < hands.length; i++) {
+			hands[i] = BigTwoRules.maskOf(playerList.get(i).getCardsInHand());
+		}
+		currentIdx = game.getCurrentIdx();
+		ArrayList<Hand> handsOnTable = game.getHandsOnTable();
+		if (!handsOnTable.isEmpty()) {
+			Hand lastHand = handsOnTable.get(handsOnTable.size() - 1);
+			lastValue = BigTwoRules.evaluate(BigTwoRules.maskOf(lastHand));
+			lastOwner = playerList.indexOf(lastHand.getPlayer());
+		}
+	}
+
+	/**
+	 * a constructor for copying a state.
+	 * @param state the state to be copied
+	 */
+	public BigTwoState(BigTwoState state) {
+		hands = state.hands.clone();
+		copyFrom(state);
+	}
+
+	/**
+	 * a method for copying the specified state, with the same number of players, into this state.
+	 * @param state the state to be copied
+	 */
+	public void copyFrom(BigTwoState state) {
+		System.arraycopy(state.hands, 0, hands, 0, hands.length);
+		currentIdx = state.currentIdx;
+		lastValue = state.lastValue;
+		lastOwner = state.lastOwner;
+	}
+
+	/**
+	 * a method for starting a new game with the cards set by setHand(), so that a state can be reused
+	 * for many games.
+	 * @param currentIdx the index of the player who plays first
+	 */
+	public void reset(int currentIdx) {
+		this.currentIdx = currentIdx;
+		lastValue = BigTwoRules.INVALID;
+		lastOwner = -1;
+	}
+
+	/**
+	 * a method for setting the last hand on the table.
+	 * @param lastHand the set of cards of the last hand on the table, or 0 if no hand is played yet
+	 * @param lastOwner the index of the player who played the last hand, or -1
+	 */
+	public void setLastHand(long lastHand, int lastOwner) {
+		this.lastValue = (lastHand == 0) ? BigTwoRules.INVALID : BatchHandEvaluator.evaluate(lastHand);
+		this.lastOwner = (lastHand == 0) ? -1 : lastOwner;
+	}
+
+	/**
+	 * a method for retrieving the number of players.
+	 * @return the number of players
+	 */
+	public int getNumOfPlayers() { return hands.length; }
+
+	/**
+	 * a method for retrieving the set of cards of a player.
+	 * @param playerID the playerID of the player
+	 * @return the set of cards of the player
+	 */
+	public long getHand(int playerID) { return hands[playerID]; }
+
+	/**
+	 * a method for setting the set of cards of a player.
+	 * @param playerID the playerID of the player
+	 * @param hand the set of cards of the player
+	 */
+	public void setHand(int playerID, long hand) { hands[playerID] = hand; }
+
+	/**
+	 * a method for retrieving the index of the current player.
+	 * @return the index of the current player
+	 */
+	public int getCurrentIdx() { return currentIdx; }
+
+	/**
+	 * a method for retrieving the value of the last hand on the table.
+	 * @return the value of the last hand (see BigTwoRules), or BigTwoRules.INVALID if no hand is played yet
+	 */
+	public int getLastValue() { return lastValue; }
+
+	/**
+	 * a method for retrieving the player who played the last hand on the table.
+	 * @return the index of the player, or -1 if no hand is played yet
+	 */
+	public int getLastOwner() { return lastOwner; }
+
+	/**
+	 * a method for retrieving the set of cards that are no longer held by any player.
+	 * @return the set of cards played
+	 */
+	public long getPlayedCards() {
+		long held = 0;
+		for (int i = 0; i < hands.length; i++) {
+			held |= hands[i];
+		}
+		return BigTwoRules.ALL_CARDS & ~held;
+	}
+
+	/**
+	 * a method for checking if the game ends.
+	 * @return true if a player has no card left
+	 */
+	public boolean isTerminal() {
+		return getWinner() >= 0;
+	}
+
+	/**
+	 * a method for retrieving the winner.
+	 * @return the index of the player who has no card left, or -1 if the game does not end
+	 */
+	public int getWinner() {
+		for (int i = 0; i < hands.length; i++) {
+			if (hands[i] == 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * a method for playing a legal move by the current player.
+	 * @param move the set of cards played, or PASS
+	 */
+	public void play(long move) {
+		if (move != PASS) {
+			hands[currentIdx] &= ~move;
+			lastValue = BatchHandEvaluator.evaluate(move);
+			lastOwner = currentIdx;
+		}
+		currentIdx = (currentIdx + 1) % hands.length;
+	}
+
+	/**
+	 * a method for generating the legal moves of the current player, as accepted by
+	 * BigTwoRules.checkMove().
+	 * @param moves the array receiving the moves, of length MAX_MOVES at least
+	 * @return the number of moves
+	 */
+	public int generateMoves(long[] moves) {
+		long hand = hands[currentIdx];
+		boolean leading = lastOwner < 0 || lastOwner == currentIdx;
+		int n = 0;
+		// a pass is illegal only for the player who played the last hand
+		if (lastOwner != currentIdx) {
+			moves[n++] = PASS;
+		}
+		if (leading) {
+			n = generateSingles(hand, BigTwoRules.INVALID, moves, n);
+			n = generateSets(hand, 2, BigTwoRules.INVALID, moves, n);
+			n = generateSets(hand, 3, BigTwoRules.INVALID, moves, n);
+			n = generateFiveCardHands(hand, BigTwoRules.INVALID, moves, n);
+		} else {
+			switch (BigTwoRules.sizeOf(BigTwoRules.typeOfValue(lastValue))) {
+			case 1:
+				n = generateSingles(hand, lastValue, moves, n);
+				break;
+			case 2:
+				n = generateSets(hand, 2, lastValue, moves, n);
+				break;
+			case 3:
+				n = generateSets(hand, 3, lastValue, moves, n);
+				break;
+			case 5:
+				n = generateFiveCardHands(hand, lastValue, moves, n);
+				break;
+			default:
+				break;
+			}
+		}
+		return n;
+	}
+
+	// adds the move if it beats the value to beat (INVALID for any value)
+	private static int add(long move, int valueToBeat, long[] moves, int n) {
+		if (valueToBeat == BigTwoRules.INVALID || BatchHandEvaluator.evaluate(move) > valueToBeat) {
+			moves[n++] = move;
+		}
+		return n;
+	}
+
+	private static int generateSingles(long hand, int valueToBeat, long[] moves, int n) {
+		// the top card of a single is the card itself
+		if (valueToBeat != BigTwoRules.INVALID) {
+			hand &= -2L << BigTwoRules.topCardOfValue(valueToBeat);
+		}
+		while (hand != 0) {
+			long card = hand & -hand;
+			moves[n++] = card;
+			hand &= hand - 1;
+		}
+		return n;
+	}
+
+	private static int generateSets(long hand, int size, int valueToBeat, long[] moves, int n) {
+		for (int rank = 0; rank < 13; rank++) {
+			int suits = (int) (hand >>> (rank * 4)) & 15;
+			if (Integer.bitCount(suits) < size) {
+				continue;
+			}
+			for (int set = 1; set < 16; set++) {
+				if (Integer.bitCount(set) == size && (set & ~suits) == 0) {
+					n = add((long) set << (rank * 4), valueToBeat, moves, n);
+				}
+			}
+		}
+		return n;
+	}
+
+	private static int generateFiveCardHands(long hand, int valueToBeat, long[] moves, int n) {
+		int ranks = BigTwoRules.ranksOf(hand);
+		// straights and straight flushes: one card of each of 5 consecutive ranks
+		for (int low = 0; low + 5 <= 13; low++) {
+			if (((ranks >>> low) & 0x1F) == 0x1F) {
+				n = generateStraights(hand, low, 0, 0, valueToBeat, moves, n);
+			}
+		}
+		// flushes that are not straights
+		for (int suit = 0; suit < 4; suit++) {
+			long suited = hand & (DIAMONDS << suit);
+			if (Long.bitCount(suited) >= 5) {
+				n = generateFlushes(suited, 5, 0, valueToBeat, moves, n);
+			}
+		}
+		// full houses and quads
+		for (int rank = 0; rank < 13; rank++) {
+			int suits = (int) (hand >>> (rank * 4)) & 15;
+			if (suits == 15) {
+				long quad = 15L << (rank * 4);
+				long others = hand & ~quad;
+				while (others != 0) {
+					n = add(quad | (others & -others), valueToBeat, moves, n);
+					others &= others - 1;
+				}
+			}
+			if (Integer.bitCount(suits) >= 3) {
+				for (int triple = 7; triple < 16; triple++) {
+					if (Integer.bitCount(triple) != 3 || (triple & ~suits) != 0) {
+						continue;
+					}
+					for (int other = 0; other < 13; other++) {
+						int otherSuits = (int) (hand >>> (other * 4)) & 15;
+						if (other == rank || Integer.bitCount(otherSuits) < 2) {
+							continue;
+						}
+						for (int pair = 3; pair < 16; pair++) {
+							if (Integer.bitCount(pair) == 2 && (pair & ~otherSuits) == 0) {
+								n = add(((long) triple << (rank * 4)) | ((long) pair << (other * 4)), valueToBeat,
+										moves, n);
+							}
+						}
+					}
+				}
+			}
+		}
+		return n;
+	}
+
+	private static int generateStraights(long hand, int rank, int count, long chosen, int valueToBeat,
+			long[] moves, int n) {
+		if (count == 5) {
+			return add(chosen, valueToBeat, moves, n);
+		}
+		long cards = hand & (15L << (rank * 4));
+		while (cards != 0) {
+			long card = cards & -cards;
+			n = generateStraights(hand, rank + 1, count + 1, chosen | card, valueToBeat, moves, n);
+			cards &= cards - 1;
+		}
+		return n;
+	}
+
+	private static int generateFlushes(long suited, int left, long chosen, int valueToBeat, long[] moves, int n) {
+		if (left == 0) {
+			return BigTwoRules.isStraight(chosen) ? n : add(chosen, valueToBeat, moves, n);
+		}
+		while (Long.bitCount(suited) >= left) {
+			long card = suited & -suited;
+			suited &= suited - 1;
+			n = generateFlushes(suited, left - 1, chosen | card, valueToBeat, moves, n);
+		}
+		return n;
+	}
+
+	/**
+	 * a method for playing random legal moves until the game ends.
+	 * @param random the source of randomness
+	 * @param moves an array of length MAX_MOVES at least, used for generating the moves
+	 * @return the index of the winner
+	 */
+	public int playout(Random random, long[] moves) {
+		int winner;
+		while ((winner = getWinner()) < 0) {
+			play(moves[random.nextInt(generateMoves(moves))]);
+		}
+		return winner;
+	}
+
+	/**
+	 * a method for checking if two states have the same cards, the same current player and the same last
+	 * hand. A state used as a key of a map must not be played on afterwards.
+	 * @param obj the object to be compared
+	 * @return true if the object is an equal state
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof BigTwoState)) {
+			return false;
+		}
+		BigTwoState state = (BigTwoState) obj;
+		return currentIdx == state.currentIdx && lastValue == state.lastValue && lastOwner == state.lastOwner
+				&& Arrays.equals(hands, state.hands);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(hands) * 31 + (currentIdx << 16 | (lastOwner + 1) << 12 | (lastValue + 1));
+	}
+
+	/**
+	 * a method for converting a move into the indices of the cards in a player's hand. The cards of the
+	 * hand must be sorted in the order of Big Two, as they are after BigTwoGame.deal().
+	 * @param hand the set of cards of the player
+	 * @param move the set of cards played, or PASS
+	 * @return the indices of the cards played, or null for a pass
+	 */
+	public static int[] toCardIdx(long hand, long move) {
+		if (move == PASS) {
+			return null;
+		}
+		int[] cardIdx = new int[Long.bitCount(move)];
+		int i = 0;
+		while (move != 0) {
+			long card = move & -move;
+			cardIdx[i++] = Long.bitCount(hand & (card - 1));
+			move &= move - 1;
+		}
+		return cardIdx;
+	}
+}
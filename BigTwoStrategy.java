@@ -0,0 +1,81 @@
+import java.util.Random;
+
+/**
+ * The BigTwoStrategy interface is used to model a way of choosing moves in a Big Two game played on a
+ * BigTwoState, as done by SelfPlaySimulator. A strategy may be used by several threads at the same time.
+ *
+ * @author Kwok Chun Yu
+ */
+public interface BigTwoStrategy {
+
+	/**
+	 * The strategy of playing a random legal move, passing included.
+	 */
+	public static final BigTwoStrategy RANDOM = (state, moves, numOfMoves, random) ->
+			moves[random.nextInt(numOfMoves)];
+
+	/**
+	 * The strategy of playing the lowest legal hand, and passing only when no hand can be played.
+	 */
+	public static final BigTwoStrategy GREEDY = (state, moves, numOfMoves, random) -> {
+		long best = BigTwoState.PASS;
+		int bestValue = Integer.MAX_VALUE;
+		for (int i = 0; i < numOfMoves; i++) {
+			if (moves[i] != BigTwoState.PASS) {
+				int value = BatchHandEvaluator.evaluate(moves[i]);
+				if (value < bestValue) {
+					best = moves[i];
+					bestValue = value;
+				}
+			}
+		}
+		return best;
+	};
+
+	/**
+	 * The strategy of playing the hand leaving the best partition of the rest of the cards (see
+	 * HandPartitioner), the lowest one if several do, and passing when it can rather than playing a hand
+	 * that breaks up the cards more than it gets rid of them, as long as every opponent holds more than 4
+	 * cards.
+	 */
+	public static final BigTwoStrategy PARTITION = (state, moves, numOfMoves, random) -> {
+		HandPartitioner partitioner = HandPartitioner.getShared();
+		long hand = state.getHand(state.getCurrentIdx());
+		long best = BigTwoState.PASS;
+		int bestCost = Integer.MAX_VALUE;
+		int bestValue = Integer.MAX_VALUE;
+		boolean canPass = false;
+		for (int i = 0; i < numOfMoves; i++) {
+			if (moves[i] == BigTwoState.PASS) {
+				canPass = true;
+				continue;
+			}
+			int cost = partitioner.cost(hand & ~moves[i]);
+			int value = BatchHandEvaluator.evaluate(moves[i]);
+			if (cost < bestCost || (cost == bestCost && value < bestValue)) {
+				best = moves[i];
+				bestCost = cost;
+				bestValue = value;
+			}
+		}
+		if (!canPass || best == BigTwoState.PASS || bestCost <= partitioner.cost(hand)) {
+			return best;
+		}
+		for (int i = 0; i < state.getNumOfPlayers(); i++) {
+			if (i != state.getCurrentIdx() && Long.bitCount(state.getHand(i)) <= 4) {
+				return best;
+			}
+		}
+		return BigTwoState.PASS;
+	};
+
+	/**
+	 * a method for choosing the move of the current player of a state.
+	 * @param state the state, which must not be changed
+	 * @param moves the legal moves of the current player, as generated by BigTwoState.generateMoves()
+	 * @param numOfMoves the number of legal moves
+	 * @param random the source of randomness of the calling thread
+	 * @return one of the legal moves
+	 */
+	public long chooseMove(BigTwoState state, long[] moves, int numOfMoves, Random random);
+}
@@ -1,7 +1,12 @@
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
 
 import javax.swing.*;
+import javax.swing.event.*;
 
 /**
  * The BigTwoTable class implements the CardGameTable interface. 
@@ -22,12 +27,26 @@ public class BigTwoTable implements CardGameTable {
 	private JPanel bigTwoPanel;
 	private JButton playButton;
 	private JButton passButton;
+	private JButton hintButton;
+	private JCheckBoxMenuItem groupCards; // draws the cards of the local player grouped into hands
+	private HintService hintService = new HintService(15); // searches the hints within the latency budget of 20 ms
+	private WinProbabilityEstimator winProbabilities = new WinProbabilityEstimator(() -> frame.repaint()); // shown beside the names
+	private long[] latencies; // the round-trip times of the players to the server in microseconds, or -1 if unknown
 	private JTextArea msgArea;
 	private JTextArea chatArea;
 	private JTextField chatField;
 	private Image[][] cardImages;
 	private Image cardBackImage;
 	private Image[] avatars;
+	private CardGame shownGame; // the game drawn in the bigTwoPanel: the client or a replay
+	private ReplayIndex replayIndex;
+	private BigTwoGame replayGame;
+	private int replayPosition;
+	private Timer replayTimer;
+	private boolean enabledBeforeReplay;
+	private JPanel replayPanel;
+	private JSlider replaySlider;
+	private JLabel replayLabel;
 	
 	
 	/**
@@ -36,6 +55,7 @@ public class BigTwoTable implements CardGameTable {
 	 */
 	public BigTwoTable(BigTwoClient game){
 		this.game = game;
+		this.shownGame = game;
 		getImageFromSrc();
 		
 		//frame
@@ -48,10 +68,19 @@ public class BigTwoTable implements CardGameTable {
 		JMenuBar menuBar = new JMenuBar();
 		JMenu menu = new JMenu("Game");
 		JMenuItem connect = new JMenuItem("Connect");
+		JMenuItem openReplay = new JMenuItem("Open Replay");
+		JMenuItem closeReplay = new JMenuItem("Close Replay");
 		JMenuItem quit = new JMenuItem("Quit");
+		groupCards = new JCheckBoxMenuItem("Group Cards");
 		connect.addActionListener(new ConnectMenuItemListener());
+		openReplay.addActionListener(new OpenReplayMenuItemListener());
+		closeReplay.addActionListener(new CloseReplayMenuItemListener());
 		quit.addActionListener(new QuitMenuItemListener());
+		groupCards.addActionListener(new GroupCardsMenuItemListener());
 		menu.add(connect);
+		menu.add(openReplay);
+		menu.add(closeReplay);
+		menu.add(groupCards);
 		menu.add(quit);
 		menuBar.add(menu);
 		frame.setJMenuBar(menuBar);
@@ -66,10 +95,43 @@ public class BigTwoTable implements CardGameTable {
 		passButton = new JButton("Pass");
 		playButton.addActionListener(new PlayButtonListener());
 		passButton.addActionListener(new PassButtonListener());
+		hintButton = new JButton("Hint");
+		hintButton.addActionListener(new HintButtonListener());
 		JPanel buttonPanel = new JPanel();
 		buttonPanel.setBackground(Color.WHITE);
 		buttonPanel.add(playButton);
 		buttonPanel.add(passButton);
+		buttonPanel.add(hintButton);
+		
+		//replayPanel, shown while replaying a recorded game
+		replayTimer = new Timer(1000, new ReplayTimerListener());
+		replaySlider = new JSlider(0, 0, 0);
+		replaySlider.addChangeListener(new ReplaySliderListener());
+		replayLabel = new JLabel();
+		JButton firstButton = new JButton("|<");
+		JButton backButton = new JButton("<");
+		JButton stepButton = new JButton(">");
+		JButton playReplayButton = new JButton("1x");
+		JButton fastReplayButton = new JButton("10x");
+		firstButton.addActionListener(new ReplayButtonListener(0));
+		backButton.addActionListener(new ReplayButtonListener(-1));
+		stepButton.addActionListener(new ReplayButtonListener(1));
+		playReplayButton.addActionListener(new ReplaySpeedListener(1000));
+		fastReplayButton.addActionListener(new ReplaySpeedListener(100));
+		replayPanel = new JPanel();
+		replayPanel.setBackground(Color.WHITE);
+		replayPanel.add(firstButton);
+		replayPanel.add(backButton);
+		replayPanel.add(stepButton);
+		replayPanel.add(playReplayButton);
+		replayPanel.add(fastReplayButton);
+		replayPanel.add(replaySlider);
+		replayPanel.add(replayLabel);
+		replayPanel.setVisible(false);
+		JPanel controlPanel = new JPanel();
+		controlPanel.setLayout(new BorderLayout());
+		controlPanel.add(replayPanel, BorderLayout.NORTH);
+		controlPanel.add(buttonPanel, BorderLayout.SOUTH);
 		
 		//msgArea
 		msgArea = new JTextArea(15,45);
@@ -113,7 +175,7 @@ public class BigTwoTable implements CardGameTable {
 		JSplitPane rightPanel = new JSplitPane(SwingConstants.HORIZONTAL, msgPanel, completeChatPanel);
 		
 		//add panels
-		bigTwoPanel.add(buttonPanel, BorderLayout.SOUTH);
+		bigTwoPanel.add(controlPanel, BorderLayout.SOUTH);
 		frame.add(bigTwoPanel, BorderLayout.CENTER);
 		frame.add(rightPanel, BorderLayout.EAST);
 
@@ -168,6 +230,186 @@ public class BigTwoTable implements CardGameTable {
 	@Override
 	public void resetSelected() { this.selected = null; }
 	
+	/**
+	 * a method for starting to search for a hint in the background if it is the turn of the local player,
+	 * so that the hint is ready when the Hint button is pressed.
+	 */
+	public void prepareHint() {
+		if (activePlayer >= 0 && game.getCurrentIdx() == activePlayer && !game.endOfGame()) {
+			hintService.prepare(new BigTwoState(game));
+		}
+	}
+
+	/**
+	 * a method for cancelling the search for a hint, as the state of the game is about to change.
+	 */
+	public void cancelHint() {
+		hintService.cancel();
+	}
+
+	/**
+	 * a method for starting a new estimate of the chance of every player to win, as seen by the local
+	 * player, after the game has changed. The estimate is refined in the background and shown beside the
+	 * names of the players.
+	 */
+	public void updateWinProbabilities() {
+		if (activePlayer < 0 || game.endOfGame()) {
+			winProbabilities.clear();
+		} else {
+			winProbabilities.update(new BigTwoState(game), activePlayer);
+		}
+	}
+
+	/**
+	 * a method for formatting the estimated chance of a player to win.
+	 * @param playerID the playerID of the player
+	 * @return the chance in percent, or an empty string if there is no estimate
+	 */
+	private String getWinProbabilityText(int playerID) {
+		double[] estimate = winProbabilities.getEstimate();
+		if (shownGame != game || estimate == null) {
+			return "";
+		}
+		return String.format("  %.0f%% to win", estimate[playerID] * 100);
+	}
+
+	/**
+	 * a method for showing the round-trip times of the players to the server beside their names.
+	 * @param latencies the round-trip time of every player in microseconds, or -1 if unknown
+	 */
+	public void setLatencies(long[] latencies) {
+		this.latencies = latencies;
+		bigTwoPanel.repaint();
+	}
+
+	/**
+	 * a method for formatting the round-trip time of a player to the server.
+	 * @param playerID the playerID of the player
+	 * @return the round-trip time in milliseconds, or an empty string if unknown
+	 */
+	private String getLatencyText(int playerID) {
+		long[] shown = latencies;
+		if (shownGame != game || shown == null || playerID >= shown.length || shown[playerID] < 0) {
+			return "";
+		}
+		return String.format("  %d ms", (shown[playerID] + 500) / 1000);
+	}
+
+	/**
+	 * a method for finding the order in which the cards of a player are drawn: grouped into the hands of
+	 * their best partition (see HandPartitioner) if they are grouped, or as they are held otherwise.
+	 * @param cards the cards of the player, in increasing order
+	 * @param grouped true to group the cards
+	 * @return the index of the card drawn at every position from the left
+	 */
+	private int[] getCardOrder(CardList cards, boolean grouped) {
+		int[] order = new int[cards.size()];
+		if (!grouped || !groupCards.isSelected()) {
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+			return order;
+		}
+		long hand = BigTwoRules.maskOf(cards);
+		long[] combinations = new long[13];
+		int numOfCombinations = HandPartitioner.getShared().partition(hand, combinations);
+		int position = 0;
+		for (int i = 0; i < numOfCombinations; i++) {
+			for (long cardsLeft = combinations[i]; cardsLeft != 0; cardsLeft &= cardsLeft - 1) {
+				// the cards are held in the order of their codes
+				order[position++] = Long.bitCount(hand & ((cardsLeft & -cardsLeft) - 1));
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * a method for selecting the cards of a recommended move, or printing a message for a pass.
+	 * @param hand the set of cards of the local player when the hint was requested
+	 * @param move the recommended move
+	 */
+	private void showHint(long hand, long move) {
+		if (shownGame != game || activePlayer < 0
+				|| BigTwoRules.maskOf(game.getPlayerList().get(activePlayer).getCardsInHand()) != hand) {
+			return;
+		}
+		selected = new boolean[Long.bitCount(hand)];
+		int[] cardIdx = BigTwoState.toCardIdx(hand, move);
+		if (cardIdx == null) {
+			printMsg("Hint: pass\n");
+		} else {
+			for (int i : cardIdx) {
+				selected[i] = true;
+			}
+		}
+		frame.repaint(); // repaint() would reset the selection
+	}
+
+	/**
+	 * a method for showing a recorded game in the bigTwoPanel instead of the game being played.
+	 * The user interactions with the game being played are disabled until the replay is closed.
+	 * @param recorded the recorded game
+	 */
+	public void openReplay(RecordedGame recorded) {
+		if (shownGame == game) {
+			enabledBeforeReplay = playButton.isEnabled();
+		}
+		replayTimer.stop();
+		replayIndex = new ReplayIndex(recorded);
+		replayGame = replayIndex.newGame();
+		shownGame = replayGame;
+		disable();
+		replayPosition = -1;
+		replaySlider.setMaximum(replayIndex.getNumOfMoves());
+		replayPanel.setVisible(true);
+		printMsg("Replays the game at table " + recorded.getTableID() + " started at "
+				+ new Date(recorded.getStartTime()) + "\n");
+		showReplayMove(0);
+	}
+	
+	/**
+	 * a method for closing the replay and showing the game being played again.
+	 */
+	public void closeReplay() {
+		if (shownGame == game) {
+			return;
+		}
+		replayTimer.stop();
+		replayPanel.setVisible(false);
+		shownGame = game;
+		replayIndex = null;
+		replayGame = null;
+		if (enabledBeforeReplay) {
+			enable();
+		}
+		repaint();
+	}
+	
+	/**
+	 * a method for showing the replay after the specified number of moves. The state is restored from
+	 * the keyframe before that move, so that any move is shown in bounded time.
+	 * @param n the number of moves
+	 */
+	private void showReplayMove(int n) {
+		n = Math.max(0, Math.min(n, replayIndex.getNumOfMoves()));
+		if (n == replayPosition) {
+			return;
+		}
+		replayIndex.seek(replayGame, n);
+		if (n == replayPosition + 1) {
+			int result = replayIndex.getResult(n - 1);
+			String move = (result == BigTwoRules.PASS) ? "Pass"
+					: (result == BigTwoRules.INVALID) ? "Illegal move"
+					: BigTwoRules.getTypeName(BigTwoRules.typeOfValue(result));
+			printMsg("Move " + n + ": " + replayGame.getPlayerList().get(replayIndex.getPlayerID(n - 1))
+					.getName() + " {" + move + "}\n");
+		}
+		replayPosition = n;
+		replaySlider.setValue(n);
+		replayLabel.setText("Move " + n + " / " + replayIndex.getNumOfMoves());
+		repaint();
+	}
+	
 	/**
 	 * a method for retrieving image from src file.
 	 */
@@ -238,6 +480,7 @@ public class BigTwoTable implements CardGameTable {
 	public void enable() {
 		playButton.setEnabled(true);
 		passButton.setEnabled(true);
+		hintButton.setEnabled(true);
 		bigTwoPanel.setEnabled(true);
 	}
 
@@ -248,6 +491,7 @@ public class BigTwoTable implements CardGameTable {
 	public void disable() {
 		playButton.setEnabled(false);
 		passButton.setEnabled(false);
+		hintButton.setEnabled(false);
 		bigTwoPanel.setEnabled(false);
 	}
 	
@@ -308,8 +552,8 @@ public class BigTwoTable implements CardGameTable {
 			this.setBackground(Color.LIGHT_GRAY);
 			this.setSize(frameWidth / 2, frameHeight);
 			
-			for (int i = 0; i < game.getNumOfPlayers(); i++) {
-				if(i == game.getCurrentIdx()) {
+			for (int i = 0; i < shownGame.getNumOfPlayers(); i++) {
+				if(i == shownGame.getCurrentIdx()) {
 					g.setColor(Color.WHITE);
 				} else {
 					g.setColor(Color.BLACK);
@@ -317,32 +561,39 @@ public class BigTwoTable implements CardGameTable {
 				
 				//print player's name and image
 				if (i == activePlayer) {
-					g.drawString(game.getPlayerList().get(i).getName() + " (You)", playerX, playerY + rowHeight*i);
+					g.drawString(shownGame.getPlayerList().get(i).getName() + " (You)" + getWinProbabilityText(i) + getLatencyText(i),
+							playerX, playerY + rowHeight*i);
 					g.drawImage(avatars[i + 4], playerX, playerY + 5 + rowHeight*i, this);
 				} else {
-					g.drawString(game.getPlayerList().get(i).getName(), playerX, playerY + rowHeight*i);
+					g.drawString(shownGame.getPlayerList().get(i).getName() + getWinProbabilityText(i) + getLatencyText(i),
+							playerX, playerY + rowHeight*i);
 					g.drawImage(avatars[i], playerX, playerY + 5 + rowHeight*i, this);
 				}
 				g.setColor(Color.BLACK);
 				g2D.drawLine(0, playerY + rowHeight*(i+1) - 16, frameWidth / 2, playerY + rowHeight*(i+1) - 16);
 				
 				//print cards
-				if (i == activePlayer) {
-					for (int card = 0; card < game.getPlayerList().get(i).getNumOfCards(); card++) {
-						int suit = game.getPlayerList().get(i).getCardsInHand().getCard(card).getSuit();
-						int rank = game.getPlayerList().get(i).getCardsInHand().getCard(card).getRank();
+				if (i == activePlayer || shownGame != game) {
+					//only the cards of the local player in the game being played can be selected, the hands
+					//of a replay are all drawn unraised
+					boolean selectable = i == activePlayer && shownGame == game;
+					int[] order = getCardOrder(shownGame.getPlayerList().get(i).getCardsInHand(), selectable);
+					if (selectable && selected == null) {
+						selected = new boolean[shownGame.getPlayerList().get(i).getNumOfCards()];
+					}
+					for (int position = 0; position < order.length; position++) {
+						int card = order[position];
+						int suit = shownGame.getPlayerList().get(i).getCardsInHand().getCard(card).getSuit();
+						int rank = shownGame.getPlayerList().get(i).getCardsInHand().getCard(card).getRank();
 						
-						if (selected == null) {
-							selected = new boolean[game.getPlayerList().get(i).getNumOfCards()];
-						}
-						if (selected[card]) {
-							g.drawImage(cardImages[suit][rank], cardX + cardNextTo*card, cardY + rowHeight*i - cardGoesUp, this);
+						if (selectable && selected[card]) {
+							g.drawImage(cardImages[suit][rank], cardX + cardNextTo*position, cardY + rowHeight*i - cardGoesUp, this);
 						} else {
-							g.drawImage(cardImages[suit][rank], cardX + cardNextTo*card, cardY + rowHeight*i, this);
+							g.drawImage(cardImages[suit][rank], cardX + cardNextTo*position, cardY + rowHeight*i, this);
 						}
 					}
 				} else {
-					for (int card = 0; card < game.getPlayerList().get(i).getNumOfCards(); card++) {
+					for (int card = 0; card < shownGame.getPlayerList().get(i).getNumOfCards(); card++) {
 						g.drawImage(cardBackImage, cardX + cardNextTo*card, cardY + rowHeight*i, this);
 					}
 				}
@@ -350,8 +601,8 @@ public class BigTwoTable implements CardGameTable {
 			}
 			
 			//print last hand on table
-			Hand lastHandOnTable = (game.getHandsOnTable().isEmpty()) ? null : game.getHandsOnTable()
-					.get(game.getHandsOnTable().size() - 1);
+			Hand lastHandOnTable = (shownGame.getHandsOnTable().isEmpty()) ? null : shownGame.getHandsOnTable()
+					.get(shownGame.getHandsOnTable().size() - 1);
 			if (lastHandOnTable != null) {
 				g.drawString("Played by " + lastHandOnTable.getPlayer().getName(), 5, rowHeight*4 + 15);
 				for (int card = 0; card < lastHandOnTable.size(); card++) {
@@ -375,19 +626,20 @@ public class BigTwoTable implements CardGameTable {
 		 * @param isUpper return true if it is choosing the upper part of the card
 		 */
 		private void checkCards(MouseEvent e, int leftmostX, int numberOfCards, boolean ascendingPriority, boolean isUpper) {
+			int[] order = getCardOrder(game.getPlayerList().get(activePlayer).getCardsInHand(), true);
 			for (int rightmostCard = numberOfCards - 1; rightmostCard >= 0; rightmostCard--) {
 				if (e.getX() >= leftmostX + cardNextTo * rightmostCard && e.getX() <= leftmostX + cardNextTo * rightmostCard + cardWidth) {
-					if (selected[rightmostCard]) {
+					if (selected[order[rightmostCard]]) {
 						if (ascendingPriority) {
 							continue;
 						}
-						selected[rightmostCard] = false;
+						selected[order[rightmostCard]] = false;
 					}
 					else {
 						if (!ascendingPriority && isUpper) {
 							continue;
 						}
-						selected[rightmostCard] = true;
+						selected[order[rightmostCard]] = true;
 					}
 					break;
 				}
@@ -399,6 +651,9 @@ public class BigTwoTable implements CardGameTable {
 		 */
 		@Override
 		public void mouseClicked(MouseEvent e) {
+			if (shownGame != game) {
+				return;
+			}
 			int numberOfCards = game.getPlayerList().get(activePlayer).getNumOfCards();
 			int rightmostX = cardX + (numberOfCards - 1)*cardNextTo + cardWidth;
 			int leftmostX = cardX;
@@ -481,6 +736,32 @@ public class BigTwoTable implements CardGameTable {
 		
 	}
 
+	/**
+	 * an inner class that implements the ActionListener interface.
+	 * This class is used to implement the hint button.
+	 * 
+	 * @author Kwok Chun Yu
+	 *
+	 */
+	class HintButtonListener implements ActionListener{
+
+		/**
+		 * Perform the action "select the cards of the recommended move" when this item is pressed.
+		 * The move is searched off the event dispatch thread.
+		 */
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			if (activePlayer < 0 || game.getCurrentIdx() != activePlayer || game.endOfGame()) {
+				printMsg("It's not your turn!\n");
+				return;
+			}
+			BigTwoState state = new BigTwoState(game);
+			long hand = state.getHand(activePlayer);
+			hintService.request(state, move -> showHint(hand, move));
+		}
+		
+	}
+
 	/**
 	 * an inner class that implements the ActionListener interface.
 	 * This class is used to implement the connect menu item.
@@ -504,6 +785,205 @@ public class BigTwoTable implements CardGameTable {
 		
 	}
 	
+	/**
+	 * an inner class that implements the ActionListener interface.
+	 * This class is used to implement the open replay menu item.
+	 * 
+	 * @author Kwok Chun Yu
+	 *
+	 */
+	class OpenReplayMenuItemListener implements ActionListener{
+
+		/**
+		 * Perform the action "choose a game recorded in a journal and replay it" when this item is pressed.
+		 */
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			JFileChooser chooser = new JFileChooser(new File("journal"));
+			chooser.setDialogTitle("Choose a journal directory");
+			chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+			if (chooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION) {
+				return;
+			}
+			ArrayList<RecordedGame> recorded;
+			try (GameJournalReader reader = new GameJournalReader(chooser.getSelectedFile())) {
+				recorded = RecordedGame.readAll(reader);
+			} catch (Exception ex) {
+				ex.printStackTrace();
+				printMsg("Fail to read the journal.\n");
+				return;
+			}
+			if (recorded.isEmpty()) {
+				printMsg("No game is recorded in the journal.\n");
+				return;
+			}
+			SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+			String[] choices = new String[recorded.size()];
+			for (int i = 0; i < choices.length; i++) {
+				RecordedGame game = recorded.get(i);
+				choices[i] = (i + 1) + ". table " + game.getTableID() + ", "
+						+ format.format(new Date(game.getStartTime())) + ", "
+						+ game.getNumOfMoves() + " moves" + (game.isAborted() ? " (aborted)" : "");
+			}
+			Object choice = JOptionPane.showInputDialog(frame, "Choose a game:", "Open Replay",
+					JOptionPane.QUESTION_MESSAGE, null, choices, choices[choices.length - 1]);
+			for (int i = 0; i < choices.length; i++) {
+				if (choices[i] == choice) {
+					openReplay(recorded.get(i));
+				}
+			}
+		}
+		
+	}
+	
+	/**
+	 * an inner class that implements the ActionListener interface.
+	 * This class is used to implement the close replay menu item.
+	 * 
+	 * @author Kwok Chun Yu
+	 *
+	 */
+	class CloseReplayMenuItemListener implements ActionListener{
+
+		/**
+		 * Perform the action "go back to the game being played" when this item is pressed.
+		 */
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			closeReplay();
+		}
+		
+	}
+	
+	/**
+	 * an inner class that implements the ActionListener interface.
+	 * This class is used to implement the buttons moving the replay to the first, previous or next move.
+	 * 
+	 * @author Kwok Chun Yu
+	 *
+	 */
+	class ReplayButtonListener implements ActionListener{
+		
+		private int step; // 0 for the first move, otherwise the number of moves to go forward
+		
+		/**
+		 * a constructor for creating a listener moving the replay.
+		 * @param step 0 for the first move, otherwise the number of moves to go forward
+		 */
+		public ReplayButtonListener(int step) {
+			this.step = step;
+		}
+
+		/**
+		 * Perform the action "move the replay" when this button is pressed.
+		 */
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			replayTimer.stop();
+			showReplayMove((step == 0) ? 0 : replayPosition + step);
+		}
+		
+	}
+	
+	/**
+	 * an inner class that implements the ActionListener interface.
+	 * This class is used to implement the buttons playing the replay at 1x and 10x.
+	 * 
+	 * @author Kwok Chun Yu
+	 *
+	 */
+	class ReplaySpeedListener implements ActionListener{
+		
+		private int delay; // milliseconds between two moves
+		
+		/**
+		 * a constructor for creating a listener playing the replay.
+		 * @param delay the number of milliseconds between two moves
+		 */
+		public ReplaySpeedListener(int delay) {
+			this.delay = delay;
+		}
+
+		/**
+		 * Perform the action "play or pause the replay" when this button is pressed.
+		 */
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			if (replayTimer.isRunning() && replayTimer.getDelay() == delay) {
+				replayTimer.stop();
+			} else {
+				replayTimer.setDelay(delay);
+				replayTimer.setInitialDelay(delay);
+				replayTimer.restart();
+			}
+		}
+		
+	}
+	
+	/**
+	 * an inner class that implements the ActionListener interface.
+	 * This class is used to play the replay, one move per tick of the replay timer.
+	 * 
+	 * @author Kwok Chun Yu
+	 *
+	 */
+	class ReplayTimerListener implements ActionListener{
+
+		/**
+		 * Show the next move, and stop at the end of the game.
+		 */
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			if (replayIndex == null || replayPosition >= replayIndex.getNumOfMoves()) {
+				replayTimer.stop();
+			} else {
+				showReplayMove(replayPosition + 1);
+			}
+		}
+		
+	}
+	
+	/**
+	 * an inner class that implements the ChangeListener interface.
+	 * This class is used to seek the replay with the slider.
+	 * 
+	 * @author Kwok Chun Yu
+	 *
+	 */
+	class ReplaySliderListener implements ChangeListener{
+
+		/**
+		 * Show the move selected with the slider.
+		 */
+		@Override
+		public void stateChanged(ChangeEvent e) {
+			if (replayIndex != null && replaySlider.getValue() != replayPosition) {
+				showReplayMove(replaySlider.getValue());
+			}
+		}
+		
+	}
+	
+	/**
+	 * an inner class that implements the ActionListener interface.
+	 * This class is used to implement the group cards menu item.
+	 * 
+	 * @author Kwok Chun Yu
+	 *
+	 */
+	class GroupCardsMenuItemListener implements ActionListener{
+
+		/**
+		 * Perform the action "redraw the cards in the chosen order" when this item is pressed.
+		 * The selected cards stay selected.
+		 */
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			bigTwoPanel.repaint();
+		}
+		
+	}
+	
 	/**
 	 * an inner class that implements the ActionListener interface.
 	 * This class is used to implement the quit menu item.
@@ -0,0 +1,32 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * This class is used to model a JFR event recorded when the server broadcasts
+ * a message to all clients.
+ * 
+ * @author Kwok Chun Yu
+ *
+ */
+@Name("bigtwo.Broadcast")
+@Label("Broadcast")
+@Category({ "Big Two", "Network" })
+@Description("A message is written to the output streams of all clients")
+public class BroadcastEvent extends Event {
+	@Label("Message Type")
+	int messageType;
+
+	@Label("Recipients")
+	int recipients;
+
+	@Label("Failed Recipients")
+	int failures;
+
+	@Label("Bytes")
+	@DataAmount
+	long bytes;
+}
@@ -22,8 +22,12 @@ public class CardGameMessage extends GameMessage {
 	/**
 	 * Sent by the server to a client after a connection is established but the
 	 * server is not able to serve this client because it is full. In this
-	 * message, playerID is -1 (not being used) and data is simply null (not
-	 * being used).
+	 * message, playerID is -1 (not being used) and data is either null, if
+	 * the connection is rejected, or a reference to an Integer specifying the
+	 * position of the client in the queue of the connections waiting for a
+	 * seat, starting at 1. A waiting client receives the message again
+	 * whenever its position changes, and a PLAYER_LIST message once it takes
+	 * a seat.
 	 */
 	public static final int FULL = 2;
 	/**
@@ -57,6 +61,38 @@ public class CardGameMessage extends GameMessage {
 	 * sent this chat message, and data is a reference to a string containing a formated chat message.
 	 */
 	public static final int MSG = 7;
+	/**
+	 * Broadcast by the server when all the players of a game restored from a
+	 * snapshot have joined again. In this message, playerID is -1 (not being
+	 * used), and data is a reference to an array of bytes holding the
+	 * snapshot (see TableSnapshot).
+	 */
+	public static final int RESUME = 8;
+	/**
+	 * Sent by the server to every client at a regular interval to check that
+	 * the client is still alive. The client answers with a PONG message. In
+	 * this message, playerID is -1 (not being used), and data is a reference
+	 * to an array of long holding the time at which the message was sent (in
+	 * nanoseconds, on the clock of the server), followed by the round-trip
+	 * time of every player in microseconds, or -1 if unknown.
+	 */
+	public static final int PING = 9;
+	/**
+	 * Sent by a client to the server upon receiving a PING message. In this
+	 * message, playerID is -1 (not being used), and data is a reference to a
+	 * Long holding the time at which the PING message was sent, as found in
+	 * the PING message.
+	 */
+	public static final int PONG = 10;
+	/**
+	 * The number of message types defined in this class.
+	 */
+	public static final int NUM_OF_TYPES = 11;
+
+	// names of the message types, indexed by type
+	private static final String[] TYPE_NAMES = { "PLAYER_LIST", "JOIN",
+			"FULL", "QUIT", "READY", "START", "MOVE", "MSG", "RESUME", "PING",
+			"PONG" };
 
 	/**
 	 * Creates and returns an instance of CardGameMessage.
@@ -71,4 +107,20 @@ public class CardGameMessage extends GameMessage {
 	public CardGameMessage(int type, int playerID, Object data) {
 		super(type, playerID, data);
 	}
+
+	/**
+	 * Returns the name of the specified message type.
+	 * 
+	 * @param type
+	 *            the message type
+	 * @return the name of the specified message type, or "UNKNOWN" if the type
+	 *         is not defined in this class
+	 */
+	public static String getTypeName(int type) {
+		if (type >= 0 && type < TYPE_NAMES.length) {
+			return TYPE_NAMES[type];
+		} else {
+			return "UNKNOWN";
+		}
+	}
 }
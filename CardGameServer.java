@@ -1,9 +1,22 @@
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.JFrame;
 import javax.swing.JMenu;
@@ -28,6 +41,8 @@ public class CardGameServer {
 	private Socket[] clientSockets;
 	// Array for holding ObjectOutputStreams of the clients
 	private ObjectOutputStream[] clientOutputStreams;
+	// Array for holding the byte counters of the output streams of the clients
+	private MeteredOutputStream[] clientMeteredStreams;
 	// Array for holding player names of the clients
 	private String[] clientNames;
 	// Array for holding ready states of the clients
@@ -40,6 +55,94 @@ public class CardGameServer {
 	private JTextArea textArea = null;
 	// a boolean indicating if the server is up
 	private boolean serverUp = false;
+	// a boolean indicating if a game is in progress
+	private boolean gameInProgress = false;
+	// the live metrics of this server
+	private final ServerMetrics metrics = new ServerMetrics();
+	// the mailbox of the table: every change to the state of the table is
+	// made by a task of this actor, one at a time, so that no lock is needed
+	private final TableActor actor = new TableActor();
+	// number of rejected connections waiting to be closed
+	private final AtomicInteger pendingRejections = new AtomicInteger();
+	// the connections waiting for a seat, in order of arrival
+	private final ConcurrentLinkedQueue<Waiter> waiting = new ConcurrentLinkedQueue<Waiter>();
+	// the maximum number of connections waiting for a seat
+	private int maxNumOfWaiting = 16;
+	// forms a table of players with close ratings out of the connections
+	// waiting, or null if the seats are given in order of arrival
+	private Matchmaker<Waiter> matchmaker = null;
+	// milliseconds a connection waits for the matchmaker before it takes any
+	// free seat
+	private long matchTimeout = 0;
+	// the timer of the next round of matching, or null
+	private TimingWheel.Timeout matchTimer = null;
+	// the number of connections accepted per second, or 0 if unlimited
+	private double acceptRate = 0;
+	// the largest number of connections accepted at once
+	private double acceptBurst = 0;
+	// the number of connections which may be accepted now
+	private double acceptPermits = 0;
+	// the time at which acceptPermits was last updated
+	private long acceptPermitsTime = 0;
+	// the ID of the table hosted by this server, as recorded in the journal
+	private int tableID = 0;
+	// the journal of the games hosted by this server, or null if disabled
+	private GameJournal journal = null;
+	// the ratings of the players, or null if disabled
+	private PlayerRatings ratings = null;
+	// the game being played at the table, tracked for the snapshots, or null
+	private final BigTwoGame game;
+	// the file holding the snapshot of the table, or null if disabled
+	private File snapshotFile = null;
+	// the snapshot being written by the snapshot timer
+	private final TableSnapshot snapshot;
+	// the state of the game off the heap, from which the bot searches, or
+	// null if no game is tracked
+	private final TableStore tableStore;
+	// the record of the table in tableStore
+	private final int tableRecord;
+	// incremented whenever the state of the table changes
+	private long stateVersion = 0;
+	// the value of stateVersion when the last snapshot was captured
+	private long snapshotVersion = -1;
+	// names of the players of a restored game who have not joined again, or
+	// null if no restored game is waiting for its players
+	private String[] reservedNames = null;
+	// the bot playing at the empty seats, or null if disabled
+	private BigTwoBot bot = null;
+	// true for the seats taken by the bot
+	private final boolean[] botSeats;
+	// the number of seats taken by the bot
+	private int numOfBots = 0;
+	// milliseconds to wait before the bot fills the empty seats
+	private long botDelay = 5000;
+	// runs the searches of the bot and fills the empty seats
+	private ScheduledExecutorService botExecutor = null;
+	// the pending task filling the empty seats, or null
+	private ScheduledFuture<?> fillTask = null;
+	// incremented by every move, so that a move found by the bot for an
+	// earlier turn is discarded
+	private long turn = 0;
+	// milliseconds a player has to make a move, or 0 if unlimited
+	private long turnTimeout = 0;
+	// milliseconds a player has to get ready for a game, or 0 if unlimited
+	private long readyTimeout = 0;
+	// the timer of the current turn, or null
+	private TimingWheel.Timeout turnTimer = null;
+	// the timers of the players who are not ready yet, or null
+	private final TimingWheel.Timeout[] readyTimers;
+	// milliseconds between two heartbeats, or 0 if disabled
+	private long heartbeatInterval = 0;
+	// milliseconds without any message after which a client is removed
+	private long heartbeatTimeout = 0;
+	// milliseconds a new client has to send the header of its stream
+	private int headerTimeout = 5000;
+	// the time at which a message was last received from every client
+	private final long[] lastHeard;
+	// the smoothed round-trip time of every client in nanoseconds, or -1
+	private final double[] roundTripTimes;
+	// the round-trip times of every client since it connected
+	private final LatencyHistogram[] roundTripHistograms;
 
 	/**
 	 * Creates and returns an instance of the BigTwoServer class.
@@ -57,12 +160,39 @@ public class CardGameServer {
 		// names, and ready states
 		clientSockets = new Socket[maxNumOfPlayers];
 		clientOutputStreams = new ObjectOutputStream[maxNumOfPlayers];
+		clientMeteredStreams = new MeteredOutputStream[maxNumOfPlayers];
 		clientNames = new String[maxNumOfPlayers];
 		clientReadyStates = new boolean[maxNumOfPlayers];
+		botSeats = new boolean[maxNumOfPlayers];
+		readyTimers = new TimingWheel.Timeout[maxNumOfPlayers];
+		lastHeard = new long[maxNumOfPlayers];
+		roundTripTimes = new double[maxNumOfPlayers];
+		roundTripHistograms = new LatencyHistogram[maxNumOfPlayers];
+		metrics.registerQueue("pendingRejections", pendingRejections::get);
+		metrics.registerQueue("waitingConnections", waiting::size);
+		metrics.registerQueue("tableMailbox", actor::getMailboxSize);
+		game = createGame();
+		snapshot = new TableSnapshot(maxNumOfPlayers);
+		if (game != null && maxNumOfPlayers == TableStore.NUM_OF_SEATS) {
+			tableStore = new TableStore(1);
+			tableRecord = tableStore.allocate();
+		} else {
+			tableStore = null;
+			tableRecord = -1;
+		}
 
 		buildGUI();
 	}
 
+	/**
+	 * Returns the live metrics of this server.
+	 * 
+	 * @return the live metrics of this server
+	 */
+	public ServerMetrics getMetrics() {
+		return metrics;
+	}
+
 	/**
 	 * Builds the GUI for the server
 	 */
@@ -102,17 +232,161 @@ public class CardGameServer {
 	 *            the specified port at which the server starts
 	 */
 	public void start(int port) {
+		// exposes the metrics through JMX and, if the system property
+		// bigtwo.metrics.port is set, through a local HTTP endpoint
+		metrics.register(serverName);
+		Integer metricsPort = Integer.getInteger("bigtwo.metrics.port");
+		if (metricsPort != null) {
+			try {
+				metrics.startHttpEndpoint(metricsPort);
+				println("Serves metrics at http://127.0.0.1:" + metricsPort
+						+ "/metrics");
+			} catch (Exception ex) {
+				println("Error in starting up the metrics endpoint at localhost:"
+						+ metricsPort);
+				ex.printStackTrace();
+			}
+		}
+
+		// opens the journal in the directory given by the system property
+		// bigtwo.journal.dir ("journal" by default; empty to disable it)
+		String journalDir = System.getProperty("bigtwo.journal.dir", "journal");
+		if (!journalDir.isEmpty()) {
+			try {
+				journal = new GameJournal(new File(journalDir));
+				println("Records the games in " + journalDir);
+			} catch (Exception ex) {
+				println("Error in opening the journal at " + journalDir);
+				ex.printStackTrace();
+			}
+		}
+
+		// opens the ratings of the players in the file given by the system
+		// property bigtwo.ratings.file ("ratings.dat" by default; empty to
+		// disable it), and serves the leaderboard at /leaderboard?top=N or
+		// /leaderboard?name=NAME along with the metrics
+		String ratingsFile = System.getProperty("bigtwo.ratings.file",
+				"ratings.dat");
+		if (!ratingsFile.isEmpty() && game != null) {
+			try {
+				ratings = new PlayerRatings(new File(ratingsFile));
+				ratings.register(serverName);
+				metrics.registerQueue("ratingUpdates", ratings::getQueueDepth);
+				metrics.addTextEndpoint("/leaderboard", this::queryLeaderboard);
+				println("Rates " + ratings.getNumOfPlayers()
+						+ " players in " + ratingsFile);
+			} catch (Exception ex) {
+				println("Error in opening the ratings at " + ratingsFile);
+				ex.printStackTrace();
+			}
+		}
+
+		// fills the empty seats with bots if the system property bigtwo.bots
+		// is true (by default) and the players at the table have been ready
+		// for bigtwo.bot.delay milliseconds (5000 by default). The bots search
+		// for bigtwo.bot.time milliseconds per move (50 by default) on
+		// bigtwo.bot.threads threads (all processors by default)
+		if (game != null
+				&& Boolean.parseBoolean(System.getProperty("bigtwo.bots",
+						"true"))) {
+			botDelay = Long.getLong("bigtwo.bot.delay", 5000);
+			bot = new BigTwoBot(Long.getLong("bigtwo.bot.time", 50),
+					Integer.getInteger("bigtwo.bot.threads", Runtime
+							.getRuntime().availableProcessors()));
+			botExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "bots");
+				t.setDaemon(true);
+				return t;
+			});
+			println("Fills the empty seats with bots after " + botDelay
+					+ " ms");
+		}
+
+		// a player who has not moved for bigtwo.turn.timeout milliseconds
+		// (30000 by default) passes, or is removed from the table if a pass is
+		// not allowed, and a player who is not ready for a game after
+		// bigtwo.ready.timeout milliseconds (60000 by default) is removed from
+		// the table; 0 disables the timeout
+		turnTimeout = Long.getLong("bigtwo.turn.timeout", 30000);
+		readyTimeout = Long.getLong("bigtwo.ready.timeout", 60000);
+
+		// sends a PING message to every client every bigtwo.heartbeat.interval
+		// milliseconds (1000 by default; 0 to disable it), and removes a
+		// client from which nothing has been received for
+		// bigtwo.heartbeat.timeout milliseconds (5000 by default)
+		heartbeatInterval = Long.getLong("bigtwo.heartbeat.interval", 1000);
+		heartbeatTimeout = Long.getLong("bigtwo.heartbeat.timeout", 5000);
+		if (heartbeatInterval > 0) {
+			scheduleHeartbeat();
+		}
+		if (turnTimeout > 0 || readyTimeout > 0 || heartbeatInterval > 0) {
+			metrics.registerQueue("pendingTimers",
+					TimingWheel.getShared()::getNumOfPending);
+		}
+
+		// restores the table from the snapshot in the directory given by the
+		// system property bigtwo.snapshot.dir ("snapshot" by default; empty to
+		// disable it), and captures a snapshot every
+		// bigtwo.snapshot.interval milliseconds (1000 by default) if the
+		// table has changed
+		String snapshotDir = System.getProperty("bigtwo.snapshot.dir",
+				"snapshot");
+		if (!snapshotDir.isEmpty()) {
+			File dir = new File(snapshotDir);
+			dir.mkdirs();
+			snapshotFile = new File(dir, "table-" + tableID + ".snap");
+			actor.call(() -> {
+				restoreSnapshot();
+				return null;
+			}).join();
+			long interval = Long.getLong("bigtwo.snapshot.interval", 1000);
+			Timer timer = new Timer("snapshot", true);
+			timer.schedule(new TimerTask() {
+				public void run() {
+					writeSnapshot();
+				}
+			}, interval, interval);
+		}
+
+		// accepts at most bigtwo.accept.rate connections per second (50 by
+		// default; 0 for no limit), in bursts of at most bigtwo.accept.burst
+		// connections (the rate by default); the other connections wait in the
+		// backlog of the server socket, of bigtwo.accept.backlog connections
+		// (200 by default). When the table is full, up to bigtwo.queue.size
+		// connections (16 by default) wait for a seat, and the others are
+		// rejected
+		acceptRate = Double.parseDouble(System.getProperty(
+				"bigtwo.accept.rate", "50"));
+		acceptBurst = Math.max(1, Double.parseDouble(System.getProperty(
+				"bigtwo.accept.burst", String.valueOf(acceptRate))));
+		acceptPermits = acceptBurst;
+		acceptPermitsTime = System.nanoTime();
+		maxNumOfWaiting = Integer.getInteger("bigtwo.queue.size", 16);
+		int backlog = Integer.getInteger("bigtwo.accept.backlog", 200);
+
+		// a new connection waits in a matchmaking pool rather than taking the
+		// first free seat: when the table is empty, the matchmaker seats a
+		// whole table of players with close ratings, and a connection which
+		// has waited for bigtwo.match.timeout milliseconds (10000 by default)
+		// takes any free seat, in order of arrival. 0 disables the matchmaker,
+		// so that a connection takes the first free seat at once
+		matchTimeout = Long.getLong("bigtwo.match.timeout", 10000);
+		if (matchTimeout > 0 && maxNumOfPlayers == Matchmaker.TABLE_SIZE) {
+			matchmaker = new Matchmaker<Waiter>();
+		}
+
 		// start the server
 		try {
 			// creates a ServerScoket
-			ServerSocket serverSocket = new ServerSocket(port);
+			ServerSocket serverSocket = new ServerSocket(port, backlog);
 			println("Starts up the server at localhost:"
 					+ serverSocket.getLocalPort());
 			serverUp = true;
 			while (serverUp) {
 				// waits for clients to connect
+				awaitAcceptPermit();
 				Socket clientSocket = serverSocket.accept();
-				addConnection(clientSocket);
+				actor.execute(() -> addConnection(clientSocket));
 			} // while
 			serverSocket.close();
 		} catch (Exception ex) {
@@ -121,6 +395,156 @@ public class CardGameServer {
 		}
 	} // start
 
+	/**
+	 * Waits until another connection may be accepted without exceeding the
+	 * rate given by bigtwo.accept.rate. The permits are refilled at that rate,
+	 * up to bigtwo.accept.burst permits, so that a storm of reconnections
+	 * after a restart is admitted at a steady pace.
+	 * 
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 */
+	private void awaitAcceptPermit() throws InterruptedException {
+		if (acceptRate <= 0) {
+			return;
+		}
+		while (true) {
+			long now = System.nanoTime();
+			acceptPermits = Math.min(acceptBurst, acceptPermits
+					+ (now - acceptPermitsTime) * acceptRate / 1e9);
+			acceptPermitsTime = now;
+			if (acceptPermits >= 1) {
+				acceptPermits--;
+				return;
+			}
+			Thread.sleep((long) Math.ceil((1 - acceptPermits) * 1000
+					/ acceptRate));
+		}
+	}
+
+	/**
+	 * Answers a query of the leaderboard: "top=N" for the top N players
+	 * (10 by default), or "name=NAME" for the standing of a player.
+	 * 
+	 * @param query
+	 *            the query string, or null
+	 * @return the leaderboard in text format
+	 */
+	private String queryLeaderboard(String query) {
+		int top = 10;
+		if (query != null) {
+			for (String param : query.split("&")) {
+				if (param.startsWith("name=")) {
+					PlayerRatings.Standing standing = ratings.getStanding(param
+							.substring(5));
+					return (standing == null) ? "" : standing + "\n";
+				} else if (param.startsWith("top=")) {
+					try {
+						top = Integer.parseInt(param.substring(4));
+					} catch (NumberFormatException ex) {
+						// keeps the default
+					}
+				}
+			}
+		}
+		return ratings.dump(top);
+	}
+
+	/**
+	 * Restores the game captured in the snapshot file, if any. The seats of
+	 * the players of the restored game are reserved until they join again.
+	 */
+	private void restoreSnapshot() {
+		if (!snapshotFile.exists()) {
+			return;
+		}
+		try {
+			TableSnapshot restored = TableSnapshot.read(snapshotFile);
+			if (restored.isGameInProgress() && game != null
+					&& restored.getNumOfPlayers() == maxNumOfPlayers
+					&& hasHumanPlayer(restored)) {
+				game.resume(restored);
+				if (tableStore != null) {
+					tableStore.capture(tableRecord, game);
+				}
+				reservedNames = new String[maxNumOfPlayers];
+				for (int i = 0; i < maxNumOfPlayers; i++) {
+					if (isBotSeat(restored, i)) {
+						// the bot takes its seat again at once
+						seatBot(i);
+					} else {
+						reservedNames[i] = restored.getName(i);
+					}
+				}
+				if (journal != null) {
+					// the moves made after the snapshot are lost, so the
+					// game is closed in the journal
+					journal.logQuit(tableID, -1);
+				}
+				println("Restores the game saved at "
+						+ new Date(restored.getTimestamp())
+						+ ". Waits for its players to join again.");
+			}
+		} catch (Exception ex) {
+			println("Error in restoring the snapshot at " + snapshotFile);
+			ex.printStackTrace();
+		}
+	}
+
+	/**
+	 * Returns true if a seat of a restored game was taken by the bot, and the
+	 * bot is enabled to take it again.
+	 */
+	private boolean isBotSeat(TableSnapshot restored, int i) {
+		return bot != null && restored.isBot(i);
+	}
+
+	/**
+	 * Returns true if a restored game has a player other than the bot, so
+	 * that it can be resumed when that player joins again.
+	 */
+	private boolean hasHumanPlayer(TableSnapshot restored) {
+		for (int i = 0; i < maxNumOfPlayers; i++) {
+			if (restored.getName(i) != null && !isBotSeat(restored, i)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Captures a snapshot of the table if it has changed since the last
+	 * snapshot. Only the state of the table is copied by the actor of the
+	 * table.
+	 * 
+	 * @return true if a snapshot has been captured; false otherwise
+	 */
+	private boolean captureSnapshot() {
+		// keeps the snapshot of a restored game until the game resumes
+		if (stateVersion == snapshotVersion || reservedNames != null) {
+			return false;
+		}
+		snapshotVersion = stateVersion;
+		snapshot.capture(tableID, clientNames, clientReadyStates, botSeats,
+				gameInProgress ? game : null);
+		return true;
+	}
+
+	/**
+	 * Captures a snapshot of the table and writes it to the snapshot file.
+	 * This method is called by the snapshot timer.
+	 */
+	private void writeSnapshot() {
+		if (actor.call(this::captureSnapshot).join()) {
+			try {
+				snapshot.write(snapshotFile);
+			} catch (Exception ex) {
+				println("Error in writing the snapshot at " + snapshotFile);
+				ex.printStackTrace();
+			}
+		}
+	}
+
 	/**
 	 * Parses the incoming message from the specified client.
 	 * 
@@ -129,15 +553,52 @@ public class CardGameServer {
 	 * @param message
 	 *            the message received from the specified client
 	 */
-	private synchronized void parseMessage(Socket clientSocket,
+	private void parseMessage(Socket clientSocket, CardGameMessage message) {
+		MessageDispatchedEvent event = new MessageDispatchedEvent();
+		event.begin();
+		long startTime = System.nanoTime();
+		dispatchMessage(clientSocket, message);
+		metrics.messageDispatched(message.getType(), System.nanoTime()
+				- startTime);
+		if (event.shouldCommit()) {
+			event.messageType = message.getType();
+			event.playerID = message.getPlayerID();
+			event.commit();
+		}
+	} // parseMessage
+
+	/**
+	 * Handles the incoming message from the specified client according to its
+	 * type.
+	 * 
+	 * @param clientSocket
+	 *            the socket connection to the specified client
+	 * @param message
+	 *            the message received from the specified client
+	 */
+	private void dispatchMessage(Socket clientSocket,
 			CardGameMessage message) {
 		// updates the playerID
+		int playerID = -1;
 		for (int i = 0; i < maxNumOfPlayers; i++) {
 			if (clientSockets[i] == clientSocket) {
-				message.setPlayerID(i);
+				playerID = i;
 				break;
 			}
 		}
+		if (playerID < 0) {
+			Waiter waiter = findWaiter(clientSocket);
+			if (waiter != null) {
+				holdMessage(waiter, message);
+			} else {
+				// the message was sent before the client was removed
+				println("Drops a message from a client without a seat at "
+						+ clientSocket.getRemoteSocketAddress());
+			}
+			return;
+		}
+		message.setPlayerID(playerID);
+		lastHeard[playerID] = System.nanoTime();
 
 		// parses the message based on it type
 		switch (message.getType()) {
@@ -152,8 +613,7 @@ public class CardGameServer {
 		case CardGameMessage.MOVE:
 			println("Broadcasts a \"MOVE\" message from "
 					+ clientSocket.getRemoteSocketAddress());
-			// broadcast the MOVE message to all clients
-			broadcastMessage(message);
+			playMove(message);
 			break;
 		case CardGameMessage.MSG:
 			println("Broadcasts a user message from "
@@ -166,7 +626,345 @@ public class CardGameServer {
 			// invalid message
 			break;
 		}
-	} // parseMessage
+		stateVersion++;
+	} // dispatchMessage
+
+	/**
+	 * Records a move, applies it to the game tracked by the server and
+	 * broadcasts it to all clients. The bot then plays if it is its turn. A
+	 * move by a player whose turn it is not is dropped.
+	 * 
+	 * @param message
+	 *            the MOVE message
+	 */
+	private void playMove(CardGameMessage message) {
+		if (game == null) {
+			// the move cannot be checked without the game
+			if (journal != null) {
+				journal.logMove(tableID, message.getPlayerID(),
+						(int[]) message.getData());
+			}
+		} else if (gameInProgress) {
+			if (message.getPlayerID() != game.getCurrentIdx()) {
+				// e.g. a move sent before the client learnt that its turn
+				// timer had passed for it; the other clients never see it
+				println("Drops a move out of turn from player "
+						+ message.getPlayerID());
+				return;
+			}
+			int[] cardIdx = (int[]) message.getData();
+			long move = (cardIdx == null) ? BigTwoState.PASS
+					: BigTwoRules.maskOf(game.getPlayerList()
+							.get(message.getPlayerID()).getCardsInHand(),
+							cardIdx);
+			game.checkMove(message.getPlayerID(), cardIdx);
+			// only the moves applied to the game are recorded
+			if (game.getLastResult() != BigTwoRules.INVALID) {
+				if (journal != null) {
+					journal.logMove(tableID, message.getPlayerID(), cardIdx);
+				}
+				if (tableStore != null) {
+					tableStore.play(tableRecord, message.getPlayerID(), move);
+				}
+			}
+			turn++;
+			if (game.endOfGame()) {
+				gameInProgress = false;
+				metrics.setActiveGames(0);
+				scheduleReadyTimers();
+				if (ratings != null) {
+					// the ratings are updated by another thread, and the bots
+					// are not rated
+					String[] names = clientNames.clone();
+					int[] cardsLeft = new int[maxNumOfPlayers];
+					for (int i = 0; i < maxNumOfPlayers; i++) {
+						if (botSeats[i]) {
+							names[i] = null;
+						}
+						cardsLeft[i] = game.getPlayerList().get(i)
+								.getNumOfCards();
+					}
+					ratings.submit(names, cardsLeft);
+				}
+			}
+		}
+		// broadcast the MOVE message to all clients
+		broadcastMessage(message);
+		scheduleBotMove();
+		scheduleTurnTimer();
+		if (game != null && !gameInProgress) {
+			// the bots give their seats to the connections waiting once the
+			// last move has been sent
+			admitWaiting();
+		}
+	}
+
+	/**
+	 * Lets the bot search for a move in the background if the current player
+	 * is the bot. The search works on a copy of the game, so that the actor of
+	 * the table is not held up during the search.
+	 */
+	private void scheduleBotMove() {
+		if (bot == null || !gameInProgress || reservedNames != null) {
+			return;
+		}
+		final int playerID = game.getCurrentIdx();
+		if (!botSeats[playerID]) {
+			return;
+		}
+		final long botTurn = turn;
+		final BigTwoState state;
+		if (tableStore != null) {
+			state = new BigTwoState(new long[maxNumOfPlayers], 0, 0, -1);
+			tableStore.load(tableRecord, state);
+		} else {
+			state = new BigTwoState(game);
+		}
+		botExecutor.execute(() -> {
+			long move = bot.search(state);
+			int[] cardIdx = BigTwoState.toCardIdx(state.getHand(playerID), move);
+			actor.execute(() -> playBotMove(playerID, botTurn, cardIdx));
+		});
+	}
+
+	/**
+	 * Plays the move found by the bot, unless the game has changed since the
+	 * search started.
+	 * 
+	 * @param playerID
+	 *            the seat of the bot
+	 * @param botTurn
+	 *            the turn for which the move was searched
+	 * @param cardIdx
+	 *            the indices of the cards played, or null for a pass
+	 */
+	private void playBotMove(int playerID, long botTurn,
+			int[] cardIdx) {
+		if (botTurn != turn || !gameInProgress || !botSeats[playerID]) {
+			return;
+		}
+		println("Broadcasts a \"MOVE\" message from "
+				+ clientNames[playerID]);
+		playMove(new CardGameMessage(CardGameMessage.MOVE, playerID, cardIdx));
+		stateVersion++;
+	}
+
+	/**
+	 * Starts the timer of the current turn if the current player is not the
+	 * bot, and cancels the timer of the previous turn. The timers of all the
+	 * tables share one timing wheel, so that a timer costs the same to start
+	 * or cancel however many tables are open.
+	 */
+	private void scheduleTurnTimer() {
+		if (turnTimer != null) {
+			turnTimer.cancel();
+			turnTimer = null;
+		}
+		if (game == null || turnTimeout <= 0 || !gameInProgress
+				|| reservedNames != null) {
+			return;
+		}
+		final int playerID = game.getCurrentIdx();
+		if (botSeats[playerID]) {
+			return;
+		}
+		final long timedTurn = turn;
+		turnTimer = TimingWheel.getShared().schedule(
+				() -> actor.execute(() -> turnTimedOut(playerID, timedTurn)),
+				turnTimeout, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Passes for a player who has not moved in time, or removes the player
+	 * from the table if the player played the last hand and so cannot pass.
+	 * Nothing is done if the player has moved since the timer started.
+	 * 
+	 * @param playerID
+	 *            the seat of the player
+	 * @param timedTurn
+	 *            the turn for which the timer was started
+	 */
+	private void turnTimedOut(int playerID, long timedTurn) {
+		if (timedTurn != turn || !gameInProgress || botSeats[playerID]
+				|| clientSockets[playerID] == null) {
+			return;
+		}
+		turnTimer = null;
+		int lastOwner = (tableStore != null) ? tableStore
+				.getLastOwner(tableRecord) : new BigTwoState(game)
+				.getLastOwner();
+		if (lastOwner != playerID) {
+			println(clientNames[playerID] + " has not moved for "
+					+ turnTimeout + " ms and passes.");
+			playMove(new CardGameMessage(CardGameMessage.MOVE, playerID, null));
+			stateVersion++;
+		} else {
+			println(clientNames[playerID] + " has not moved for "
+					+ turnTimeout + " ms and is removed from the table.");
+			evict(clientSockets[playerID]);
+		}
+	}
+
+	/**
+	 * Starts the timer of every player at the table who is not ready for the
+	 * next game and has no timer yet.
+	 */
+	private void scheduleReadyTimers() {
+		for (int i = 0; i < maxNumOfPlayers; i++) {
+			if (clientSockets[i] != null && !clientReadyStates[i]
+					&& readyTimers[i] == null) {
+				scheduleReadyTimer(i);
+			}
+		}
+	}
+
+	/**
+	 * Starts the timer of the player at the specified seat, who is removed
+	 * from the table if still not ready when the timer expires.
+	 * 
+	 * @param i
+	 *            the seat of the player
+	 */
+	private void scheduleReadyTimer(int i) {
+		cancelReadyTimer(i);
+		if (readyTimeout <= 0) {
+			return;
+		}
+		final Socket clientSocket = clientSockets[i];
+		readyTimers[i] = TimingWheel.getShared().schedule(
+				() -> actor.execute(() -> readyTimedOut(clientSocket)),
+				readyTimeout, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Cancels the timer of the player at the specified seat, if any.
+	 * 
+	 * @param i
+	 *            the seat of the player
+	 */
+	private void cancelReadyTimer(int i) {
+		if (readyTimers[i] != null) {
+			readyTimers[i].cancel();
+			readyTimers[i] = null;
+		}
+	}
+
+	/**
+	 * Removes a player from the table if the player is still not ready for
+	 * the next game. The players of a restored game are waited for instead.
+	 * 
+	 * @param clientSocket
+	 *            the socket connection to the player
+	 */
+	private void readyTimedOut(Socket clientSocket) {
+		for (int i = 0; i < maxNumOfPlayers; i++) {
+			if (clientSockets[i] == clientSocket) {
+				readyTimers[i] = null;
+				if (!clientReadyStates[i] && !gameInProgress
+						&& reservedNames == null) {
+					println(clientNames[i] + " ("
+							+ clientSocket.getRemoteSocketAddress()
+							+ ") is not ready after " + readyTimeout
+							+ " ms and is removed from the table.");
+					evict(clientSocket);
+				}
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Removes a player from the table and closes the connection, which ends
+	 * the thread receiving the messages of the player.
+	 * 
+	 * @param clientSocket
+	 *            the socket connection to the player
+	 */
+	private void evict(Socket clientSocket) {
+		removeConnection(clientSocket);
+		close(clientSocket);
+	}
+
+	/**
+	 * Schedules the next heartbeat on the timing wheel.
+	 */
+	private void scheduleHeartbeat() {
+		TimingWheel.getShared().schedule(
+				() -> actor.execute(this::heartbeat), heartbeatInterval,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Removes the clients from which nothing has been received for
+	 * heartbeatTimeout milliseconds, or whose connection fails, and sends a
+	 * PING message holding the round-trip times of all players to the others.
+	 * A half-open connection is thus noticed within seconds, instead of when
+	 * the operating system gives up on it.
+	 */
+	private void heartbeat() {
+		long now = System.nanoTime();
+		long[] data = new long[1 + maxNumOfPlayers];
+		data[0] = now;
+		for (int i = 0; i < maxNumOfPlayers; i++) {
+			data[1 + i] = (clientSockets[i] != null && roundTripTimes[i] >= 0) ? Math
+					.round(roundTripTimes[i] / 1000) : -1;
+		}
+		CardGameMessage ping = new CardGameMessage(CardGameMessage.PING, -1,
+				data);
+		for (int i = 0; i < maxNumOfPlayers; i++) {
+			Socket clientSocket = clientSockets[i];
+			if (clientSocket == null) {
+				continue;
+			}
+			boolean alive = now - lastHeard[i] <= TimeUnit.MILLISECONDS
+					.toNanos(heartbeatTimeout);
+			if (alive) {
+				long bytesBefore = clientMeteredStreams[i].getByteCount();
+				try {
+					clientOutputStreams[i].writeObject(ping);
+					// forgets the objects sent so far, so that the stream does
+					// not keep a reference to every PING message
+					clientOutputStreams[i].reset();
+				} catch (Exception ex) {
+					alive = false;
+				}
+				metrics.bytesSent(clientMeteredStreams[i].getByteCount()
+						- bytesBefore);
+			}
+			if (!alive) {
+				println(clientNames[i] + " ("
+						+ clientSocket.getRemoteSocketAddress()
+						+ ") has not answered for " + heartbeatTimeout
+						+ " ms and is removed from the table.");
+				metrics.connectionDead();
+				evict(clientSocket);
+			}
+		}
+		scheduleHeartbeat();
+	}
+
+	/**
+	 * Records the round-trip time of a heartbeat of the specified client. The
+	 * round-trip time shown to the players is smoothed by an exponentially
+	 * weighted moving average.
+	 * 
+	 * @param clientSocket
+	 *            the socket connection to the client
+	 * @param nanos
+	 *            the time between the PING message and its PONG message
+	 */
+	private void recordRoundTrip(Socket clientSocket, long nanos) {
+		for (int i = 0; i < maxNumOfPlayers; i++) {
+			if (clientSockets[i] == clientSocket) {
+				lastHeard[i] = System.nanoTime();
+				roundTripHistograms[i].record(nanos);
+				metrics.roundTrip(nanos);
+				roundTripTimes[i] = (roundTripTimes[i] < 0) ? nanos
+						: roundTripTimes[i] + 0.2 * (nanos - roundTripTimes[i]);
+				break;
+			}
+		}
+	}
 
 	/**
 	 * Broadcasts the specified message to all clients.
@@ -174,75 +972,366 @@ public class CardGameServer {
 	 * @param message
 	 *            the specified message to be broadcast to all clients
 	 */
-	private synchronized void broadcastMessage(CardGameMessage message) {
+	private void broadcastMessage(CardGameMessage message) {
+		BroadcastEvent event = new BroadcastEvent();
+		event.begin();
+		long startTime = System.nanoTime();
+		int recipients = 0;
+		int failures = 0;
+		long bytes = 0;
 		if (numOfPlayers > 0) {
 			for (int i = 0; i < maxNumOfPlayers; i++) {
 				if (clientSockets[i] != null && clientOutputStreams[i] != null) {
+					long bytesBefore = clientMeteredStreams[i].getByteCount();
 					try {
 						clientOutputStreams[i].writeObject(message);
+						recipients++;
 					} catch (Exception ex) {
+						failures++;
 						println("Error in broadcasting a message to the client at "
 								+ clientSockets[i].getRemoteSocketAddress());
 						ex.printStackTrace();
 					}
+					bytes += clientMeteredStreams[i].getByteCount() - bytesBefore;
 				}
 			}
 		}
+		metrics.broadcast(bytes, System.nanoTime() - startTime);
+		if (event.shouldCommit()) {
+			event.messageType = message.getType();
+			event.recipients = recipients;
+			event.failures = failures;
+			event.bytes = bytes;
+			event.commit();
+		}
 	} // broadcastMessage
 
 	/**
-	 * Adds a new socket connection to the server
+	 * Adds a new socket connection to the server. If the table is full, or if
+	 * the seats are given by the matchmaker, the connection waits for a seat
+	 * behind the connections already waiting, or is rejected if too many
+	 * connections are waiting.
+	 * 
+	 * @param clientSocket
+	 *            the socket connection to be added to the server
+	 */
+	private void addConnection(Socket clientSocket) {
+		// adds this connection to the server if the server is not full; the
+		// players of a restored game take their seats without the matchmaker
+		if (waiting.isEmpty() && (matchmaker == null || reservedNames != null)
+				&& takeSeat(clientSocket, null)) {
+			return;
+		}
+
+		// Max. no. of players reached, or the matchmaker gives the seats
+		if (waiting.size() < maxNumOfWaiting) {
+			try {
+				MeteredOutputStream mostream = new MeteredOutputStream(
+						clientSocket.getOutputStream());
+				ObjectOutputStream oostream = new ObjectOutputStream(mostream);
+				Waiter waiter = new Waiter(clientSocket, mostream, oostream);
+				waiting.add(waiter);
+				if (matchmaker != null) {
+					println("A client at "
+							+ clientSocket.getRemoteSocketAddress()
+							+ " enters the matchmaking pool.");
+					// receives the messages of the client while it waits, the
+					// JOIN message giving the name and thus the rating
+					waiter.receiving = true;
+					Thread t = new Thread(new ClientHandler(clientSocket));
+					t.start();
+				} else {
+					println("Server is full: a client at "
+							+ clientSocket.getRemoteSocketAddress()
+							+ " waits for a seat.");
+				}
+				sendPositions();
+				scheduleMatching();
+			} catch (Exception ex) {
+				println("Error in establishing a connection with a client at "
+						+ clientSocket.getRemoteSocketAddress());
+				ex.printStackTrace();
+				close(clientSocket);
+			}
+		} else {
+			reject(clientSocket);
+		}
+	} // addConnection
+
+	/**
+	 * Gives a seat to a connection if the table is not full, and starts the
+	 * thread receiving its messages.
 	 * 
 	 * @param clientSocket
 	 *            the socket connection to be added to the server
+	 * @param waiter
+	 *            the waiting connection holding the streams of the socket, or
+	 *            null if the streams are yet to be created
+	 * @return false if the table is full; true otherwise
 	 */
-	private synchronized void addConnection(Socket clientSocket) {
-		// adds this connection to the server if the server is not full
-		if (numOfPlayers < maxNumOfPlayers) {
-			// locates the first empty slot for the new connection
+	private boolean takeSeat(Socket clientSocket, Waiter waiter) {
+		// a bot gives its seat to a new player between games
+		if (numOfPlayers + numOfBots == maxNumOfPlayers && numOfBots > 0
+				&& !gameInProgress && reservedNames == null) {
 			for (int i = 0; i < maxNumOfPlayers; i++) {
-				if (clientSockets[i] == null) {
-					try {
-						// creates an ObjectOutputStream for this client socket
-						ObjectOutputStream oostream = new ObjectOutputStream(
+				if (botSeats[i]) {
+					removeBot(i);
+					break;
+				}
+			}
+		}
+		if (numOfPlayers + numOfBots >= maxNumOfPlayers) {
+			return false;
+		}
+
+		// locates the first empty slot for the new connection
+		for (int i = 0; i < maxNumOfPlayers; i++) {
+			if (clientSockets[i] == null && !botSeats[i]) {
+				try {
+					// creates an ObjectOutputStream for this client socket,
+					// unless one was created while the client was waiting
+					MeteredOutputStream mostream;
+					ObjectOutputStream oostream;
+					if (waiter != null) {
+						mostream = waiter.mostream;
+						oostream = waiter.oostream;
+					} else {
+						mostream = new MeteredOutputStream(
 								clientSocket.getOutputStream());
+						oostream = new ObjectOutputStream(mostream);
+					}
+					long bytesBefore = (waiter != null) ? mostream
+							.getByteCount() : 0;
 
-						clientSockets[i] = clientSocket;
-						clientOutputStreams[i] = oostream;
-						clientNames[i] = null;
-						clientReadyStates[i] = false;
-						numOfPlayers++;
-						println("Establishes a connection with a client at "
-								+ clientSocket.getRemoteSocketAddress());
+					clientSockets[i] = clientSocket;
+					clientOutputStreams[i] = oostream;
+					clientMeteredStreams[i] = mostream;
+					clientNames[i] = null;
+					clientReadyStates[i] = false;
+					lastHeard[i] = System.nanoTime();
+					roundTripTimes[i] = -1;
+					roundTripHistograms[i] = new LatencyHistogram();
+					numOfPlayers++;
+					metrics.setConnectedPlayers(numOfPlayers);
+					scheduleReadyTimer(i);
+					println("Establishes a connection with a client at "
+							+ clientSocket.getRemoteSocketAddress());
 
-						// creates a thread for receiving messages from this
-						// client
+					// creates a thread for receiving messages from this
+					// client, unless it has received them while waiting
+					if (waiter == null || !waiter.receiving) {
 						Thread t = new Thread(new ClientHandler(clientSocket));
 						t.start();
+					}
 
-						// sends the player list to the new player
-						oostream.writeObject(new CardGameMessage(
-								CardGameMessage.PLAYER_LIST, i, clientNames));
-					} catch (Exception ex) {
-						println("Error in establishing a connection with a client at "
-								+ clientSocket.getRemoteSocketAddress());
-						ex.printStackTrace();
+					// sends the player list to the new player
+					oostream.writeObject(new CardGameMessage(
+							CardGameMessage.PLAYER_LIST, i, clientNames));
+					metrics.bytesSent(mostream.getByteCount() - bytesBefore);
+
+					// handles the messages received while waiting, e.g. JOIN
+					// and READY, as if they had just arrived
+					if (waiter != null) {
+						for (CardGameMessage message : waiter.messages) {
+							dispatchMessage(clientSocket, message);
+						}
+						waiter.messages.clear();
 					}
-					break;
+				} catch (Exception ex) {
+					println("Error in establishing a connection with a client at "
+							+ clientSocket.getRemoteSocketAddress());
+					ex.printStackTrace();
 				}
-			} // for
-		} else {
-			// Max. no. of players reached
-			println("Server is full: cannot establish a connection with a client at "
-					+ clientSocket.getRemoteSocketAddress());
+				break;
+			}
+		} // for
+		return true;
+	}
 
-			// creates a thread for sending a FULL message to this client, waits
-			// for 1000 milliseconds and closes the socket
-			Thread t = new Thread(new ClientHandler2(clientSocket));
-			t.start();
+	/**
+	 * Gives the free seats to the connections waiting for a seat, and tells
+	 * the others their new positions. If the table is empty, the matchmaker
+	 * first seats a whole table of players with close ratings. The other free
+	 * seats are taken in order of arrival, with the matchmaker only by the
+	 * connections which have waited for bigtwo.match.timeout milliseconds.
+	 */
+	private void admitWaiting() {
+		long now = System.currentTimeMillis();
+		boolean admitted = false;
+		if (matchmaker != null && numOfPlayers == 0 && !gameInProgress
+				&& reservedNames == null) {
+			for (List<Waiter> table : matchmaker.match(now, 1)) {
+				println("The matchmaker forms a table of "
+						+ Matchmaker.TABLE_SIZE + " players.");
+				for (Waiter waiter : table) {
+					waiting.remove(waiter);
+					takeSeat(waiter.socket, waiter);
+				}
+				admitted = true;
+			}
+		}
+		Waiter waiter;
+		while ((waiter = waiting.peek()) != null
+				&& (matchmaker == null || reservedNames != null
+						|| now - waiter.arrival >= matchTimeout)
+				&& takeSeat(waiter.socket, waiter)) {
+			waiting.poll();
+			if (matchmaker != null) {
+				matchmaker.remove(waiter);
+			}
+			admitted = true;
+		}
+		if (admitted) {
+			sendPositions();
 		}
+		scheduleMatching();
+	}
 
-	} // addConnection
+	/**
+	 * Schedules the next round of matching in 500 milliseconds, if the
+	 * matchmaker is enabled and some connections are waiting.
+	 */
+	private void scheduleMatching() {
+		if (matchmaker == null || matchTimer != null || waiting.isEmpty()) {
+			return;
+		}
+		matchTimer = TimingWheel.getShared().schedule(
+				() -> actor.execute(() -> {
+					matchTimer = null;
+					admitWaiting();
+				}), 500, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Returns the connection waiting for a seat through the specified socket,
+	 * or null.
+	 */
+	private Waiter findWaiter(Socket clientSocket) {
+		for (Waiter waiter : waiting) {
+			if (waiter.socket == clientSocket) {
+				return waiter;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Keeps a message received from a connection waiting for a seat until it
+	 * takes a seat. A JOIN message brings the player into the matchmaking
+	 * pool, with the rating of its name.
+	 * 
+	 * @param waiter
+	 *            the connection waiting for a seat
+	 * @param message
+	 *            the message received
+	 */
+	private void holdMessage(Waiter waiter, CardGameMessage message) {
+		waiter.messages.add(message);
+		if (message.getType() == CardGameMessage.JOIN && matchmaker != null) {
+			String name = (String) message.getData();
+			PlayerRatings.Standing standing = (ratings != null && name != null) ? ratings
+					.getStanding(name) : null;
+			matchmaker.add(waiter, (standing != null) ? standing.rating
+					: PlayerRatings.INITIAL_RATING, -1,
+					System.currentTimeMillis());
+			admitWaiting();
+		}
+	}
+
+	/**
+	 * Removes a connection waiting for a seat, e.g. when the client
+	 * disconnects, and tells the others their new positions.
+	 * 
+	 * @param waiter
+	 *            the connection waiting for a seat
+	 */
+	private void leaveQueue(Waiter waiter) {
+		waiting.remove(waiter);
+		if (matchmaker != null) {
+			matchmaker.remove(waiter);
+		}
+		println("A client at " + waiter.socket.getRemoteSocketAddress()
+				+ " stops waiting for a seat.");
+		close(waiter.socket);
+		sendPositions();
+	}
+
+	/**
+	 * Sends a FULL message holding its position in the queue to every
+	 * connection waiting for a seat. A connection which cannot be written to
+	 * is closed and leaves the queue.
+	 */
+	private void sendPositions() {
+		int position = 1;
+		for (Iterator<Waiter> it = waiting.iterator(); it.hasNext();) {
+			Waiter waiter = it.next();
+			long bytesBefore = waiter.mostream.getByteCount();
+			try {
+				waiter.oostream.writeObject(new CardGameMessage(
+						CardGameMessage.FULL, -1, position));
+				waiter.oostream.reset();
+				position++;
+			} catch (Exception ex) {
+				println("A client at "
+						+ waiter.socket.getRemoteSocketAddress()
+						+ " stops waiting for a seat.");
+				it.remove();
+				if (matchmaker != null) {
+					matchmaker.remove(waiter);
+				}
+				close(waiter.socket);
+			}
+			metrics.bytesSent(waiter.mostream.getByteCount() - bytesBefore);
+		}
+	}
+
+	/**
+	 * Rejects a connection: sends a FULL message to the client and closes the
+	 * socket 1000 milliseconds later, so that the client has time to read the
+	 * message. The message is small enough to be taken by the send buffer of
+	 * the socket at once, and the socket is closed by the timing wheel, so
+	 * that no thread waits for a rejected connection.
+	 * 
+	 * @param clientSocket
+	 *            the socket connection being rejected
+	 */
+	private void reject(Socket clientSocket) {
+		metrics.connectionRejected();
+		println("Server is full: cannot establish a connection with a client at "
+				+ clientSocket.getRemoteSocketAddress());
+		pendingRejections.incrementAndGet();
+		try {
+			ObjectOutputStream oostream = new ObjectOutputStream(
+					clientSocket.getOutputStream());
+			oostream.writeObject(new CardGameMessage(CardGameMessage.FULL,
+					-1, null));
+			oostream.flush();
+		} catch (Exception ex) {
+			println("Error in sending a FULL message to the client at "
+					+ clientSocket.getRemoteSocketAddress());
+			ex.printStackTrace();
+		}
+		TimingWheel.getShared().schedule(() -> {
+			close(clientSocket);
+			pendingRejections.decrementAndGet();
+		}, 1000, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Closes the specified socket.
+	 * 
+	 * @param clientSocket
+	 *            the socket to be closed
+	 */
+	private void close(Socket clientSocket) {
+		try {
+			clientSocket.close();
+		} catch (Exception ex) {
+			println("Error in closing the client socket at "
+					+ clientSocket.getRemoteSocketAddress());
+			ex.printStackTrace();
+		}
+	}
 
 	/**
 	 * Removes a connection from the server (possibly due to connection loss).
@@ -250,7 +1339,12 @@ public class CardGameServer {
 	 * @param clientSocket
 	 *            the socket connection being removed from the server
 	 */
-	private synchronized void removeConnection(Socket clientSocket) {
+	private void removeConnection(Socket clientSocket) {
+		Waiter waiter = findWaiter(clientSocket);
+		if (waiter != null) {
+			leaveQueue(waiter);
+			return;
+		}
 		if (numOfPlayers > 0) {
 			// locates the client socket in the array
 			for (int i = 0; i < maxNumOfPlayers; i++) {
@@ -259,12 +1353,36 @@ public class CardGameServer {
 
 					clientSockets[i] = null;
 					clientOutputStreams[i] = null;
+					clientMeteredStreams[i] = null;
 					clientNames[i] = null;
 					clientReadyStates[i] = false;
+					cancelReadyTimer(i);
 					numOfPlayers--;
+					metrics.setConnectedPlayers(numOfPlayers);
+					stateVersion++;
+					if (journal != null) {
+						journal.logQuit(tableID, i);
+					}
+					if (reservedNames != null && name != null) {
+						// reserves the seat again for the restored game
+						reservedNames[i] = name;
+					}
+					if (gameInProgress) {
+						// the game cannot continue without this player
+						gameInProgress = false;
+						metrics.setActiveGames(0);
+						scheduleTurnTimer();
+						scheduleReadyTimers();
+					}
 
 					println(name + " (" + clientSocket.getRemoteSocketAddress()
 							+ ") leaves the game.");
+					if (roundTripHistograms[i].getCount() > 0) {
+						println(String.format(
+								"Round-trip time of %s: mean %.1f ms, p99 %.1f ms",
+								name, roundTripHistograms[i].getMean() / 1e6,
+								roundTripHistograms[i].getQuantile(0.99) / 1e6));
+					}
 
 					String remoteAddress = clientSocket
 							.getRemoteSocketAddress().toString();
@@ -272,6 +1390,21 @@ public class CardGameServer {
 					// broadcasts a message about the leaving of this player
 					broadcastMessage(new CardGameMessage(CardGameMessage.QUIT,
 							i, remoteAddress));
+
+					// the first connection waiting for a seat takes this seat
+					admitWaiting();
+
+					if (numOfPlayers == 0) {
+						// the bots do not play by themselves
+						for (int j = 0; j < maxNumOfPlayers; j++) {
+							if (botSeats[j]) {
+								removeBot(j);
+							}
+						}
+					} else if (!gameInProgress && reservedNames == null) {
+						// the bot may take the seat if the others are ready
+						startIfAllReady();
+					}
 					break;
 				}
 			}
@@ -286,13 +1419,20 @@ public class CardGameServer {
 	 * @param name
 	 *            the name of the player who is joining the game
 	 */
-	private synchronized void addPlayer(Socket clientSocket, String name) {
+	private void addPlayer(Socket clientSocket, String name) {
 		if (numOfPlayers > 0) {
 			// locates the client socket in the array
 			for (int i = 0; i < maxNumOfPlayers; i++) {
 				if (clientSockets[i] == clientSocket) {
+					if (reservedNames != null) {
+						// moves the player to its seat in the restored game
+						i = takeReservedSeat(i, name);
+					}
 					// updates the name of the new player
 					clientNames[i] = name;
+					if (journal != null) {
+						journal.logJoin(tableID, i, name);
+					}
 
 					println(name + " (" + clientSocket.getRemoteSocketAddress()
 							+ ") joins the game.");
@@ -300,12 +1440,93 @@ public class CardGameServer {
 					// broadcasts a message about this player joining the game
 					broadcastMessage(new CardGameMessage(CardGameMessage.JOIN,
 							i, name));
+					if (reservedNames != null) {
+						resumeGame();
+					}
 					break;
 				}
 			}
 		}
 	} // addPlayer
 
+	/**
+	 * Moves a player joining the server to the seat reserved for a player with
+	 * the same name in the restored game. The restored game is abandoned if
+	 * the player takes the seat of another player of the restored game.
+	 * 
+	 * @param i
+	 *            the seat taken by the player when connecting to the server
+	 * @param name
+	 *            the name of the player
+	 * @return the seat of the player
+	 */
+	private int takeReservedSeat(int i, String name) {
+		for (int j = 0; j < maxNumOfPlayers; j++) {
+			if (name.equals(reservedNames[j])
+					&& (j == i || clientSockets[j] == null)) {
+				if (j != i) {
+					clientSockets[j] = clientSockets[i];
+					clientOutputStreams[j] = clientOutputStreams[i];
+					clientMeteredStreams[j] = clientMeteredStreams[i];
+					clientReadyStates[j] = clientReadyStates[i];
+					readyTimers[j] = readyTimers[i];
+					readyTimers[i] = null;
+					lastHeard[j] = lastHeard[i];
+					roundTripTimes[j] = roundTripTimes[i];
+					roundTripHistograms[j] = roundTripHistograms[i];
+					clientSockets[i] = null;
+					clientOutputStreams[i] = null;
+					clientMeteredStreams[i] = null;
+					clientNames[i] = null;
+					clientReadyStates[i] = false;
+					// sends the player list with the new playerID
+					try {
+						clientOutputStreams[j].writeObject(new CardGameMessage(
+								CardGameMessage.PLAYER_LIST, j, clientNames));
+					} catch (Exception ex) {
+						println("Error in sending the player list to the client at "
+								+ clientSockets[j].getRemoteSocketAddress());
+						ex.printStackTrace();
+					}
+				}
+				reservedNames[j] = null;
+				return j;
+			}
+		}
+		if (reservedNames[i] != null) {
+			println("Abandons the restored game: " + name
+					+ " takes the seat of " + reservedNames[i] + ".");
+			reservedNames = null;
+		}
+		return i;
+	}
+
+	/**
+	 * Resumes the restored game if all its players have joined again.
+	 */
+	private void resumeGame() {
+		for (int i = 0; i < maxNumOfPlayers; i++) {
+			if (reservedNames[i] != null) {
+				return;
+			}
+		}
+		reservedNames = null;
+		for (int i = 0; i < maxNumOfPlayers; i++) {
+			clientReadyStates[i] = false;
+		}
+		TableSnapshot resumed = new TableSnapshot(maxNumOfPlayers);
+		resumed.capture(tableID, clientNames, clientReadyStates, botSeats,
+				game);
+		println("All players of the restored game have joined. Game resumes.");
+		gameInProgress = true;
+		metrics.setActiveGames(1);
+		turn++;
+		broadcastMessage(new CardGameMessage(CardGameMessage.RESUME, -1,
+				resumed.toByteArray()));
+		scheduleBotMove();
+		scheduleTurnTimer();
+	}
+
 	/**
 	 * Marks the specified player as ready for a new game.
 	 * 
@@ -313,12 +1534,16 @@ public class CardGameServer {
 	 *            the socket connection to the player who becomes ready for a
 	 *            new game
 	 */
-	private synchronized void setReadyState(Socket clientSocket) {
+	private void setReadyState(Socket clientSocket) {
 		if (numOfPlayers > 0) {
 			// locates the client socket in the array
 			for (int i = 0; i < maxNumOfPlayers; i++) {
 				if (clientSockets[i] == clientSocket) {
 					clientReadyStates[i] = true;
+					cancelReadyTimer(i);
+					if (journal != null) {
+						journal.logReady(tableID, i);
+					}
 					println(clientNames[i] + " ("
 							+ clientSocket.getRemoteSocketAddress()
 							+ " ) is ready for the next game.");
@@ -329,10 +1554,24 @@ public class CardGameServer {
 			}
 		}
 
+		// a restored game resumes instead of starting a new game
+		if (reservedNames != null) {
+			return;
+		}
+
+		startIfAllReady();
+	}
+
+	/**
+	 * Starts a new game if all players are ready. If some seats are empty,
+	 * the bot is scheduled to fill them once all players at the table are
+	 * ready.
+	 */
+	private void startIfAllReady() {
 		// checks if all players are ready
-		if (numOfPlayers == maxNumOfPlayers) {
+		if (numOfPlayers + numOfBots == maxNumOfPlayers) {
 			for (int i = 0; i < maxNumOfPlayers; i++) {
-				if (clientReadyStates[i] == false) {
+				if (clientReadyStates[i] == false && !botSeats[i]) {
 					// returns if any of the players is not ready
 					return;
 				}
@@ -346,12 +1585,113 @@ public class CardGameServer {
 			// creates a new deck, shuffles the deck, and starts a new game
 			Deck deck = createDeck();
 			deck.shuffle();
+			if (journal != null) {
+				journal.logStart(tableID, deck);
+			}
+			if (game != null) {
+				game.start(deck);
+				if (tableStore != null) {
+					tableStore.capture(tableRecord, game);
+				}
+			}
 			println("All players are ready. Game starts.");
+			gameInProgress = true;
+			metrics.setActiveGames(1);
+			turn++;
 			broadcastMessage(new CardGameMessage(CardGameMessage.START, -1,
 					deck));
+			scheduleBotMove();
+			scheduleTurnTimer();
+		} else if (bot != null && numOfPlayers > 0 && fillTask == null) {
+			for (int i = 0; i < maxNumOfPlayers; i++) {
+				if (clientSockets[i] != null && clientReadyStates[i] == false) {
+					// returns if any of the players is not ready
+					return;
+				}
+			}
+			fillTask = botExecutor.schedule(
+					() -> actor.execute(this::fillEmptySeats), botDelay,
+					TimeUnit.MILLISECONDS);
 		}
 	}
 
+	/**
+	 * Fills the empty seats with the bot if all players at the table are
+	 * still ready, and starts a new game. This method is called by the bot
+	 * executor after the delay given by bigtwo.bot.delay.
+	 */
+	private void fillEmptySeats() {
+		fillTask = null;
+		if (gameInProgress || reservedNames != null || numOfPlayers == 0) {
+			return;
+		}
+		for (int i = 0; i < maxNumOfPlayers; i++) {
+			if (clientSockets[i] != null && clientReadyStates[i] == false) {
+				return;
+			}
+		}
+		for (int i = 0; i < maxNumOfPlayers; i++) {
+			if (clientSockets[i] == null && !botSeats[i]) {
+				seatBot(i);
+				if (journal != null) {
+					journal.logJoin(tableID, i, clientNames[i]);
+					journal.logReady(tableID, i);
+				}
+				println(clientNames[i] + " joins the game.");
+				broadcastMessage(new CardGameMessage(CardGameMessage.JOIN, i,
+						clientNames[i]));
+				broadcastMessage(new CardGameMessage(CardGameMessage.READY, i,
+						null));
+			}
+		}
+		stateVersion++;
+		startIfAllReady();
+	}
+
+	/**
+	 * Returns the name of the bot at the specified seat.
+	 * 
+	 * @param i
+	 *            the seat
+	 * @return the name of the bot
+	 */
+	private static String botName(int i) {
+		return "Bot " + i;
+	}
+
+	/**
+	 * Seats the bot at the specified empty seat.
+	 * 
+	 * @param i
+	 *            the seat
+	 */
+	private void seatBot(int i) {
+		botSeats[i] = true;
+		numOfBots++;
+		clientNames[i] = botName(i);
+		clientReadyStates[i] = true;
+	}
+
+	/**
+	 * Removes the bot from the specified seat and broadcasts its leaving.
+	 * 
+	 * @param i
+	 *            the seat of the bot
+	 */
+	private void removeBot(int i) {
+		println(clientNames[i] + " leaves the game.");
+		botSeats[i] = false;
+		numOfBots--;
+		clientNames[i] = null;
+		clientReadyStates[i] = false;
+		stateVersion++;
+		if (journal != null) {
+			journal.logQuit(tableID, i);
+		}
+		broadcastMessage(new CardGameMessage(CardGameMessage.QUIT, i,
+				botName(i)));
+	}
+
 	/**
 	 * Creates and returns an instance of the Deck class. Overrides this method
 	 * if a different type of deck is needed.
@@ -362,7 +1702,19 @@ public class CardGameServer {
 		return new Deck();
 	}
 
-	private synchronized void broadcastUserMessage(Socket clientSocket,
+	/**
+	 * Creates and returns the game used to track the state of the table, which
+	 * is captured in the snapshots of the table. Overrides this method if the
+	 * games hosted by the server should be restored after a restart; no game
+	 * is tracked by default.
+	 * 
+	 * @return an instance of the BigTwoGame class, or null
+	 */
+	public BigTwoGame createGame() {
+		return null;
+	}
+
+	private void broadcastUserMessage(Socket clientSocket,
 			String msg) {
 		if (numOfPlayers > 0) {
 			// locates the client in the array
@@ -389,6 +1741,29 @@ public class CardGameServer {
 		textArea.setCaretPosition(textArea.getDocument().getLength());
 	}
 
+	/**
+	 * This inner class is used to model a connection waiting for a seat. Its
+	 * streams are kept for when it takes a seat, as a second
+	 * ObjectOutputStream on the same socket would corrupt the stream read by
+	 * the client.
+	 */
+	private static class Waiter {
+		private final Socket socket;
+		private final MeteredOutputStream mostream;
+		private final ObjectOutputStream oostream;
+		private final long arrival = System.currentTimeMillis();
+		// the messages received while waiting, handled when it takes a seat
+		private final ArrayList<CardGameMessage> messages = new ArrayList<CardGameMessage>();
+		private boolean receiving = false;
+
+		private Waiter(Socket socket, MeteredOutputStream mostream,
+				ObjectOutputStream oostream) {
+			this.socket = socket;
+			this.mostream = mostream;
+			this.oostream = oostream;
+		}
+	} // Waiter
+
 	/**
 	 * This inner class is used for receiving incoming messages from a client
 	 * 
@@ -398,6 +1773,7 @@ public class CardGameServer {
 	private class ClientHandler implements Runnable {
 		private Socket clientSocket; // socket connection to the client
 		private ObjectInputStream oistream; // ObjectInputStream of the client
+		private MeteredInputStream mistream; // byte counter of the client
 
 		/**
 		 * Creates and returns an instance of the ClientHandler class.
@@ -407,88 +1783,73 @@ public class CardGameServer {
 		 */
 		public ClientHandler(Socket clientSocket) {
 			this.clientSocket = clientSocket;
+		} // constructor
+
+		// implementation of method from the Runnable interface
+		public void run() {
 			try {
 				// creates an ObjectInputStream and chains it to the InputStream
-				// of the client socket
-				oistream = new ObjectInputStream(clientSocket.getInputStream());
+				// of the client socket, on this thread since reading the header
+				// of the stream blocks until the client sends it
+				clientSocket.setSoTimeout(headerTimeout);
+				mistream = new MeteredInputStream(clientSocket.getInputStream());
+				oistream = new ObjectInputStream(mistream);
+				clientSocket.setSoTimeout(0);
 			} catch (Exception ex) {
 				println("Error in creating an ObjectInputStream for the client at "
 						+ clientSocket.getRemoteSocketAddress());
 				ex.printStackTrace();
+				// a client which does not send the header is removed
+				actor.execute(() -> evict(clientSocket));
+				return;
 			}
-		} // constructor
 
-		// implementation of method from the Runnable interface
-		public void run() {
 			CardGameMessage message;
 			try {
 				// waits for messages from the client
-				while ((message = (CardGameMessage) oistream.readObject()) != null) {
+				while (true) {
+					mistream.awaitData();
+					MessageReceivedEvent event = new MessageReceivedEvent();
+					event.begin();
+					long bytesBefore = mistream.getByteCount();
+					message = (CardGameMessage) oistream.readObject();
+					if (message == null) {
+						break;
+					}
+					event.end();
+					long bytes = mistream.getByteCount() - bytesBefore;
+					metrics.messageReceived(message.getType(), bytes);
+					if (event.shouldCommit()) {
+						event.messageType = message.getType();
+						event.bytes = bytes;
+						event.remoteAddress = String.valueOf(clientSocket
+								.getRemoteSocketAddress());
+						event.commit();
+					}
+					if (message.getType() == CardGameMessage.PONG) {
+						// a heartbeat is measured here, so that the time spent
+						// in the mailbox of the table is not counted
+						long nanos = System.nanoTime()
+								- (Long) message.getData();
+						actor.execute(() -> recordRoundTrip(clientSocket, nanos));
+						continue;
+					}
 					println("Message received from "
 							+ clientSocket.getRemoteSocketAddress());
-					parseMessage(clientSocket, message);
+					// the message is handled by the actor of the table
+					CardGameMessage received = message;
+					actor.execute(() -> parseMessage(clientSocket, received));
 				} // close while
 			} catch (Exception ex) {
 				println("Error in receiving messages from the client at "
 						+ clientSocket.getRemoteSocketAddress());
 				ex.printStackTrace();
 				// possible connection loss, removes the connection
-				removeConnection(clientSocket);
+				actor.execute(() -> removeConnection(clientSocket));
 			}
 		} // run
 	} // ClientHandler
 
-	private class ClientHandler2 implements Runnable {
-		private Socket clientSocket; // socket connection to the client
-
-		/**
-		 * Creates and returns an instance of the ClientHandler2 class.
-		 * 
-		 * @param clientSocket
-		 *            the socket connection to the client
-		 */
-		public ClientHandler2(Socket clientSocket) {
-			this.clientSocket = clientSocket;
-		} // constructor
-
-		// implementation of method from the Runnable interface
-		public void run() {
-			try {
-				// creates an ObjectOutputStream and chains it to the
-				// OutputStream
-				// of the client socket
-				ObjectOutputStream oostream = new ObjectOutputStream(
-						clientSocket.getOutputStream());
-				// sends a FULL message to the client
-				oostream.writeObject(new CardGameMessage(CardGameMessage.FULL,
-						-1, null));
-				oostream.flush();
-			} catch (Exception ex) {
-				println("Error in sending a FULL message to the client at "
-						+ clientSocket.getRemoteSocketAddress());
-				ex.printStackTrace();
-			}
-
-			// sleeps for 1000 milliseconds before closing the socket
-			try {
-				Thread.sleep(1000);
-			} catch (Exception ex) {
-				println("Error in sleeping before closing the client socket at "
-						+ clientSocket.getRemoteSocketAddress());
-				ex.printStackTrace();
-			}
-
-			// closes the socket
-			try {
-				clientSocket.close();
-			} catch (Exception ex) {
-				println("Error in closing the client socket at "
-						+ clientSocket.getRemoteSocketAddress());
-				ex.printStackTrace();
-			}
-		} // run
-	} // ClientHandler2
-
 	/**
 	 * This inner class is used for handling the Clear menu
 	 * 
@@ -0,0 +1,178 @@
+import java.util.Arrays;
+
+/**
+ * The CardTracker class is used to keep track of the cards a player has not seen yet, updated with
+ * every move in constant time. It knows which cards are still out, how many cards each opponent holds,
+ * and what each opponent cannot hold if a pass is taken to mean the opponent could not beat the last
+ * hand:
+ * <ul>
+ * <li>passing on a single rules out every higher card,</li>
+ * <li>passing on any hand rules out beating that hand, or any higher hand of the same size.</li>
+ * </ul>
+ * Players may pass on purpose, so the queries take these inferences into account only if asked to,
+ * and the inferences about an opponent are dropped when they contradict the number of cards it holds.
+ *
+ * @author Kwok Chun Yu
+ */
+public class CardTracker {
+
+	// index of the hands of 1, 2, 3 and 5 cards in passedOn
+	private static final int[] SIZE_INDEX = { -1, 0, 1, 2, -1, 3 };
+
+	private final int observer;
+	private final int numOfPlayers;
+	private long unseen;
+	private long played;
+	private final int[] numOfCards;
+	// the cards each player may hold according to the passes
+	private final long[] possible;
+	// the lowest value of the hands of each size each player passed on, Integer.MAX_VALUE if none
+	private final int[][] passedOn;
+	private int lastValue = BigTwoRules.INVALID;
+	private int lastOwner = -1;
+
+	/**
+	 * a constructor for creating a tracker of the cards seen by the specified player.
+	 * @param observer the playerID of the player
+	 * @param numOfPlayers the number of players
+	 */
+	public CardTracker(int observer, int numOfPlayers) {
+		this.observer = observer;
+		this.numOfPlayers = numOfPlayers;
+		numOfCards = new int[numOfPlayers];
+		possible = new long[numOfPlayers];
+		passedOn = new int[numOfPlayers][4];
+	}
+
+	/**
+	 * a method for starting to track a new game.
+	 * @param hand the set of cards of the observer
+	 * @param cardsPerPlayer the number of cards dealt to each player
+	 */
+	public void start(long hand, int cardsPerPlayer) {
+		int[] counts = new int[numOfPlayers];
+		Arrays.fill(counts, cardsPerPlayer);
+		reset(hand, counts, 0, 0, -1);
+	}
+
+	/**
+	 * a method for starting to track a game in progress, such as a resumed game, from what the
+	 * observer can see.
+	 * @param hand the set of cards of the observer
+	 * @param counts the number of cards held by each player
+	 * @param played the set of cards played so far
+	 * @param lastHand the set of cards of the last hand on the table, or 0 if no hand is played yet
+	 * @param lastOwner the playerID of the player who played the last hand, or -1
+	 */
+	public void reset(long hand, int[] counts, long played, long lastHand, int lastOwner) {
+		this.played = played;
+		unseen = BigTwoRules.ALL_CARDS & ~hand & ~played;
+		for (int i = 0; i < numOfPlayers; i++) {
+			numOfCards[i] = counts[i];
+			possible[i] = (i == observer) ? hand : unseen;
+			Arrays.fill(passedOn[i], Integer.MAX_VALUE);
+		}
+		this.lastValue = (lastHand == 0) ? BigTwoRules.INVALID : BigTwoRules.evaluate(lastHand);
+		this.lastOwner = (lastHand == 0) ? -1 : lastOwner;
+	}
+
+	/**
+	 * a method for recording a legal hand played by a player.
+	 * @param playerID the playerID of the player
+	 * @param cards the set of cards played
+	 */
+	public void played(int playerID, long cards) {
+		played |= cards;
+		unseen &= ~cards;
+		for (int i = 0; i < numOfPlayers; i++) {
+			possible[i] &= ~cards;
+		}
+		numOfCards[playerID] -= Long.bitCount(cards);
+		lastValue = BigTwoRules.evaluate(cards);
+		lastOwner = playerID;
+	}
+
+	/**
+	 * a method for recording a legal pass by a player.
+	 * @param playerID the playerID of the player
+	 */
+	public void passed(int playerID) {
+		if (lastOwner < 0 || lastOwner == playerID || playerID == observer) {
+			return;
+		}
+		int size = BigTwoRules.sizeOf(BigTwoRules.typeOfValue(lastValue));
+		int[] passes = passedOn[playerID];
+		passes[SIZE_INDEX[size]] = Math.min(passes[SIZE_INDEX[size]], lastValue);
+		if (size == 1) {
+			possible[playerID] &= ~(-2L << BigTwoRules.topCardOfValue(lastValue));
+		}
+		if (Long.bitCount(possible[playerID]) < numOfCards[playerID]) {
+			// the player passed on purpose: its passes tell nothing
+			possible[playerID] = unseen;
+			Arrays.fill(passes, Integer.MAX_VALUE);
+		}
+	}
+
+	/**
+	 * a method for retrieving the cards held by no one known to the observer.
+	 * @return the set of cards held by the opponents
+	 */
+	public long getUnseenCards() { return unseen; }
+
+	/**
+	 * a method for retrieving the cards played so far.
+	 * @return the set of cards played
+	 */
+	public long getPlayedCards() { return played; }
+
+	/**
+	 * a method for retrieving the number of cards held by a player.
+	 * @param playerID the playerID of the player
+	 * @return the number of cards held by the player
+	 */
+	public int getNumOfCards(int playerID) { return numOfCards[playerID]; }
+
+	/**
+	 * a method for retrieving the cards an opponent may hold.
+	 * @param playerID the playerID of the opponent
+	 * @param usePasses true to take a pass to mean the opponent could not beat the last hand
+	 * @return the set of cards the opponent may hold
+	 */
+	public long getPossibleCards(int playerID, boolean usePasses) {
+		return usePasses ? possible[playerID] : unseen;
+	}
+
+	/**
+	 * a method for checking if an opponent may beat a hand.
+	 * @param playerID the playerID of the opponent
+	 * @param value the value of the hand (see BigTwoRules)
+	 * @param usePasses true to take a pass to mean the opponent could not beat the last hand
+	 * @return false if the opponent cannot hold a hand beating it
+	 */
+	public boolean canBeat(int playerID, int value, boolean usePasses) {
+		int size = BigTwoRules.sizeOf(BigTwoRules.typeOfValue(value));
+		if (playerID == observer || numOfCards[playerID] < size) {
+			return false;
+		}
+		if (usePasses && passedOn[playerID][SIZE_INDEX[size]] <= value) {
+			return false;
+		}
+		return BigTwoRules.canBeat(getPossibleCards(playerID, usePasses), value);
+	}
+
+	/**
+	 * a method for checking if any opponent may beat a hand, e.g. whether a Single 2 of Spades can
+	 * still be beaten.
+	 * @param value the value of the hand (see BigTwoRules)
+	 * @param usePasses true to take a pass to mean the opponent could not beat the last hand
+	 * @return false if no opponent can hold a hand beating it
+	 */
+	public boolean canAnyOpponentBeat(int value, boolean usePasses) {
+		for (int i = 0; i < numOfPlayers; i++) {
+			if (canBeat(i, value, usePasses)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
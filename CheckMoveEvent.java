@@ -0,0 +1,31 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * This class is used to model a JFR event recorded when a move is checked by
+ * BigTwoClient.checkMove(). The duration covers the validation and the playing
+ * of the move, not the updating of the GUI afterwards.
+ * 
+ * @author Kwok Chun Yu
+ *
+ */
+@Name("bigtwo.CheckMove")
+@Label("Check Move")
+@Category({ "Big Two", "Rules" })
+@Description("A move made by a player is validated")
+public class CheckMoveEvent extends Event {
+	@Label("Player ID")
+	int playerID;
+
+	@Label("Number of Cards")
+	int numOfCards;
+
+	@Label("Hand Type")
+	String handType;
+
+	@Label("Legal")
+	boolean legal;
+}
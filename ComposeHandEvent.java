@@ -0,0 +1,27 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * This class is used to model a JFR event recorded when a list of cards is
+ * composed into a hand by BigTwoClient.composeHand().
+ * 
+ * @author Kwok Chun Yu
+ *
+ */
+@Name("bigtwo.ComposeHand")
+@Label("Compose Hand")
+@Category({ "Big Two", "Rules" })
+@Description("A list of cards is composed into a hand")
+public class ComposeHandEvent extends Event {
+	@Label("Number of Cards")
+	int numOfCards;
+
+	@Label("Hand Type")
+	String handType;
+
+	@Label("Valid")
+	boolean valid;
+}
@@ -0,0 +1,353 @@
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The EndgameSolver class is used to solve the end of a Big Two game exactly, when the cards of every
+ * player are known and few cards remain. It finds out whether the current player can force a win, i.e.
+ * empty its hand first whatever the other players do (as if they played together against it), and a
+ * move that does so.
+ * <p>
+ * The search is an AND/OR search over BigTwoState positions: at the turns of the player to solve for,
+ * one winning move is enough; at the turns of the others, every move must still lose for them. The
+ * positions are hashed by Zobrist keys updated incrementally with every move, and the results are kept
+ * in a transposition table shared by all the searching threads. The table is lock-free: an entry is
+ * stored as two longs, the key XORed with the data and the data, so that an entry torn by two threads
+ * writing at the same time is detected on reading and ignored. The moves of the player to solve for are
+ * searched in parallel on a ForkJoinPool, and the other searches stop as soon as one move wins.
+ * <p>
+ * At the start of a game, before any hand is played, every player may pass; the solver does not
+ * consider these passes, as the solver is meant for the end of a game.
+ *
+ * @author Kwok Chun Yu
+ */
+public class EndgameSolver {
+
+	// the data of an entry of the table: the move, whether it wins, and whether the entry is used
+	private static final long MOVE_MASK = BigTwoRules.ALL_CARDS;
+	private static final long WIN = 1L << 52;
+	private static final long USED = 1L << 53;
+
+	// results of a search
+	private static final int LOSS = 0;
+	private static final int WON = 1;
+	private static final int ABORTED = -1;
+
+	private static final long[][] CARD_KEYS = new long[4][BigTwoRules.NUM_OF_CARDS];
+	private static final long[] TURN_KEYS = new long[4];
+	private static final long[] SOLVER_KEYS = new long[4];
+	// indexed by the player who played the last hand plus one, and the value of the hand plus one
+	private static final long[][] LAST_KEYS = new long[5][(8 << 6) + 1];
+
+	static {
+		Random random = new Random(0x4232L);
+		for (int i = 0; i < 4; i++) {
+			for (int j = 0; j < BigTwoRules.NUM_OF_CARDS; j++) {
+				CARD_KEYS[i][j] = random.nextLong();
+			}
+			TURN_KEYS[i] = random.nextLong();
+			SOLVER_KEYS[i] = random.nextLong();
+		}
+		for (int i = 0; i < LAST_KEYS.length; i++) {
+			for (int j = 0; j < LAST_KEYS[i].length; j++) {
+				LAST_KEYS[i][j] = random.nextLong();
+			}
+		}
+	}
+
+	private final AtomicLongArray table;
+	private final int mask;
+	private final ForkJoinPool pool;
+	private final ThreadLocal<Searcher> searchers = ThreadLocal.withInitial(Searcher::new);
+
+	/**
+	 * a constructor for creating a solver with a transposition table of the specified size, searching
+	 * on the specified pool.
+	 * @param tableBits the base 2 logarithm of the number of entries of the table, of 16 bytes each
+	 * @param pool the pool searching the moves in parallel
+	 */
+	public EndgameSolver(int tableBits, ForkJoinPool pool) {
+		table = new AtomicLongArray(2 << tableBits);
+		mask = (1 << tableBits) - 1;
+		this.pool = pool;
+	}
+
+	/**
+	 * a constructor for creating a solver with a table of 2^20 entries (16 MB), searching on the common
+	 * pool.
+	 */
+	public EndgameSolver() {
+		this(20, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * The Result class is used to model the answer of the solver.
+	 */
+	public static class Result {
+		private final long move;
+		private final boolean win;
+		private final long nodes;
+
+		private Result(long move, boolean win, long nodes) {
+			this.move = move;
+			this.win = win;
+			this.nodes = nodes;
+		}
+
+		/**
+		 * a method for retrieving the move found.
+		 * @return a winning move, or the largest legal hand if the player cannot force a win
+		 */
+		public long getMove() { return move; }
+
+		/**
+		 * a method for checking whether the player can force a win.
+		 * @return true if the player wins whatever the other players do
+		 */
+		public boolean isWin() { return win; }
+
+		/**
+		 * a method for retrieving the number of positions searched.
+		 * @return the number of positions searched
+		 */
+		public long getNodes() { return nodes; }
+
+		@Override
+		public String toString() {
+			CardList cards = new CardList();
+			BigTwoRules.addCards(move, cards);
+			return (win ? "win" : "loss") + " by " + (move == BigTwoState.PASS ? "passing" : cards.toString())
+					+ " (" + nodes + " positions)";
+		}
+	}
+
+	/**
+	 * a method for emptying the transposition table, so that the next solve starts from scratch. It must
+	 * not be called during a solve.
+	 */
+	public void clear() {
+		for (int i = 0; i < table.length(); i++) {
+			table.lazySet(i, 0);
+		}
+	}
+
+	/**
+	 * a method for checking if a game is small enough to be solved quickly.
+	 * @param state the state of the game
+	 * @param maxCards the maximum number of cards per player
+	 * @return true if no player holds more than maxCards cards and a hand has been played
+	 */
+	public static boolean isEndgame(BigTwoState state, int maxCards) {
+		for (int i = 0; i < state.getNumOfPlayers(); i++) {
+			if (Long.bitCount(state.getHand(i)) > maxCards) {
+				return false;
+			}
+		}
+		return state.getLastOwner() >= 0;
+	}
+
+	/**
+	 * a method for solving a game for its current player.
+	 * @param game the game, whose players hold their cards
+	 * @return the result of the current player
+	 */
+	public Result solve(CardGame game) {
+		return solve(new BigTwoState(game));
+	}
+
+	/**
+	 * a method for solving a state for its current player.
+	 * @param state the state, in which every player holds at least one card
+	 * @return the result of the current player
+	 */
+	public Result solve(BigTwoState state) {
+		int player = state.getCurrentIdx();
+		long hash = hashOf(state, player);
+		long[] moves = new long[BigTwoState.MAX_MOVES];
+		int numOfMoves = orderMoves(state, moves);
+		long entry = probe(hash);
+		if (entry != 0 && (entry & WIN) != 0) {
+			return new Result(entry & MOVE_MASK, true, 1);
+		}
+		AtomicBoolean solved = new AtomicBoolean();
+		AtomicLong nodes = new AtomicLong(1);
+		ArrayList<RecursiveTask<Integer>> tasks = new ArrayList<RecursiveTask<Integer>>();
+		for (int i = 0; i < numOfMoves; i++) {
+			long move = moves[i];
+			tasks.add(new RecursiveTask<Integer>() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected Integer compute() {
+					Searcher searcher = searchers.get();
+					searcher.nodes = 0;
+					searcher.stop = solved;
+					int result = searcher.searchMove(state, hash, move, player, 0);
+					nodes.addAndGet(searcher.nodes);
+					if (result == WON) {
+						solved.set(true);
+					}
+					return result;
+				}
+			});
+		}
+		pool.invoke(new RecursiveTask<Void>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected Void compute() {
+				invokeAll(tasks);
+				return null;
+			}
+		});
+		for (int i = 0; i < numOfMoves; i++) {
+			if (tasks.get(i).join() == WON) {
+				store(hash, moves[i] | WIN);
+				return new Result(moves[i], true, nodes.get());
+			}
+		}
+		store(hash, moves[0]);
+		return new Result(moves[0], false, nodes.get());
+	}
+
+	/**
+	 * Returns the Zobrist key of a state solved for the specified player.
+	 */
+	private static long hashOf(BigTwoState state, int player) {
+		long hash = SOLVER_KEYS[player] ^ TURN_KEYS[state.getCurrentIdx()]
+				^ LAST_KEYS[state.getLastOwner() + 1][state.getLastValue() + 1];
+		for (int i = 0; i < state.getNumOfPlayers(); i++) {
+			long hand = state.getHand(i);
+			while (hand != 0) {
+				hash ^= CARD_KEYS[i][Long.numberOfTrailingZeros(hand)];
+				hand &= hand - 1;
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Generates the legal moves of a state, larger hands first and passing last, which finds the
+	 * winning moves and the refutations early.
+	 */
+	private static int orderMoves(BigTwoState state, long[] moves) {
+		int numOfMoves = state.generateMoves(moves);
+		int n = 0;
+		// the passes at the start of a game are not considered
+		for (int i = 0; i < numOfMoves; i++) {
+			if (moves[i] != BigTwoState.PASS || state.getLastOwner() >= 0) {
+				moves[n++] = moves[i];
+			}
+		}
+		// insertion sort by the number of cards, in descending order
+		for (int i = 1; i < n; i++) {
+			long move = moves[i];
+			int size = Long.bitCount(move);
+			int j = i - 1;
+			while (j >= 0 && Long.bitCount(moves[j]) < size) {
+				moves[j + 1] = moves[j];
+				j--;
+			}
+			moves[j + 1] = move;
+		}
+		return n;
+	}
+
+	/**
+	 * Returns the data of the entry of the table with the specified key, or 0 if there is none.
+	 */
+	private long probe(long hash) {
+		int i = ((int) hash & mask) << 1;
+		long data = table.get(i + 1);
+		return ((table.get(i) ^ data) == hash) ? data : 0;
+	}
+
+	/**
+	 * Stores the result of a position in the table, replacing any entry in its slot.
+	 */
+	private void store(long hash, long data) {
+		int i = ((int) hash & mask) << 1;
+		data |= USED;
+		table.set(i, hash ^ data);
+		table.set(i + 1, data);
+	}
+
+	/*
+	 * the reused state of a searching thread: a state and an array of moves for every ply.
+	 */
+	private class Searcher {
+		private final ArrayList<BigTwoState> states = new ArrayList<BigTwoState>();
+		private final ArrayList<long[]> moves = new ArrayList<long[]>();
+		private AtomicBoolean stop;
+		private long nodes;
+
+		/**
+		 * Plays a move and searches the resulting position.
+		 */
+		private int searchMove(BigTwoState parent, long hash, long move, int player, int ply) {
+			if (ply == states.size()) {
+				states.add(new BigTwoState(parent));
+				moves.add(new long[BigTwoState.MAX_MOVES]);
+			}
+			BigTwoState state = states.get(ply);
+			state.copyFrom(parent);
+			int mover = state.getCurrentIdx();
+			if (move != BigTwoState.PASS) {
+				hash ^= LAST_KEYS[state.getLastOwner() + 1][state.getLastValue() + 1];
+				for (long cards = move; cards != 0; cards &= cards - 1) {
+					hash ^= CARD_KEYS[mover][Long.numberOfTrailingZeros(cards)];
+				}
+			}
+			state.play(move);
+			hash ^= TURN_KEYS[mover] ^ TURN_KEYS[state.getCurrentIdx()];
+			if (move != BigTwoState.PASS) {
+				hash ^= LAST_KEYS[state.getLastOwner() + 1][state.getLastValue() + 1];
+				if (state.getHand(mover) == 0) {
+					return (mover == player) ? WON : LOSS;
+				}
+			}
+			return search(state, hash, player, ply + 1);
+		}
+
+		/**
+		 * Searches a position: the player to solve for needs one winning move, and every move of the
+		 * others must still win for it.
+		 */
+		private int search(BigTwoState state, long hash, int player, int ply) {
+			if ((++nodes & 1023) == 0 && stop.get()) {
+				return ABORTED;
+			}
+			long entry = probe(hash);
+			if (entry != 0) {
+				return ((entry & WIN) != 0) ? WON : LOSS;
+			}
+			if (ply == moves.size()) {
+				states.add(new BigTwoState(state));
+				moves.add(new long[BigTwoState.MAX_MOVES]);
+			}
+			long[] legalMoves = moves.get(ply);
+			int numOfMoves = orderMoves(state, legalMoves);
+			boolean solving = state.getCurrentIdx() == player;
+			for (int i = 0; i < numOfMoves; i++) {
+				int result = searchMove(state, hash, legalMoves[i], player, ply);
+				if (result == ABORTED) {
+					return ABORTED;
+				}
+				if (solving && result == WON) {
+					store(hash, legalMoves[i] | WIN);
+					return WON;
+				}
+				if (!solving && result == LOSS) {
+					store(hash, legalMoves[i]);
+					return LOSS;
+				}
+			}
+			store(hash, solving ? 0 : WIN);
+			return solving ? LOSS : WON;
+		}
+	}
+}
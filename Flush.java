@@ -23,14 +23,7 @@ public class Flush extends Hand {
 	 * @see Hand
 	 */
 	public boolean isValid() {
-		int countSuit = 0;
-		for (int i = 1; i < this.size()-1; i++) {
-			if (this.getCard(i).suit == this.getCard(0).suit) {
-				countSuit++;
-			}
-		}
-		if (countSuit == 4) { return true; }
-		else { return false; }
+		return this.size() == 5 && BigTwoRules.isFlush(BigTwoRules.maskOf(this));
 	}
 
 	/**
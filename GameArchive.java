@@ -0,0 +1,395 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * This class is used to model a columnar archive of past games, written by
+ * GameArchiveWriter, and to run aggregation queries over it in parallel.
+ * <p>
+ * The games are stored in row groups of up to
+ * GameArchiveWriter.DEFAULT_ROW_GROUP_SIZE games. Within a row group, every
+ * column is deflated separately, so that a query only reads and inflates the
+ * columns it needs, and the row groups are aggregated in parallel on the
+ * common ForkJoinPool. The file is laid out as:
+ *
+ * <pre>
+ * int MAGIC, int VERSION
+ * the column blocks of every row group
+ * for every row group: int numOfGames, int numOfMoves, and for every column:
+ *                      long offset, int compressed length, int raw length
+ * int numOfRowGroups, long offset of the directory, int MAGIC
+ * </pre>
+ *
+ * The per-game columns hold one value per game; the per-move columns hold one
+ * value per move replayed, the moves of a game following the moves of the
+ * previous game of the row group.
+ *
+ * @author Kwok Chun Yu
+ *
+ */
+public class GameArchive implements AutoCloseable {
+	/** The magic number at the start and at the end of an archive. */
+	public static final int MAGIC = 0x42324341; // "B2CA"
+	/** The version of the format of the archives. */
+	public static final int VERSION = 1;
+
+	/** Per-game column: start time, varint of the delta with the previous game. */
+	public static final int START_TIME = 0;
+	/** Per-game column: table ID, varint. */
+	public static final int TABLE_ID = 1;
+	/** Per-game column: number of moves replayed, varint. */
+	public static final int NUM_OF_MOVES = 2;
+	/** Per-game column: seat of the player holding the 3 of Diamonds, byte. */
+	public static final int OPENER = 3;
+	/** Per-game column: seat of the winner, or -1, byte. */
+	public static final int WINNER = 4;
+	/** Per-game column: 4 bytes, the number of cards left to every seat. */
+	public static final int CARDS_LEFT = 5;
+	/** Per-game column: flags (COMPLETED, ABORTED, FLUSH_ATTEMPTED), byte. */
+	public static final int FLAGS = 6;
+	/** Per-move column: seat of the player, byte. */
+	public static final int MOVE_PLAYER = 7;
+	/** Per-move column: hand type, PASS_CODE or INVALID_CODE, byte. */
+	public static final int MOVE_RESULT = 8;
+	/** Per-move column: code of the top card of the hand, or -1, byte. */
+	public static final int MOVE_TOP_CARD = 9;
+	/** The number of columns. */
+	public static final int NUM_OF_COLUMNS = 10;
+
+	/** Flag of a game ending with a winner. */
+	public static final int COMPLETED = 1;
+	/** Flag of a game during which a player quits. */
+	public static final int ABORTED = 2;
+	/** Flag of a game in which a flush or a straight flush is attempted. */
+	public static final int FLUSH_ATTEMPTED = 4;
+	/** Value of MOVE_RESULT for a pass. */
+	public static final int PASS_CODE = 8;
+	/** Value of MOVE_RESULT for an illegal move. */
+	public static final int INVALID_CODE = 9;
+
+	private final FileChannel channel;
+	private final int numOfRowGroups;
+	private final int[] numOfGames;
+	private final int[] numOfMoves;
+	private final long[][] offsets;
+	private final int[][] compressedLengths;
+	private final int[][] rawLengths;
+
+	/**
+	 * This class is used to model a row group being queried. The columns are
+	 * inflated when they are first accessed.
+	 */
+	public class RowGroup {
+		private final int index;
+		private final byte[][] columns = new byte[NUM_OF_COLUMNS][];
+
+		private RowGroup(int index) {
+			this.index = index;
+		}
+
+		/**
+		 * Returns the number of games of this row group.
+		 *
+		 * @return the number of games
+		 */
+		public int getNumOfGames() {
+			return numOfGames[index];
+		}
+
+		/**
+		 * Returns the number of moves of this row group.
+		 *
+		 * @return the number of moves
+		 */
+		public int getNumOfMoves() {
+			return numOfMoves[index];
+		}
+
+		/**
+		 * Returns the raw bytes of the specified column.
+		 *
+		 * @param column
+		 *            the column
+		 * @return the bytes of the column
+		 * @throws IOException
+		 *             if the column cannot be read
+		 */
+		public byte[] getBytes(int column) throws IOException {
+			if (columns[column] == null) {
+				columns[column] = readColumn(index, column);
+			}
+			return columns[column];
+		}
+
+		/**
+		 * Returns the values of the specified varint column, one per game. The
+		 * start times are returned as milliseconds since the epoch.
+		 *
+		 * @param column
+		 *            START_TIME, TABLE_ID or NUM_OF_MOVES
+		 * @return the values of the column
+		 * @throws IOException
+		 *             if the column cannot be read
+		 */
+		public long[] getLongs(int column) throws IOException {
+			byte[] bytes = getBytes(column);
+			long[] values = new long[getNumOfGames()];
+			int pos = 0;
+			long previous = 0;
+			for (int i = 0; i < values.length; i++) {
+				long value = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = bytes[pos++];
+					value |= (long) (b & 0x7f) << shift;
+					shift += 7;
+				} while (b < 0);
+				if (column == START_TIME) {
+					value = previous + ((value >>> 1) ^ -(value & 1));
+					previous = value;
+				}
+				values[i] = value;
+			}
+			return values;
+		}
+	}
+
+	/**
+	 * Opens the specified archive.
+	 *
+	 * @param file
+	 *            the archive
+	 * @throws IOException
+	 *             if the archive cannot be read
+	 */
+	public GameArchive(File file) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		ByteBuffer tail = read(channel.size() - 16, 16);
+		numOfRowGroups = tail.getInt();
+		long directoryOffset = tail.getLong();
+		if (tail.getInt() != MAGIC) {
+			channel.close();
+			throw new IOException("Not a game archive: " + file);
+		}
+		numOfGames = new int[numOfRowGroups];
+		numOfMoves = new int[numOfRowGroups];
+		offsets = new long[numOfRowGroups][NUM_OF_COLUMNS];
+		compressedLengths = new int[numOfRowGroups][NUM_OF_COLUMNS];
+		rawLengths = new int[numOfRowGroups][NUM_OF_COLUMNS];
+		ByteBuffer directory = read(directoryOffset, numOfRowGroups
+				* (8 + NUM_OF_COLUMNS * 16));
+		for (int g = 0; g < numOfRowGroups; g++) {
+			numOfGames[g] = directory.getInt();
+			numOfMoves[g] = directory.getInt();
+			for (int c = 0; c < NUM_OF_COLUMNS; c++) {
+				offsets[g][c] = directory.getLong();
+				compressedLengths[g][c] = directory.getInt();
+				rawLengths[g][c] = directory.getInt();
+			}
+		}
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(length);
+		while (buf.hasRemaining()) {
+			if (channel.read(buf, position + buf.position()) < 0) {
+				throw new IOException("Unexpected end of the archive");
+			}
+		}
+		buf.flip();
+		return buf;
+	}
+
+	private byte[] readColumn(int rowGroup, int column) throws IOException {
+		ByteBuffer compressed = read(offsets[rowGroup][column],
+				compressedLengths[rowGroup][column]);
+		byte[] raw = new byte[rawLengths[rowGroup][column]];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed.array());
+			int n = 0;
+			while (n < raw.length && !inflater.finished()) {
+				n += inflater.inflate(raw, n, raw.length - n);
+				if (inflater.needsInput() && n < raw.length) {
+					throw new IOException("Truncated column " + column);
+				}
+			}
+		} catch (DataFormatException ex) {
+			throw new IOException("Corrupted column " + column, ex);
+		} finally {
+			inflater.end();
+		}
+		return raw;
+	}
+
+	/**
+	 * Returns the number of row groups of this archive.
+	 *
+	 * @return the number of row groups
+	 */
+	public int getNumOfRowGroups() {
+		return numOfRowGroups;
+	}
+
+	/**
+	 * Returns the number of games of this archive.
+	 *
+	 * @return the number of games
+	 */
+	public long getNumOfGames() {
+		long n = 0;
+		for (int g = 0; g < numOfRowGroups; g++) {
+			n += numOfGames[g];
+		}
+		return n;
+	}
+
+	/**
+	 * Aggregates all the row groups of this archive in parallel. Every row
+	 * group is accumulated into a new result, and the results are combined.
+	 *
+	 * @param supplier
+	 *            the function creating a new result
+	 * @param accumulator
+	 *            the function accumulating a row group into a result
+	 * @param combiner
+	 *            the function combining two results
+	 * @return the result
+	 * @throws IOException
+	 *             if the archive cannot be read
+	 */
+	public <R> R aggregate(Supplier<R> supplier,
+			RowGroupAccumulator<R> accumulator, BinaryOperator<R> combiner)
+			throws IOException {
+		try {
+			return IntStream.range(0, numOfRowGroups).parallel()
+					.mapToObj((int g) -> {
+						R result = supplier.get();
+						try {
+							accumulator.accept(result, new RowGroup(g));
+						} catch (IOException ex) {
+							throw new RuntimeException(ex);
+						}
+						return result;
+					}).reduce(combiner).orElseGet(supplier);
+		} catch (RuntimeException ex) {
+			if (ex.getCause() instanceof IOException) {
+				throw (IOException) ex.getCause();
+			}
+			throw ex;
+		}
+	}
+
+	/**
+	 * An interface for accumulating a row group into a result.
+	 */
+	public interface RowGroupAccumulator<R> {
+		/**
+		 * Accumulates the specified row group into the specified result.
+		 *
+		 * @param result
+		 *            the result
+		 * @param rowGroup
+		 *            the row group
+		 * @throws IOException
+		 *             if a column cannot be read
+		 */
+		public void accept(R result, RowGroup rowGroup) throws IOException;
+	}
+
+	/**
+	 * Computes the statistics of all the games of this archive: hand-type
+	 * frequencies, pass rates, wins and cards left per seat, and the wins of
+	 * the players holding the 3 of Diamonds.
+	 *
+	 * @return the statistics of all the games
+	 * @throws IOException
+	 *             if the archive cannot be read
+	 */
+	public ReplayStatistics summarize() throws IOException {
+		return aggregate(ReplayStatistics::new, (ReplayStatistics stats,
+				RowGroup rowGroup) -> {
+			byte[] opener = rowGroup.getBytes(OPENER);
+			byte[] winner = rowGroup.getBytes(WINNER);
+			byte[] cardsLeft = rowGroup.getBytes(CARDS_LEFT);
+			byte[] flags = rowGroup.getBytes(FLAGS);
+			for (int i = 0; i < rowGroup.getNumOfGames(); i++) {
+				boolean completed = (flags[i] & COMPLETED) != 0;
+				stats.addGame(completed, (flags[i] & ABORTED) != 0);
+				if (completed) {
+					for (int seat = 0; seat < 4; seat++) {
+						stats.addCardsLeft(seat, cardsLeft[i * 4 + seat]);
+					}
+					if (opener[i] == winner[i]) {
+						stats.addOpenerWin();
+					}
+				}
+				if ((flags[i] & FLUSH_ATTEMPTED) != 0) {
+					stats.addFlushGame();
+				}
+			}
+			byte[] results = rowGroup.getBytes(MOVE_RESULT);
+			for (int i = 0; i < rowGroup.getNumOfMoves(); i++) {
+				int code = results[i];
+				stats.addMove((code == PASS_CODE) ? BigTwoRules.PASS
+						: (code == INVALID_CODE) ? BigTwoRules.INVALID
+						: code << 6);
+			}
+		}, (ReplayStatistics a, ReplayStatistics b) -> {
+			a.merge(b);
+			return a;
+		});
+	}
+
+	/**
+	 * Closes this archive.
+	 *
+	 * @throws IOException
+	 *             if the archive cannot be closed
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * main() method for exporting journals and querying archives.
+	 *
+	 * @param args
+	 *            "export journalDir archive" to convert a journal into an
+	 *            archive, or "query archive" to print the statistics of the
+	 *            games in an archive
+	 * @throws Exception
+	 *             if a journal or an archive cannot be read or written
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length == 3 && args[0].equals("export")) {
+			long start = System.nanoTime();
+			long games = GameArchiveWriter.export(new File(args[1]), new File(
+					args[2]));
+			System.out.printf("exported %d games in %.3f s, %d bytes%n",
+					games, (System.nanoTime() - start) / 1e9, new File(args[2])
+							.length());
+		} else if (args.length == 2 && args[0].equals("query")) {
+			try (GameArchive archive = new GameArchive(new File(args[1]))) {
+				long start = System.nanoTime();
+				ReplayStatistics stats = archive.summarize();
+				double seconds = (System.nanoTime() - start) / 1e9;
+				System.out.print(stats);
+				System.out.printf("queried %d games in %d row groups in %.3f s%n",
+						archive.getNumOfGames(), archive.getNumOfRowGroups(),
+						seconds);
+			}
+		} else {
+			System.out.println("usage: GameArchive export <journalDir> <archive>");
+			System.out.println("       GameArchive query <archive>");
+		}
+	}
+}
@@ -0,0 +1,343 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+
+/**
+ * This class is used to write a columnar archive of past games (see
+ * GameArchive). Every game is replayed through BigTwoGame to derive its
+ * columns, and the row groups are encoded and deflated in parallel while they
+ * are written in order.
+ *
+ * @author Kwok Chun Yu
+ *
+ */
+public class GameArchiveWriter implements AutoCloseable {
+	/** The default number of games in a row group. */
+	public static final int DEFAULT_ROW_GROUP_SIZE = 65536;
+
+	private final FileChannel channel;
+	private long position;
+	private final ByteArrayOutputStream directory = new ByteArrayOutputStream();
+	private int numOfRowGroups = 0;
+
+	/**
+	 * This class is used to model an encoded row group waiting to be written.
+	 */
+	public static class EncodedRowGroup {
+		private final int numOfGames;
+		private final int numOfMoves;
+		private final byte[][] compressed = new byte[GameArchive.NUM_OF_COLUMNS][];
+		private final int[] rawLengths = new int[GameArchive.NUM_OF_COLUMNS];
+
+		private EncodedRowGroup(int numOfGames, int numOfMoves) {
+			this.numOfGames = numOfGames;
+			this.numOfMoves = numOfMoves;
+		}
+	}
+
+	/**
+	 * Creates an archive, replacing the specified file.
+	 *
+	 * @param file
+	 *            the archive
+	 * @throws IOException
+	 *             if the archive cannot be created
+	 */
+	public GameArchiveWriter(File file) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		ByteBuffer header = ByteBuffer.allocate(8);
+		header.putInt(GameArchive.MAGIC).putInt(GameArchive.VERSION).flip();
+		write(header);
+	}
+
+	private void write(ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining()) {
+			position += channel.write(buf, position);
+		}
+	}
+
+	/**
+	 * Replays the specified games and encodes them as a row group. This
+	 * method can be called from several threads at the same time.
+	 *
+	 * @param games
+	 *            the games
+	 * @return the encoded row group
+	 */
+	public static EncodedRowGroup encode(ArrayList<RecordedGame> games) {
+		int n = games.size();
+		ByteArrayOutputStream startTimes = new ByteArrayOutputStream(n * 3);
+		ByteArrayOutputStream tableIDs = new ByteArrayOutputStream(n);
+		ByteArrayOutputStream movesPerGame = new ByteArrayOutputStream(n);
+		byte[] opener = new byte[n];
+		byte[] winner = new byte[n];
+		byte[] cardsLeft = new byte[n * 4];
+		byte[] flags = new byte[n];
+		ByteArrayOutputStream movePlayers = new ByteArrayOutputStream(n * 64);
+		ByteArrayOutputStream moveResults = new ByteArrayOutputStream(n * 64);
+		ByteArrayOutputStream moveTopCards = new ByteArrayOutputStream(n * 64);
+
+		BigTwoGame game = new BigTwoGame();
+		long previousStartTime = 0;
+		int totalMoves = 0;
+		for (int g = 0; g < n; g++) {
+			RecordedGame recorded = games.get(g);
+			long delta = recorded.getStartTime() - previousStartTime;
+			previousStartTime = recorded.getStartTime();
+			putVarLong(startTimes, (delta << 1) ^ (delta >> 63));
+			putVarLong(tableIDs, recorded.getTableID() & 0xffffffffL);
+
+			game.start(recorded.toDeck());
+			opener[g] = (byte) game.getCurrentIdx();
+			byte[] moves = recorded.getPackedMoves();
+			int pos = 0;
+			int m = 0;
+			boolean flushAttempted = false;
+			while (m < recorded.getNumOfMoves() && !game.endOfGame()) {
+				int playerID = moves[pos++];
+				int numOfCards = moves[pos++];
+				int[] cardIdx = null;
+				if (numOfCards >= 0) {
+					cardIdx = new int[numOfCards];
+					for (int i = 0; i < numOfCards; i++) {
+						cardIdx[i] = moves[pos++];
+					}
+					int type = BigTwoRules.typeOf(BigTwoRules.maskOf(game
+							.getPlayerList().get(playerID).getCardsInHand(),
+							cardIdx));
+					if (type == BigTwoRules.FLUSH
+							|| type == BigTwoRules.STRAIGHT_FLUSH) {
+						flushAttempted = true;
+					}
+				}
+				game.checkMove(playerID, cardIdx);
+				int result = game.getLastResult();
+				movePlayers.write(playerID);
+				if (result == BigTwoRules.PASS) {
+					moveResults.write(GameArchive.PASS_CODE);
+					moveTopCards.write(-1);
+				} else if (result == BigTwoRules.INVALID) {
+					moveResults.write(GameArchive.INVALID_CODE);
+					moveTopCards.write(-1);
+				} else {
+					moveResults.write(BigTwoRules.typeOfValue(result));
+					moveTopCards.write(BigTwoRules.topCardOfValue(result));
+				}
+				m++;
+			}
+			totalMoves += m;
+			putVarLong(movesPerGame, m);
+
+			winner[g] = -1;
+			for (int seat = 0; seat < 4; seat++) {
+				int left = game.getPlayerList().get(seat).getNumOfCards();
+				cardsLeft[g * 4 + seat] = (byte) left;
+				if (left == 0) {
+					winner[g] = (byte) seat;
+				}
+			}
+			flags[g] = (byte) ((game.endOfGame() ? GameArchive.COMPLETED : 0)
+					| (recorded.isAborted() ? GameArchive.ABORTED : 0)
+					| (flushAttempted ? GameArchive.FLUSH_ATTEMPTED : 0));
+		}
+
+		EncodedRowGroup rowGroup = new EncodedRowGroup(n, totalMoves);
+		byte[][] raw = new byte[GameArchive.NUM_OF_COLUMNS][];
+		raw[GameArchive.START_TIME] = startTimes.toByteArray();
+		raw[GameArchive.TABLE_ID] = tableIDs.toByteArray();
+		raw[GameArchive.NUM_OF_MOVES] = movesPerGame.toByteArray();
+		raw[GameArchive.OPENER] = opener;
+		raw[GameArchive.WINNER] = winner;
+		raw[GameArchive.CARDS_LEFT] = cardsLeft;
+		raw[GameArchive.FLAGS] = flags;
+		raw[GameArchive.MOVE_PLAYER] = movePlayers.toByteArray();
+		raw[GameArchive.MOVE_RESULT] = moveResults.toByteArray();
+		raw[GameArchive.MOVE_TOP_CARD] = moveTopCards.toByteArray();
+		Deflater deflater = new Deflater();
+		byte[] buf = new byte[65536];
+		for (int c = 0; c < raw.length; c++) {
+			deflater.reset();
+			deflater.setInput(raw[c]);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(
+					raw[c].length / 4 + 16);
+			while (!deflater.finished()) {
+				out.write(buf, 0, deflater.deflate(buf));
+			}
+			rowGroup.compressed[c] = out.toByteArray();
+			rowGroup.rawLengths[c] = raw[c].length;
+		}
+		deflater.end();
+		return rowGroup;
+	}
+
+	private static void putVarLong(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7fL) != 0) {
+			out.write((int) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	/**
+	 * Writes an encoded row group after the row groups written so far.
+	 *
+	 * @param rowGroup
+	 *            the encoded row group
+	 * @throws IOException
+	 *             if the row group cannot be written
+	 */
+	public void write(EncodedRowGroup rowGroup) throws IOException {
+		ByteBuffer entry = ByteBuffer.allocate(8 + GameArchive.NUM_OF_COLUMNS * 16);
+		entry.putInt(rowGroup.numOfGames).putInt(rowGroup.numOfMoves);
+		for (int c = 0; c < GameArchive.NUM_OF_COLUMNS; c++) {
+			entry.putLong(position).putInt(rowGroup.compressed[c].length)
+					.putInt(rowGroup.rawLengths[c]);
+			write(ByteBuffer.wrap(rowGroup.compressed[c]));
+		}
+		directory.write(entry.array(), 0, entry.position());
+		numOfRowGroups++;
+	}
+
+	/**
+	 * Writes the directory of the row groups and closes the archive.
+	 *
+	 * @throws IOException
+	 *             if the archive cannot be written
+	 */
+	public void close() throws IOException {
+		long directoryOffset = position;
+		write(ByteBuffer.wrap(directory.toByteArray()));
+		ByteBuffer tail = ByteBuffer.allocate(16);
+		tail.putInt(numOfRowGroups).putLong(directoryOffset)
+				.putInt(GameArchive.MAGIC).flip();
+		write(tail);
+		channel.force(false);
+		channel.close();
+	}
+
+	/**
+	 * Converts the games recorded in a journal into an archive. The journal
+	 * is read sequentially, and at most two row groups per processor are
+	 * encoded at the same time, so the games are never all held in memory.
+	 *
+	 * @param journalDir
+	 *            the directory of the journal
+	 * @param file
+	 *            the archive
+	 * @param rowGroupSize
+	 *            the number of games in a row group
+	 * @return the number of games exported
+	 * @throws IOException
+	 *             if the journal cannot be read or the archive cannot be
+	 *             written
+	 */
+	public static long export(File journalDir, File file, int rowGroupSize)
+			throws IOException {
+		try (GameJournalReader reader = new GameJournalReader(journalDir);
+				GameArchiveWriter writer = new GameArchiveWriter(file)) {
+			Exporter exporter = new Exporter(writer, rowGroupSize);
+			try {
+				RecordedGame.forEach(reader, exporter);
+			} catch (RuntimeException ex) {
+				if (ex.getCause() instanceof IOException) {
+					throw (IOException) ex.getCause();
+				}
+				throw ex;
+			}
+			exporter.finish();
+			return exporter.numOfGames;
+		}
+	}
+
+	/**
+	 * Converts the games recorded in a journal into an archive with the
+	 * default row group size.
+	 *
+	 * @param journalDir
+	 *            the directory of the journal
+	 * @param file
+	 *            the archive
+	 * @return the number of games exported
+	 * @throws IOException
+	 *             if the journal cannot be read or the archive cannot be
+	 *             written
+	 */
+	public static long export(File journalDir, File file) throws IOException {
+		return export(journalDir, file, DEFAULT_ROW_GROUP_SIZE);
+	}
+
+	/**
+	 * This class is used to collect the games of a journal into row groups,
+	 * which are encoded in the background and written in order.
+	 */
+	private static class Exporter implements Consumer<RecordedGame> {
+		private final GameArchiveWriter writer;
+		private final int rowGroupSize;
+		private final int maxPending = Runtime.getRuntime()
+				.availableProcessors() * 2;
+		private final ArrayDeque<CompletableFuture<EncodedRowGroup>> pending = new ArrayDeque<CompletableFuture<EncodedRowGroup>>();
+		private ArrayList<RecordedGame> games;
+		private long numOfGames = 0;
+
+		Exporter(GameArchiveWriter writer, int rowGroupSize) {
+			this.writer = writer;
+			this.rowGroupSize = rowGroupSize;
+			games = new ArrayList<RecordedGame>(rowGroupSize);
+		}
+
+		public void accept(RecordedGame game) {
+			games.add(game);
+			numOfGames++;
+			if (games.size() == rowGroupSize) {
+				try {
+					submit(maxPending);
+				} catch (IOException ex) {
+					throw new RuntimeException(ex);
+				}
+			}
+		}
+
+		// encodes the current row group in the background, and writes the
+		// oldest encoded row groups while more than max are pending
+		private void submit(int max) throws IOException {
+			final ArrayList<RecordedGame> rowGroup = games;
+			games = new ArrayList<RecordedGame>(rowGroupSize);
+			pending.add(CompletableFuture.supplyAsync(() -> encode(rowGroup)));
+			while (pending.size() > max) {
+				writer.write(join(pending.poll()));
+			}
+		}
+
+		void finish() throws IOException {
+			if (!games.isEmpty()) {
+				submit(0);
+			}
+			while (!pending.isEmpty()) {
+				writer.write(join(pending.poll()));
+			}
+		}
+	}
+
+	private static EncodedRowGroup join(
+			CompletableFuture<EncodedRowGroup> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while encoding a row group", ex);
+		} catch (ExecutionException ex) {
+			throw new IOException("Cannot encode a row group", ex.getCause());
+		}
+	}
+}
@@ -0,0 +1,406 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * This class is used to model an append-only binary journal of the games
+ * hosted by a card game server. Every JOIN, READY, START, MOVE and QUIT of
+ * every table is appended to a memory-mapped segment file; segments roll over
+ * when they are full. Appending a record is a copy into the mapped segment,
+ * and a background thread forces the segment to disk at a fixed interval
+ * (group commit), so that no move waits for an fsync.
+ * <p>
+ * A segment starts with the int MAGIC and the int VERSION, followed by
+ * records of the form:
+ * 
+ * <pre>
+ * int  length     number of bytes after this field, or 0 at the end of the
+ *                 data written so far, or -1 at the end of a full segment
+ * byte type       CardGameMessage.JOIN, READY, START, MOVE or QUIT
+ * long timestamp  milliseconds since the epoch
+ * int  tableID
+ * byte playerID
+ * ...  payload    JOIN: short length + UTF-8 name; START: 52 card codes
+ *                 (BigTwoRules.codeOf) in the order of the deck; MOVE: byte
+ *                 number of cards (-1 for a pass) + the card indices;
+ *                 READY, QUIT: nothing
+ * int  crc        CRC32 of the bytes from type to the end of the payload
+ * </pre>
+ * 
+ * The length of a record is written after its body, so that a reader never
+ * sees a partially written record.
+ * 
+ * @author Kwok Chun Yu
+ *
+ */
+public class GameJournal {
+	/** The magic number at the start of every segment. */
+	public static final int MAGIC = 0x42324a4e; // "B2JN"
+	/** The version of the format of the segments. */
+	public static final int VERSION = 1;
+	/** The size of the header of a segment in bytes. */
+	public static final int SEGMENT_HEADER_SIZE = 8;
+	/** The default size of a segment in bytes. */
+	public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+	/** The default interval between two group commits in milliseconds. */
+	public static final long DEFAULT_COMMIT_INTERVAL = 10;
+
+	// type + timestamp + tableID + playerID
+	private static final int FIXED_HEADER_SIZE = 1 + 8 + 4 + 1;
+
+	private final File dir;
+	private final int segmentSize;
+	private final CRC32 crc = new CRC32();
+	private final byte[] scratch = new byte[1024];
+	private FileChannel channel = null;
+	private MappedByteBuffer segment = null;
+	private long segmentNumber = -1;
+	private boolean dirty = false;
+	private boolean closed = false;
+	private Thread committer;
+
+	/**
+	 * Creates and returns an instance of the GameJournal class, appending to
+	 * the last segment in the specified directory, if any.
+	 * 
+	 * @param dir
+	 *            the directory holding the segments
+	 * @param segmentSize
+	 *            the size of a segment in bytes
+	 * @param commitInterval
+	 *            the interval between two group commits in milliseconds
+	 * @throws IOException
+	 *             if the journal cannot be opened
+	 */
+	public GameJournal(File dir, int segmentSize, final long commitInterval)
+			throws IOException {
+		this.dir = dir;
+		this.segmentSize = segmentSize;
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create the journal directory " + dir);
+		}
+		File[] segments = listSegments(dir);
+		if (segments.length > 0) {
+			reopen(segments[segments.length - 1]);
+		} else {
+			roll();
+		}
+
+		committer = new Thread(new Runnable() {
+			public void run() {
+				while (!Thread.currentThread().isInterrupted()) {
+					try {
+						Thread.sleep(commitInterval);
+					} catch (InterruptedException ex) {
+						break;
+					}
+					commit();
+				}
+			}
+		}, "journal-committer");
+		committer.setDaemon(true);
+		committer.start();
+	}
+
+	/**
+	 * Creates and returns an instance of the GameJournal class with the
+	 * default segment size and commit interval.
+	 * 
+	 * @param dir
+	 *            the directory holding the segments
+	 * @throws IOException
+	 *             if the journal cannot be opened
+	 */
+	public GameJournal(File dir) throws IOException {
+		this(dir, DEFAULT_SEGMENT_SIZE, DEFAULT_COMMIT_INTERVAL);
+	}
+
+	/**
+	 * Returns the segment files in the specified directory, in the order they
+	 * were written.
+	 * 
+	 * @param dir
+	 *            the directory holding the segments
+	 * @return the segment files in the order they were written
+	 */
+	public static File[] listSegments(File dir) {
+		File[] files = dir.listFiles((File d, String name) -> name
+				.startsWith("journal-") && name.endsWith(".log"));
+		if (files == null) {
+			return new File[0];
+		}
+		Arrays.sort(files);
+		return files;
+	}
+
+	/**
+	 * Returns the file of the segment with the specified number.
+	 */
+	private File segmentFile(long number) {
+		return new File(dir, String.format("journal-%010d.log", number));
+	}
+
+	/**
+	 * Maps the specified existing segment and positions it after its last
+	 * complete record. A segment still zeroed, as left by a crash right after
+	 * it was created, is taken as empty and gets its header again.
+	 */
+	private void reopen(File file) throws IOException {
+		String name = file.getName();
+		segmentNumber = Long.parseLong(name.substring(8, name.length() - 4));
+		channel = new RandomAccessFile(file, "rw").getChannel();
+		segment = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+				Math.max(segmentSize, channel.size()));
+		if (segment.getInt(0) == 0 && segment.getInt(4) == 0
+				&& segment.getInt(SEGMENT_HEADER_SIZE) == 0) {
+			segment.putInt(MAGIC);
+			segment.putInt(VERSION);
+			dirty = true;
+			return;
+		}
+		if (segment.getInt(0) != MAGIC) {
+			throw new IOException("Not a journal segment: " + file);
+		}
+		int position = SEGMENT_HEADER_SIZE;
+		while (position + 4 <= segment.capacity()) {
+			int length = segment.getInt(position);
+			if (length == -1) {
+				// the segment is full
+				roll();
+				return;
+			}
+			if (length <= 0 || position + 4 + length > segment.capacity()
+					|| !checksumMatches(position + 4, length)) {
+				break;
+			}
+			position += 4 + length;
+		}
+		segment.position(position);
+		// clears a torn record left by a crash, if any
+		if (position + 4 <= segment.capacity()) {
+			segment.putInt(position, 0);
+		}
+	}
+
+	/**
+	 * Returns true if the checksum of the record body at the specified
+	 * position matches.
+	 */
+	private boolean checksumMatches(int bodyStart, int length) {
+		CRC32 check = new CRC32();
+		for (int i = bodyStart; i < bodyStart + length - 4; i++) {
+			check.update(segment.get(i));
+		}
+		return (int) check.getValue() == segment.getInt(bodyStart + length - 4);
+	}
+
+	/**
+	 * Closes the current segment, if any, and starts a new one.
+	 */
+	private void roll() throws IOException {
+		if (segment != null) {
+			if (segment.remaining() >= 4) {
+				segment.putInt(segment.position(), -1);
+			}
+			segment.force();
+			channel.close();
+		}
+		segmentNumber++;
+		File file = segmentFile(segmentNumber);
+		channel = new RandomAccessFile(file, "rw").getChannel();
+		segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		segment.putInt(MAGIC);
+		segment.putInt(VERSION);
+		dirty = true;
+	}
+
+	/**
+	 * Records that a player joins a table.
+	 * 
+	 * @param tableID
+	 *            the ID of the table
+	 * @param playerID
+	 *            the playerID of the player
+	 * @param name
+	 *            the name of the player
+	 */
+	public void logJoin(int tableID, int playerID, String name) {
+		byte[] bytes = (name == null) ? new byte[0] : name
+				.getBytes(StandardCharsets.UTF_8);
+		int length = Math.min(bytes.length, Short.MAX_VALUE);
+		synchronized (this) {
+			if (begin(CardGameMessage.JOIN, tableID, playerID, 2 + length)) {
+				scratch[0] = (byte) (length >> 8);
+				scratch[1] = (byte) length;
+				put(scratch, 2);
+				put(bytes, length);
+				end();
+			}
+		}
+	}
+
+	/**
+	 * Records that a player becomes ready for a new game.
+	 * 
+	 * @param tableID
+	 *            the ID of the table
+	 * @param playerID
+	 *            the playerID of the player
+	 */
+	public synchronized void logReady(int tableID, int playerID) {
+		if (begin(CardGameMessage.READY, tableID, playerID, 0)) {
+			end();
+		}
+	}
+
+	/**
+	 * Records that a new game starts with the specified deck.
+	 * 
+	 * @param tableID
+	 *            the ID of the table
+	 * @param deck
+	 *            the shuffled deck of the new game
+	 */
+	public synchronized void logStart(int tableID, Deck deck) {
+		int n = deck.size();
+		if (begin(CardGameMessage.START, tableID, -1, n)) {
+			for (int i = 0; i < n; i++) {
+				scratch[i] = (byte) BigTwoRules.codeOf(deck.getCard(i));
+			}
+			put(scratch, n);
+			end();
+		}
+	}
+
+	/**
+	 * Records a move made by a player.
+	 * 
+	 * @param tableID
+	 *            the ID of the table
+	 * @param playerID
+	 *            the playerID of the player
+	 * @param cardIdx
+	 *            the indices of the cards played, or null for a pass
+	 */
+	public synchronized void logMove(int tableID, int playerID, int[] cardIdx) {
+		int n = (cardIdx == null) ? 0 : Math.min(cardIdx.length, 127);
+		if (begin(CardGameMessage.MOVE, tableID, playerID, 1 + n)) {
+			scratch[0] = (byte) ((cardIdx == null) ? -1 : n);
+			for (int i = 0; i < n; i++) {
+				scratch[i + 1] = (byte) cardIdx[i];
+			}
+			put(scratch, 1 + n);
+			end();
+		}
+	}
+
+	/**
+	 * Records that a player leaves a table.
+	 * 
+	 * @param tableID
+	 *            the ID of the table
+	 * @param playerID
+	 *            the playerID of the player
+	 */
+	public synchronized void logQuit(int tableID, int playerID) {
+		if (begin(CardGameMessage.QUIT, tableID, playerID, 0)) {
+			end();
+		}
+	}
+
+	// position of the length field of the record being written
+	private int recordStart;
+
+	/**
+	 * Starts a record with the specified payload size, rolling the segment if
+	 * it is full. Returns false if the journal is closed or cannot be written.
+	 */
+	private boolean begin(int type, int tableID, int playerID, int payloadSize) {
+		if (closed) {
+			return false;
+		}
+		int recordSize = 4 + FIXED_HEADER_SIZE + payloadSize + 4;
+		try {
+			// keeps room for the end-of-segment marker
+			if (segment.remaining() < recordSize + 4) {
+				roll();
+			}
+		} catch (IOException ex) {
+			ex.printStackTrace();
+			return false;
+		}
+		recordStart = segment.position();
+		crc.reset();
+		segment.position(recordStart + 4);
+		segment.put((byte) type);
+		segment.putLong(System.currentTimeMillis());
+		segment.putInt(tableID);
+		segment.put((byte) playerID);
+		return true;
+	}
+
+	/**
+	 * Appends the specified bytes to the record being written.
+	 */
+	private void put(byte[] bytes, int length) {
+		segment.put(bytes, 0, length);
+	}
+
+	/**
+	 * Completes the record being written by appending its checksum and then
+	 * publishing its length.
+	 */
+	private void end() {
+		int bodyStart = recordStart + 4;
+		int bodyEnd = segment.position();
+		for (int i = bodyStart; i < bodyEnd; i++) {
+			crc.update(segment.get(i));
+		}
+		segment.putInt((int) crc.getValue());
+		// marks the end of the data written so far
+		if (segment.remaining() >= 4) {
+			segment.putInt(segment.position(), 0);
+		}
+		segment.putInt(recordStart, segment.position() - bodyStart);
+		dirty = true;
+	}
+
+	/**
+	 * Forces the records appended since the last commit to disk. Called
+	 * periodically by the committer thread.
+	 */
+	public void commit() {
+		MappedByteBuffer toForce;
+		synchronized (this) {
+			if (!dirty || closed) {
+				return;
+			}
+			dirty = false;
+			toForce = segment;
+		}
+		// forcing outside the lock lets the game threads keep appending
+		toForce.force();
+	}
+
+	/**
+	 * Commits the records appended so far and closes the journal.
+	 */
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		committer.interrupt();
+		segment.force();
+		closed = true;
+		try {
+			channel.close();
+		} catch (IOException ex) {
+			ex.printStackTrace();
+		}
+	}
+}
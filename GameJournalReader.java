@@ -0,0 +1,301 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * This class is used to read the records of a journal written by the
+ * GameJournal class, in the order they were written. The fields of the
+ * current record are returned by the getters after each call to next().
+ * 
+ * @author Kwok Chun Yu
+ *
+ */
+public class GameJournalReader implements AutoCloseable {
+	private final File[] segments;
+	private int segmentIdx = -1;
+	private FileChannel channel = null;
+	private MappedByteBuffer segment = null;
+	private final CRC32 crc = new CRC32();
+
+	// fields of the current record
+	private int type;
+	private long timestamp;
+	private int tableID;
+	private int playerID;
+	private String name;
+	private final int[] deckCodes = new int[BigTwoRules.NUM_OF_CARDS];
+	private int numOfCards;
+	private final int[] cardIdx = new int[127];
+
+	/**
+	 * Creates and returns an instance of the GameJournalReader class reading
+	 * the segments in the specified directory.
+	 * 
+	 * @param dir
+	 *            the directory holding the segments
+	 */
+	public GameJournalReader(File dir) {
+		this.segments = GameJournal.listSegments(dir);
+	}
+
+	/**
+	 * Creates and returns an instance of the GameJournalReader class reading
+	 * the specified segments, in the specified order.
+	 * 
+	 * @param segments
+	 *            the segment files
+	 */
+	public GameJournalReader(File[] segments) {
+		this.segments = segments.clone();
+	}
+
+	/**
+	 * Advances to the next record.
+	 * 
+	 * @return true if there is a next record; false at the end of the journal
+	 * @throws IOException
+	 *             if a segment cannot be read
+	 */
+	public boolean next() throws IOException {
+		while (true) {
+			if (segment == null && !openNextSegment()) {
+				return false;
+			}
+			if (segment.remaining() < 4) {
+				closeSegment();
+				continue;
+			}
+			int start = segment.position();
+			int length = segment.getInt();
+			if (length <= 0 || length > segment.remaining()
+					|| !checksumMatches(start + 4, length)) {
+				// end of this segment, or a torn record at the end of the last
+				// segment
+				closeSegment();
+				continue;
+			}
+			type = segment.get();
+			timestamp = segment.getLong();
+			tableID = segment.getInt();
+			playerID = segment.get();
+			name = null;
+			numOfCards = 0;
+			switch (type) {
+			case CardGameMessage.JOIN:
+				int n = segment.getShort();
+				byte[] bytes = new byte[n];
+				segment.get(bytes);
+				name = new String(bytes, StandardCharsets.UTF_8);
+				break;
+			case CardGameMessage.START:
+				for (int i = 0; i < deckCodes.length; i++) {
+					deckCodes[i] = segment.get();
+				}
+				break;
+			case CardGameMessage.MOVE:
+				numOfCards = segment.get();
+				for (int i = 0; i < numOfCards; i++) {
+					cardIdx[i] = segment.get();
+				}
+				break;
+			default:
+				break;
+			}
+			segment.position(start + 4 + length);
+			return true;
+		}
+	}
+
+	/**
+	 * Maps the next segment. Returns false if there is none. A segment still
+	 * empty or zeroed, as left by a crash right after it was created, holds no
+	 * records.
+	 */
+	private boolean openNextSegment() throws IOException {
+		if (segmentIdx + 1 >= segments.length) {
+			return false;
+		}
+		segmentIdx++;
+		channel = new RandomAccessFile(segments[segmentIdx], "r").getChannel();
+		segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		if (isZeroed()) {
+			segment.position(segment.limit());
+			return true;
+		}
+		if (segment.capacity() < GameJournal.SEGMENT_HEADER_SIZE
+				|| segment.getInt() != GameJournal.MAGIC
+				|| segment.getInt() != GameJournal.VERSION) {
+			throw new IOException("Not a journal segment: "
+					+ segments[segmentIdx]);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the current segment has neither a header nor records.
+	 */
+	private boolean isZeroed() {
+		int end = Math.min(segment.capacity(),
+				GameJournal.SEGMENT_HEADER_SIZE + 4);
+		for (int i = 0; i < end; i++) {
+			if (segment.get(i) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Closes the current segment.
+	 */
+	private void closeSegment() throws IOException {
+		segment = null;
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+
+	/**
+	 * Returns true if the checksum of the record body at the specified
+	 * position matches.
+	 */
+	private boolean checksumMatches(int bodyStart, int length) {
+		if (length < 4) {
+			return false;
+		}
+		crc.reset();
+		for (int i = bodyStart; i < bodyStart + length - 4; i++) {
+			crc.update(segment.get(i));
+		}
+		return (int) crc.getValue() == segment.getInt(bodyStart + length - 4);
+	}
+
+	/**
+	 * Returns the type of the current record (a CardGameMessage type).
+	 * 
+	 * @return the type of the current record
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the time at which the current record was written.
+	 * 
+	 * @return the time in milliseconds since the epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Returns the ID of the table of the current record.
+	 * 
+	 * @return the ID of the table
+	 */
+	public int getTableID() {
+		return tableID;
+	}
+
+	/**
+	 * Returns the playerID of the current record, or -1 for a START record.
+	 * 
+	 * @return the playerID of the current record
+	 */
+	public int getPlayerID() {
+		return playerID;
+	}
+
+	/**
+	 * Returns the name of the player of a JOIN record.
+	 * 
+	 * @return the name of the player, or null for other records
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the card codes of the deck of a START record, in the order of
+	 * the deck. The array is reused by the next record.
+	 * 
+	 * @return the card codes of the deck
+	 */
+	public int[] getDeckCodes() {
+		return deckCodes;
+	}
+
+	/**
+	 * Returns a new deck holding the cards of a START record.
+	 * 
+	 * @return a new deck holding the cards of the current record
+	 */
+	public Deck getDeck() {
+		Deck deck = new Deck();
+		deck.removeAllCards();
+		for (int code : deckCodes) {
+			deck.addCard(new Card(BigTwoRules.suitOf(code), BigTwoRules
+					.rankOf(code)));
+		}
+		return deck;
+	}
+
+	/**
+	 * Returns true if the current record is a MOVE record for a pass.
+	 * 
+	 * @return true if the current record is a pass
+	 */
+	public boolean isPass() {
+		return type == CardGameMessage.MOVE && numOfCards < 0;
+	}
+
+	/**
+	 * Returns the number of cards played in a MOVE record, or -1 for a pass.
+	 * 
+	 * @return the number of cards played
+	 */
+	public int getNumOfCards() {
+		return numOfCards;
+	}
+
+	/**
+	 * Returns the indices of the cards played in a MOVE record. Only the
+	 * first getNumOfCards() entries are valid, and the array is reused by the
+	 * next record.
+	 * 
+	 * @return the indices of the cards played
+	 */
+	public int[] getCardIdxBuffer() {
+		return cardIdx;
+	}
+
+	/**
+	 * Returns a new array holding the indices of the cards played in a MOVE
+	 * record, as sent in the MOVE message.
+	 * 
+	 * @return the indices of the cards played, or null for a pass
+	 */
+	public int[] getCardIdx() {
+		if (numOfCards < 0) {
+			return null;
+		}
+		return Arrays.copyOf(cardIdx, numOfCards);
+	}
+
+	/**
+	 * Closes this reader.
+	 * 
+	 * @throws IOException
+	 *             if the current segment cannot be closed
+	 */
+	public void close() throws IOException {
+		closeSegment();
+		segmentIdx = segments.length;
+	}
+}
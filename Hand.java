@@ -31,11 +31,8 @@ public abstract class Hand extends CardList  {
 	 */
 	public Card getTopCard() {
 		Card topCard = this.getCard(0);
-		BigTwoCard bigTwoTopCard = new BigTwoCard(topCard.suit, topCard.rank);
-		BigTwoCard thisCard;
 		for (int i = 1; i < this.size(); i++) {
-			thisCard = new BigTwoCard(this.getCard(i).suit, this.getCard(i).rank);
-			if (thisCard.compareTo(bigTwoTopCard) == 1) {
+			if (BigTwoRules.compare(this.getCard(i), topCard) > 0) {
 				topCard = this.getCard(i);
 			}
 		}
@@ -51,12 +48,7 @@ public abstract class Hand extends CardList  {
 		if (hand.size() == this.size()) {
 			if (hand.getHandRank() > this.getHandRank()) { return true; }
 			else if (hand.getHandRank() < this.getHandRank()) { return false; }
-			else {
-				BigTwoCard handCard = new BigTwoCard(hand.getTopCard().suit, hand.getTopCard().rank);
-				BigTwoCard thisCard = new BigTwoCard(this.getTopCard().suit, this.getTopCard().rank);
-				if (handCard.compareTo(thisCard) == 1) { return true; }
-				else { return false; }
-			}
+			else { return BigTwoRules.compare(hand.getTopCard(), this.getTopCard()) > 0; }
 		} else { return false; }
 	}
 	
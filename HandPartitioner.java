@@ -0,0 +1,385 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The HandPartitioner class is used to split a set of cards into the fewest hands that can be played,
+ * e.g. to group the 13 cards dealt to a player into its straights, full houses, pairs and singles.
+ * Among the partitions with the fewest hands, the one with the fewest singles is chosen.
+ * <p>
+ * Apart from flushes, whether a set of cards can be split into some hands only depends on how many cards
+ * of each rank it holds, and not on their suits. The partitioner thus solves the rank-count vector of
+ * the cards by dynamic programming: the hands holding the lowest rank left are tried in turn, and the
+ * rest is solved recursively. The vector, stored as a number in base 5, is the canonical key of every
+ * set of cards having the same ranks, and the best first hand of every vector solved is memoized in a
+ * table shared by all the threads. The table is lock-free: an entry holds the key and the data in one
+ * long, so that it is always read and written whole, and a newer entry replaces any entry in its slot.
+ * Flushes are tried around the dynamic programming, by taking every flush, and every pair of flushes,
+ * that the suits allow out of the cards.
+ *
+ * @author Kwok Chun Yu
+ */
+public class HandPartitioner {
+
+	// the cost of a partition: COMBINATION for every hand, plus one for every single
+	private static final int COMBINATION = 14;
+	private static final int NUM_OF_RANKS = 13;
+	// bits 0, 4, 8, ..., 48, i.e. the Diamonds of every rank
+	private static final long DIAMONDS = 0x1111111111111L;
+	// the powers of 5, the weight of the count of every rank in a key
+	private static final int[] WEIGHTS = new int[NUM_OF_RANKS];
+
+	// the data of an entry: the cost of the partition, and its first two hands of 11 bits each (the type
+	// and the ranks of the hand), so that a partition is read back with half as many lookups
+	private static final int COST_SHIFT = 22;
+	private static final int SECOND_SHIFT = 11;
+	private static final int HAND_MASK = 0x7FF;
+	private static final int TYPE_SHIFT = 8;
+	private static final int RANK_SHIFT = 4;
+	private static final int KEY_SHIFT = 32;
+
+	static {
+		int weight = 1;
+		for (int i = 0; i < NUM_OF_RANKS; i++) {
+			WEIGHTS[i] = weight;
+			weight *= 5;
+		}
+	}
+
+	private final AtomicLongArray table;
+	private final int mask;
+
+	/**
+	 * a constructor for creating a partitioner with a table of the specified size.
+	 * @param tableBits the base 2 logarithm of the number of entries of the table, of 8 bytes each
+	 */
+	public HandPartitioner(int tableBits) {
+		table = new AtomicLongArray(1 << tableBits);
+		mask = (1 << tableBits) - 1;
+	}
+
+	/**
+	 * a constructor for creating a partitioner with a table of 2^20 entries (8 MB).
+	 */
+	public HandPartitioner() {
+		this(20);
+	}
+
+	/*
+	 * the partitioner shared by the users without one of their own, created when first used.
+	 */
+	private static class SharedHolder {
+		private static final HandPartitioner SHARED = new HandPartitioner();
+	}
+
+	/**
+	 * a method for retrieving the partitioner shared by the whole program.
+	 * @return the shared partitioner
+	 */
+	public static HandPartitioner getShared() { return SharedHolder.SHARED; }
+
+	/**
+	 * a method for splitting a set of cards into the fewest hands.
+	 * @param hand the set of cards
+	 * @param combinations the array receiving the hands, in increasing order of their values, which
+	 * must have room for 13 hands
+	 * @return the number of hands
+	 */
+	public int partition(long hand, long[] combinations) {
+		int[] counts = new int[NUM_OF_RANKS];
+		long[] flushes = new long[2];
+		search(hand, counts, flushes);
+		int[] values = new int[NUM_OF_RANKS];
+		int n = 0;
+		long rest = hand;
+		for (long flush : flushes) {
+			if (flush != 0) {
+				values[n] = BigTwoRules.evaluate(flush);
+				combinations[n++] = flush;
+				rest &= ~flush;
+			}
+		}
+		int key = countRanks(rest, counts);
+		while (key != 0) {
+			int data = solve(counts, key);
+			for (int i = 0; i < 2 && key != 0; i++) {
+				int part = (i == 0) ? data & HAND_MASK : (data >>> SECOND_SHIFT) & HAND_MASK;
+				long combination = combinationOf(rest, part);
+				// a straight may happen to be a straight flush
+				int type = part >>> TYPE_SHIFT;
+				values[n] = (type == BigTwoRules.STRAIGHT) ? BigTwoRules.evaluate(combination)
+						: type << 6 | BigTwoRules.topCard(combination);
+				combinations[n++] = combination;
+				rest &= ~combination;
+				key = remove(counts, key, combination);
+			}
+		}
+		// sorts the hands by their values
+		for (int i = 1; i < n; i++) {
+			long combination = combinations[i];
+			int value = values[i];
+			int j = i - 1;
+			while (j >= 0 && values[j] > value) {
+				combinations[j + 1] = combinations[j];
+				values[j + 1] = values[j];
+				j--;
+			}
+			combinations[j + 1] = combination;
+			values[j + 1] = value;
+		}
+		return n;
+	}
+
+	/**
+	 * a method for finding the cost of the best partition of a set of cards, i.e. 14 times the number
+	 * of hands plus the number of singles, so that a lower cost is a better partition.
+	 * @param hand the set of cards
+	 * @return the cost of the best partition
+	 */
+	public int cost(long hand) {
+		return search(hand, new int[NUM_OF_RANKS], null);
+	}
+
+	/**
+	 * a method for counting the hands of the best partition of a set of cards.
+	 * @param hand the set of cards
+	 * @return the number of hands
+	 */
+	public int countCombinations(long hand) {
+		return (cost(hand) + COMBINATION - 1) / COMBINATION;
+	}
+
+	/**
+	 * Returns the cost of the best partition of the cards, trying no flush, one flush and two flushes.
+	 * The flushes of the best partition are stored in the specified array, unless it is null.
+	 */
+	private int search(long hand, int[] counts, long[] flushes) {
+		int key = countRanks(hand, counts);
+		int best = solve(counts, key) >>> COST_SHIFT;
+		for (int suit = 0; suit < 4; suit++) {
+			long suited = hand & (DIAMONDS << suit);
+			if (Long.bitCount(suited) < 5) {
+				continue;
+			}
+			int end = 1 << Long.bitCount(suited);
+			for (int subset = 0x1F; subset < end; subset = nextSubset(subset)) {
+				long flush = select(suited, subset);
+				long rest = hand & ~flush;
+				int restKey = remove(counts, key, flush);
+				int cost = COMBINATION + (solve(counts, restKey) >>> COST_SHIFT);
+				if (cost < best) {
+					best = cost;
+					if (flushes != null) {
+						flushes[0] = flush;
+						flushes[1] = 0;
+					}
+				}
+				// the second flush is of the same suit or a higher one
+				for (int second = suit; second < 4; second++) {
+					long secondSuited = rest & (DIAMONDS << second);
+					if (Long.bitCount(secondSuited) < 5) {
+						continue;
+					}
+					int secondEnd = 1 << Long.bitCount(secondSuited);
+					for (int secondSubset = 0x1F; secondSubset < secondEnd; secondSubset = nextSubset(secondSubset)) {
+						long secondFlush = select(secondSuited, secondSubset);
+						// each pair of flushes of the same suit is tried once
+						if (second == suit && secondFlush < flush) {
+							continue;
+						}
+						cost = 2 * COMBINATION + (solve(counts, remove(counts, restKey, secondFlush)) >>> COST_SHIFT);
+						restore(counts, secondFlush);
+						if (cost < best) {
+							best = cost;
+							if (flushes != null) {
+								flushes[0] = flush;
+								flushes[1] = secondFlush;
+							}
+						}
+					}
+				}
+				restore(counts, flush);
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Takes the cards out of the rank counts, and returns the key of the counts left.
+	 */
+	private static int remove(int[] counts, int key, long cards) {
+		for (; cards != 0; cards &= cards - 1) {
+			int rank = Long.numberOfTrailingZeros(cards) >> 2;
+			counts[rank]--;
+			key -= WEIGHTS[rank];
+		}
+		return key;
+	}
+
+	/**
+	 * Puts the cards back into the rank counts.
+	 */
+	private static void restore(int[] counts, long cards) {
+		for (; cards != 0; cards &= cards - 1) {
+			counts[Long.numberOfTrailingZeros(cards) >> 2]++;
+		}
+	}
+
+	/**
+	 * Returns the data of the best partition of the rank-count vector with the specified key: its cost,
+	 * and the type and the ranks of its hand holding the lowest rank. The counts are restored on return.
+	 */
+	private int solve(int[] counts, int key) {
+		if (key == 0) {
+			return 0;
+		}
+		int i = (key * 0x9E3779B9 >>> 7) & mask;
+		long entry = table.get(i);
+		if ((int) (entry >>> KEY_SHIFT) == key) {
+			return (int) entry;
+		}
+		int low = 0;
+		while (counts[low] == 0) {
+			low++;
+		}
+		int best = Integer.MAX_VALUE;
+		int count = counts[low];
+		// a single, a pair or a triple of the lowest rank
+		for (int size = 1; size <= Math.min(count, 3); size++) {
+			counts[low] -= size;
+			int rest = solve(counts, key - size * WEIGHTS[low]);
+			counts[low] += size;
+			best = better(best, (size == 1) ? 1 : 0, rest, size - 1, low, 0);
+		}
+		// a straight starting from the lowest rank
+		if (low + 5 <= NUM_OF_RANKS && counts[low + 1] > 0 && counts[low + 2] > 0 && counts[low + 3] > 0
+				&& counts[low + 4] > 0) {
+			int straightKey = key;
+			for (int rank = low; rank < low + 5; rank++) {
+				counts[rank]--;
+				straightKey -= WEIGHTS[rank];
+			}
+			int rest = solve(counts, straightKey);
+			for (int rank = low; rank < low + 5; rank++) {
+				counts[rank]++;
+			}
+			best = better(best, 0, rest, BigTwoRules.STRAIGHT, low, 0);
+		}
+		for (int other = low + 1; other < NUM_OF_RANKS; other++) {
+			int otherCount = counts[other];
+			if (otherCount == 0) {
+				continue;
+			}
+			// a full house of a triple of the lowest rank and a pair of another rank
+			if (count >= 3 && otherCount >= 2) {
+				best = better(best, 0, solveRest(counts, key, low, 3, other, 2), BigTwoRules.FULL_HOUSE, low, other);
+			}
+			// a full house of a triple of another rank and a pair of the lowest rank
+			if (count >= 2 && otherCount >= 3) {
+				best = better(best, 0, solveRest(counts, key, other, 3, low, 2), BigTwoRules.FULL_HOUSE, other, low);
+			}
+			// a quad of the lowest rank with a card of another rank
+			if (count == 4) {
+				best = better(best, 0, solveRest(counts, key, low, 4, other, 1), BigTwoRules.QUAD, low, other);
+			}
+			// a quad of another rank with a card of the lowest rank
+			if (otherCount == 4) {
+				best = better(best, 0, solveRest(counts, key, other, 4, low, 1), BigTwoRules.QUAD, other, low);
+			}
+		}
+		table.set(i, (long) key << KEY_SHIFT | best);
+		return best;
+	}
+
+	/**
+	 * Returns the data of the best partition of the rest of the cards after a hand of two ranks.
+	 */
+	private int solveRest(int[] counts, int key, int rank, int size, int other, int otherSize) {
+		counts[rank] -= size;
+		counts[other] -= otherSize;
+		int rest = solve(counts, key - size * WEIGHTS[rank] - otherSize * WEIGHTS[other]);
+		counts[rank] += size;
+		counts[other] += otherSize;
+		return rest;
+	}
+
+	/**
+	 * Returns the data of the better of the best partition so far and the partition made of a hand and
+	 * the best partition of the rest of the cards.
+	 */
+	private static int better(int best, int extraCost, int rest, int type, int rank, int other) {
+		int cost = COMBINATION + extraCost + (rest >>> COST_SHIFT);
+		if (cost < best >>> COST_SHIFT) {
+			return cost << COST_SHIFT | (rest & HAND_MASK) << SECOND_SHIFT | type << TYPE_SHIFT | rank << RANK_SHIFT
+					| other;
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the highest cards of the set forming the hand of the specified type and ranks.
+	 */
+	private static long combinationOf(long hand, int part) {
+		int type = part >>> TYPE_SHIFT;
+		int rank = (part >>> RANK_SHIFT) & 0xF;
+		int other = part & 0xF;
+		switch (type) {
+		case BigTwoRules.STRAIGHT:
+			long straight = 0;
+			for (int i = rank; i < rank + 5; i++) {
+				straight |= take(hand, i, 1);
+			}
+			return straight;
+		case BigTwoRules.FULL_HOUSE:
+			return take(hand, rank, 3) | take(hand, other, 2);
+		case BigTwoRules.QUAD:
+			return take(hand, rank, 4) | take(hand, other, 1);
+		default:
+			// a single, a pair or a triple
+			return take(hand, rank, type + 1);
+		}
+	}
+
+	/**
+	 * Fills the count of every rank of the cards, and returns the key of the rank-count vector.
+	 */
+	private static int countRanks(long hand, int[] counts) {
+		int key = 0;
+		for (int rank = 0; rank < NUM_OF_RANKS; rank++) {
+			counts[rank] = Long.bitCount((hand >>> (rank * 4)) & 0xF);
+			key += counts[rank] * WEIGHTS[rank];
+		}
+		return key;
+	}
+
+	/**
+	 * Returns the highest cards of the specified rank.
+	 */
+	private static long take(long hand, int rank, int size) {
+		long cards = (hand >>> (rank * 4)) & 0xF;
+		while (Long.bitCount(cards) > size) {
+			cards &= cards - 1;
+		}
+		return cards << (rank * 4);
+	}
+
+	/**
+	 * Returns the cards of a set whose positions in the set, from the lowest card, are set in the subset.
+	 */
+	private static long select(long cards, int subset) {
+		long mask = 0;
+		for (; subset != 0; subset >>>= 1, cards &= cards - 1) {
+			if ((subset & 1) != 0) {
+				mask |= cards & -cards;
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * Returns the next larger number with as many bits set (Gosper's hack).
+	 */
+	private static int nextSubset(int subset) {
+		int lowest = subset & -subset;
+		int ripple = subset + lowest;
+		return (((ripple ^ subset) >>> 2) / lowest) | ripple;
+	}
+}
@@ -0,0 +1,122 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongConsumer;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * The HintService class is used to recommend moves to the local player of a BigTwoTable. The moves are
+ * searched by a BigTwoBot on a background thread, never on the event dispatch thread, and the hints
+ * are delivered on the event dispatch thread. A hint is prepared as soon as the turn of the player
+ * starts, so that it is usually ready when the Hint button is pressed, and the hints of recent states
+ * are cached, so that pressing the button again answers at once. A search is cancelled when a new move
+ * changes the state.
+ *
+ * @author Kwok Chun Yu
+ */
+public class HintService {
+
+	// number of states whose hints are cached
+	private static final int CACHE_SIZE = 64;
+
+	private final BigTwoBot bot;
+	private final ExecutorService executor;
+	private final Map<BigTwoState, Long> cache = new LinkedHashMap<BigTwoState, Long>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<BigTwoState, Long> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+	private Future<?> pending;
+	private BigTwoState pendingState;
+	private LongConsumer pendingCallback;
+
+	/**
+	 * a constructor for creating a hint service searching for the specified time per hint.
+	 * @param timeBudgetMillis the time to search per hint in milliseconds
+	 */
+	public HintService(long timeBudgetMillis) {
+		bot = new BigTwoBot(timeBudgetMillis, 1);
+		executor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "hint");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * a method for starting to search for the hint of the specified state in the background, unless it
+	 * is cached or being searched already.
+	 * @param state the state, whose current player is the local player
+	 */
+	public synchronized void prepare(BigTwoState state) {
+		if (cache.containsKey(state) || state.equals(pendingState)) {
+			return;
+		}
+		cancel();
+		submit(state);
+	}
+
+	/**
+	 * a method for requesting the hint of the specified state. The callback is called on the event
+	 * dispatch thread, at once if the hint is cached, or when the search ends unless it is cancelled.
+	 * @param state the state, whose current player is the local player
+	 * @param callback the callback receiving the recommended move (BigTwoState.PASS for a pass)
+	 */
+	public synchronized void request(BigTwoState state, LongConsumer callback) {
+		Long move = cache.get(state);
+		if (move != null) {
+			SwingUtilities.invokeLater(() -> callback.accept(move));
+			return;
+		}
+		if (!state.equals(pendingState)) {
+			cancel();
+			submit(state);
+		}
+		pendingCallback = callback;
+	}
+
+	/**
+	 * a method for cancelling the search in progress, if any. Its callback is never called.
+	 */
+	public synchronized void cancel() {
+		if (pending != null) {
+			pending.cancel(true);
+		}
+		pending = null;
+		pendingState = null;
+		pendingCallback = null;
+	}
+
+	private void submit(BigTwoState state) {
+		BigTwoState key = new BigTwoState(state);
+		pendingState = key;
+		pending = executor.submit(() -> {
+			BigTwoState searched = new BigTwoState(key);
+			long[] moves = new long[BigTwoState.MAX_MOVES];
+			long move = bot.chooseMove(searched, moves, searched.generateMoves(moves), ThreadLocalRandom.current());
+			searched(key, move);
+		});
+	}
+
+	private synchronized void searched(BigTwoState key, long move) {
+		// a cancelled search may have been cut short
+		if (key != pendingState) {
+			return;
+		}
+		cache.put(key, move);
+		LongConsumer callback = pendingCallback;
+		pending = null;
+		pendingState = null;
+		pendingCallback = null;
+		if (callback != null) {
+			SwingUtilities.invokeLater(() -> callback.accept(move));
+		}
+	}
+}
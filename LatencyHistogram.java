@@ -0,0 +1,153 @@
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is used to model a concurrent histogram of latencies. Latencies
+ * are recorded in nanoseconds into power-of-two buckets, so that recording a
+ * sample is a few striped increments and never blocks the recording thread.
+ * 
+ * @author Kwok Chun Yu
+ *
+ */
+public class LatencyHistogram {
+	/**
+	 * The number of buckets. Bucket i holds the samples in the range [2^(i-1),
+	 * 2^i) nanoseconds, and the last bucket holds all samples above about 1.1
+	 * seconds.
+	 */
+	public static final int NUM_OF_BUCKETS = 32;
+
+	private final LongAdder[] buckets = new LongAdder[NUM_OF_BUCKETS];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Creates and returns an instance of the LatencyHistogram class.
+	 */
+	public LatencyHistogram() {
+		for (int i = 0; i < NUM_OF_BUCKETS; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Records the specified latency.
+	 * 
+	 * @param nanos
+	 *            the latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		buckets[bucketOf(nanos)].increment();
+		count.increment();
+		sum.add(nanos);
+		max.accumulate(nanos);
+	}
+
+	/**
+	 * Returns the index of the bucket holding the specified latency.
+	 * 
+	 * @param nanos
+	 *            the latency in nanoseconds
+	 * @return the index of the bucket holding the specified latency
+	 */
+	static int bucketOf(long nanos) {
+		return Math.min(64 - Long.numberOfLeadingZeros(nanos),
+				NUM_OF_BUCKETS - 1);
+	}
+
+	/**
+	 * Returns the upper bound (exclusive) of the specified bucket in
+	 * nanoseconds, or Long.MAX_VALUE for the last bucket.
+	 * 
+	 * @param bucket
+	 *            the index of the bucket
+	 * @return the upper bound of the specified bucket in nanoseconds
+	 */
+	public static long upperBoundOf(int bucket) {
+		return (bucket == NUM_OF_BUCKETS - 1) ? Long.MAX_VALUE : 1L << bucket;
+	}
+
+	/**
+	 * Returns the number of samples recorded.
+	 * 
+	 * @return the number of samples recorded
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Returns the sum of all the samples recorded in nanoseconds.
+	 * 
+	 * @return the sum of all the samples recorded in nanoseconds
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+
+	/**
+	 * Returns the largest sample recorded in nanoseconds.
+	 * 
+	 * @return the largest sample recorded in nanoseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the mean of the samples recorded in nanoseconds.
+	 * 
+	 * @return the mean of the samples recorded in nanoseconds, or 0 if no
+	 *         sample has been recorded
+	 */
+	public double getMean() {
+		long n = getCount();
+		return (n == 0) ? 0 : (double) getSum() / n;
+	}
+
+	/**
+	 * Returns a snapshot of the number of samples in each bucket.
+	 * 
+	 * @return a snapshot of the number of samples in each bucket
+	 */
+	public long[] getBucketCounts() {
+		long[] counts = new long[NUM_OF_BUCKETS];
+		for (int i = 0; i < NUM_OF_BUCKETS; i++) {
+			counts[i] = buckets[i].sum();
+		}
+		return counts;
+	}
+
+	/**
+	 * Returns an estimate of the specified quantile. The estimate is the upper
+	 * bound of the bucket containing the quantile, so it is accurate to within
+	 * a factor of two.
+	 * 
+	 * @param q
+	 *            the quantile, between 0 and 1
+	 * @return an estimate of the specified quantile in nanoseconds
+	 */
+	public long getQuantile(double q) {
+		long[] counts = getBucketCounts();
+		long total = 0;
+		for (long c : counts) {
+			total += c;
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long target = (long) Math.ceil(q * total);
+		long seen = 0;
+		for (int i = 0; i < NUM_OF_BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= target && counts[i] > 0) {
+				return Math.min(upperBoundOf(i), getMax());
+			}
+		}
+		return getMax();
+	}
+}
@@ -0,0 +1,362 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * This class is used to form tables of four players out of a pool of waiting
+ * players, so that the players at a table have close ratings. A player first
+ * accepts opponents within a small tolerance of their rating, and the
+ * tolerance widens the longer they wait, so that nobody waits forever. Every
+ * two players at a table accept each other. Among the opponents accepted, the
+ * closest in rating are chosen, the ones with the smallest round-trip time to
+ * the server breaking the ties.
+ * <p>
+ * The players are kept in buckets of ratings, each in order of arrival, and
+ * the players due for an attempt to form a table in a priority queue ordered
+ * by time. A player is tried on arrival and again whenever their tolerance has
+ * widened by a bucket, and an attempt only looks at the buckets within that
+ * tolerance, and at the first players of each. The cost of a round of matching
+ * therefore depends on the number of players tried, not on the number of
+ * players waiting.
+ * <p>
+ * A matchmaker is not thread-safe: it is meant to be used by one thread, such
+ * as the actor of a lobby (see TableActor).
+ *
+ * @param <T>
+ *            the type of the handles of the players, e.g. their connections
+ *
+ * @author Kwok Chun Yu
+ *
+ */
+public class Matchmaker<T> {
+	/**
+	 * The number of players at a table.
+	 */
+	public static final int TABLE_SIZE = 4;
+
+	// the highest rating with a bucket of its own (see PlayerRatings)
+	private static final double MAX_RATING = 4000;
+	// the number of players looked at in a bucket by one attempt
+	private static final int MAX_CANDIDATES_PER_BUCKET = 16;
+
+	private final double bucketWidth;
+	private final double initialTolerance;
+	private final double tolerancePerSecond;
+	private final double maxTolerance;
+	private final Bucket<T>[] buckets;
+	private final Map<T, Entry<T>> entries = new HashMap<T, Entry<T>>();
+	private final PriorityQueue<Entry<T>> due = new PriorityQueue<Entry<T>>(
+			(a, b) -> Long.compare(a.nextAttempt, b.nextAttempt));
+	// the candidates and the players chosen by the current attempt, reused by
+	// every attempt
+	private final ArrayList<Entry<T>> candidates = new ArrayList<Entry<T>>();
+	private final ArrayList<Entry<T>> chosen = new ArrayList<Entry<T>>();
+
+	/*
+	 * a waiting player.
+	 */
+	private static class Entry<T> {
+		private final T player;
+		private final double rating;
+		private final double roundTrip;
+		private final long arrival;
+		private final int bucket;
+		private long nextAttempt;
+		private boolean removed;
+		private Entry<T> prev;
+		private Entry<T> next;
+
+		private Entry(T player, double rating, double roundTrip, long arrival,
+				int bucket) {
+			this.player = player;
+			this.rating = rating;
+			this.roundTrip = roundTrip;
+			this.arrival = arrival;
+			this.bucket = bucket;
+		}
+	}
+
+	/*
+	 * the players of a bucket in order of arrival, in a doubly linked list so
+	 * that a player leaves in constant time.
+	 */
+	private static class Bucket<T> {
+		private Entry<T> head;
+		private Entry<T> tail;
+
+		void add(Entry<T> entry) {
+			entry.prev = tail;
+			if (tail == null) {
+				head = entry;
+			} else {
+				tail.next = entry;
+			}
+			tail = entry;
+		}
+
+		void remove(Entry<T> entry) {
+			if (entry.prev == null) {
+				head = entry.next;
+			} else {
+				entry.prev.next = entry.next;
+			}
+			if (entry.next == null) {
+				tail = entry.prev;
+			} else {
+				entry.next.prev = entry.prev;
+			}
+			entry.prev = null;
+			entry.next = null;
+		}
+	}
+
+	/**
+	 * Creates and returns a matchmaker.
+	 *
+	 * @param bucketWidth
+	 *            the range of ratings of a bucket
+	 * @param initialTolerance
+	 *            the largest difference of ratings accepted by a player who
+	 *            has just arrived
+	 * @param tolerancePerSecond
+	 *            the widening of the tolerance per second of waiting
+	 * @param maxTolerance
+	 *            the largest tolerance
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public Matchmaker(double bucketWidth, double initialTolerance,
+			double tolerancePerSecond, double maxTolerance) {
+		this.bucketWidth = bucketWidth;
+		this.initialTolerance = initialTolerance;
+		this.tolerancePerSecond = tolerancePerSecond;
+		this.maxTolerance = Math.max(initialTolerance, maxTolerance);
+		buckets = new Bucket[(int) Math.ceil(MAX_RATING / bucketWidth) + 1];
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new Bucket<T>();
+		}
+	}
+
+	/**
+	 * Creates and returns a matchmaker with buckets of 25 points, and a
+	 * tolerance of 50 points widening by 10 points per second up to 400
+	 * points.
+	 */
+	public Matchmaker() {
+		this(25, 50, 10, 400);
+	}
+
+	/**
+	 * Adds a player to the pool. The player is tried at the next call to
+	 * match().
+	 *
+	 * @param player
+	 *            the handle of the player
+	 * @param rating
+	 *            the rating of the player (see PlayerRatings)
+	 * @param roundTrip
+	 *            the round-trip time of the player to the server in
+	 *            milliseconds, or a negative number if unknown
+	 * @param now
+	 *            the current time in milliseconds
+	 * @return false if the player is already waiting; true otherwise
+	 */
+	public boolean add(T player, double rating, double roundTrip, long now) {
+		if (entries.containsKey(player)) {
+			return false;
+		}
+		Entry<T> entry = new Entry<T>(player, rating,
+				(roundTrip < 0) ? Double.MAX_VALUE : roundTrip, now,
+				bucketOf(rating));
+		entries.put(player, entry);
+		buckets[entry.bucket].add(entry);
+		entry.nextAttempt = now;
+		due.add(entry);
+		return true;
+	}
+
+	/**
+	 * Removes a player from the pool, e.g. when the player disconnects.
+	 *
+	 * @param player
+	 *            the handle of the player
+	 * @return true if the player was waiting; false otherwise
+	 */
+	public boolean remove(T player) {
+		Entry<T> entry = entries.remove(player);
+		if (entry == null) {
+			return false;
+		}
+		buckets[entry.bucket].remove(entry);
+		// the entry leaves the priority queue when it is due
+		entry.removed = true;
+		return true;
+	}
+
+	/**
+	 * Returns the number of players waiting.
+	 *
+	 * @return the number of players waiting
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of milliseconds the specified player has waited.
+	 *
+	 * @param player
+	 *            the handle of the player
+	 * @param now
+	 *            the current time in milliseconds
+	 * @return the time waited in milliseconds, or -1 if the player is not
+	 *         waiting
+	 */
+	public long getWaitingTime(T player, long now) {
+		Entry<T> entry = entries.get(player);
+		return (entry == null) ? -1 : now - entry.arrival;
+	}
+
+	/**
+	 * Tries the players due for an attempt, the earliest first, and forms
+	 * tables of the players matched. The players at a table leave the pool.
+	 *
+	 * @param now
+	 *            the current time in milliseconds
+	 * @return the tables formed, each holding the handles of its players with
+	 *         the player tried first
+	 */
+	public List<List<T>> match(long now) {
+		return match(now, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Tries the players due for an attempt, the earliest first, and forms at
+	 * most the specified number of tables of the players matched, e.g. as
+	 * many as there are empty tables. The players at a table leave the pool.
+	 *
+	 * @param now
+	 *            the current time in milliseconds
+	 * @param maxTables
+	 *            the maximum number of tables formed
+	 * @return the tables formed, each holding the handles of its players with
+	 *         the player tried first
+	 */
+	public List<List<T>> match(long now, int maxTables) {
+		List<List<T>> tables = new ArrayList<List<T>>();
+		Entry<T> entry;
+		while (tables.size() < maxTables && (entry = due.peek()) != null
+				&& entry.nextAttempt <= now) {
+			due.poll();
+			if (entry.removed) {
+				continue;
+			}
+			List<T> table = tryMatch(entry, now);
+			if (table != null) {
+				tables.add(table);
+			} else {
+				// tries again when the tolerance has widened by a bucket
+				entry.nextAttempt = now
+						+ (long) Math.ceil(bucketWidth * 1000
+								/ tolerancePerSecond);
+				due.add(entry);
+			}
+		}
+		return tables;
+	}
+
+	/**
+	 * Returns the largest difference of ratings accepted by a player.
+	 */
+	private double toleranceOf(Entry<T> entry, long now) {
+		return Math.min(maxTolerance, initialTolerance + tolerancePerSecond
+				* (now - entry.arrival) / 1000);
+	}
+
+	private int bucketOf(double rating) {
+		return (int) Math.max(0, Math.min(buckets.length - 1, rating
+				/ bucketWidth));
+	}
+
+	/**
+	 * Looks for the three players closest in rating to the specified player,
+	 * among the players accepting each other, from the nearest buckets
+	 * outwards, and forms a table of them if found. The candidates of a bucket
+	 * are taken in order of round-trip time, each one if it accepts and is
+	 * accepted by every player already chosen.
+	 *
+	 * @return the players of the table, or null if no table is formed
+	 */
+	private List<T> tryMatch(Entry<T> entry, long now) {
+		double tolerance = toleranceOf(entry, now);
+		int low = bucketOf(entry.rating - tolerance);
+		int high = bucketOf(entry.rating + tolerance);
+		chosen.clear();
+		chosen.add(entry);
+		for (int distance = 0; chosen.size() < TABLE_SIZE
+				&& (entry.bucket - distance >= low
+						|| entry.bucket + distance <= high); distance++) {
+			// the candidates of the nearer buckets are chosen first, those of
+			// the further buckets are not as close
+			candidates.clear();
+			addCandidates(entry, entry.bucket - distance, low, high,
+					tolerance, now);
+			if (distance > 0) {
+				addCandidates(entry, entry.bucket + distance, low, high,
+						tolerance, now);
+			}
+			candidates.sort((a, b) -> Double.compare(a.roundTrip, b.roundTrip));
+			for (int i = 0; i < candidates.size()
+					&& chosen.size() < TABLE_SIZE; i++) {
+				if (acceptsChosen(candidates.get(i), now)) {
+					chosen.add(candidates.get(i));
+				}
+			}
+		}
+		if (chosen.size() < TABLE_SIZE) {
+			return null;
+		}
+		List<T> table = new ArrayList<T>(TABLE_SIZE);
+		for (Entry<T> player : chosen) {
+			table.add(player.player);
+			remove(player.player);
+		}
+		return table;
+	}
+
+	/**
+	 * Adds the players of a bucket who are within the tolerance of the player
+	 * being tried and whose own tolerance accepts that player.
+	 */
+	private void addCandidates(Entry<T> entry, int bucket, int low, int high,
+			double tolerance, long now) {
+		if (bucket < low || bucket > high) {
+			return;
+		}
+		int n = 0;
+		for (Entry<T> other = buckets[bucket].head; other != null
+				&& n < MAX_CANDIDATES_PER_BUCKET; other = other.next, n++) {
+			double difference = Math.abs(other.rating - entry.rating);
+			if (other != entry && difference <= tolerance
+					&& difference <= toleranceOf(other, now)) {
+				candidates.add(other);
+			}
+		}
+	}
+
+	/**
+	 * Returns whether a candidate and every player already chosen accept each
+	 * other.
+	 */
+	private boolean acceptsChosen(Entry<T> candidate, long now) {
+		double tolerance = toleranceOf(candidate, now);
+		for (Entry<T> player : chosen) {
+			double difference = Math.abs(player.rating - candidate.rating);
+			if (difference > tolerance || difference > toleranceOf(player, now)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,25 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * This class is used to model a JFR event recorded when the server dispatches
+ * a message in parseMessage(). The duration includes the time spent waiting
+ * for the server lock.
+ * 
+ * @author Kwok Chun Yu
+ *
+ */
+@Name("bigtwo.MessageDispatched")
+@Label("Message Dispatched")
+@Category({ "Big Two", "Network" })
+@Description("A message is parsed and handled by the server")
+public class MessageDispatchedEvent extends Event {
+	@Label("Message Type")
+	int messageType;
+
+	@Label("Player ID")
+	int playerID;
+}
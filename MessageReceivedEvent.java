@@ -0,0 +1,30 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * This class is used to model a JFR event recorded when the server receives
+ * and decodes a message from a client. The duration covers the decoding of the
+ * message only, not the time spent waiting for it to arrive.
+ * 
+ * @author Kwok Chun Yu
+ *
+ */
+@Name("bigtwo.MessageReceived")
+@Label("Message Received")
+@Category({ "Big Two", "Network" })
+@Description("A message is received and decoded by a client handler of the server")
+public class MessageReceivedEvent extends Event {
+	@Label("Message Type")
+	int messageType;
+
+	@Label("Bytes")
+	@DataAmount
+	long bytes;
+
+	@Label("Remote Address")
+	String remoteAddress;
+}
@@ -0,0 +1,80 @@
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This class is used to model a buffered input stream which counts the number
+ * of bytes read through it.
+ * 
+ * @author Kwok Chun Yu
+ *
+ */
+public class MeteredInputStream extends FilterInputStream {
+	// total number of bytes read so far
+	private volatile long byteCount = 0;
+
+	/**
+	 * Creates and returns an instance of the MeteredInputStream class.
+	 * 
+	 * @param in
+	 *            the underlying input stream (e.g. of a socket)
+	 */
+	public MeteredInputStream(InputStream in) {
+		super(new BufferedInputStream(in));
+	}
+
+	/**
+	 * Blocks until at least one byte can be read without blocking. This allows
+	 * callers to separate the idle time spent waiting for a message from the
+	 * time spent decoding it.
+	 * 
+	 * @throws EOFException
+	 *             if the end of the stream has been reached
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void awaitData() throws IOException {
+		in.mark(1);
+		if (in.read() < 0) {
+			throw new EOFException();
+		}
+		in.reset();
+	}
+
+	/**
+	 * Returns the total number of bytes read through this stream.
+	 * 
+	 * @return the total number of bytes read through this stream
+	 */
+	public long getByteCount() {
+		return byteCount;
+	}
+
+	public int read() throws IOException {
+		int b = in.read();
+		if (b >= 0) {
+			byteCount++;
+		}
+		return b;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = in.read(b, off, len);
+		if (n > 0) {
+			byteCount += n;
+		}
+		return n;
+	}
+
+	public long skip(long n) throws IOException {
+		long skipped = in.skip(n);
+		byteCount += skipped;
+		return skipped;
+	}
+
+	public boolean markSupported() {
+		return false;
+	}
+}
@@ -0,0 +1,44 @@
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This class is used to model an output stream which counts the number of
+ * bytes written through it.
+ * 
+ * @author Kwok Chun Yu
+ *
+ */
+public class MeteredOutputStream extends FilterOutputStream {
+	// total number of bytes written so far
+	private volatile long byteCount = 0;
+
+	/**
+	 * Creates and returns an instance of the MeteredOutputStream class.
+	 * 
+	 * @param out
+	 *            the underlying output stream (e.g. of a socket)
+	 */
+	public MeteredOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	/**
+	 * Returns the total number of bytes written through this stream.
+	 * 
+	 * @return the total number of bytes written through this stream
+	 */
+	public long getByteCount() {
+		return byteCount;
+	}
+
+	public void write(int b) throws IOException {
+		out.write(b);
+		byteCount++;
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		byteCount += len;
+	}
+}
@@ -0,0 +1,508 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TreeSet;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class is used to model the persistent Elo ratings of the players of a
+ * card game server. The results of the games are submitted to a queue and
+ * applied in batches by a background thread, so that the end of a game never
+ * waits on the rating file.
+ * <p>
+ * The ratings are stored in a file of fixed-size records, one per player, in
+ * the order the players are first seen. A record is:
+ *
+ * <pre>
+ * short length     length of the UTF-8 name
+ * ...   name       UTF-8 name, padded to MAX_NAME_LENGTH bytes
+ * double rating
+ * int   games      number of games played
+ * int   wins       number of games won
+ * long  lastPlayed milliseconds since the epoch
+ * </pre>
+ *
+ * All the records are loaded at start-up into an in-memory index: a tree
+ * ordered by rating for the top-N queries, and a Fenwick tree counting the
+ * players per rating bucket of width 1 / BUCKETS_PER_POINT for the rank
+ * queries. Both queries take O(log n) time (plus N for the top N).
+ *
+ * @author Kwok Chun Yu
+ *
+ */
+public class PlayerRatings implements PlayerRatingsMBean {
+	/** The rating of a new player. */
+	public static final double INITIAL_RATING = 1500;
+	/** The maximum change of the rating of a player in a game. */
+	public static final double K_FACTOR = 32;
+	/** The maximum number of bytes of the UTF-8 name of a player. */
+	public static final int MAX_NAME_LENGTH = 38;
+	/** The size of a record in bytes. */
+	public static final int RECORD_SIZE = 2 + MAX_NAME_LENGTH + 8 + 4 + 4 + 8;
+
+	// the ratings are bucketed in [0, MAX_RATING) for the rank queries
+	private static final int MAX_RATING = 4000;
+	private static final int BUCKETS_PER_POINT = 10;
+	private static final int NUM_OF_BUCKETS = MAX_RATING * BUCKETS_PER_POINT;
+	// maximum number of results applied in one batch
+	private static final int MAX_BATCH_SIZE = 1024;
+
+	private final FileChannel channel;
+	private final LinkedBlockingQueue<GameResult> queue = new LinkedBlockingQueue<GameResult>();
+	private final Thread updater;
+
+	// the index, guarded by this
+	private final HashMap<String, Integer> ids = new HashMap<String, Integer>();
+	private String[] names = new String[1024];
+	private double[] ratings = new double[1024];
+	private int[] games = new int[1024];
+	private int[] wins = new int[1024];
+	private long[] lastPlayed = new long[1024];
+	private int numOfPlayers = 0;
+	private final TreeSet<Integer> ranking = new TreeSet<Integer>(
+			(Integer a, Integer b) -> {
+				int c = Double.compare(ratings[b], ratings[a]);
+				return (c != 0) ? c : Integer.compare(a, b);
+			});
+	private final int[] bucketCounts = new int[NUM_OF_BUCKETS + 1];
+
+	/**
+	 * This class is used to model the standing of a player in the
+	 * leaderboard.
+	 */
+	public static class Standing {
+		/** The rank of the player, starting from 1. */
+		public final int rank;
+		/** The name of the player. */
+		public final String name;
+		/** The rating of the player. */
+		public final double rating;
+		/** The number of games played. */
+		public final int games;
+		/** The number of games won. */
+		public final int wins;
+
+		private Standing(int rank, String name, double rating, int games,
+				int wins) {
+			this.rank = rank;
+			this.name = name;
+			this.rating = rating;
+			this.games = games;
+			this.wins = wins;
+		}
+
+		/**
+		 * Returns a string representation of this standing.
+		 *
+		 * @return a string representation of this standing
+		 */
+		public String toString() {
+			return String.format("%d %s %.1f %d %d", rank, name, rating, games,
+					wins);
+		}
+	}
+
+	// the result of a game waiting to be applied
+	private static class GameResult {
+		final String[] names;
+		final int[] cardsLeft;
+		final long time;
+
+		GameResult(String[] names, int[] cardsLeft, long time) {
+			this.names = names;
+			this.cardsLeft = cardsLeft;
+			this.time = time;
+		}
+	}
+
+	/**
+	 * Creates and returns an instance of the PlayerRatings class, loading the
+	 * ratings in the specified file, and starts the thread applying the
+	 * results of the games.
+	 *
+	 * @param file
+	 *            the rating file, created if it does not exist
+	 * @throws IOException
+	 *             if the file cannot be opened or read
+	 */
+	public PlayerRatings(File file) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		load();
+
+		updater = new Thread(new Runnable() {
+			public void run() {
+				ArrayList<GameResult> batch = new ArrayList<GameResult>();
+				while (true) {
+					try {
+						batch.add(queue.take());
+					} catch (InterruptedException ex) {
+						break;
+					}
+					queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+					try {
+						apply(batch);
+					} catch (IOException ex) {
+						ex.printStackTrace();
+					}
+					batch.clear();
+				}
+			}
+		}, "ratings-updater");
+		updater.setDaemon(true);
+		updater.start();
+	}
+
+	/**
+	 * Reads all the records of the rating file into the index. A partially
+	 * written record at the end of the file is ignored.
+	 */
+	private synchronized void load() throws IOException {
+		long n = channel.size() / RECORD_SIZE;
+		ByteBuffer buf = ByteBuffer.allocate(RECORD_SIZE * 1024);
+		long position = 0;
+		for (long i = 0; i < n;) {
+			buf.clear();
+			buf.limit((int) Math.min(buf.capacity(), (n - i) * RECORD_SIZE));
+			while (buf.hasRemaining()) {
+				if (channel.read(buf, position + buf.position()) < 0) {
+					throw new IOException("Unexpected end of the rating file");
+				}
+			}
+			position += buf.limit();
+			buf.flip();
+			while (buf.hasRemaining()) {
+				byte[] name = new byte[buf.getShort()];
+				int start = buf.position();
+				buf.get(name);
+				buf.position(start + MAX_NAME_LENGTH);
+				int id = addPlayer(new String(name, StandardCharsets.UTF_8));
+				ratings[id] = buf.getDouble();
+				games[id] = buf.getInt();
+				wins[id] = buf.getInt();
+				lastPlayed[id] = buf.getLong();
+				index(id);
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Submits the result of a game, which is applied later by the background
+	 * thread. This method never blocks.
+	 *
+	 * @param names
+	 *            the names of the players
+	 * @param cardsLeft
+	 *            the number of cards left to each player, 0 for the winner
+	 */
+	public void submit(String[] names, int[] cardsLeft) {
+		String[] truncated = new String[names.length];
+		for (int i = 0; i < names.length; i++) {
+			truncated[i] = (names[i] == null) ? null : truncate(names[i]);
+		}
+		queue.offer(new GameResult(truncated, cardsLeft.clone(), System
+				.currentTimeMillis()));
+	}
+
+	/**
+	 * Truncates a name to at most MAX_NAME_LENGTH bytes of UTF-8, keeping
+	 * whole characters.
+	 */
+	private static String truncate(String name) {
+		int length = name.length();
+		while (name.substring(0, length).getBytes(StandardCharsets.UTF_8).length > MAX_NAME_LENGTH) {
+			length--;
+		}
+		return name.substring(0, length);
+	}
+
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	/**
+	 * Applies a batch of results to the index, and then writes the records of
+	 * the players involved to the rating file without holding the lock.
+	 */
+	private void apply(ArrayList<GameResult> batch) throws IOException {
+		int[] dirty;
+		ByteBuffer buf;
+		synchronized (this) {
+			int numOfDirty = 0;
+			for (GameResult result : batch) {
+				numOfDirty += result.names.length;
+			}
+			dirty = new int[numOfDirty];
+			numOfDirty = 0;
+			for (GameResult result : batch) {
+				numOfDirty = update(result, dirty, numOfDirty);
+			}
+			dirty = Arrays.copyOf(dirty, numOfDirty);
+			Arrays.sort(dirty);
+			buf = ByteBuffer.allocate(dirty.length * RECORD_SIZE);
+			for (int i = 0; i < dirty.length; i++) {
+				if (i == 0 || dirty[i] != dirty[i - 1]) {
+					encode(dirty[i], buf);
+				}
+			}
+			buf.flip();
+		}
+		int previous = -1;
+		for (int i = 0; i < dirty.length; i++) {
+			if (dirty[i] != previous) {
+				previous = dirty[i];
+				buf.limit(buf.position() + RECORD_SIZE);
+				long position = (long) dirty[i] * RECORD_SIZE;
+				while (buf.hasRemaining()) {
+					position += channel.write(buf, position);
+				}
+			}
+		}
+		channel.force(false);
+	}
+
+	/**
+	 * Updates the ratings of the players of a game, and appends their IDs to
+	 * the array of dirty records. Every pair of players is scored as a game
+	 * of Elo, won by the player with fewer cards left.
+	 */
+	private int update(GameResult result, int[] dirty, int numOfDirty) {
+		int n = 0;
+		int[] players = new int[result.names.length];
+		int[] cardsLeft = new int[result.names.length];
+		for (int i = 0; i < result.names.length; i++) {
+			if (result.names[i] != null) {
+				Integer id = ids.get(result.names[i]);
+				players[n] = (id != null) ? id : addPlayer(result.names[i]);
+				cardsLeft[n++] = result.cardsLeft[i];
+			}
+		}
+		if (n < 2) {
+			return numOfDirty;
+		}
+		double[] delta = new double[n];
+		for (int i = 0; i < n; i++) {
+			for (int j = i + 1; j < n; j++) {
+				double expected = 1 / (1 + Math.pow(10,
+						(ratings[players[j]] - ratings[players[i]]) / 400));
+				double score = (cardsLeft[i] < cardsLeft[j]) ? 1
+						: (cardsLeft[i] > cardsLeft[j]) ? 0 : 0.5;
+				double change = K_FACTOR / (n - 1) * (score - expected);
+				delta[i] += change;
+				delta[j] -= change;
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			int id = players[i];
+			unindex(id);
+			ratings[id] += delta[i];
+			games[id]++;
+			if (cardsLeft[i] == 0) {
+				wins[id]++;
+			}
+			lastPlayed[id] = result.time;
+			index(id);
+			dirty[numOfDirty++] = id;
+		}
+		return numOfDirty;
+	}
+
+	/**
+	 * Adds a new player with the initial rating, without indexing it.
+	 */
+	private int addPlayer(String name) {
+		if (numOfPlayers == names.length) {
+			int capacity = numOfPlayers * 2;
+			names = Arrays.copyOf(names, capacity);
+			ratings = Arrays.copyOf(ratings, capacity);
+			games = Arrays.copyOf(games, capacity);
+			wins = Arrays.copyOf(wins, capacity);
+			lastPlayed = Arrays.copyOf(lastPlayed, capacity);
+		}
+		int id = numOfPlayers++;
+		names[id] = name;
+		ratings[id] = INITIAL_RATING;
+		ids.put(name, id);
+		return id;
+	}
+
+	/**
+	 * Encodes the record of the specified player.
+	 */
+	private void encode(int id, ByteBuffer buf) {
+		byte[] name = names[id].getBytes(StandardCharsets.UTF_8);
+		int start = buf.position();
+		buf.putShort((short) name.length);
+		buf.put(name);
+		buf.position(start + 2 + MAX_NAME_LENGTH);
+		buf.putDouble(ratings[id]);
+		buf.putInt(games[id]);
+		buf.putInt(wins[id]);
+		buf.putLong(lastPlayed[id]);
+	}
+
+	// returns the bucket of the specified rating, higher ratings first
+	private static int bucketOf(double rating) {
+		int bucket = (int) (rating * BUCKETS_PER_POINT);
+		return NUM_OF_BUCKETS - Math.max(0, Math.min(NUM_OF_BUCKETS - 1, bucket));
+	}
+
+	private void index(int id) {
+		ranking.add(id);
+		for (int i = bucketOf(ratings[id]); i <= NUM_OF_BUCKETS; i += i & -i) {
+			bucketCounts[i]++;
+		}
+	}
+
+	private void unindex(int id) {
+		if (ranking.remove(id)) {
+			for (int i = bucketOf(ratings[id]); i <= NUM_OF_BUCKETS; i += i & -i) {
+				bucketCounts[i]--;
+			}
+		}
+	}
+
+	/**
+	 * Registers this object as an MBean.
+	 *
+	 * @param serverName
+	 *            the name of the server, used in the name of the MBean
+	 */
+	public void register(String serverName) {
+		try {
+			MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("BigTwo:type=PlayerRatings,name="
+					+ ObjectName.quote(serverName));
+			if (!mbs.isRegistered(name)) {
+				mbs.registerMBean(this, name);
+			}
+		} catch (Exception ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	public synchronized int getNumOfPlayers() {
+		return ranking.size();
+	}
+
+	/**
+	 * Returns the rank of the specified player: 1 plus the number of players
+	 * rated higher, players in the same bucket of rating sharing the rank.
+	 *
+	 * @param name
+	 *            the name of the player
+	 * @return the rank of the player, or -1 if the player has no rating
+	 */
+	public synchronized int getRank(String name) {
+		Integer id = ids.get(truncate(name));
+		if (id == null || !ranking.contains(id)) {
+			return -1;
+		}
+		int higher = 0;
+		for (int i = bucketOf(ratings[id]) - 1; i > 0; i -= i & -i) {
+			higher += bucketCounts[i];
+		}
+		return higher + 1;
+	}
+
+	/**
+	 * Returns the standing of the specified player.
+	 *
+	 * @param name
+	 *            the name of the player
+	 * @return the standing of the player, or null if the player has no rating
+	 */
+	public synchronized Standing getStanding(String name) {
+		int rank = getRank(name);
+		if (rank < 0) {
+			return null;
+		}
+		int id = ids.get(truncate(name));
+		return new Standing(rank, names[id], ratings[id], games[id], wins[id]);
+	}
+
+	/**
+	 * Returns the standings of the top players.
+	 *
+	 * @param n
+	 *            the maximum number of players; a negative number is taken
+	 *            as 0
+	 * @return the standings of at most n players, highest rating first
+	 */
+	public synchronized ArrayList<Standing> getTop(int n) {
+		n = Math.max(n, 0);
+		ArrayList<Standing> top = new ArrayList<Standing>(Math.min(n,
+				ranking.size()));
+		int rank = 0;
+		int previousBucket = -1;
+		for (int id : ranking) {
+			if (top.size() == n) {
+				break;
+			}
+			int bucket = bucketOf(ratings[id]);
+			if (bucket != previousBucket) {
+				rank = top.size() + 1;
+				previousBucket = bucket;
+			}
+			top.add(new Standing(rank, names[id], ratings[id], games[id],
+					wins[id]));
+		}
+		return top;
+	}
+
+	public String[] topPlayers(int n) {
+		ArrayList<Standing> top = getTop(n);
+		String[] standings = new String[top.size()];
+		for (int i = 0; i < standings.length; i++) {
+			standings[i] = top.get(i).toString();
+		}
+		return standings;
+	}
+
+	public int rankOf(String name) {
+		return getRank(name);
+	}
+
+	/**
+	 * Returns the leaderboard in text format, one standing per line.
+	 *
+	 * @param n
+	 *            the maximum number of players
+	 * @return the leaderboard in text format
+	 */
+	public String dump(int n) {
+		StringBuilder sb = new StringBuilder();
+		for (Standing standing : getTop(n)) {
+			sb.append(standing).append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Stops the background thread and closes the rating file. The results not
+	 * yet applied are lost.
+	 *
+	 * @throws IOException
+	 *             if the file cannot be closed
+	 */
+	public void close() throws IOException {
+		updater.interrupt();
+		try {
+			updater.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+	}
+}
@@ -0,0 +1,40 @@
+/**
+ * The management interface of the PlayerRatings class, exposed through JMX.
+ * 
+ * @author Kwok Chun Yu
+ *
+ */
+public interface PlayerRatingsMBean {
+	/**
+	 * Returns the number of players with a rating.
+	 * 
+	 * @return the number of players with a rating
+	 */
+	public int getNumOfPlayers();
+
+	/**
+	 * Returns the number of results of games waiting to be applied.
+	 * 
+	 * @return the number of results waiting to be applied
+	 */
+	public int getQueueDepth();
+
+	/**
+	 * Returns the standings of the top players, one string per player of the
+	 * form "rank name rating games wins".
+	 * 
+	 * @param n
+	 *            the maximum number of players
+	 * @return the standings of at most n players, highest rating first
+	 */
+	public String[] topPlayers(int n);
+
+	/**
+	 * Returns the rank of the specified player.
+	 * 
+	 * @param name
+	 *            the name of the player
+	 * @return the rank of the player, or -1 if the player has no rating
+	 */
+	public int rankOf(String name);
+}
@@ -0,0 +1,207 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.Consumer;
+
+/**
+ * The RecordedGame class is used to model a game recorded in a journal: the
+ * shuffled deck and the sequence of MOVE messages broadcast by the server,
+ * stored compactly so that millions of games can be held in memory.
+ * 
+ * @author Kwok Chun Yu
+ */
+public class RecordedGame {
+	
+	private final int tableID;
+	private final long startTime;
+	private final byte[] deckCodes;
+	// each move is stored as playerID, number of cards (-1 for a pass) and the card indices
+	private byte[] moves = new byte[64];
+	private int movesLength = 0;
+	private int numOfMoves = 0;
+	private boolean aborted = false;
+	private final String[] playerNames = new String[4];
+	
+	/**
+	 * a constructor for creating a recorded game.
+	 * @param tableID the ID of the table of the game
+	 * @param startTime the time at which the game starts, in milliseconds since the epoch
+	 * @param deckCodes the card codes (see BigTwoRules) of the deck, in the order of the deck
+	 */
+	public RecordedGame(int tableID, long startTime, int[] deckCodes) {
+		this.tableID = tableID;
+		this.startTime = startTime;
+		this.deckCodes = new byte[deckCodes.length];
+		for (int i = 0; i < deckCodes.length; i++) {
+			this.deckCodes[i] = (byte) deckCodes[i];
+		}
+	}
+	
+	/**
+	 * a method for reading all the games recorded in a journal. A game starts at a START record and
+	 * includes the MOVE records of the same table until the next START record of that table. A game
+	 * during which a player quits is marked as aborted. The names of the players are taken from the
+	 * JOIN records of the table before the START record.
+	 * @param reader the reader of the journal
+	 * @return the games recorded in the journal, in the order they start
+	 * @throws IOException if the journal cannot be read
+	 */
+	public static ArrayList<RecordedGame> readAll(GameJournalReader reader) throws IOException {
+		final ArrayList<RecordedGame> games = new ArrayList<RecordedGame>();
+		readAll(reader, (RecordedGame game) -> games.add(game), null);
+		return games;
+	}
+	
+	/**
+	 * a method for reading all the games recorded in a journal without holding them in memory. Each game
+	 * is passed to the consumer once it ends, i.e. at the next START record of its table, at a QUIT
+	 * record, or at the end of the journal.
+	 * @param reader the reader of the journal
+	 * @param consumer the consumer of the games, in the order they end
+	 * @throws IOException if the journal cannot be read
+	 */
+	public static void forEach(GameJournalReader reader, Consumer<RecordedGame> consumer) throws IOException {
+		readAll(reader, null, consumer);
+	}
+	
+	private static void readAll(GameJournalReader reader, Consumer<RecordedGame> onStart,
+			Consumer<RecordedGame> onEnd) throws IOException {
+		HashMap<Integer, RecordedGame> current = new HashMap<Integer, RecordedGame>();
+		HashMap<Integer, String[]> names = new HashMap<Integer, String[]>();
+		while (reader.next()) {
+			RecordedGame game = current.get(reader.getTableID());
+			switch (reader.getType()) {
+			case CardGameMessage.JOIN:
+				if (reader.getPlayerID() >= 0 && reader.getPlayerID() < 4) {
+					names.computeIfAbsent(reader.getTableID(), (Integer id) -> new String[4])
+							[reader.getPlayerID()] = reader.getName();
+				}
+				break;
+			case CardGameMessage.START:
+				if (game != null && onEnd != null) {
+					onEnd.accept(game);
+				}
+				game = new RecordedGame(reader.getTableID(), reader.getTimestamp(), reader.getDeckCodes());
+				String[] tableNames = names.get(reader.getTableID());
+				if (tableNames != null) {
+					System.arraycopy(tableNames, 0, game.playerNames, 0, 4);
+				}
+				if (onStart != null) {
+					onStart.accept(game);
+				}
+				current.put(reader.getTableID(), game);
+				break;
+			case CardGameMessage.MOVE:
+				if (game != null) {
+					game.addMove(reader.getPlayerID(), reader.getCardIdxBuffer(), reader.getNumOfCards());
+				}
+				break;
+			case CardGameMessage.QUIT:
+				if (game != null) {
+					game.aborted = true;
+					current.remove(reader.getTableID());
+					if (onEnd != null) {
+						onEnd.accept(game);
+					}
+				}
+				break;
+			default:
+				break;
+			}
+		}
+		if (onEnd != null) {
+			for (RecordedGame game : current.values()) {
+				onEnd.accept(game);
+			}
+		}
+	}
+	
+	/**
+	 * a method for appending a move to this game.
+	 * @param playerID the playerID of the player who makes the move
+	 * @param cardIdx the indices of the cards played
+	 * @param numOfCards the number of cards played, or -1 for a pass
+	 */
+	public void addMove(int playerID, int[] cardIdx, int numOfCards) {
+		int n = Math.max(numOfCards, 0);
+		if (movesLength + 2 + n > moves.length) {
+			moves = Arrays.copyOf(moves, Math.max(moves.length * 2, movesLength + 2 + n));
+		}
+		moves[movesLength++] = (byte) playerID;
+		moves[movesLength++] = (byte) numOfCards;
+		for (int i = 0; i < n; i++) {
+			moves[movesLength++] = (byte) cardIdx[i];
+		}
+		numOfMoves++;
+	}
+	
+	/**
+	 * a method for marking this game as aborted.
+	 * @param aborted true if a player quits during this game
+	 */
+	public void setAborted(boolean aborted) { this.aborted = aborted; }
+	
+	/**
+	 * a method for retrieving the ID of the table of this game.
+	 * @return the ID of the table
+	 */
+	public int getTableID() { return tableID; }
+	
+	/**
+	 * a method for retrieving the time at which this game starts.
+	 * @return the time in milliseconds since the epoch
+	 */
+	public long getStartTime() { return startTime; }
+	
+	/**
+	 * a method for checking if a player quits during this game.
+	 * @return true if this game is aborted
+	 */
+	public boolean isAborted() { return aborted; }
+	
+	/**
+	 * a method for retrieving the name of a player of this game.
+	 * @param playerID the playerID of the player
+	 * @return the name of the player, or null if it is not recorded
+	 */
+	public String getPlayerName(int playerID) { return playerNames[playerID]; }
+	
+	/**
+	 * a method for retrieving the number of moves recorded.
+	 * @return the number of moves
+	 */
+	public int getNumOfMoves() { return numOfMoves; }
+	
+	/**
+	 * a method for retrieving the card code of the specified position of the deck.
+	 * @param i the position in the deck
+	 * @return the card code (see BigTwoRules)
+	 */
+	public int getDeckCode(int i) { return deckCodes[i]; }
+	
+	/**
+	 * a method for creating the deck of this game.
+	 * @return a new deck holding the cards of this game, in order
+	 */
+	public Deck toDeck() {
+		Deck deck = new Deck();
+		for (int i = 0; i < deckCodes.length; i++) {
+			deck.setCard(i, BigTwoRules.cardOf(deckCodes[i]));
+		}
+		return deck;
+	}
+	
+	/**
+	 * a method for retrieving the packed moves. Each move is stored as the playerID, the number of cards
+	 * (-1 for a pass) and the card indices.
+	 * @return the packed moves; only the first getMovesLength() bytes are valid
+	 */
+	public byte[] getPackedMoves() { return moves; }
+	
+	/**
+	 * a method for retrieving the number of valid bytes in the packed moves.
+	 * @return the number of valid bytes
+	 */
+	public int getMovesLength() { return movesLength; }
+}
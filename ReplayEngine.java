@@ -0,0 +1,150 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The ReplayEngine class is used to re-execute recorded games through the real rule classes of Big Two
+ * (BigTwoGame, composeHand() and Hand.beats()), without any GUI or socket. Games are replayed in
+ * parallel on a ForkJoinPool, each worker thread reusing one BigTwoGame, and the statistics of the
+ * workers are merged at the end.
+ * <p>
+ * It is used to re-check historical games after a fix of the rules: a game in which a flush or a
+ * straight flush is attempted is reported as affected by the fix of Flush.isValid(), which used to
+ * reject every flush.
+ * 
+ * @author Kwok Chun Yu
+ */
+public class ReplayEngine {
+	
+	// number of games replayed by one task without splitting it further
+	private static final int THRESHOLD = 256;
+	
+	private final ForkJoinPool pool;
+	private final ThreadLocal<BigTwoGame> games = ThreadLocal.withInitial(BigTwoGame::new);
+	
+	/**
+	 * a constructor for creating a replay engine using the specified pool.
+	 * @param pool the pool running the replays
+	 */
+	public ReplayEngine(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+	
+	/**
+	 * a constructor for creating a replay engine using the common pool.
+	 */
+	public ReplayEngine() {
+		this(ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * a method for replaying one game and recording its statistics.
+	 * @param recorded the recorded game
+	 * @param game the game used to re-execute the moves, which is restarted
+	 * @param stats the statistics to be updated
+	 * @return true if the game ends with a winner
+	 */
+	public static boolean replay(RecordedGame recorded, BigTwoGame game, ReplayStatistics stats) {
+		game.start(recorded.toDeck());
+		int opener = game.getCurrentIdx();
+		byte[] moves = recorded.getPackedMoves();
+		int[][] cardIdxBySize = { null, new int[1], new int[2], new int[3], new int[4], new int[5] };
+		boolean flushAttempted = false;
+		int pos = 0;
+		for (int m = 0; m < recorded.getNumOfMoves() && !game.endOfGame(); m++) {
+			int playerID = moves[pos++];
+			int n = moves[pos++];
+			int[] cardIdx = null;
+			if (n >= 0) {
+				cardIdx = (n < cardIdxBySize.length) ? cardIdxBySize[n] : new int[n];
+				for (int i = 0; i < n; i++) {
+					cardIdx[i] = moves[pos++];
+				}
+				int type = BigTwoRules.typeOf(BigTwoRules.maskOf(
+						game.getPlayerList().get(playerID).getCardsInHand(), cardIdx));
+				if (type == BigTwoRules.FLUSH || type == BigTwoRules.STRAIGHT_FLUSH) {
+					flushAttempted = true;
+				}
+			}
+			game.checkMove(playerID, cardIdx);
+			stats.addMove(game.getLastResult());
+		}
+		boolean completed = game.endOfGame();
+		stats.addGame(completed, recorded.isAborted());
+		if (completed) {
+			for (int i = 0; i < game.getNumOfPlayers(); i++) {
+				stats.addCardsLeft(i, game.getPlayerList().get(i).getNumOfCards());
+			}
+			if (game.getPlayerList().get(opener).getNumOfCards() == 0) {
+				stats.addOpenerWin();
+			}
+		}
+		if (flushAttempted) {
+			stats.addFlushGame();
+		}
+		return completed;
+	}
+	
+	/**
+	 * a method for replaying the specified games in parallel.
+	 * @param recorded the recorded games
+	 * @return the statistics of all the games
+	 */
+	public ReplayStatistics replayAll(ArrayList<RecordedGame> recorded) {
+		return pool.invoke(new ReplayTask(recorded, 0, recorded.size()));
+	}
+	
+	/**
+	 * an inner class that replays a range of games, splitting it in halves until it is small enough.
+	 */
+	private class ReplayTask extends RecursiveTask<ReplayStatistics> {
+		private static final long serialVersionUID = 1L;
+		private final ArrayList<RecordedGame> recorded;
+		private final int from;
+		private final int to;
+		
+		ReplayTask(ArrayList<RecordedGame> recorded, int from, int to) {
+			this.recorded = recorded;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected ReplayStatistics compute() {
+			if (to - from <= THRESHOLD) {
+				ReplayStatistics stats = new ReplayStatistics();
+				BigTwoGame game = games.get();
+				for (int i = from; i < to; i++) {
+					replay(recorded.get(i), game, stats);
+				}
+				return stats;
+			}
+			int mid = (from + to) >>> 1;
+			ReplayTask left = new ReplayTask(recorded, from, mid);
+			left.fork();
+			ReplayStatistics stats = new ReplayTask(recorded, mid, to).compute();
+			stats.merge(left.join());
+			return stats;
+		}
+	}
+	
+	/**
+	 * a method for replaying all the games recorded in a journal and printing their statistics.
+	 * @param args the directory of the journal ("journal" by default)
+	 * @throws Exception if the journal cannot be read
+	 */
+	public static void main(String[] args) throws Exception {
+		File dir = new File(args.length > 0 ? args[0] : "journal");
+		ArrayList<RecordedGame> recorded;
+		try (GameJournalReader reader = new GameJournalReader(dir)) {
+			recorded = RecordedGame.readAll(reader);
+		}
+		long start = System.nanoTime();
+		ReplayStatistics stats = new ReplayEngine().replayAll(recorded);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.print(stats);
+		System.out.printf("replayed %d games in %.3f s (%.0f games per hour)%n", recorded.size(), seconds,
+				recorded.size() / seconds * 3600);
+	}
+}
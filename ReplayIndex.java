@@ -0,0 +1,161 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The ReplayIndex class is used to seek to any move of a recorded game in bounded time. The game is
+ * replayed once when the index is built, and the full state of the table is kept as a keyframe every
+ * K moves; the moves of the recorded game are the deltas between the keyframes. Seeking to move N
+ * restores the keyframe before N and replays at most K - 1 moves.
+ * 
+ * @author Kwok Chun Yu
+ */
+public class ReplayIndex {
+	
+	/** The default number of moves between two keyframes. */
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 16;
+	
+	private final RecordedGame recorded;
+	private final int keyframeInterval;
+	private final ArrayList<TableSnapshot> keyframes = new ArrayList<TableSnapshot>();
+	// the offset in the packed moves of the first move after every keyframe
+	private int[] keyframeOffsets;
+	// the result of every move (see BigTwoGame.getLastResult())
+	private final int[] results;
+	private final int numOfMoves;
+	private final String[] names;
+	private final boolean[] readyStates;
+	
+	/**
+	 * a constructor for building the index of a recorded game.
+	 * @param recorded the recorded game
+	 * @param keyframeInterval the number of moves between two keyframes
+	 */
+	public ReplayIndex(RecordedGame recorded, int keyframeInterval) {
+		this.recorded = recorded;
+		this.keyframeInterval = keyframeInterval;
+		names = new String[4];
+		readyStates = new boolean[4];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = (recorded.getPlayerName(i) != null) ? recorded.getPlayerName(i) : "Player " + i;
+		}
+		
+		BigTwoGame game = newGame();
+		game.start(recorded.toDeck());
+		byte[] moves = recorded.getPackedMoves();
+		int[] played = new int[recorded.getNumOfMoves()];
+		keyframeOffsets = new int[recorded.getNumOfMoves() / keyframeInterval + 1];
+		int offset = 0;
+		int n = 0;
+		while (n < recorded.getNumOfMoves() && !game.endOfGame()) {
+			if (n % keyframeInterval == 0) {
+				addKeyframe(game, offset);
+			}
+			offset = applyMove(game, moves, offset);
+			played[n++] = game.getLastResult();
+		}
+		if (n % keyframeInterval == 0) {
+			addKeyframe(game, offset);
+		}
+		numOfMoves = n;
+		results = (n == played.length) ? played : Arrays.copyOf(played, n);
+	}
+	
+	/**
+	 * a constructor for building the index of a recorded game with the default keyframe interval.
+	 * @param recorded the recorded game
+	 */
+	public ReplayIndex(RecordedGame recorded) {
+		this(recorded, DEFAULT_KEYFRAME_INTERVAL);
+	}
+	
+	private void addKeyframe(BigTwoGame game, int offset) {
+		TableSnapshot keyframe = new TableSnapshot(game.getNumOfPlayers());
+		keyframe.capture(recorded.getTableID(), names, readyStates, game);
+		keyframeOffsets[keyframes.size()] = offset;
+		keyframes.add(keyframe);
+	}
+	
+	/**
+	 * a method for applying the move at the specified offset of the packed moves.
+	 * @return the offset of the next move
+	 */
+	private int applyMove(BigTwoGame game, byte[] moves, int offset) {
+		int playerID = moves[offset++];
+		int n = moves[offset++];
+		int[] selected = null;
+		if (n >= 0) {
+			selected = new int[n];
+			for (int i = 0; i < n; i++) {
+				selected[i] = moves[offset++];
+			}
+		}
+		game.checkMove(playerID, selected);
+		return offset;
+	}
+	
+	/**
+	 * a method for creating a game that can be positioned by seek().
+	 * @return a new game whose players are named after the players of the recorded game
+	 */
+	public BigTwoGame newGame() {
+		BigTwoGame game = new BigTwoGame();
+		for (int i = 0; i < names.length; i++) {
+			game.getPlayerList().get(i).setName(names[i]);
+		}
+		return game;
+	}
+	
+	/**
+	 * a method for positioning a game after the specified number of moves.
+	 * @param game the game, created by newGame()
+	 * @param n the number of moves, between 0 and getNumOfMoves()
+	 */
+	public void seek(BigTwoGame game, int n) {
+		if (n < 0 || n > numOfMoves) {
+			throw new IndexOutOfBoundsException("move " + n + " of " + numOfMoves);
+		}
+		int k = n / keyframeInterval;
+		game.resume(keyframes.get(k));
+		byte[] moves = recorded.getPackedMoves();
+		int offset = keyframeOffsets[k];
+		for (int i = k * keyframeInterval; i < n; i++) {
+			offset = applyMove(game, moves, offset);
+		}
+	}
+	
+	/**
+	 * a method for retrieving the number of moves that can be replayed. Moves recorded after the end of
+	 * the game are not replayed.
+	 * @return the number of moves
+	 */
+	public int getNumOfMoves() { return numOfMoves; }
+	
+	/**
+	 * a method for retrieving the result of a move.
+	 * @param i the index of the move, starting from 0
+	 * @return the value of the hand played, BigTwoRules.PASS or BigTwoRules.INVALID
+	 */
+	public int getResult(int i) { return results[i]; }
+	
+	/**
+	 * a method for retrieving the playerID of the player who makes a move.
+	 * @param i the index of the move, starting from 0
+	 * @return the playerID of the player
+	 */
+	public int getPlayerID(int i) {
+		int k = i / keyframeInterval;
+		byte[] moves = recorded.getPackedMoves();
+		int offset = keyframeOffsets[k];
+		for (int j = k * keyframeInterval; j < i; j++) {
+			int n = moves[offset + 1];
+			offset += 2 + Math.max(n, 0);
+		}
+		return moves[offset];
+	}
+	
+	/**
+	 * a method for retrieving the recorded game.
+	 * @return the recorded game
+	 */
+	public RecordedGame getRecordedGame() { return recorded; }
+}
@@ -0,0 +1,177 @@
+/**
+ * The ReplayStatistics class is used to accumulate statistics over replayed or
+ * simulated games. An instance is meant to be filled by one thread and then
+ * merged with the instances of other threads.
+ * 
+ * @author Kwok Chun Yu
+ */
+public class ReplayStatistics {
+	
+	private long games = 0;
+	private long completedGames = 0;
+	private long abortedGames = 0;
+	private long moves = 0;
+	private long passes = 0;
+	private long illegalMoves = 0;
+	private final long[] handTypes = new long[8];
+	private final long[] winsPerSeat = new long[4];
+	private final long[] cardsLeftPerSeat = new long[4];
+	private long openerWins = 0;
+	private long flushGames = 0;
+	private final boolean replayed;
+	
+	/**
+	 * a constructor for creating statistics over replayed games.
+	 */
+	public ReplayStatistics() {
+		this(true);
+	}
+	
+	/**
+	 * a constructor for creating statistics over replayed or simulated games.
+	 * @param replayed true if the games are replayed from logs; false if they are simulated, in which
+	 *            case no game is affected by the fix of Flush.isValid() and that count is not printed
+	 */
+	public ReplayStatistics(boolean replayed) {
+		this.replayed = replayed;
+	}
+	
+	/**
+	 * a method for recording a game.
+	 * @param completed true if the game ends with a winner
+	 * @param aborted true if a player quits during the game
+	 */
+	public void addGame(boolean completed, boolean aborted) {
+		games++;
+		if (completed) {
+			completedGames++;
+		}
+		if (aborted) {
+			abortedGames++;
+		}
+	}
+	
+	/**
+	 * a method for recording the result of a move.
+	 * @param result the value of the hand played, BigTwoRules.PASS or BigTwoRules.INVALID
+	 */
+	public void addMove(int result) {
+		moves++;
+		if (result == BigTwoRules.PASS) {
+			passes++;
+		} else if (result == BigTwoRules.INVALID) {
+			illegalMoves++;
+		} else {
+			handTypes[BigTwoRules.typeOfValue(result)]++;
+		}
+	}
+	
+	/**
+	 * a method for recording the number of cards left to a seat at the end of a completed game.
+	 * @param seat the seat
+	 * @param cardsLeft the number of cards left
+	 */
+	public void addCardsLeft(int seat, int cardsLeft) {
+		cardsLeftPerSeat[seat] += cardsLeft;
+		if (cardsLeft == 0) {
+			winsPerSeat[seat]++;
+		}
+	}
+	
+	/**
+	 * a method for recording that the player holding the 3 of Diamonds wins a game.
+	 */
+	public void addOpenerWin() { openerWins++; }
+	
+	/**
+	 * a method for recording a game in which a flush or a straight flush is attempted, i.e. a game
+	 * whose outcome depends on the fix of Flush.isValid().
+	 */
+	public void addFlushGame() { flushGames++; }
+	
+	/**
+	 * a method for merging the specified statistics into these statistics.
+	 * @param other the statistics to be merged
+	 */
+	public void merge(ReplayStatistics other) {
+		games += other.games;
+		completedGames += other.completedGames;
+		abortedGames += other.abortedGames;
+		moves += other.moves;
+		passes += other.passes;
+		illegalMoves += other.illegalMoves;
+		for (int i = 0; i < handTypes.length; i++) {
+			handTypes[i] += other.handTypes[i];
+		}
+		for (int i = 0; i < winsPerSeat.length; i++) {
+			winsPerSeat[i] += other.winsPerSeat[i];
+			cardsLeftPerSeat[i] += other.cardsLeftPerSeat[i];
+		}
+		openerWins += other.openerWins;
+		flushGames += other.flushGames;
+	}
+	
+	/**
+	 * a method for retrieving the number of games recorded.
+	 * @return the number of games
+	 */
+	public long getGames() { return games; }
+	
+	/**
+	 * a method for retrieving the number of games ending with a winner.
+	 * @return the number of completed games
+	 */
+	public long getCompletedGames() { return completedGames; }
+	
+	/**
+	 * a method for retrieving the number of wins of the specified seat.
+	 * @param seat the seat
+	 * @return the number of wins
+	 */
+	public long getWins(int seat) { return winsPerSeat[seat]; }
+	
+	/**
+	 * a method for retrieving the number of hands of the specified type played.
+	 * @param type the type of hand (see BigTwoRules)
+	 * @return the number of hands of that type
+	 */
+	public long getHandTypeCount(int type) { return handTypes[type]; }
+	
+	/**
+	 * a method for retrieving the number of games affected by the fix of Flush.isValid().
+	 * @return the number of games in which a flush or a straight flush is attempted
+	 */
+	public long getFlushGames() { return flushGames; }
+	
+	/**
+	 * a method for returning a string representation of these statistics.
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("games: ").append(games).append(" (completed ").append(completedGames)
+				.append(", aborted ").append(abortedGames).append(")\n");
+		sb.append("moves: ").append(moves).append(" (passes ").append(passes)
+				.append(", illegal ").append(illegalMoves).append(")\n");
+		sb.append("hands played:");
+		for (int i = 0; i < handTypes.length; i++) {
+			sb.append(' ').append(BigTwoRules.getTypeName(i)).append('=').append(handTypes[i]);
+		}
+		sb.append('\n');
+		for (int i = 0; i < winsPerSeat.length; i++) {
+			sb.append("seat ").append(i).append(": wins ").append(winsPerSeat[i]);
+			if (completedGames > 0) {
+				sb.append(String.format(" (%.2f%%), average cards left %.2f",
+						100.0 * winsPerSeat[i] / completedGames, (double) cardsLeftPerSeat[i] / completedGames));
+			}
+			sb.append('\n');
+		}
+		if (completedGames > 0) {
+			sb.append(String.format("3 of Diamonds opener wins: %d (%.2f%%)%n", openerWins,
+					100.0 * openerWins / completedGames));
+		}
+		if (replayed) {
+			sb.append("games affected by the Flush fix: ").append(flushGames).append('\n');
+		}
+		return sb.toString();
+	}
+}
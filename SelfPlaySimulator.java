@@ -0,0 +1,213 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The SelfPlaySimulator class is used to play complete Big Two games between strategies without any GUI
+ * or socket, to compare the strategies by their win rates. Games are played in parallel on a
+ * ForkJoinPool. Each worker thread deals from the cards of a Deck into one reused BigTwoState and
+ * reuses its arrays for the moves, so that no object is created per game or per move, and each range of
+ * games has its own seeded Random, so that the results only depend on the seed.
+ * <p>
+ * The strategies are given per seat, e.g. "greedy,random,random,random" ("random", "greedy", "partition"
+ * or "bot:MILLIS" for a BigTwoBot searching MILLIS milliseconds per move).
+ *
+ * @author Kwok Chun Yu
+ */
+public class SelfPlaySimulator {
+
+	// number of games played by one task without splitting it further
+	private static final int THRESHOLD = 4096;
+
+	private final ForkJoinPool pool;
+	private final BigTwoStrategy[] strategies;
+	private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+
+	/**
+	 * a constructor for creating a simulator of the specified strategies using the specified pool.
+	 * @param strategies the strategies of the 4 seats
+	 * @param pool the pool playing the games
+	 */
+	public SelfPlaySimulator(BigTwoStrategy[] strategies, ForkJoinPool pool) {
+		if (strategies.length != 4) {
+			throw new IllegalArgumentException("A Big Two game needs 4 strategies");
+		}
+		this.strategies = strategies.clone();
+		this.pool = pool;
+	}
+
+	/**
+	 * a constructor for creating a simulator of the specified strategies using the common pool.
+	 * @param strategies the strategies of the 4 seats
+	 */
+	public SelfPlaySimulator(BigTwoStrategy[] strategies) {
+		this(strategies, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * a method for playing the specified number of games in parallel.
+	 * @param numOfGames the number of games
+	 * @param seed the seed of the random deals and moves
+	 * @return the statistics of all the games
+	 */
+	public ReplayStatistics simulate(long numOfGames, long seed) {
+		return pool.invoke(new SimulationTask(seed, 0, numOfGames));
+	}
+
+	/*
+	 * the reused state of a worker thread.
+	 */
+	private static class Worker {
+		private final int[] deck = new int[BigTwoRules.NUM_OF_CARDS];
+		private final BigTwoState state = new BigTwoState(new long[4], 0, 0, -1);
+		private final long[] moves = new long[BigTwoState.MAX_MOVES];
+
+		Worker() {
+			Deck cards = new Deck();
+			for (int i = 0; i < deck.length; i++) {
+				deck[i] = BigTwoRules.codeOf(cards.getCard(i));
+			}
+		}
+	}
+
+	/**
+	 * a method for playing one game and recording its statistics.
+	 * @param worker the reused state of the calling thread
+	 * @param random the source of randomness
+	 * @param stats the statistics to be updated
+	 */
+	private void play(Worker worker, Random random, ReplayStatistics stats) {
+		int[] deck = worker.deck;
+		// shuffles the deck and deals 13 consecutive cards to each player, as BigTwoGame.deal() does
+		for (int i = deck.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int code = deck[i];
+			deck[i] = deck[j];
+			deck[j] = code;
+		}
+		BigTwoState state = worker.state;
+		int opener = 0;
+		for (int i = 0; i < 4; i++) {
+			long hand = 0;
+			for (int j = i * 13; j < i * 13 + 13; j++) {
+				hand |= 1L << deck[j];
+			}
+			state.setHand(i, hand);
+			// the player holding the 3 of Diamonds plays first
+			if ((hand & 1) != 0) {
+				opener = i;
+			}
+		}
+		state.reset(opener);
+		long[] moves = worker.moves;
+		int winner;
+		while ((winner = state.getWinner()) < 0) {
+			int numOfMoves = state.generateMoves(moves);
+			long move = strategies[state.getCurrentIdx()].chooseMove(state, moves, numOfMoves, random);
+			stats.addMove(move == BigTwoState.PASS ? BigTwoRules.PASS : BatchHandEvaluator.evaluate(move));
+			state.play(move);
+		}
+		stats.addGame(true, false);
+		for (int i = 0; i < 4; i++) {
+			stats.addCardsLeft(i, Long.bitCount(state.getHand(i)));
+		}
+		if (winner == opener) {
+			stats.addOpenerWin();
+		}
+	}
+
+	/**
+	 * an inner class that plays a range of games, splitting it in halves until it is small enough.
+	 */
+	private class SimulationTask extends RecursiveTask<ReplayStatistics> {
+		private static final long serialVersionUID = 1L;
+		private final long seed;
+		private final long from;
+		private final long to;
+
+		SimulationTask(long seed, long from, long to) {
+			this.seed = seed;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected ReplayStatistics compute() {
+			if (to - from <= THRESHOLD) {
+				ReplayStatistics stats = new ReplayStatistics(false);
+				Worker worker = workers.get();
+				Random random = new Random(seed ^ (from * 0x9E3779B97F4A7C15L));
+				for (long i = from; i < to; i++) {
+					play(worker, random, stats);
+				}
+				return stats;
+			}
+			long mid = (from + to) >>> 1;
+			SimulationTask left = new SimulationTask(seed, from, mid);
+			left.fork();
+			ReplayStatistics stats = new SimulationTask(seed, mid, to).compute();
+			stats.merge(left.join());
+			return stats;
+		}
+	}
+
+	/**
+	 * a method for creating a strategy by its name.
+	 * @param name "random", "greedy", "partition" or "bot:MILLIS"
+	 * @return the strategy
+	 */
+	public static BigTwoStrategy createStrategy(String name) {
+		if (name.equals("random")) {
+			return BigTwoStrategy.RANDOM;
+		} else if (name.equals("greedy")) {
+			return BigTwoStrategy.GREEDY;
+		} else if (name.equals("partition")) {
+			return BigTwoStrategy.PARTITION;
+		} else if (name.startsWith("bot:")) {
+			return new BigTwoBot(Long.parseLong(name.substring(4)), 1);
+		}
+		throw new IllegalArgumentException("Unknown strategy: " + name);
+	}
+
+	/**
+	 * a method for playing games between strategies and printing the win rates per seat and per strategy.
+	 * @param args the number of games (1000000 by default), the strategies of the 4 seats separated by
+	 * commas ("greedy,random,random,random" by default) and the seed (the current time by default)
+	 */
+	public static void main(String[] args) {
+		long numOfGames = (args.length > 0) ? Long.parseLong(args[0]) : 1000000;
+		String[] names = ((args.length > 1) ? args[1] : "greedy,random,random,random").split(",");
+		long seed = (args.length > 2) ? Long.parseLong(args[2]) : System.nanoTime();
+		BigTwoStrategy[] strategies = new BigTwoStrategy[names.length];
+		for (int i = 0; i < names.length; i++) {
+			strategies[i] = createStrategy(names[i]);
+		}
+		long start = System.nanoTime();
+		ReplayStatistics stats = new SelfPlaySimulator(strategies).simulate(numOfGames, seed);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.print(stats);
+		for (int i = 0; i < names.length; i++) {
+			System.out.printf("seat %d (%s): win rate %.2f%%%n", i, names[i],
+					100.0 * stats.getWins(i) / stats.getCompletedGames());
+		}
+		// seats playing the same strategy are added up
+		for (int i = 0; i < names.length; i++) {
+			if (Arrays.asList(names).indexOf(names[i]) < i) {
+				continue;
+			}
+			long wins = 0;
+			int seats = 0;
+			for (int j = 0; j < names.length; j++) {
+				if (names[j].equals(names[i])) {
+					wins += stats.getWins(j);
+					seats++;
+				}
+			}
+			System.out.printf("%s: win rate %.2f%% per seat over %d seat(s)%n", names[i],
+					100.0 * wins / stats.getCompletedGames() / seats, seats);
+		}
+		System.out.printf("played %d games in %.3f s (%.0f games per minute), seed %d%n", numOfGames, seconds,
+				numOfGames / seconds * 60, seed);
+	}
+}
@@ -0,0 +1,477 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This class is used to model the live metrics of a card game server. All
+ * counters are LongAdder-based, so that recording a metric from many handler
+ * threads never becomes a point of contention. The metrics are exposed through
+ * JMX and, optionally, through a plain text HTTP endpoint bound to the
+ * loopback interface.
+ * 
+ * @author Kwok Chun Yu
+ *
+ */
+public class ServerMetrics implements ServerMetricsMBean {
+	// number of message types being counted; the last slot counts unknown types
+	private static final int NUM_OF_TYPES = CardGameMessage.NUM_OF_TYPES + 1;
+
+	private final LongAdder[] messagesByType = new LongAdder[NUM_OF_TYPES];
+	private final LatencyHistogram[] dispatchLatencyByType = new LatencyHistogram[NUM_OF_TYPES];
+	private final LongAdder bytesIn = new LongAdder();
+	private final LongAdder bytesOut = new LongAdder();
+	private final LongAdder rejectedConnections = new LongAdder();
+	private final LatencyHistogram broadcastLatency = new LatencyHistogram();
+	private final LatencyHistogram roundTripTime = new LatencyHistogram();
+	private final LongAdder deadConnections = new LongAdder();
+	private final AtomicInteger connectedPlayers = new AtomicInteger();
+	private final AtomicInteger activeGames = new AtomicInteger();
+	private final Map<String, IntSupplier> queues = new ConcurrentSkipListMap<String, IntSupplier>();
+	private final Map<String, Function<String, String>> textEndpoints = new ConcurrentSkipListMap<String, Function<String, String>>();
+
+	// counts sampled at the last tick, and the per-second rates derived from them
+	private final long[] lastMessages = new long[NUM_OF_TYPES];
+	private volatile long[] messageRates = new long[NUM_OF_TYPES];
+	private long lastRejected = 0;
+	private volatile long rejectedRate = 0;
+
+	private Timer ticker = null;
+	private HttpServer httpServer = null;
+
+	/**
+	 * Creates and returns an instance of the ServerMetrics class.
+	 */
+	public ServerMetrics() {
+		for (int i = 0; i < NUM_OF_TYPES; i++) {
+			messagesByType[i] = new LongAdder();
+			dispatchLatencyByType[i] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * Returns the slot used for counting the specified message type.
+	 */
+	private static int slotOf(int type) {
+		return (type >= 0 && type < NUM_OF_TYPES - 1) ? type : NUM_OF_TYPES - 1;
+	}
+
+	/**
+	 * Records a message received from a client.
+	 * 
+	 * @param type
+	 *            the type of the message
+	 * @param bytes
+	 *            the size of the message on the wire
+	 */
+	public void messageReceived(int type, long bytes) {
+		messagesByType[slotOf(type)].increment();
+		bytesIn.add(bytes);
+	}
+
+	/**
+	 * Records the time taken by the server to dispatch a message.
+	 * 
+	 * @param type
+	 *            the type of the message
+	 * @param nanos
+	 *            the time taken in nanoseconds
+	 */
+	public void messageDispatched(int type, long nanos) {
+		dispatchLatencyByType[slotOf(type)].record(nanos);
+	}
+
+	/**
+	 * Records a broadcast to all clients.
+	 * 
+	 * @param bytes
+	 *            the total number of bytes sent to all clients
+	 * @param nanos
+	 *            the time taken in nanoseconds
+	 */
+	public void broadcast(long bytes, long nanos) {
+		bytesOut.add(bytes);
+		broadcastLatency.record(nanos);
+	}
+
+	/**
+	 * Records the round-trip time of a heartbeat.
+	 * 
+	 * @param nanos
+	 *            the round-trip time in nanoseconds
+	 */
+	public void roundTrip(long nanos) {
+		roundTripTime.record(nanos);
+	}
+
+	/**
+	 * Records a connection closed because its heartbeats stopped.
+	 */
+	public void connectionDead() {
+		deadConnections.increment();
+	}
+
+	/**
+	 * Records bytes sent to a client outside of a broadcast.
+	 * 
+	 * @param bytes
+	 *            the number of bytes sent
+	 */
+	public void bytesSent(long bytes) {
+		bytesOut.add(bytes);
+	}
+
+	/**
+	 * Records a connection rejected because the server is full.
+	 */
+	public void connectionRejected() {
+		rejectedConnections.increment();
+	}
+
+	/**
+	 * Sets the number of clients currently connected.
+	 * 
+	 * @param n
+	 *            the number of clients currently connected
+	 */
+	public void setConnectedPlayers(int n) {
+		connectedPlayers.set(n);
+	}
+
+	/**
+	 * Sets the number of games currently in progress.
+	 * 
+	 * @param n
+	 *            the number of games currently in progress
+	 */
+	public void setActiveGames(int n) {
+		activeGames.set(n);
+	}
+
+	/**
+	 * Registers a queue whose depth is to be reported.
+	 * 
+	 * @param name
+	 *            the name of the queue
+	 * @param depth
+	 *            a supplier returning the current depth of the queue
+	 */
+	public void registerQueue(String name, IntSupplier depth) {
+		queues.put(name, depth);
+	}
+
+	/**
+	 * Unregisters a queue registered by registerQueue().
+	 * 
+	 * @param name
+	 *            the name of the queue
+	 */
+	public void unregisterQueue(String name) {
+		queues.remove(name);
+	}
+
+	/**
+	 * Registers this object as a JMX MBean and starts the ticker computing the
+	 * per-second rates.
+	 * 
+	 * @param serverName
+	 *            the name of the server, used in the name of the MBean
+	 */
+	public synchronized void register(String serverName) {
+		if (ticker != null) {
+			return;
+		}
+		ticker = new Timer("metrics-ticker", true);
+		ticker.scheduleAtFixedRate(new TimerTask() {
+			public void run() {
+				tick();
+			}
+		}, 1000, 1000);
+		try {
+			MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("BigTwo:type=ServerMetrics,name="
+					+ ObjectName.quote(serverName));
+			if (!mbs.isRegistered(name)) {
+				mbs.registerMBean(this, name);
+			}
+		} catch (Exception ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	/**
+	 * Starts the HTTP endpoint serving the metrics in text format at
+	 * http://127.0.0.1:port/metrics.
+	 * 
+	 * @param port
+	 *            the port of the HTTP endpoint
+	 * @throws IOException
+	 *             if the endpoint cannot be started
+	 */
+	public synchronized void startHttpEndpoint(int port) throws IOException {
+		if (httpServer != null) {
+			return;
+		}
+		httpServer = HttpServer.create(new InetSocketAddress(
+				InetAddress.getLoopbackAddress(), port), 0);
+		createTextContext("/metrics", (String query) -> dump());
+		for (Map.Entry<String, Function<String, String>> entry : textEndpoints
+				.entrySet()) {
+			createTextContext(entry.getKey(), entry.getValue());
+		}
+		httpServer.start();
+	}
+
+	/**
+	 * Serves the text returned by the specified function at
+	 * http://127.0.0.1:port/path, along with the metrics.
+	 * 
+	 * @param path
+	 *            the path of the endpoint
+	 * @param handler
+	 *            the function returning the text for the query string of a
+	 *            request (null if the request has no query string)
+	 */
+	public synchronized void addTextEndpoint(String path,
+			Function<String, String> handler) {
+		textEndpoints.put(path, handler);
+		if (httpServer != null) {
+			createTextContext(path, handler);
+		}
+	}
+
+	/**
+	 * Creates a context of the HTTP endpoint serving plain text.
+	 */
+	private void createTextContext(String path,
+			final Function<String, String> handler) {
+		httpServer.createContext(path, (HttpExchange exchange) -> {
+			byte[] body = handler.apply(exchange.getRequestURI().getQuery())
+					.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type",
+					"text/plain; charset=utf-8");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(body);
+			}
+		});
+	}
+
+	/**
+	 * Stops the ticker and the HTTP endpoint.
+	 */
+	public synchronized void stop() {
+		if (ticker != null) {
+			ticker.cancel();
+			ticker = null;
+		}
+		if (httpServer != null) {
+			httpServer.stop(0);
+			httpServer = null;
+		}
+	}
+
+	/**
+	 * Computes the per-second rates from the counts sampled at the last tick.
+	 */
+	private synchronized void tick() {
+		long[] rates = new long[NUM_OF_TYPES];
+		for (int i = 0; i < NUM_OF_TYPES; i++) {
+			long now = messagesByType[i].sum();
+			rates[i] = now - lastMessages[i];
+			lastMessages[i] = now;
+		}
+		messageRates = rates;
+		long rejected = rejectedConnections.sum();
+		rejectedRate = rejected - lastRejected;
+		lastRejected = rejected;
+	}
+
+	public long getMessagesReceived() {
+		long total = 0;
+		for (LongAdder adder : messagesByType) {
+			total += adder.sum();
+		}
+		return total;
+	}
+
+	public long[] getMessagesReceivedByType() {
+		long[] counts = new long[NUM_OF_TYPES];
+		for (int i = 0; i < NUM_OF_TYPES; i++) {
+			counts[i] = messagesByType[i].sum();
+		}
+		return counts;
+	}
+
+	public long[] getMessageRatesByType() {
+		return messageRates.clone();
+	}
+
+	public long getBytesIn() {
+		return bytesIn.sum();
+	}
+
+	public long getBytesOut() {
+		return bytesOut.sum();
+	}
+
+	public int getConnectedPlayers() {
+		return connectedPlayers.get();
+	}
+
+	public int getActiveGames() {
+		return activeGames.get();
+	}
+
+	public long getRejectedConnections() {
+		return rejectedConnections.sum();
+	}
+
+	public long getRejectedConnectionRate() {
+		return rejectedRate;
+	}
+
+	public long getBroadcasts() {
+		return broadcastLatency.getCount();
+	}
+
+	public double getBroadcastMeanNanos() {
+		return broadcastLatency.getMean();
+	}
+
+	public long getBroadcastP99Nanos() {
+		return broadcastLatency.getQuantile(0.99);
+	}
+
+	public long getBroadcastMaxNanos() {
+		return broadcastLatency.getMax();
+	}
+
+	public long getRoundTrips() {
+		return roundTripTime.getCount();
+	}
+
+	public double getRoundTripMeanNanos() {
+		return roundTripTime.getMean();
+	}
+
+	public long getRoundTripP99Nanos() {
+		return roundTripTime.getQuantile(0.99);
+	}
+
+	public long getDeadConnections() {
+		return deadConnections.sum();
+	}
+
+	public String getQueueDepths() {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, IntSupplier> entry : queues.entrySet()) {
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append(entry.getKey()).append('=')
+					.append(entry.getValue().getAsInt());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the name used for the specified slot in the text format.
+	 */
+	private static String slotName(int slot) {
+		return (slot == NUM_OF_TYPES - 1) ? "OTHER" : CardGameMessage
+				.getTypeName(slot);
+	}
+
+	public String dump() {
+		StringBuilder sb = new StringBuilder(2048);
+		long[] rates = messageRates;
+		for (int i = 0; i < NUM_OF_TYPES; i++) {
+			String type = slotName(i);
+			sb.append("bigtwo_messages_total{type=\"").append(type)
+					.append("\"} ").append(messagesByType[i].sum())
+					.append('\n');
+			sb.append("bigtwo_messages_per_second{type=\"").append(type)
+					.append("\"} ").append(rates[i]).append('\n');
+		}
+		for (int i = 0; i < NUM_OF_TYPES; i++) {
+			appendHistogram(sb, "bigtwo_dispatch_nanos", "type=\""
+					+ slotName(i) + "\"", dispatchLatencyByType[i]);
+		}
+		sb.append("bigtwo_bytes_in_total ").append(getBytesIn()).append('\n');
+		sb.append("bigtwo_bytes_out_total ").append(getBytesOut()).append('\n');
+		sb.append("bigtwo_connected_players ").append(getConnectedPlayers())
+				.append('\n');
+		sb.append("bigtwo_active_games ").append(getActiveGames()).append('\n');
+		sb.append("bigtwo_rejected_connections_total ")
+				.append(getRejectedConnections()).append('\n');
+		sb.append("bigtwo_rejected_connections_per_second ")
+				.append(getRejectedConnectionRate()).append('\n');
+		appendHistogram(sb, "bigtwo_broadcast_nanos", null, broadcastLatency);
+		appendHistogram(sb, "bigtwo_round_trip_nanos", null, roundTripTime);
+		sb.append("bigtwo_dead_connections_total ")
+				.append(getDeadConnections()).append('\n');
+		for (Map.Entry<String, IntSupplier> entry : queues.entrySet()) {
+			sb.append("bigtwo_queue_depth{queue=\"").append(entry.getKey())
+					.append("\"} ").append(entry.getValue().getAsInt())
+					.append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Appends the specified histogram in text format, skipping empty buckets
+	 * but the le="+Inf" one, which always holds the total count.
+	 */
+	private static void appendHistogram(StringBuilder sb, String name,
+			String labels, LatencyHistogram histogram) {
+		long[] counts = histogram.getBucketCounts();
+		long cumulative = 0;
+		for (int i = 0; i < counts.length; i++) {
+			cumulative += counts[i];
+			long bound = LatencyHistogram.upperBoundOf(i);
+			if (counts[i] == 0 || bound == Long.MAX_VALUE) {
+				continue;
+			}
+			appendBucket(sb, name, labels, String.valueOf(bound), cumulative);
+		}
+		// the count is taken from the same buckets, so that it matches le="+Inf"
+		appendBucket(sb, name, labels, "+Inf", cumulative);
+		String suffix = (labels == null) ? "" : "{" + labels + "}";
+		sb.append(name).append("_count").append(suffix).append(' ')
+				.append(cumulative).append('\n');
+		sb.append(name).append("_sum").append(suffix).append(' ')
+				.append(histogram.getSum()).append('\n');
+		sb.append(name).append("_max").append(suffix).append(' ')
+				.append(histogram.getMax()).append('\n');
+	}
+
+	/**
+	 * Appends a bucket of a histogram in text format.
+	 */
+	private static void appendBucket(StringBuilder sb, String name,
+			String labels, String le, long cumulative) {
+		sb.append(name).append("_bucket{");
+		if (labels != null) {
+			sb.append(labels).append(',');
+		}
+		sb.append("le=\"").append(le).append("\"} ").append(cumulative)
+				.append('\n');
+	}
+}
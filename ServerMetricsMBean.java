@@ -0,0 +1,150 @@
+/**
+ * The management interface of the ServerMetrics class, exposed through JMX.
+ * All latencies are in nanoseconds.
+ * 
+ * @author Kwok Chun Yu
+ *
+ */
+public interface ServerMetricsMBean {
+	/**
+	 * Returns the total number of messages received by the server.
+	 * 
+	 * @return the total number of messages received by the server
+	 */
+	public long getMessagesReceived();
+
+	/**
+	 * Returns the number of messages received, indexed by message type.
+	 * 
+	 * @return the number of messages received, indexed by message type
+	 */
+	public long[] getMessagesReceivedByType();
+
+	/**
+	 * Returns the number of messages received during the last second, indexed
+	 * by message type.
+	 * 
+	 * @return the number of messages received per second, indexed by message
+	 *         type
+	 */
+	public long[] getMessageRatesByType();
+
+	/**
+	 * Returns the total number of bytes received from clients.
+	 * 
+	 * @return the total number of bytes received from clients
+	 */
+	public long getBytesIn();
+
+	/**
+	 * Returns the total number of bytes sent to clients.
+	 * 
+	 * @return the total number of bytes sent to clients
+	 */
+	public long getBytesOut();
+
+	/**
+	 * Returns the number of clients currently connected.
+	 * 
+	 * @return the number of clients currently connected
+	 */
+	public int getConnectedPlayers();
+
+	/**
+	 * Returns the number of games currently in progress.
+	 * 
+	 * @return the number of games currently in progress
+	 */
+	public int getActiveGames();
+
+	/**
+	 * Returns the total number of connections rejected because the server was
+	 * full.
+	 * 
+	 * @return the total number of rejected connections
+	 */
+	public long getRejectedConnections();
+
+	/**
+	 * Returns the number of connections rejected during the last second.
+	 * 
+	 * @return the number of connections rejected per second
+	 */
+	public long getRejectedConnectionRate();
+
+	/**
+	 * Returns the total number of broadcasts.
+	 * 
+	 * @return the total number of broadcasts
+	 */
+	public long getBroadcasts();
+
+	/**
+	 * Returns the mean time taken by a broadcast.
+	 * 
+	 * @return the mean time taken by a broadcast in nanoseconds
+	 */
+	public double getBroadcastMeanNanos();
+
+	/**
+	 * Returns an estimate of the 99th percentile of the time taken by a
+	 * broadcast.
+	 * 
+	 * @return the 99th percentile of the time taken by a broadcast in
+	 *         nanoseconds
+	 */
+	public long getBroadcastP99Nanos();
+
+	/**
+	 * Returns the longest time taken by a broadcast.
+	 * 
+	 * @return the longest time taken by a broadcast in nanoseconds
+	 */
+	public long getBroadcastMaxNanos();
+
+	/**
+	 * Returns the number of round trips of heartbeats measured.
+	 * 
+	 * @return the number of round trips of heartbeats measured
+	 */
+	public long getRoundTrips();
+
+	/**
+	 * Returns the mean round-trip time of the heartbeats.
+	 * 
+	 * @return the mean round-trip time of the heartbeats in nanoseconds
+	 */
+	public double getRoundTripMeanNanos();
+
+	/**
+	 * Returns an estimate of the 99th percentile of the round-trip time of
+	 * the heartbeats.
+	 * 
+	 * @return the 99th percentile of the round-trip time of the heartbeats in
+	 *         nanoseconds
+	 */
+	public long getRoundTripP99Nanos();
+
+	/**
+	 * Returns the number of connections closed because their heartbeats
+	 * stopped.
+	 * 
+	 * @return the number of connections closed because their heartbeats
+	 *         stopped
+	 */
+	public long getDeadConnections();
+
+	/**
+	 * Returns the current depths of the queues registered with the server.
+	 * 
+	 * @return a string listing the name and depth of each queue
+	 */
+	public String getQueueDepths();
+
+	/**
+	 * Returns the metrics in the text format served by the HTTP endpoint.
+	 * 
+	 * @return the metrics in text format
+	 */
+	public String dump();
+}
@@ -26,7 +26,7 @@ public class Single extends Hand {
 	 * @see Hand
 	 */
 	public Card getTopCard() { 
-		return new Card(this.getCard(0).suit, this.getCard(0).rank);
+		return this.getCard(0);
 	}
 	
 	/**
@@ -1,5 +1,3 @@
-import java.util.ArrayList;
-
 /**
  * The Straight class is a subclass of the Hand class, and is used to model a hand which type is "Straight".
  * 
@@ -25,23 +23,7 @@ public class Straight extends Hand {
 	 * @see Hand
 	 */
 	public boolean isValid() {
-		ArrayList<Integer> ranks = new ArrayList<Integer>();
-		for (int i = 0; i < this.size(); i++) {
-			if (this.getCard(i).rank == 0 || this.getCard(i).rank == 1) {
-				ranks.add(this.getCard(i).rank + 13);
-			} else { ranks.add(this.getCard(i).rank); }
-			ranks.sort(null);
-		}
-		int countStraight = 0;
-		for (int i = 0; i < ranks.size()-1; i++) {
-			if (ranks.get(i) == ranks.get(i + 1) - 1) {
-				countStraight += 1;
-			}
-		}
-		if (countStraight == 4) {
-			return true;
-		} else { return false; }
-
+		return this.size() == 5 && BigTwoRules.isStraight(BigTwoRules.maskOf(this));
 	}
 	
 	/**
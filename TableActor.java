@@ -0,0 +1,138 @@
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class is used to run the work of one table as an actor: the tasks sent
+ * to the table wait in its mailbox, and are run one at a time, in the order
+ * they are sent, by whichever worker of a shared pool picks the table up. As
+ * no two tasks of a table ever run at the same time, and each task sees
+ * everything done by the tasks before it, the state of a table needs no lock;
+ * tables only compete for the workers, so that many tables are served by as
+ * many threads as there are processors.
+ * <p>
+ * A worker runs at most BATCH tasks of a table before putting the table back
+ * at the end of the queue of the pool, so that a busy table does not starve
+ * the others. A task throwing an exception does not stop the table.
+ *
+ * @author Kwok Chun Yu
+ *
+ */
+public class TableActor implements Executor {
+	// the number of tasks run by a worker before serving another table
+	private static final int BATCH = 64;
+
+	private final Executor pool;
+	private final ConcurrentLinkedQueue<Runnable> mailbox = new ConcurrentLinkedQueue<Runnable>();
+	// true while the table is queued in the pool or run by a worker
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+
+	/*
+	 * the pool shared by all the tables, created when first used.
+	 */
+	private static class SharedPoolHolder {
+		private static final AtomicInteger WORKER_IDS = new AtomicInteger();
+		private static final ExecutorService POOL = Executors.newFixedThreadPool(
+				Runtime.getRuntime().availableProcessors(), r -> {
+					Thread t = new Thread(r, "table-worker-"
+							+ WORKER_IDS.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				});
+	}
+
+	/**
+	 * Creates and returns an actor whose tasks are run by the specified pool.
+	 *
+	 * @param pool
+	 *            the pool running the tasks of the table
+	 */
+	public TableActor(Executor pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Creates and returns an actor whose tasks are run by the pool shared by
+	 * all the tables, which has as many workers as there are processors.
+	 */
+	public TableActor() {
+		this(SharedPoolHolder.POOL);
+	}
+
+	/**
+	 * Sends a task to the mailbox of the table. The task runs after all the
+	 * tasks sent before it.
+	 *
+	 * @param task
+	 *            the task
+	 */
+	@Override
+	public void execute(Runnable task) {
+		mailbox.add(task);
+		schedule();
+	}
+
+	/**
+	 * Sends a task computing a result to the mailbox of the table, e.g. to
+	 * copy the state of the table for another thread.
+	 *
+	 * @param task
+	 *            the task
+	 * @return the future result of the task
+	 */
+	public <T> CompletableFuture<T> call(Callable<T> task) {
+		CompletableFuture<T> result = new CompletableFuture<T>();
+		execute(() -> {
+			try {
+				result.complete(task.call());
+			} catch (Throwable ex) {
+				result.completeExceptionally(ex);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Returns the number of tasks waiting in the mailbox of the table.
+	 *
+	 * @return the number of tasks waiting
+	 */
+	public int getMailboxSize() {
+		return mailbox.size();
+	}
+
+	private void schedule() {
+		if (!mailbox.isEmpty() && scheduled.compareAndSet(false, true)) {
+			pool.execute(this::drain);
+		}
+	}
+
+	/**
+	 * Runs the tasks in the mailbox, at most BATCH of them, and queues the
+	 * table again if tasks are left.
+	 */
+	private void drain() {
+		try {
+			for (int i = 0; i < BATCH; i++) {
+				Runnable task = mailbox.poll();
+				if (task == null) {
+					break;
+				}
+				try {
+					task.run();
+				} catch (RuntimeException ex) {
+					ex.printStackTrace();
+				}
+			}
+		} finally {
+			scheduled.set(false);
+			// a task sent while the flag was still set is picked up here
+			schedule();
+		}
+	}
+}
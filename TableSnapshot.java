@@ -0,0 +1,372 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * This class is used to model a compact snapshot of a table: the names and
+ * ready states of the players, which seats the bot takes, the cards in their hands, the last hand on the
+ * table and the current turn. A server captures a snapshot in a task of the
+ * actor of the table, which only copies a few hundred bytes; encoding the
+ * snapshot and writing it to disk is done afterwards outside the actor.
+ * <p>
+ * A snapshot is encoded as:
+ *
+ * <pre>
+ * int  MAGIC
+ * byte VERSION
+ * int  tableID
+ * long timestamp       milliseconds since the epoch
+ * byte gameInProgress  1 if a game is in progress, 0 otherwise
+ * byte numOfPlayers
+ * for every player:
+ *   short length + UTF-8 name (length -1 for an empty seat)
+ *   byte flags         1 if the player is ready, plus 2 if the seat is taken
+ *                      by the bot (version 2 only)
+ *   long hand          the set of cards in the hand (BigTwoRules.maskOf)
+ * byte currentIdx
+ * byte lastHandOwner   the player who played the last hand, -1 if none
+ * long lastHand        the set of cards of the last hand
+ * int  crc             CRC32 of all the bytes before
+ * </pre>
+ *
+ * @author Kwok Chun Yu
+ *
+ */
+public class TableSnapshot {
+	/** The magic number at the start of every snapshot. */
+	public static final int MAGIC = 0x4232534e; // "B2SN"
+	/** The version of the format of the snapshots. */
+	public static final int VERSION = 2;
+
+	private int tableID;
+	private long timestamp;
+	private boolean gameInProgress;
+	private final String[] names;
+	private final boolean[] readyStates;
+	private final boolean[] botSeats;
+	private final long[] hands;
+	private int currentIdx;
+	private int lastHandOwner = -1;
+	private long lastHand;
+
+	/**
+	 * Creates and returns an empty snapshot of a table with the specified
+	 * number of seats.
+	 *
+	 * @param numOfPlayers
+	 *            the number of seats of the table
+	 */
+	public TableSnapshot(int numOfPlayers) {
+		names = new String[numOfPlayers];
+		readyStates = new boolean[numOfPlayers];
+		botSeats = new boolean[numOfPlayers];
+		hands = new long[numOfPlayers];
+	}
+
+	/**
+	 * Copies the state of a table into this snapshot. The caller must be the
+	 * only thread changing the table, e.g. the actor of the table.
+	 *
+	 * @param tableID
+	 *            the ID of the table
+	 * @param names
+	 *            the names of the players, null for an empty seat
+	 * @param readyStates
+	 *            the ready states of the players
+	 * @param game
+	 *            the game being played at the table, or null if no game is
+	 *            in progress
+	 */
+	public void capture(int tableID, String[] names, boolean[] readyStates,
+			CardGame game) {
+		capture(tableID, names, readyStates, null, game);
+	}
+
+	/**
+	 * Copies the state of a table with seats taken by the bot into this
+	 * snapshot. The caller must be the only thread changing the table, e.g.
+	 * the actor of the table.
+	 *
+	 * @param tableID
+	 *            the ID of the table
+	 * @param names
+	 *            the names of the players, null for an empty seat
+	 * @param readyStates
+	 *            the ready states of the players
+	 * @param botSeats
+	 *            whether the seats are taken by the bot, or null if none is
+	 * @param game
+	 *            the game being played at the table, or null if no game is
+	 *            in progress
+	 */
+	public void capture(int tableID, String[] names, boolean[] readyStates,
+			boolean[] botSeats, CardGame game) {
+		this.tableID = tableID;
+		this.timestamp = System.currentTimeMillis();
+		System.arraycopy(names, 0, this.names, 0, this.names.length);
+		System.arraycopy(readyStates, 0, this.readyStates, 0,
+				this.readyStates.length);
+		for (int i = 0; i < this.botSeats.length; i++) {
+			this.botSeats[i] = botSeats != null && botSeats[i];
+		}
+		gameInProgress = game != null;
+		lastHandOwner = -1;
+		lastHand = 0;
+		if (game == null) {
+			currentIdx = 0;
+			for (int i = 0; i < hands.length; i++) {
+				hands[i] = 0;
+			}
+			return;
+		}
+		ArrayList<CardGamePlayer> playerList = game.getPlayerList();
+		for (int i = 0; i < hands.length; i++) {
+			hands[i] = BigTwoRules.maskOf(playerList.get(i).getCardsInHand());
+		}
+		currentIdx = game.getCurrentIdx();
+		ArrayList<Hand> handsOnTable = game.getHandsOnTable();
+		if (!handsOnTable.isEmpty()) {
+			Hand hand = handsOnTable.get(handsOnTable.size() - 1);
+			lastHandOwner = playerList.indexOf(hand.getPlayer());
+			lastHand = BigTwoRules.maskOf(hand);
+		}
+	}
+
+	/**
+	 * Restores the game captured in this snapshot: the cards of the players
+	 * are replaced, and the hands on the table are replaced by the last hand.
+	 *
+	 * @param playerList
+	 *            the players of the game
+	 * @param handsOnTable
+	 *            the hands on the table of the game
+	 * @return the index of the current player
+	 */
+	public int restore(ArrayList<CardGamePlayer> playerList,
+			ArrayList<Hand> handsOnTable) {
+		for (int i = 0; i < hands.length; i++) {
+			CardGamePlayer player = playerList.get(i);
+			player.removeAllCards();
+			BigTwoRules.addCards(hands[i], player.getCardsInHand());
+		}
+		handsOnTable.clear();
+		if (lastHandOwner >= 0) {
+			CardList cards = new CardList();
+			BigTwoRules.addCards(lastHand, cards);
+			handsOnTable.add(BigTwoClient.composeHand(
+					playerList.get(lastHandOwner), cards));
+		}
+		return currentIdx;
+	}
+
+	/**
+	 * Returns the ID of the table.
+	 *
+	 * @return the ID of the table
+	 */
+	public int getTableID() {
+		return tableID;
+	}
+
+	/**
+	 * Returns the time at which this snapshot was captured.
+	 *
+	 * @return the time in milliseconds since the epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Returns whether a game was in progress at the table.
+	 *
+	 * @return true if a game was in progress; false otherwise
+	 */
+	public boolean isGameInProgress() {
+		return gameInProgress;
+	}
+
+	/**
+	 * Returns the number of seats of the table.
+	 *
+	 * @return the number of seats of the table
+	 */
+	public int getNumOfPlayers() {
+		return names.length;
+	}
+
+	/**
+	 * Returns the name of the player at the specified seat.
+	 *
+	 * @param playerID
+	 *            the seat
+	 * @return the name of the player, or null for an empty seat
+	 */
+	public String getName(int playerID) {
+		return names[playerID];
+	}
+
+	/**
+	 * Returns the ready state of the player at the specified seat.
+	 *
+	 * @param playerID
+	 *            the seat
+	 * @return true if the player is ready for a new game; false otherwise
+	 */
+	public boolean isReady(int playerID) {
+		return readyStates[playerID];
+	}
+
+	/**
+	 * Returns whether the seat is taken by the bot.
+	 *
+	 * @param playerID
+	 *            the seat
+	 * @return true if the seat is taken by the bot; false otherwise
+	 */
+	public boolean isBot(int playerID) {
+		return botSeats[playerID];
+	}
+
+	/**
+	 * Returns the index of the current player.
+	 *
+	 * @return the index of the current player
+	 */
+	public int getCurrentIdx() {
+		return currentIdx;
+	}
+
+	/**
+	 * Encodes this snapshot.
+	 *
+	 * @return the bytes of this snapshot
+	 */
+	public byte[] toByteArray() {
+		int size = 4 + 1 + 4 + 8 + 1 + 1 + 1 + 1 + 8 + 4;
+		byte[][] encodedNames = new byte[names.length][];
+		for (int i = 0; i < names.length; i++) {
+			if (names[i] != null) {
+				encodedNames[i] = names[i].getBytes(StandardCharsets.UTF_8);
+				size += encodedNames[i].length;
+			}
+			size += 2 + 1 + 8;
+		}
+		ByteBuffer buf = ByteBuffer.allocate(size);
+		buf.putInt(MAGIC);
+		buf.put((byte) VERSION);
+		buf.putInt(tableID);
+		buf.putLong(timestamp);
+		buf.put((byte) (gameInProgress ? 1 : 0));
+		buf.put((byte) names.length);
+		for (int i = 0; i < names.length; i++) {
+			if (encodedNames[i] == null) {
+				buf.putShort((short) -1);
+			} else {
+				buf.putShort((short) encodedNames[i].length);
+				buf.put(encodedNames[i]);
+			}
+			buf.put((byte) ((readyStates[i] ? 1 : 0) | (botSeats[i] ? 2 : 0)));
+			buf.putLong(hands[i]);
+		}
+		buf.put((byte) currentIdx);
+		buf.put((byte) lastHandOwner);
+		buf.putLong(lastHand);
+		CRC32 crc = new CRC32();
+		crc.update(buf.array(), 0, buf.position());
+		buf.putInt((int) crc.getValue());
+		return buf.array();
+	}
+
+	/**
+	 * Decodes a snapshot.
+	 *
+	 * @param data
+	 *            the bytes of the snapshot
+	 * @return the snapshot
+	 * @throws IOException
+	 *             if the bytes are not a valid snapshot
+	 */
+	public static TableSnapshot fromByteArray(byte[] data) throws IOException {
+		try {
+			ByteBuffer buf = ByteBuffer.wrap(data);
+			CRC32 crc = new CRC32();
+			crc.update(data, 0, data.length - 4);
+			if (buf.getInt() != MAGIC) {
+				throw new IOException("Not a valid table snapshot");
+			}
+			// a snapshot of version 1 has no seats taken by the bot
+			int version = buf.get();
+			if ((version != 1 && version != VERSION)
+					|| buf.getInt(data.length - 4) != (int) crc.getValue()) {
+				throw new IOException("Not a valid table snapshot");
+			}
+			int tableID = buf.getInt();
+			long timestamp = buf.getLong();
+			boolean gameInProgress = buf.get() != 0;
+			TableSnapshot snapshot = new TableSnapshot(buf.get());
+			snapshot.tableID = tableID;
+			snapshot.timestamp = timestamp;
+			snapshot.gameInProgress = gameInProgress;
+			for (int i = 0; i < snapshot.names.length; i++) {
+				int length = buf.getShort();
+				if (length >= 0) {
+					byte[] name = new byte[length];
+					buf.get(name);
+					snapshot.names[i] = new String(name,
+							StandardCharsets.UTF_8);
+				}
+				int flags = buf.get();
+				snapshot.readyStates[i] = (flags & 1) != 0;
+				snapshot.botSeats[i] = (flags & 2) != 0;
+				snapshot.hands[i] = buf.getLong();
+			}
+			snapshot.currentIdx = buf.get();
+			snapshot.lastHandOwner = buf.get();
+			snapshot.lastHand = buf.getLong();
+			return snapshot;
+		} catch (RuntimeException ex) {
+			throw new IOException("Not a valid table snapshot", ex);
+		}
+	}
+
+	/**
+	 * Writes this snapshot to the specified file. The snapshot is written to
+	 * a temporary file first, which then replaces the file atomically, so
+	 * that a crash never leaves a partially written snapshot.
+	 *
+	 * @param file
+	 *            the file
+	 * @throws IOException
+	 *             if the snapshot cannot be written
+	 */
+	public void write(File file) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		try (FileOutputStream out = new FileOutputStream(tmp)) {
+			out.write(toByteArray());
+			out.getFD().sync();
+		}
+		Files.move(tmp.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads a snapshot from the specified file.
+	 *
+	 * @param file
+	 *            the file
+	 * @return the snapshot
+	 * @throws IOException
+	 *             if the file cannot be read or is not a valid snapshot
+	 */
+	public static TableSnapshot read(File file) throws IOException {
+		return fromByteArray(Files.readAllBytes(file.toPath()));
+	}
+}
@@ -0,0 +1,360 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+/**
+ * This class is used to model the state of many tables stored off the heap,
+ * one fixed-size record per table in a direct buffer, so that the size of the
+ * heap and the pauses of the garbage collector do not grow with the number of
+ * tables. A record holds what the engine of a server needs to run a game, and
+ * is laid out as:
+ *
+ * <pre>
+ * offset  size
+ *  0      4 * 8  hands         the set of cards of every seat (BigTwoRules.maskOf)
+ * 32      8      lastHand      the set of cards of the last hand on the table
+ * 40      1      currentIdx    the seat of the current player
+ * 41      1      lastOwner     the seat of the player of the last hand, -1 if none
+ * 42      2      flags         IN_USE, GAME_IN_PROGRESS, and a ready bit per seat
+ * 44      4      turn          the number of moves played, or the next free record
+ * </pre>
+ *
+ * The free records are linked through their turn fields, so that allocating
+ * and releasing a table takes constant time and no memory on the heap. The
+ * accessors of a table are not synchronized: the caller must be the only
+ * thread changing the table, e.g. the actor of the table (see TableActor).
+ *
+ * @author Kwok Chun Yu
+ *
+ */
+public class TableStore {
+	/** The number of seats of every table. */
+	public static final int NUM_OF_SEATS = 4;
+	/** The size of the record of a table in bytes. */
+	public static final int RECORD_SIZE = 48;
+
+	private static final int HANDS = 0;
+	private static final int LAST_HAND = 32;
+	private static final int CURRENT_IDX = 40;
+	private static final int LAST_OWNER = 41;
+	private static final int FLAGS = 42;
+	private static final int TURN = 44;
+
+	private static final int IN_USE = 1;
+	private static final int GAME_IN_PROGRESS = 2;
+	// the ready bit of seat i is READY << i
+	private static final int READY = 16;
+
+	private final ByteBuffer records;
+	private final int capacity;
+	private int firstFree;
+	private int numOfTables = 0;
+
+	/**
+	 * Creates and returns a store of the specified number of tables. The
+	 * memory of all the tables is allocated at once.
+	 *
+	 * @param capacity
+	 *            the maximum number of tables
+	 */
+	public TableStore(int capacity) {
+		if (capacity < 1 || capacity > Integer.MAX_VALUE / RECORD_SIZE) {
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		}
+		this.capacity = capacity;
+		records = ByteBuffer.allocateDirect(capacity * RECORD_SIZE).order(
+				ByteOrder.nativeOrder());
+		for (int table = 0; table < capacity; table++) {
+			records.putInt(table * RECORD_SIZE + TURN, table + 1);
+		}
+		firstFree = 0;
+	}
+
+	/**
+	 * Allocates the record of a new table, with empty hands and no game in
+	 * progress.
+	 *
+	 * @return the index of the table
+	 * @throws IllegalStateException
+	 *             if the store is full
+	 */
+	public synchronized int allocate() {
+		if (firstFree == capacity) {
+			throw new IllegalStateException("The table store is full");
+		}
+		int table = firstFree;
+		int offset = table * RECORD_SIZE;
+		firstFree = records.getInt(offset + TURN);
+		for (int i = 0; i < RECORD_SIZE; i += 8) {
+			records.putLong(offset + i, 0);
+		}
+		records.put(offset + LAST_OWNER, (byte) -1);
+		records.putShort(offset + FLAGS, (short) IN_USE);
+		numOfTables++;
+		return table;
+	}
+
+	/**
+	 * Releases the record of a table, which may be allocated again.
+	 *
+	 * @param table
+	 *            the index of the table
+	 */
+	public synchronized void release(int table) {
+		int offset = offsetOf(table);
+		records.putShort(offset + FLAGS, (short) 0);
+		records.putInt(offset + TURN, firstFree);
+		firstFree = table;
+		numOfTables--;
+	}
+
+	/**
+	 * Returns the number of tables allocated.
+	 *
+	 * @return the number of tables allocated
+	 */
+	public synchronized int getNumOfTables() {
+		return numOfTables;
+	}
+
+	/**
+	 * Returns the maximum number of tables.
+	 *
+	 * @return the maximum number of tables
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Starts a new game at a table. The ready states of the seats are cleared,
+	 * as they are when a server starts a game.
+	 *
+	 * @param table
+	 *            the index of the table
+	 * @param hands
+	 *            the set of cards dealt to every seat
+	 * @param currentIdx
+	 *            the seat of the player who plays first
+	 */
+	public void start(int table, long[] hands, int currentIdx) {
+		int offset = offsetOf(table);
+		for (int i = 0; i < NUM_OF_SEATS; i++) {
+			records.putLong(offset + HANDS + i * 8, hands[i]);
+		}
+		records.putLong(offset + LAST_HAND, 0);
+		records.put(offset + CURRENT_IDX, (byte) currentIdx);
+		records.put(offset + LAST_OWNER, (byte) -1);
+		records.putInt(offset + TURN, 0);
+		records.putShort(offset + FLAGS, (short) (IN_USE | GAME_IN_PROGRESS));
+	}
+
+	/**
+	 * Copies the game being played through the CardGame interface into the
+	 * record of a table, e.g. when a game starts or is resumed.
+	 *
+	 * @param table
+	 *            the index of the table
+	 * @param game
+	 *            the game, with NUM_OF_SEATS players
+	 */
+	public void capture(int table, CardGame game) {
+		ArrayList<CardGamePlayer> playerList = game.getPlayerList();
+		long[] hands = new long[NUM_OF_SEATS];
+		for (int i = 0; i < NUM_OF_SEATS; i++) {
+			hands[i] = BigTwoRules.maskOf(playerList.get(i).getCardsInHand());
+		}
+		start(table, hands, game.getCurrentIdx());
+		ArrayList<Hand> handsOnTable = game.getHandsOnTable();
+		if (!handsOnTable.isEmpty()) {
+			Hand hand = handsOnTable.get(handsOnTable.size() - 1);
+			int offset = offsetOf(table);
+			records.putLong(offset + LAST_HAND, BigTwoRules.maskOf(hand));
+			records.put(offset + LAST_OWNER,
+					(byte) playerList.indexOf(hand.getPlayer()));
+		}
+	}
+
+	/**
+	 * Plays a legal move by the current player of a table. The game ends when
+	 * a player has no card left.
+	 *
+	 * @param table
+	 *            the index of the table
+	 * @param seat
+	 *            the seat of the player making the move
+	 * @param move
+	 *            the set of cards played, or BigTwoState.PASS
+	 * @throws IllegalArgumentException
+	 *             if it is not the turn of the seat
+	 */
+	public void play(int table, int seat, long move) {
+		int offset = offsetOf(table);
+		int currentIdx = records.get(offset + CURRENT_IDX);
+		if (seat != currentIdx) {
+			throw new IllegalArgumentException("Not the turn of seat " + seat
+					+ " at table " + table);
+		}
+		if (move != BigTwoState.PASS) {
+			int handOffset = offset + HANDS + currentIdx * 8;
+			long hand = records.getLong(handOffset) & ~move;
+			records.putLong(handOffset, hand);
+			records.putLong(offset + LAST_HAND, move);
+			records.put(offset + LAST_OWNER, (byte) currentIdx);
+			if (hand == 0) {
+				setFlag(offset, GAME_IN_PROGRESS, false);
+			}
+		}
+		records.put(offset + CURRENT_IDX,
+				(byte) ((currentIdx + 1) % NUM_OF_SEATS));
+		records.putInt(offset + TURN, records.getInt(offset + TURN) + 1);
+	}
+
+	/**
+	 * Copies the game at a table into the specified state, e.g. for a bot to
+	 * search for a move.
+	 *
+	 * @param table
+	 *            the index of the table
+	 * @param state
+	 *            the state of a game of NUM_OF_SEATS players
+	 */
+	public void load(int table, BigTwoState state) {
+		int offset = offsetOf(table);
+		for (int i = 0; i < NUM_OF_SEATS; i++) {
+			state.setHand(i, records.getLong(offset + HANDS + i * 8));
+		}
+		state.reset(records.get(offset + CURRENT_IDX));
+		state.setLastHand(records.getLong(offset + LAST_HAND),
+				records.get(offset + LAST_OWNER));
+	}
+
+	/**
+	 * Returns the set of cards of a seat of a table.
+	 *
+	 * @param table
+	 *            the index of the table
+	 * @param seat
+	 *            the seat
+	 * @return the set of cards of the seat
+	 */
+	public long getHand(int table, int seat) {
+		return records.getLong(offsetOf(table) + HANDS + seat * 8);
+	}
+
+	/**
+	 * Returns the set of cards of the last hand on a table.
+	 *
+	 * @param table
+	 *            the index of the table
+	 * @return the set of cards of the last hand, or 0 if no hand is played
+	 */
+	public long getLastHand(int table) {
+		return records.getLong(offsetOf(table) + LAST_HAND);
+	}
+
+	/**
+	 * Returns the seat of the player who played the last hand on a table.
+	 *
+	 * @param table
+	 *            the index of the table
+	 * @return the seat of the player, or -1 if no hand is played
+	 */
+	public int getLastOwner(int table) {
+		return records.get(offsetOf(table) + LAST_OWNER);
+	}
+
+	/**
+	 * Returns the seat of the current player of a table.
+	 *
+	 * @param table
+	 *            the index of the table
+	 * @return the seat of the current player
+	 */
+	public int getCurrentIdx(int table) {
+		return records.get(offsetOf(table) + CURRENT_IDX);
+	}
+
+	/**
+	 * Returns the number of moves played in the game at a table.
+	 *
+	 * @param table
+	 *            the index of the table
+	 * @return the number of moves played
+	 */
+	public int getTurn(int table) {
+		return records.getInt(offsetOf(table) + TURN);
+	}
+
+	/**
+	 * Returns whether a game is in progress at a table.
+	 *
+	 * @param table
+	 *            the index of the table
+	 * @return true if a game is in progress; false otherwise
+	 */
+	public boolean isGameInProgress(int table) {
+		int flags = records.getShort(offsetOf(table) + FLAGS);
+		return (flags & GAME_IN_PROGRESS) != 0;
+	}
+
+	/**
+	 * Sets whether a game is in progress at a table, e.g. when a game is
+	 * abandoned.
+	 *
+	 * @param table
+	 *            the index of the table
+	 * @param gameInProgress
+	 *            true if a game is in progress; false otherwise
+	 */
+	public void setGameInProgress(int table, boolean gameInProgress) {
+		setFlag(offsetOf(table), GAME_IN_PROGRESS, gameInProgress);
+	}
+
+	/**
+	 * Returns the ready state of a seat of a table.
+	 *
+	 * @param table
+	 *            the index of the table
+	 * @param seat
+	 *            the seat
+	 * @return true if the player at the seat is ready for a new game
+	 */
+	public boolean isReady(int table, int seat) {
+		int flags = records.getShort(offsetOf(table) + FLAGS);
+		return (flags & (READY << seat)) != 0;
+	}
+
+	/**
+	 * Sets the ready state of a seat of a table.
+	 *
+	 * @param table
+	 *            the index of the table
+	 * @param seat
+	 *            the seat
+	 * @param ready
+	 *            true if the player at the seat is ready for a new game
+	 */
+	public void setReady(int table, int seat, boolean ready) {
+		setFlag(offsetOf(table), READY << seat, ready);
+	}
+
+	private void setFlag(int offset, int flag, boolean value) {
+		int flags = records.getShort(offset + FLAGS);
+		flags = value ? (flags | flag) : (flags & ~flag);
+		records.putShort(offset + FLAGS, (short) flags);
+	}
+
+	/**
+	 * Returns the offset of the record of a table, checking that the table is
+	 * allocated.
+	 */
+	private int offsetOf(int table) {
+		int offset = table * RECORD_SIZE;
+		if (table < 0 || table >= capacity
+				|| (records.getShort(offset + FLAGS) & IN_USE) == 0) {
+			throw new IllegalArgumentException("No such table: " + table);
+		}
+		return offset;
+	}
+}
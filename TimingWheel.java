@@ -0,0 +1,271 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class is used to run many timers, such as the turn timers of many
+ * tables, on one thread. The timers are kept in a hashed timing wheel: a
+ * circle of buckets, one per tick, where a timer is put in the bucket of the
+ * tick at which it expires, with the number of full turns of the wheel it
+ * still has to wait. Scheduling and cancelling a timer take constant time
+ * whatever the number of timers, and every tick only looks at one bucket.
+ * <p>
+ * Timers are scheduled and cancelled from any thread through lock-free
+ * queues, which the thread of the wheel drains at every tick, so that the
+ * buckets are only touched by that thread. A timer expires within one tick
+ * after its delay, and its task runs on the thread of the wheel, so the
+ * task should only hand the work over, e.g. to the actor of a table.
+ *
+ * @author Kwok Chun Yu
+ *
+ */
+public class TimingWheel {
+	// the states of a timer
+	private static final int PENDING = 0;
+	private static final int CANCELLED = 1;
+	private static final int EXPIRED = 2;
+
+	private final long tickNanos;
+	private final Bucket[] buckets;
+	private final int mask;
+	private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<Timeout>();
+	private final ConcurrentLinkedQueue<Timeout> cancelled = new ConcurrentLinkedQueue<Timeout>();
+	private final AtomicInteger numOfPending = new AtomicInteger();
+	private final long startTime;
+	private final Thread thread;
+	private volatile boolean running = true;
+	// the number of ticks done, only used by the thread of the wheel
+	private long tick = 0;
+
+	/*
+	 * the wheel shared by all the tables, created when first used.
+	 */
+	private static class SharedHolder {
+		private static final TimingWheel SHARED = new TimingWheel(100,
+				TimeUnit.MILLISECONDS, 512);
+	}
+
+	/**
+	 * Creates and returns a timing wheel, and starts its thread.
+	 *
+	 * @param tickDuration
+	 *            the duration of a tick, i.e. the precision of the timers
+	 * @param unit
+	 *            the unit of the duration
+	 * @param numOfBuckets
+	 *            the number of buckets, rounded up to a power of 2
+	 */
+	public TimingWheel(long tickDuration, TimeUnit unit, int numOfBuckets) {
+		tickNanos = Math.max(1, unit.toNanos(tickDuration));
+		int size = Integer.highestOneBit(Math.max(1, numOfBuckets - 1)) << 1;
+		buckets = new Bucket[size];
+		for (int i = 0; i < size; i++) {
+			buckets[i] = new Bucket();
+		}
+		mask = size - 1;
+		startTime = System.nanoTime();
+		thread = new Thread(this::run, "timing-wheel");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Returns the timing wheel shared by the whole program, with ticks of 100
+	 * milliseconds.
+	 *
+	 * @return the shared timing wheel
+	 */
+	public static TimingWheel getShared() {
+		return SharedHolder.SHARED;
+	}
+
+	/**
+	 * Schedules a task to run once after the specified delay.
+	 *
+	 * @param task
+	 *            the task, which runs on the thread of the wheel
+	 * @param delay
+	 *            the delay
+	 * @param unit
+	 *            the unit of the delay
+	 * @return the timer, which may be cancelled
+	 */
+	public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+		Timeout timeout = new Timeout(task, System.nanoTime()
+				+ unit.toNanos(Math.max(0, delay)));
+		numOfPending.incrementAndGet();
+		added.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Returns the number of timers neither expired nor cancelled.
+	 *
+	 * @return the number of pending timers
+	 */
+	public int getNumOfPending() {
+		return numOfPending.get();
+	}
+
+	/**
+	 * Stops the thread of the wheel. The pending timers never expire.
+	 */
+	public void stop() {
+		running = false;
+		thread.interrupt();
+	}
+
+	/**
+	 * This inner class is used to model a timer scheduled on the wheel.
+	 */
+	public final class Timeout {
+		private final Runnable task;
+		private final long deadline;
+		private final AtomicInteger state = new AtomicInteger(PENDING);
+		// the following fields are only used by the thread of the wheel
+		private long remainingRounds;
+		private Bucket bucket;
+		private Timeout prev;
+		private Timeout next;
+
+		private Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Cancels this timer, unless it has expired.
+		 *
+		 * @return true if the timer is cancelled by this call; false otherwise
+		 */
+		public boolean cancel() {
+			if (!state.compareAndSet(PENDING, CANCELLED)) {
+				return false;
+			}
+			numOfPending.decrementAndGet();
+			cancelled.add(this);
+			return true;
+		}
+
+		/**
+		 * Returns whether this timer is cancelled.
+		 *
+		 * @return true if the timer is cancelled; false otherwise
+		 */
+		public boolean isCancelled() {
+			return state.get() == CANCELLED;
+		}
+
+		/**
+		 * Returns whether this timer has expired, i.e. its task has run or is
+		 * running.
+		 *
+		 * @return true if the timer has expired; false otherwise
+		 */
+		public boolean isExpired() {
+			return state.get() == EXPIRED;
+		}
+	}
+
+	/*
+	 * a doubly linked list of timers, so that a timer is removed in constant
+	 * time.
+	 */
+	private static class Bucket {
+		private Timeout head;
+		private Timeout tail;
+
+		void add(Timeout timeout) {
+			timeout.bucket = this;
+			timeout.prev = tail;
+			timeout.next = null;
+			if (tail == null) {
+				head = timeout;
+			} else {
+				tail.next = timeout;
+			}
+			tail = timeout;
+		}
+
+		void remove(Timeout timeout) {
+			if (timeout.prev == null) {
+				head = timeout.next;
+			} else {
+				timeout.prev.next = timeout.next;
+			}
+			if (timeout.next == null) {
+				tail = timeout.prev;
+			} else {
+				timeout.next.prev = timeout.prev;
+			}
+			timeout.bucket = null;
+			timeout.prev = null;
+			timeout.next = null;
+		}
+	}
+
+	/**
+	 * Waits for every tick, and expires the timers of its bucket.
+	 */
+	private void run() {
+		while (running) {
+			long sleepNanos = startTime + (tick + 1) * tickNanos
+					- System.nanoTime();
+			if (sleepNanos > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(sleepNanos);
+				} catch (InterruptedException ex) {
+					continue;
+				}
+			}
+			removeCancelled();
+			addScheduled();
+			expire(buckets[(int) (tick & mask)]);
+			tick++;
+		}
+	}
+
+	private void removeCancelled() {
+		Timeout timeout;
+		while ((timeout = cancelled.poll()) != null) {
+			if (timeout.bucket != null) {
+				timeout.bucket.remove(timeout);
+			}
+		}
+	}
+
+	private void addScheduled() {
+		Timeout timeout;
+		while ((timeout = added.poll()) != null) {
+			if (timeout.state.get() != PENDING) {
+				continue;
+			}
+			// a timer already due expires at the current tick
+			long ticks = Math.max(tick,
+					(timeout.deadline - startTime + tickNanos - 1) / tickNanos);
+			timeout.remainingRounds = (ticks - tick) / buckets.length;
+			buckets[(int) (ticks & mask)].add(timeout);
+		}
+	}
+
+	private void expire(Bucket bucket) {
+		Timeout timeout = bucket.head;
+		while (timeout != null) {
+			Timeout next = timeout.next;
+			if (timeout.remainingRounds > 0) {
+				timeout.remainingRounds--;
+			} else {
+				bucket.remove(timeout);
+				if (timeout.state.compareAndSet(PENDING, EXPIRED)) {
+					numOfPending.decrementAndGet();
+					try {
+						timeout.task.run();
+					} catch (RuntimeException ex) {
+						ex.printStackTrace();
+					}
+				}
+			}
+			timeout = next;
+		}
+	}
+}
@@ -0,0 +1,184 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The WinProbabilityEstimator class is used to estimate the chance of every player to win a game in
+ * progress, as seen by one player: the cards that player cannot see are dealt randomly to the others,
+ * consistently with the cards played so far and the number of cards each player holds, and the game is
+ * played out by a BigTwoStrategy. The playouts run in rounds on a ForkJoinPool of low priority threads,
+ * and the estimate is published after every round, so that it is refined while the player thinks. Every
+ * move, a pass included since it changes whose turn it is and possibly who leads, starts a new estimate
+ * from the new position, and the last estimate is kept until the first round of the new one ends.
+ * <p>
+ * The estimator never takes more than a share of the processors: the pool has fewer threads than there
+ * are processors, and after every round the estimator sleeps long enough to keep its share of the time
+ * below the given one.
+ *
+ * @author Kwok Chun Yu
+ */
+public class WinProbabilityEstimator {
+
+	// number of playouts of a round
+	private static final int ROUND = 512;
+	// number of playouts of one task without splitting it further
+	private static final int THRESHOLD = 64;
+
+	private final ForkJoinPool pool;
+	private final ExecutorService driver;
+	private final double maxCpuShare;
+	private final int maxSamples;
+	private final BigTwoStrategy strategy;
+	private final Runnable onUpdate;
+	private final AtomicLong generation = new AtomicLong();
+	private volatile double[] estimate;
+	private volatile long samples;
+
+	/**
+	 * a constructor for creating an estimator.
+	 * @param parallelism the number of threads playing out games
+	 * @param maxCpuShare the share of the time the threads may be busy, between 0 and 1
+	 * @param maxSamples the number of playouts after which an estimate is final
+	 * @param strategy the strategy of all the players in the playouts
+	 * @param onUpdate called on a background thread whenever the estimate changes
+	 */
+	public WinProbabilityEstimator(int parallelism, double maxCpuShare, int maxSamples, BigTwoStrategy strategy,
+			Runnable onUpdate) {
+		this.pool = new ForkJoinPool(Math.max(1, parallelism), p -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+			thread.setName("win-probability-" + thread.getPoolIndex());
+			thread.setPriority(Thread.MIN_PRIORITY);
+			thread.setDaemon(true);
+			return thread;
+		}, null, false);
+		this.driver = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "win-probability");
+			thread.setPriority(Thread.MIN_PRIORITY);
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.maxCpuShare = Math.min(1, Math.max(0.05, maxCpuShare));
+		this.maxSamples = maxSamples;
+		this.strategy = strategy;
+		this.onUpdate = onUpdate;
+	}
+
+	/**
+	 * a constructor for creating an estimator using half of the processors, half of the time, with
+	 * 20000 greedy playouts per estimate.
+	 * @param onUpdate called on a background thread whenever the estimate changes
+	 */
+	public WinProbabilityEstimator(Runnable onUpdate) {
+		this(Runtime.getRuntime().availableProcessors() / 2, 0.5, 20000, BigTwoStrategy.GREEDY, onUpdate);
+	}
+
+	/**
+	 * a method for starting a new estimate of a game in progress, stopping the current one.
+	 * @param state the state of the game, in which no player has emptied its hand
+	 * @param observer the index of the player whose view is used
+	 */
+	public void update(BigTwoState state, int observer) {
+		long current = generation.incrementAndGet();
+		BigTwoState copy = new BigTwoState(state);
+		driver.execute(() -> estimate(copy, observer, current));
+	}
+
+	/**
+	 * a method for stopping the current estimate and forgetting it, e.g. at the end of a game.
+	 */
+	public void clear() {
+		generation.incrementAndGet();
+		estimate = null;
+		samples = 0;
+		onUpdate.run();
+	}
+
+	/**
+	 * a method for retrieving the latest estimate.
+	 * @return the probability of every player to win, or null if there is no estimate
+	 */
+	public double[] getEstimate() { return estimate; }
+
+	/**
+	 * a method for retrieving the number of playouts of the latest estimate.
+	 * @return the number of playouts
+	 */
+	public long getSamples() { return samples; }
+
+	private void estimate(BigTwoState state, int observer, long current) {
+		long[] wins = new long[state.getNumOfPlayers()];
+		long n = 0;
+		while (n < maxSamples && generation.get() == current) {
+			long start = System.nanoTime();
+			long[] roundWins = pool.invoke(new PlayoutTask(state, observer, ROUND));
+			n += ROUND;
+			double[] probabilities = new double[wins.length];
+			for (int i = 0; i < wins.length; i++) {
+				wins[i] += roundWins[i];
+				probabilities[i] = (double) wins[i] / n;
+			}
+			if (generation.get() != current) {
+				return;
+			}
+			estimate = probabilities;
+			samples = n;
+			onUpdate.run();
+			// sleeps to keep the share of the time below maxCpuShare
+			long busy = System.nanoTime() - start;
+			long idle = (long) (busy * (1 - maxCpuShare) / maxCpuShare);
+			try {
+				Thread.sleep(idle / 1000000, (int) (idle % 1000000));
+			} catch (InterruptedException ex) {
+				return;
+			}
+		}
+	}
+
+	/*
+	 * a task playing out a number of deals, splitting them in halves until they are few enough.
+	 */
+	private class PlayoutTask extends RecursiveTask<long[]> {
+		private static final long serialVersionUID = 1L;
+		private final BigTwoState state;
+		private final int observer;
+		private final int numOfPlayouts;
+
+		PlayoutTask(BigTwoState state, int observer, int numOfPlayouts) {
+			this.state = state;
+			this.observer = observer;
+			this.numOfPlayouts = numOfPlayouts;
+		}
+
+		@Override
+		protected long[] compute() {
+			if (numOfPlayouts <= THRESHOLD) {
+				long[] wins = new long[state.getNumOfPlayers()];
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				BigTwoState playout = new BigTwoState(state);
+				long[] moves = new long[BigTwoState.MAX_MOVES];
+				for (int i = 0; i < numOfPlayouts; i++) {
+					playout.copyFrom(state);
+					BigTwoBot.determinize(playout, observer, random);
+					int winner;
+					while ((winner = playout.getWinner()) < 0) {
+						playout.play(strategy.chooseMove(playout, moves, playout.generateMoves(moves), random));
+					}
+					wins[winner]++;
+				}
+				return wins;
+			}
+			PlayoutTask left = new PlayoutTask(state, observer, numOfPlayouts / 2);
+			left.fork();
+			long[] wins = new PlayoutTask(state, observer, numOfPlayouts - numOfPlayouts / 2).compute();
+			long[] leftWins = left.join();
+			for (int i = 0; i < wins.length; i++) {
+				wins[i] += leftWins[i];
+			}
+			return wins;
+		}
+	}
+}
@@ -0,0 +1,196 @@
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * This class is used to guard the move validation path against regressions.
+ * It checks that BigTwoRules agrees with the Hand classes on random
+ * selections of cards, and that validating a move (BigTwoRules.checkMove()),
+ * Hand.beats() and Hand.getTopCard() allocate nothing in steady state, as
+ * measured by the per-thread allocation counter of the JVM. It exits with a
+ * non-zero status if any check fails, so it can be used as a build gate.
+ * <p>
+ * Run it with bench/run.sh AllocationGuard.
+ * 
+ * @author Kwok Chun Yu
+ *
+ */
+public class AllocationGuard {
+	private static final int NUM_OF_SCENARIOS = 1024; // must be a power of two
+	private static final int MASK = NUM_OF_SCENARIOS - 1;
+	private static final int WARMUP_CALLS = 2_000_000;
+	private static final int MEASURED_CALLS = 1_000_000;
+	// allowance for the measurement itself, far below one byte per call
+	private static final long SLACK_BYTES = 4096;
+
+	private final Random random = new Random(2396);
+	private final CardGamePlayer player = new CardGamePlayer("Guard");
+	private final CardList[] hands = new CardList[NUM_OF_SCENARIOS];
+	private final int[][] cardIdx = new int[NUM_OF_SCENARIOS][];
+	private final Hand[] lastHands = new Hand[NUM_OF_SCENARIOS];
+	private final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+	private long sink = 0;
+	private int failures = 0;
+
+	/**
+	 * Creates and returns an instance of the AllocationGuard class, creating
+	 * random scenarios from random deals.
+	 */
+	public AllocationGuard() {
+		int[] sizes = { 1, 2, 3, 5 };
+		for (int i = 0; i < NUM_OF_SCENARIOS; i++) {
+			Deck deck = new BigTwoDeck();
+			CardList hand = new CardList();
+			for (int j = 0; j < 13; j++) {
+				hand.addCard(deck.getCard(j));
+			}
+			hands[i] = hand;
+			cardIdx[i] = randomIdx(sizes[random.nextInt(sizes.length)]);
+			// the last hand is a valid hand taken from another player
+			Hand lastHand = null;
+			while (lastHand == null) {
+				CardList cards = new CardList();
+				for (int j : randomIdx(sizes[random.nextInt(sizes.length)])) {
+					cards.addCard(deck.getCard(13 + j));
+				}
+				lastHand = BigTwoClient.composeHand(player, cards);
+			}
+			lastHands[i] = lastHand;
+		}
+	}
+
+	/**
+	 * Returns distinct random indices between 0 and 12 in ascending order.
+	 */
+	private int[] randomIdx(int size) {
+		boolean[] used = new boolean[13];
+		for (int i = 0; i < size; i++) {
+			int k;
+			do {
+				k = random.nextInt(13);
+			} while (used[k]);
+			used[k] = true;
+		}
+		int[] idx = new int[size];
+		for (int i = 0, j = 0; i < 13; i++) {
+			if (used[i]) {
+				idx[j++] = i;
+			}
+		}
+		return idx;
+	}
+
+	/**
+	 * Checks that BigTwoRules agrees with composeHand() and Hand.beats().
+	 */
+	private void checkAgreement() {
+		for (int i = 0; i < NUM_OF_SCENARIOS; i++) {
+			Hand hand = BigTwoClient.composeHand(player,
+					select(hands[i], cardIdx[i]));
+			int value = BigTwoRules.evaluate(BigTwoRules.maskOf(hands[i],
+					cardIdx[i]));
+			String expected = (hand == null) ? null : hand.getType();
+			String actual = BigTwoRules.getTypeName(BigTwoRules
+					.typeOfValue(value));
+			if (expected == null ? actual != null : !expected.equals(actual)) {
+				fail("type of " + select(hands[i], cardIdx[i]) + ": "
+						+ expected + " by composeHand, " + actual
+						+ " by BigTwoRules");
+			}
+			if (hand != null && lastHands[i].size() == hand.size()) {
+				boolean expectedBeats = lastHands[i].beats(hand);
+				boolean actualBeats = BigTwoRules.beats(value,
+						BigTwoRules.evaluate(lastHands[i]));
+				if (expectedBeats != actualBeats) {
+					fail(hand + " against " + lastHands[i] + ": "
+							+ expectedBeats + " by Hand.beats, " + actualBeats
+							+ " by BigTwoRules");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns a new list of the cards at the specified indices.
+	 */
+	private static CardList select(CardList cards, int[] idx) {
+		CardList selected = new CardList();
+		for (int i : idx) {
+			selected.addCard(cards.getCard(i));
+		}
+		return selected;
+	}
+
+	/**
+	 * An operation whose allocation is being measured.
+	 */
+	private interface Op {
+		long run(int i);
+	}
+
+	/**
+	 * Checks that the specified operation allocates nothing in steady state.
+	 */
+	private void checkNoAllocation(String name, Op op) {
+		for (int i = 0; i < WARMUP_CALLS; i++) {
+			sink += op.run(i);
+		}
+		long threadId = Thread.currentThread().getId();
+		long before = threadBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < MEASURED_CALLS; i++) {
+			sink += op.run(i);
+		}
+		long bytes = threadBean.getThreadAllocatedBytes(threadId) - before;
+		System.out.printf("%-40s %10d bytes in %d calls%n", name, bytes,
+				MEASURED_CALLS);
+		if (bytes > SLACK_BYTES) {
+			fail(name + " allocates " + bytes + " bytes in " + MEASURED_CALLS
+					+ " calls");
+		}
+	}
+
+	/**
+	 * Records a failure.
+	 */
+	private void fail(String msg) {
+		System.out.println("FAILED: " + msg);
+		failures++;
+	}
+
+	/**
+	 * Runs all the checks.
+	 * 
+	 * @return the number of failures
+	 */
+	public int run() {
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+		checkAgreement();
+		checkNoAllocation("BigTwoRules.checkMove", i -> BigTwoRules.checkMove(
+				hands[i & MASK], cardIdx[i & MASK], lastHands[i & MASK], false,
+				false));
+		checkNoAllocation("BigTwoRules.checkMove.pass", i -> BigTwoRules
+				.checkMove(hands[i & MASK], null, lastHands[i & MASK], false,
+						false));
+		checkNoAllocation("Hand.beats", i -> lastHands[i & MASK]
+				.beats(lastHands[(i + 1) & MASK]) ? 1 : 0);
+		checkNoAllocation("Hand.getTopCard", i -> lastHands[i & MASK]
+				.getTopCard().getRank());
+		System.out.println((failures == 0) ? "OK" : failures + " FAILURE(S)");
+		return failures;
+	}
+
+	/**
+	 * main() method for running the checks.
+	 * 
+	 * @param args
+	 *            not being used
+	 */
+	public static void main(String[] args) {
+		AllocationGuard guard = new AllocationGuard();
+		int failures = guard.run();
+		if (guard.sink == 42) {
+			System.out.println();
+		}
+		System.exit(failures == 0 ? 0 : 1);
+	}
+}
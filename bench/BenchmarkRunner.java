@@ -0,0 +1,138 @@
+import java.lang.management.ManagementFactory;
+import java.util.regex.Pattern;
+
+/**
+ * This class is used to run micro-benchmarks and report the time and the
+ * number of bytes allocated per operation. Each benchmark is warmed up before
+ * being measured, and allocation is measured from the per-thread allocation
+ * counter of the JVM (the same counter behind the gc.alloc.rate.norm figure of
+ * the JMH GC profiler).
+ * 
+ * @author Kwok Chun Yu
+ *
+ */
+public class BenchmarkRunner {
+	/**
+	 * An operation being benchmarked.
+	 */
+	public interface Op {
+		/**
+		 * Performs the operation once.
+		 * 
+		 * @param i
+		 *            the number of the invocation, which may be used to pick
+		 *            one of several prepared inputs
+		 * @return the result of the operation, which is consumed so that the
+		 *         JIT cannot eliminate the operation
+		 */
+		public Object run(int i);
+	}
+
+	private static final int BATCH_SIZE = 1024;
+
+	// consumes the results of the operations
+	private static volatile Object marker = new Object();
+	private static long consumed = 0;
+
+	private final Pattern filter;
+	private final int warmupIterations;
+	private final int measurementIterations;
+	private final long iterationNanos;
+	private final com.sun.management.ThreadMXBean threadBean;
+
+	/**
+	 * Creates and returns an instance of the BenchmarkRunner class.
+	 * 
+	 * @param args
+	 *            the command line arguments: an optional regular expression
+	 *            selecting the benchmarks to be run, and "-quick" for shorter
+	 *            iterations
+	 */
+	public BenchmarkRunner(String[] args) {
+		String regex = ".*";
+		boolean quick = false;
+		for (String arg : args) {
+			if (arg.equals("-quick")) {
+				quick = true;
+			} else {
+				regex = arg;
+			}
+		}
+		filter = Pattern.compile(regex);
+		warmupIterations = quick ? 2 : 5;
+		measurementIterations = quick ? 3 : 5;
+		iterationNanos = quick ? 100_000_000L : 500_000_000L;
+		threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+		System.out.printf("%-40s %12s %12s %12s%n", "Benchmark", "ns/op",
+				"B/op", "MB/s alloc");
+	}
+
+	/**
+	 * Runs the specified benchmark if it is selected by the filter, and prints
+	 * the result.
+	 * 
+	 * @param name
+	 *            the name of the benchmark
+	 * @param op
+	 *            the operation being benchmarked
+	 */
+	public void run(String name, Op op) {
+		if (!filter.matcher(name).find()) {
+			return;
+		}
+		for (int i = 0; i < warmupIterations; i++) {
+			iteration(op, new long[3]);
+		}
+		long ops = 0;
+		long nanos = 0;
+		long bytes = 0;
+		for (int i = 0; i < measurementIterations; i++) {
+			long[] result = new long[3];
+			iteration(op, result);
+			ops += result[0];
+			nanos += result[1];
+			bytes += result[2];
+		}
+		double nsPerOp = (double) nanos / ops;
+		double bytesPerOp = (double) bytes / ops;
+		double allocRate = bytes / (nanos / 1e9) / (1024 * 1024);
+		System.out.printf("%-40s %12.1f %12.1f %12.1f%n", name, nsPerOp,
+				bytesPerOp, allocRate);
+	}
+
+	/**
+	 * Runs the operation in batches for one iteration, and stores the number
+	 * of operations, the elapsed nanoseconds and the allocated bytes into the
+	 * specified array.
+	 */
+	private void iteration(Op op, long[] result) {
+		long threadId = Thread.currentThread().getId();
+		long ops = 0;
+		int invocation = 0;
+		long bytesBefore = threadBean.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			for (int i = 0; i < BATCH_SIZE; i++) {
+				consume(op.run(invocation++));
+			}
+			ops += BATCH_SIZE;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < iterationNanos);
+		long bytesAfter = threadBean.getThreadAllocatedBytes(threadId);
+		result[0] = ops;
+		result[1] = elapsed;
+		result[2] = bytesAfter - bytesBefore;
+	}
+
+	/**
+	 * Consumes the result of an operation.
+	 */
+	private static void consume(Object result) {
+		if (result == marker) {
+			consumed++;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class is used to benchmark the endgame solver (EndgameSolver) on
+ * random endgames reached by greedy play, with at most 3 and at most 5 cards
+ * per player. Every endgame is solved with an empty transposition table, as
+ * at the first solve of a real game, the time taken to empty it included,
+ * except for the "warm" benchmarks which keep the table between the solves.
+ * <p>
+ * Run it with bench/run.sh EndgameSolverBenchmark [regex] [-quick].
+ *
+ * @author Kwok Chun Yu
+ *
+ */
+public class EndgameSolverBenchmark {
+	private static final int NUM_OF_ENDGAMES = 64; // must be a power of two
+	private static final int MASK = NUM_OF_ENDGAMES - 1;
+	// a table of 2^16 entries (1 MB), so that emptying it does not dominate
+	private static final int TABLE_BITS = 16;
+
+	private final Random random = new Random(1);
+	private final long[] moves = new long[BigTwoState.MAX_MOVES];
+
+	/**
+	 * Returns random endgames reached by greedy play, in which every player
+	 * holds at most the specified number of cards.
+	 */
+	private BigTwoState[] endgames(int maxCards) {
+		BigTwoState[] endgames = new BigTwoState[NUM_OF_ENDGAMES];
+		int[] deck = new int[BigTwoRules.NUM_OF_CARDS];
+		for (int i = 0; i < deck.length; i++) {
+			deck[i] = i;
+		}
+		long[] hands = new long[4];
+		for (int n = 0; n < NUM_OF_ENDGAMES;) {
+			for (int i = deck.length - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int code = deck[i];
+				deck[i] = deck[j];
+				deck[j] = code;
+			}
+			for (int i = 0; i < 4; i++) {
+				hands[i] = 0;
+				for (int j = i * 13; j < i * 13 + 13; j++) {
+					hands[i] |= 1L << deck[j];
+				}
+			}
+			BigTwoState state = new BigTwoState(hands, 0, 0, -1);
+			while (!state.isTerminal()
+					&& !EndgameSolver.isEndgame(state, maxCards)) {
+				state.play(BigTwoStrategy.GREEDY.chooseMove(state, moves,
+						state.generateMoves(moves), random));
+			}
+			if (!state.isTerminal()) {
+				endgames[n++] = state;
+			}
+		}
+		return endgames;
+	}
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param runner
+	 *            the runner of the benchmarks
+	 */
+	public void run(BenchmarkRunner runner) {
+		EndgameSolver solver = new EndgameSolver(TABLE_BITS,
+				ForkJoinPool.commonPool());
+		BigTwoState[] small = endgames(3);
+		BigTwoState[] large = endgames(5);
+		runner.run("solve.3cards", i -> {
+			solver.clear();
+			return solver.solve(small[i & MASK]);
+		});
+		runner.run("solve.5cards", i -> {
+			solver.clear();
+			return solver.solve(large[i & MASK]);
+		});
+		runner.run("solve.5cards.warm", i -> solver.solve(large[i & MASK]));
+	}
+
+	/**
+	 * main() method for running the benchmarks.
+	 *
+	 * @param args
+	 *            an optional regular expression selecting the benchmarks to be
+	 *            run, and "-quick" for shorter iterations
+	 */
+	public static void main(String[] args) {
+		new EndgameSolverBenchmark().run(new BenchmarkRunner(args));
+	}
+}
@@ -0,0 +1,91 @@
+import java.util.Random;
+
+/**
+ * This class is used to benchmark the evaluation of random sets of 5 cards by
+ * the batch evaluator (BatchHandEvaluator), one set at a time, in batches and
+ * in parallel, against BigTwoRules.evaluate() and against the isValid()
+ * methods of the Hand objects, as used by BigTwoClient.composeHand(). A
+ * quarter of the sets are drawn from 7 ranks, so that the valid hands are not
+ * too rare. The batch benchmarks report the time per batch, whose size is
+ * part of their names.
+ * <p>
+ * Run it with bench/run.sh HandEvaluatorBenchmark [regex] [-quick].
+ *
+ * @author Kwok Chun Yu
+ *
+ */
+public class HandEvaluatorBenchmark {
+	private static final int NUM_OF_HANDS = 1 << 20; // must be a power of two
+	private static final int MASK = NUM_OF_HANDS - 1;
+	private static final int BATCH_SIZE = 4096;
+	private static final int NUM_OF_BATCHES = NUM_OF_HANDS / BATCH_SIZE;
+	// the Hand objects are too slow to go through every set
+	private static final int NUM_OF_OBJECTS = 1 << 16;
+
+	private final long[] hands = new long[NUM_OF_HANDS];
+	private final CardList[] cardLists = new CardList[NUM_OF_OBJECTS];
+	private final int[] values = new int[NUM_OF_HANDS];
+
+	/**
+	 * Creates and returns an instance of the HandEvaluatorBenchmark class,
+	 * drawing the sets of cards used as inputs.
+	 */
+	public HandEvaluatorBenchmark() {
+		Random random = new Random(1);
+		for (int i = 0; i < NUM_OF_HANDS; i++) {
+			int numOfCodes = (i % 4 == 0) ? 28 : BigTwoRules.NUM_OF_CARDS;
+			while (Long.bitCount(hands[i]) < 5) {
+				hands[i] |= 1L << random.nextInt(numOfCodes);
+			}
+		}
+		for (int i = 0; i < NUM_OF_OBJECTS; i++) {
+			cardLists[i] = new CardList();
+			BigTwoRules.addCards(hands[i], cardLists[i]);
+		}
+	}
+
+	/**
+	 * Returns true if the cards form a hand of 5 cards, checked as
+	 * BigTwoClient.composeHand() does.
+	 */
+	private static boolean isValid(CardList cards) {
+		return new StraightFlush(null, cards).isValid()
+				|| new Straight(null, cards).isValid()
+				|| new Flush(null, cards).isValid()
+				|| new FullHouse(null, cards).isValid()
+				|| new Quad(null, cards).isValid();
+	}
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param runner
+	 *            the runner of the benchmarks
+	 */
+	public void run(BenchmarkRunner runner) {
+		runner.run("hand.isValid", i -> isValid(cardLists[i
+				& (NUM_OF_OBJECTS - 1)]));
+		runner.run("rules.evaluate", i -> BigTwoRules.evaluate(hands[i
+				& MASK]));
+		runner.run("batch.evaluate", i -> BatchHandEvaluator.evaluate(hands[i
+				& MASK]));
+		runner.run("batch.evaluate." + BATCH_SIZE, i -> {
+			int from = (i % NUM_OF_BATCHES) * BATCH_SIZE;
+			BatchHandEvaluator.evaluate(hands, from, from + BATCH_SIZE, values);
+			return values;
+		});
+		runner.run("batch.evaluateParallel." + NUM_OF_HANDS,
+				i -> BatchHandEvaluator.evaluateParallel(hands));
+	}
+
+	/**
+	 * main() method for running the benchmarks.
+	 *
+	 * @param args
+	 *            an optional regular expression selecting the benchmarks to be
+	 *            run, and "-quick" for shorter iterations
+	 */
+	public static void main(String[] args) {
+		new HandEvaluatorBenchmark().run(new BenchmarkRunner(args));
+	}
+}
@@ -0,0 +1,72 @@
+import java.util.Random;
+
+/**
+ * This class is used to benchmark the partitioner (HandPartitioner) on random
+ * deals of 13 cards, with a table filled by the earlier partitions as in a
+ * long-running program, and with an empty table for every partition as for
+ * the first deals seen. The cold benchmark allocates its small table once per
+ * partition.
+ * <p>
+ * Run it with bench/run.sh HandPartitionerBenchmark [regex] [-quick].
+ *
+ * @author Kwok Chun Yu
+ *
+ */
+public class HandPartitionerBenchmark {
+	private static final int NUM_OF_DEALS = 4096; // must be a power of two
+	private static final int MASK = NUM_OF_DEALS - 1;
+	// a table of 2^12 entries (32 KB), enough for the partition of one deal
+	private static final int COLD_TABLE_BITS = 12;
+
+	private final long[] hands = new long[NUM_OF_DEALS];
+	private final long[] combinations = new long[13];
+
+	/**
+	 * Creates and returns an instance of the HandPartitionerBenchmark class,
+	 * dealing the cards used as inputs.
+	 */
+	public HandPartitionerBenchmark() {
+		Random random = new Random(1);
+		int[] deck = new int[BigTwoRules.NUM_OF_CARDS];
+		for (int i = 0; i < deck.length; i++) {
+			deck[i] = i;
+		}
+		for (int n = 0; n < NUM_OF_DEALS; n++) {
+			for (int i = deck.length - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int code = deck[i];
+				deck[i] = deck[j];
+				deck[j] = code;
+			}
+			for (int j = 0; j < 13; j++) {
+				hands[n] |= 1L << deck[j];
+			}
+		}
+	}
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param runner
+	 *            the runner of the benchmarks
+	 */
+	public void run(BenchmarkRunner runner) {
+		HandPartitioner partitioner = new HandPartitioner();
+		runner.run("partition", i -> partitioner.partition(hands[i & MASK],
+				combinations));
+		runner.run("partition.cold", i -> new HandPartitioner(COLD_TABLE_BITS)
+				.partition(hands[i & MASK], combinations));
+		runner.run("cost", i -> partitioner.cost(hands[i & MASK]));
+	}
+
+	/**
+	 * main() method for running the benchmarks.
+	 *
+	 * @param args
+	 *            an optional regular expression selecting the benchmarks to be
+	 *            run, and "-quick" for shorter iterations
+	 */
+	public static void main(String[] args) {
+		new HandPartitionerBenchmark().run(new BenchmarkRunner(args));
+	}
+}
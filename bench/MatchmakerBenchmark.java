@@ -0,0 +1,121 @@
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class is used to benchmark the matchmaker (Matchmaker) on a pool of
+ * players arriving at a steady rate: every operation is a round of matching,
+ * 100 milliseconds of simulated time after the previous one, with the players
+ * who arrived in between. After the benchmark, it prints the spread of the
+ * ratings at the tables formed and the time waited by the players, in
+ * simulated time.
+ * <p>
+ * Run it with bench/run.sh MatchmakerBenchmark [regex] [-quick].
+ *
+ * @author Kwok Chun Yu
+ *
+ */
+public class MatchmakerBenchmark {
+	private static final int NUM_OF_INITIAL = 20000;
+	private static final int ARRIVALS_PER_ROUND = 200;
+	private static final long ROUND_MILLIS = 100;
+	private static final int NUM_OF_RATINGS = 1 << 16; // must be a power of two
+
+	private final Matchmaker<Integer> matchmaker = new Matchmaker<Integer>();
+	private final Random random = new Random(1);
+	// the rating of player i is ratings[i & (NUM_OF_RATINGS - 1)]
+	private final double[] ratings = new double[NUM_OF_RATINGS];
+	private int nextPlayer = 0;
+	private long now = 0;
+	private long numOfTables = 0;
+	private double totalSpread = 0;
+	private double maxSpread = 0;
+	private long totalWait = 0;
+	private long maxWait = 0;
+
+	/**
+	 * Creates and returns an instance of the MatchmakerBenchmark class, with
+	 * the initial players waiting.
+	 */
+	public MatchmakerBenchmark() {
+		for (int i = 0; i < NUM_OF_RATINGS; i++) {
+			ratings[i] = PlayerRatings.INITIAL_RATING + random.nextGaussian()
+					* 300;
+		}
+		while (nextPlayer < NUM_OF_INITIAL) {
+			addPlayer();
+		}
+	}
+
+	private void addPlayer() {
+		matchmaker.add(nextPlayer, ratings[nextPlayer & (NUM_OF_RATINGS - 1)],
+				10 + random.nextInt(190), now);
+		nextPlayer++;
+	}
+
+	/**
+	 * Returns the time at which a player arrived.
+	 */
+	private static long arrivalOf(int player) {
+		return (player < NUM_OF_INITIAL) ? 0
+				: ((player - NUM_OF_INITIAL) / ARRIVALS_PER_ROUND + 1)
+						* ROUND_MILLIS;
+	}
+
+	/**
+	 * Adds the players arrived since the previous round, runs a round of
+	 * matching, and records the tables formed.
+	 */
+	private List<List<Integer>> round() {
+		now += ROUND_MILLIS;
+		for (int i = 0; i < ARRIVALS_PER_ROUND; i++) {
+			addPlayer();
+		}
+		List<List<Integer>> tables = matchmaker.match(now);
+		for (List<Integer> table : tables) {
+			double min = Double.MAX_VALUE;
+			double max = -Double.MAX_VALUE;
+			for (int player : table) {
+				double rating = ratings[player & (NUM_OF_RATINGS - 1)];
+				min = Math.min(min, rating);
+				max = Math.max(max, rating);
+				long wait = now - arrivalOf(player);
+				totalWait += wait;
+				maxWait = Math.max(maxWait, wait);
+			}
+			totalSpread += max - min;
+			maxSpread = Math.max(maxSpread, max - min);
+			numOfTables++;
+		}
+		return tables;
+	}
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param runner
+	 *            the runner of the benchmarks
+	 */
+	public void run(BenchmarkRunner runner) {
+		runner.run("match.round", i -> round());
+		if (numOfTables > 0) {
+			System.out.printf("%d players, %d tables formed, %d still waiting%n",
+					nextPlayer, numOfTables, matchmaker.size());
+			System.out.printf("spread of ratings at a table: %.1f on average, %.1f at most%n",
+					totalSpread / numOfTables, maxSpread);
+			System.out.printf("time waited: %.2f s on average, %.1f s at most%n",
+					totalWait / 1000.0 / (numOfTables * Matchmaker.TABLE_SIZE),
+					maxWait / 1000.0);
+		}
+	}
+
+	/**
+	 * main() method for running the benchmarks.
+	 *
+	 * @param args
+	 *            an optional regular expression selecting the benchmarks to be
+	 *            run, and "-quick" for shorter iterations
+	 */
+	public static void main(String[] args) {
+		new MatchmakerBenchmark().run(new BenchmarkRunner(args));
+	}
+}
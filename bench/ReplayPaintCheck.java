@@ -0,0 +1,147 @@
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Frame;
+import java.awt.GraphicsEnvironment;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import javax.swing.JButton;
+import javax.swing.SwingUtilities;
+
+/**
+ * This class is used to guard the painting of replays against regressions. It
+ * records a game played by the greedy strategy, in which seat 0 plays first,
+ * opens it in a BigTwoTable, steps through every move with the step button of
+ * the replay, and paints the table into an image after every step, so that a
+ * seat holding more cards than seat 0 is drawn face up. It exits with a
+ * non-zero status if painting throws, or if no display is available, so it
+ * can be used as a build gate on a machine with a display.
+ * <p>
+ * Run it with bench/run.sh ReplayPaintCheck.
+ *
+ * @author Kwok Chun Yu
+ *
+ */
+public class ReplayPaintCheck {
+	private int failures = 0;
+
+	/**
+	 * Records a game played by the greedy strategy, with the deck shuffled
+	 * until seat 0 holds the 3 of Diamonds and thus plays first.
+	 *
+	 * @return the recorded game
+	 */
+	private static RecordedGame recordGame() {
+		Random random = new Random(2396);
+		BigTwoDeck deck = new BigTwoDeck();
+		BigTwoGame game = new BigTwoGame();
+		do {
+			deck.shuffle();
+			game.start(deck);
+		} while (game.getCurrentIdx() != 0);
+		int[] deckCodes = new int[BigTwoRules.NUM_OF_CARDS];
+		for (int i = 0; i < deckCodes.length; i++) {
+			deckCodes[i] = BigTwoRules.codeOf(deck.getCard(i));
+		}
+		RecordedGame recorded = new RecordedGame(0, 0, deckCodes);
+		long[] moves = new long[BigTwoState.MAX_MOVES];
+		while (!game.endOfGame()) {
+			BigTwoState state = new BigTwoState(game);
+			int playerID = state.getCurrentIdx();
+			long move = BigTwoStrategy.GREEDY.chooseMove(state, moves,
+					state.generateMoves(moves), random);
+			int[] cardIdx = BigTwoState.toCardIdx(state.getHand(playerID),
+					move);
+			recorded.addMove(playerID, cardIdx, (cardIdx == null) ? -1
+					: cardIdx.length);
+			game.checkMove(playerID, cardIdx);
+		}
+		return recorded;
+	}
+
+	/**
+	 * Returns the first component of the specified class name or with the
+	 * specified button text within a container, or null.
+	 */
+	private static Component find(Container container, String className,
+			String buttonText) {
+		for (Component component : container.getComponents()) {
+			if (component.getClass().getName().equals(className)
+					|| (component instanceof JButton && ((JButton) component)
+							.getText().equals(buttonText))) {
+				return component;
+			}
+			if (component instanceof Container) {
+				Component found = find((Container) component, className,
+						buttonText);
+				if (found != null) {
+					return found;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Records a failure.
+	 */
+	private void fail(String msg) {
+		System.out.println("FAILED: " + msg);
+		failures++;
+	}
+
+	/**
+	 * Opens the recorded game in a table, and paints the table after every
+	 * move.
+	 *
+	 * @return the number of failures
+	 */
+	public int run() throws Exception {
+		RecordedGame recorded = recordGame();
+		BigTwoTable table = new BigTwoTable(null);
+		SwingUtilities.invokeAndWait(() -> table.openReplay(recorded));
+		Frame frame = Frame.getFrames()[Frame.getFrames().length - 1];
+		Component panel = find(frame, "BigTwoTable$BigTwoPanel", null);
+		JButton step = (JButton) find(frame, null, ">");
+		if (panel == null || step == null) {
+			fail("cannot find the panel or the step button of the replay");
+		} else {
+			BufferedImage image = new BufferedImage(500, 700,
+					BufferedImage.TYPE_INT_RGB);
+			for (int n = 0; n <= recorded.getNumOfMoves(); n++) {
+				int move = n;
+				try {
+					SwingUtilities.invokeAndWait(() -> {
+						if (move > 0) {
+							step.doClick();
+						}
+						panel.paint(image.getGraphics());
+					});
+				} catch (Exception ex) {
+					fail("painting move " + move + " throws "
+							+ ex.getCause());
+					break;
+				}
+			}
+			System.out.println("painted " + recorded.getNumOfMoves()
+					+ " moves of the replay");
+		}
+		frame.dispose();
+		System.out.println((failures == 0) ? "OK" : failures + " FAILURE(S)");
+		return failures;
+	}
+
+	/**
+	 * main() method for running the check.
+	 *
+	 * @param args
+	 *            not being used
+	 */
+	public static void main(String[] args) throws Exception {
+		if (GraphicsEnvironment.isHeadless()) {
+			System.out.println("FAILED: the check needs a display");
+			System.exit(1);
+		}
+		System.exit(new ReplayPaintCheck().run() == 0 ? 0 : 1);
+	}
+}
@@ -0,0 +1,241 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * This class is used to benchmark the Big Two rules engine: composeHand() for
+ * every hand size, Hand.beats() for same-type and cross-type comparisons,
+ * Hand.getTopCard(), Deck.shuffle(), and sorting and removing cards held by a
+ * CardGamePlayer. All the inputs are taken from random deals.
+ * <p>
+ * Run it with bench/run.sh RulesBenchmark [regex] [-quick].
+ * 
+ * @author Kwok Chun Yu
+ *
+ */
+public class RulesBenchmark {
+	private static final int NUM_OF_DEALS = 256;
+	private static final int NUM_OF_INPUTS = 4096; // must be a power of two
+	private static final int MASK = NUM_OF_INPUTS - 1;
+
+	private final Random random = new Random(2396);
+	private final CardGamePlayer player = new CardGamePlayer("Benchmark");
+	// the 13 cards dealt to each player in each deal
+	private final ArrayList<CardList> dealtHands = new ArrayList<CardList>();
+	// valid hands found in the deals, indexed by the rank of their type
+	// (0 = Single, 1 = Pair, 2 = Triple, 3 = Straight, ..., 7 = StraightFlush)
+	private final ArrayList<ArrayList<Hand>> validHands = new ArrayList<ArrayList<Hand>>();
+
+	/**
+	 * Creates and returns an instance of the RulesBenchmark class, dealing the
+	 * cards and collecting the valid hands used as inputs.
+	 */
+	public RulesBenchmark() {
+		for (int i = 0; i < 8; i++) {
+			validHands.add(new ArrayList<Hand>());
+		}
+		for (int deal = 0; deal < NUM_OF_DEALS; deal++) {
+			Deck deck = new BigTwoDeck();
+			for (int p = 0; p < 4; p++) {
+				CardList cards = new CardList();
+				for (int j = 0; j < 13; j++) {
+					cards.addCard(deck.getCard(j + p * 13));
+				}
+				dealtHands.add(cards);
+			}
+		}
+		// enumerates every combination in some of the dealt hands
+		for (int h = 0; h < 64; h++) {
+			CardList cards = dealtHands.get(h);
+			for (int size : new int[] { 1, 2, 3, 5 }) {
+				collectValidHands(cards, size, 0, new int[size], 0);
+			}
+		}
+	}
+
+	/**
+	 * Enumerates the combinations of the specified size and collects those
+	 * forming a valid hand.
+	 */
+	private void collectValidHands(CardList cards, int size, int from,
+			int[] idx, int depth) {
+		if (depth == size) {
+			Hand hand = BigTwoClient.composeHand(player, select(cards, idx));
+			if (hand != null) {
+				validHands.get(typeIndex(hand)).add(hand);
+			}
+			return;
+		}
+		for (int i = from; i < cards.size(); i++) {
+			idx[depth] = i;
+			collectValidHands(cards, size, i + 1, idx, depth + 1);
+		}
+	}
+
+	/**
+	 * Returns the index used for the type of the specified hand.
+	 */
+	private static int typeIndex(Hand hand) {
+		if (hand.size() < 5) {
+			return hand.size() - 1;
+		}
+		return 3 + hand.getHandRank() - 1;
+	}
+
+	/**
+	 * Returns a new list of the cards at the specified indices.
+	 */
+	private static CardList select(CardList cards, int[] idx) {
+		CardList selected = new CardList();
+		for (int i : idx) {
+			selected.addCard(cards.getCard(i));
+		}
+		return selected;
+	}
+
+	/**
+	 * Returns an array of inputs, each being a random selection of the
+	 * specified number of cards from a random dealt hand.
+	 */
+	private CardList[] randomSelections(int size) {
+		CardList[] inputs = new CardList[NUM_OF_INPUTS];
+		for (int i = 0; i < NUM_OF_INPUTS; i++) {
+			CardList cards = dealtHands.get(random.nextInt(dealtHands.size()));
+			int[] idx = new int[size];
+			boolean[] used = new boolean[cards.size()];
+			for (int j = 0; j < size; j++) {
+				int k;
+				do {
+					k = random.nextInt(cards.size());
+				} while (used[k]);
+				used[k] = true;
+				idx[j] = k;
+			}
+			inputs[i] = select(cards, idx);
+		}
+		return inputs;
+	}
+
+	/**
+	 * Returns an array of inputs, each being a random valid hand of one of the
+	 * specified types.
+	 */
+	private Hand[] randomValidHands(int... types) {
+		ArrayList<Hand> pool = new ArrayList<Hand>();
+		for (int type : types) {
+			pool.addAll(validHands.get(type));
+		}
+		Hand[] inputs = new Hand[NUM_OF_INPUTS];
+		for (int i = 0; i < NUM_OF_INPUTS; i++) {
+			inputs[i] = pool.get(random.nextInt(pool.size()));
+		}
+		return inputs;
+	}
+
+	/**
+	 * Returns a copy of the cards of the specified hands as plain card lists.
+	 */
+	private static CardList[] toCardLists(Hand[] hands) {
+		CardList[] lists = new CardList[hands.length];
+		for (int i = 0; i < hands.length; i++) {
+			lists[i] = new CardList();
+			for (int j = 0; j < hands[i].size(); j++) {
+				lists[i].addCard(hands[i].getCard(j));
+			}
+		}
+		return lists;
+	}
+
+	/**
+	 * Runs the benchmarks.
+	 * 
+	 * @param runner
+	 *            the runner used to run the benchmarks
+	 */
+	public void run(BenchmarkRunner runner) {
+		String[] sizeNames = { "single", "pair", "triple", null, "fiveCard" };
+		for (int size : new int[] { 1, 2, 3, 5 }) {
+			final CardList[] random = randomSelections(size);
+			runner.run("composeHand." + sizeNames[size - 1] + ".random",
+					i -> BigTwoClient.composeHand(player, random[i & MASK]));
+		}
+		final CardList[] singles = toCardLists(randomValidHands(0));
+		runner.run("composeHand.single.valid",
+				i -> BigTwoClient.composeHand(player, singles[i & MASK]));
+		final CardList[] pairs = toCardLists(randomValidHands(1));
+		runner.run("composeHand.pair.valid",
+				i -> BigTwoClient.composeHand(player, pairs[i & MASK]));
+		final CardList[] triples = toCardLists(randomValidHands(2));
+		runner.run("composeHand.triple.valid",
+				i -> BigTwoClient.composeHand(player, triples[i & MASK]));
+		final CardList[] fiveCards = toCardLists(randomValidHands(3, 4, 5, 6,
+				7));
+		runner.run("composeHand.fiveCard.valid",
+				i -> BigTwoClient.composeHand(player, fiveCards[i & MASK]));
+
+		final Hand[] singleHands = randomValidHands(0);
+		final Hand[] pairHands = randomValidHands(1);
+		final Hand[] straightHands = randomValidHands(3);
+		final Hand[] fiveCardHands = randomValidHands(3, 4, 5, 6, 7);
+		runner.run("beats.sameType.single",
+				i -> singleHands[i & MASK].beats(singleHands[(i + 1) & MASK]));
+		runner.run("beats.sameType.pair",
+				i -> pairHands[i & MASK].beats(pairHands[(i + 1) & MASK]));
+		runner.run("beats.sameType.straight",
+				i -> straightHands[i & MASK].beats(straightHands[(i + 1) & MASK]));
+		runner.run("beats.crossType.fiveCard",
+				i -> fiveCardHands[i & MASK].beats(fiveCardHands[(i + 1) & MASK]));
+
+		runner.run("getTopCard.single", i -> singleHands[i & MASK].getTopCard());
+		runner.run("getTopCard.fiveCard",
+				i -> fiveCardHands[i & MASK].getTopCard());
+
+		final Deck deck = new BigTwoDeck();
+		runner.run("deck.shuffle", i -> {
+			deck.shuffle();
+			return deck;
+		});
+
+		final CardList[] dealt = dealtHands.toArray(new CardList[0]);
+		final int dealtMask = Integer.highestOneBit(dealt.length) - 1;
+		final CardList[] played = new CardList[dealtMask + 1];
+		for (int i = 0; i <= dealtMask; i++) {
+			int[] idx = new int[] { 0, 3, 6, 9, 12 };
+			played[i] = select(dealt[i], idx);
+		}
+		runner.run("player.fill", i -> {
+			fill(dealt[i & dealtMask]);
+			return player;
+		});
+		runner.run("player.fillAndSort", i -> {
+			fill(dealt[i & dealtMask]);
+			player.sortCardsInHand();
+			return player;
+		});
+		runner.run("player.fillAndRemove", i -> {
+			fill(dealt[i & dealtMask]);
+			player.removeCards(played[i & dealtMask]);
+			return player;
+		});
+	}
+
+	/**
+	 * Gives the specified cards to the benchmark player.
+	 */
+	private void fill(CardList cards) {
+		player.removeAllCards();
+		for (int j = 0; j < cards.size(); j++) {
+			player.addCard(cards.getCard(j));
+		}
+	}
+
+	/**
+	 * main() method for running the benchmarks.
+	 * 
+	 * @param args
+	 *            an optional regular expression selecting the benchmarks to be
+	 *            run, and "-quick" for shorter iterations
+	 */
+	public static void main(String[] args) {
+		new RulesBenchmark().run(new BenchmarkRunner(args));
+	}
+}
@@ -0,0 +1,374 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * This class is used to benchmark the encoding and decoding of every variant of
+ * CardGameMessage sent over the wire: PLAYER_LIST (String[]), START (Deck),
+ * MOVE (int[]) and MSG (chat text). Default Java serialization is measured
+ * with a fresh ObjectOutputStream per message, with a reused stream reset
+ * after every message, and with a reused stream never reset (as done by the
+ * server and the client today). The size of each message on the wire is
+ * printed before the timings.
+ * <p>
+ * A new codec can be compared by adding a Codec implementation to CODECS.
+ * <p>
+ * Run it with bench/run.sh SerializationBenchmark [regex] [-quick].
+ * 
+ * @author Kwok Chun Yu
+ *
+ */
+public class SerializationBenchmark {
+	private static final int NUM_OF_INPUTS = 1024; // must be a power of two
+	private static final int MASK = NUM_OF_INPUTS - 1;
+
+	/**
+	 * A way of encoding messages into a stream of bytes and decoding them.
+	 */
+	interface Codec {
+		/**
+		 * Returns the name of this codec.
+		 */
+		String getName();
+
+		/**
+		 * Encodes the specified message, and returns the stream of bytes
+		 * produced so far. The bytes are only valid until the next call.
+		 */
+		ByteArrayOutputStream encode(CardGameMessage message)
+				throws IOException;
+
+		/**
+		 * Returns the number of bytes produced for the last message encoded.
+		 */
+		int lastSize();
+
+		/**
+		 * Decodes the next message from a stream holding the specified encoded
+		 * messages, starting over when the stream is exhausted.
+		 */
+		CardGameMessage decode(EncodedStream encoded) throws IOException,
+				ClassNotFoundException;
+
+		/**
+		 * Returns true if the messages encoded must be distinct objects.
+		 */
+		boolean needsFreshMessages();
+
+		/**
+		 * Returns a new codec of the same kind, whose output is kept in full
+		 * so that it can be decoded afterwards.
+		 */
+		Codec newInstance();
+	}
+
+	/**
+	 * A sequence of messages encoded one after another by a codec, together
+	 * with the state of the decoder reading them.
+	 */
+	static class EncodedStream {
+		byte[] bytes;
+		int[] ends; // end offset of each message, for codecs framing messages
+		int count;
+		int next = 0;
+		ObjectInputStream ois = null;
+	}
+
+	/**
+	 * Java serialization with a fresh ObjectOutputStream and ObjectInputStream
+	 * per message.
+	 */
+	static class FreshJavaCodec implements Codec {
+		private final ByteArrayOutputStream bos = new ByteArrayOutputStream(
+				4096);
+
+		public String getName() {
+			return "java.fresh";
+		}
+
+		public ByteArrayOutputStream encode(CardGameMessage message)
+				throws IOException {
+			bos.reset();
+			ObjectOutputStream oos = new ObjectOutputStream(bos);
+			oos.writeObject(message);
+			oos.flush();
+			return bos;
+		}
+
+		public int lastSize() {
+			return bos.size();
+		}
+
+		public CardGameMessage decode(EncodedStream encoded)
+				throws IOException, ClassNotFoundException {
+			int i = encoded.next;
+			encoded.next = (i + 1) % encoded.count;
+			int start = (i == 0) ? 0 : encoded.ends[i - 1];
+			ObjectInputStream ois = new ObjectInputStream(
+					new ByteArrayInputStream(encoded.bytes, start,
+							encoded.ends[i] - start));
+			return (CardGameMessage) ois.readObject();
+		}
+
+		public boolean needsFreshMessages() {
+			return false;
+		}
+
+		public Codec newInstance() {
+			return new FreshJavaCodec();
+		}
+	}
+
+	/**
+	 * Java serialization with one long-lived ObjectOutputStream and
+	 * ObjectInputStream, optionally reset after every message.
+	 */
+	static class ReusedJavaCodec implements Codec {
+		private final boolean reset;
+		private final int limit; // size at which the output is discarded
+		private final ByteArrayOutputStream bos = new ByteArrayOutputStream(
+				4096);
+		private final ObjectOutputStream oos;
+		private int lastSize = 0;
+
+		ReusedJavaCodec(boolean reset, int limit) {
+			this.reset = reset;
+			this.limit = limit;
+			try {
+				oos = new ObjectOutputStream(bos);
+				oos.flush();
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}
+
+		public String getName() {
+			return reset ? "java.reusedReset" : "java.reusedNoReset";
+		}
+
+		public ByteArrayOutputStream encode(CardGameMessage message)
+				throws IOException {
+			if (bos.size() > limit) {
+				bos.reset();
+			}
+			int before = bos.size();
+			oos.writeObject(message);
+			if (reset) {
+				oos.reset();
+			}
+			oos.flush();
+			lastSize = bos.size() - before;
+			return bos;
+		}
+
+		public int lastSize() {
+			return lastSize;
+		}
+
+		public CardGameMessage decode(EncodedStream encoded)
+				throws IOException, ClassNotFoundException {
+			if (encoded.ois == null || encoded.next == encoded.count) {
+				encoded.ois = new ObjectInputStream(new ByteArrayInputStream(
+						encoded.bytes));
+				encoded.next = 0;
+			}
+			encoded.next++;
+			return (CardGameMessage) encoded.ois.readObject();
+		}
+
+		public boolean needsFreshMessages() {
+			return !reset;
+		}
+
+		public Codec newInstance() {
+			return new ReusedJavaCodec(reset, Integer.MAX_VALUE);
+		}
+	}
+
+	private static final Codec[] CODECS = { new FreshJavaCodec(),
+			new ReusedJavaCodec(true, 1 << 20),
+			new ReusedJavaCodec(false, 1 << 20) };
+
+	private static final String[] TYPE_NAMES = { "playerList", "start",
+			"move", "msg" };
+
+	// sample messages of each type, indexed as TYPE_NAMES
+	private final CardGameMessage[][] messages = new CardGameMessage[4][NUM_OF_INPUTS];
+
+	/**
+	 * Creates and returns an instance of the SerializationBenchmark class,
+	 * creating the sample messages.
+	 */
+	public SerializationBenchmark() {
+		java.util.Random random = new java.util.Random(2396);
+		for (int i = 0; i < NUM_OF_INPUTS; i++) {
+			String[] names = new String[4];
+			for (int j = 0; j <= i % 4; j++) {
+				names[j] = "Player " + random.nextInt(1000);
+			}
+			messages[0][i] = new CardGameMessage(CardGameMessage.PLAYER_LIST,
+					i % 4, names);
+			messages[1][i] = new CardGameMessage(CardGameMessage.START, -1,
+					new BigTwoDeck());
+			int[] cardIdx = new int[new int[] { 1, 2, 3, 5 }[random.nextInt(4)]];
+			for (int j = 0; j < cardIdx.length; j++) {
+				cardIdx[j] = j * 2 + random.nextInt(2);
+			}
+			messages[2][i] = new CardGameMessage(CardGameMessage.MOVE, i % 4,
+					cardIdx);
+			messages[3][i] = new CardGameMessage(CardGameMessage.MSG, i % 4,
+					"Player " + i % 4 + " (/127.0.0.1:" + (50000 + i)
+							+ "): good game, well played!\n");
+		}
+	}
+
+	/**
+	 * Returns a copy of the specified message, with a copy of its data, as
+	 * would be created by the server for every new message.
+	 */
+	static CardGameMessage copy(CardGameMessage message) {
+		Object data = message.getData();
+		Object dataCopy;
+		if (data instanceof String[]) {
+			dataCopy = ((String[]) data).clone();
+		} else if (data instanceof int[]) {
+			dataCopy = ((int[]) data).clone();
+		} else if (data instanceof Deck) {
+			Deck deck = (Deck) data;
+			Deck deckCopy = new Deck();
+			for (int i = 0; i < deck.size(); i++) {
+				Card card = deck.getCard(i);
+				deckCopy.setCard(i, new Card(card.getSuit(), card.getRank()));
+			}
+			dataCopy = deckCopy;
+		} else {
+			dataCopy = new String((String) data);
+		}
+		return new CardGameMessage(message.getType(), message.getPlayerID(),
+				dataCopy);
+	}
+
+	/**
+	 * Encodes all the sample messages of the specified type with the
+	 * specified codec, and returns the encoded stream.
+	 */
+	private static EncodedStream encodeAll(Codec codec,
+			CardGameMessage[] samples) throws IOException {
+		Codec encoder = codec.newInstance();
+		EncodedStream encoded = new EncodedStream();
+		encoded.ends = new int[samples.length];
+		encoded.count = samples.length;
+		ByteArrayOutputStream all = new ByteArrayOutputStream();
+		ByteArrayOutputStream bos = null;
+		for (int i = 0; i < samples.length; i++) {
+			bos = encoder.encode(encoder.needsFreshMessages() ? copy(samples[i])
+					: samples[i]);
+			if (encoder.lastSize() == bos.size()) {
+				// one message per output, as produced by a fresh stream
+				bos.writeTo(all);
+				encoded.ends[i] = all.size();
+			} else {
+				encoded.ends[i] = bos.size();
+			}
+		}
+		encoded.bytes = (all.size() > 0) ? all.toByteArray() : bos
+				.toByteArray();
+		return encoded;
+	}
+
+	/**
+	 * Prints the average number of bytes per message for each codec and type.
+	 * 
+	 * @throws IOException
+	 *             if a message cannot be encoded
+	 */
+	public void printSizes() throws IOException {
+		System.out.printf("%-40s %12s%n", "Bytes per message", "bytes");
+		for (Codec codec : CODECS) {
+			for (int t = 0; t < TYPE_NAMES.length; t++) {
+				long total = 0;
+				// skips the first message so that a reused stream is in its
+				// steady state
+				codec.encode(codec.needsFreshMessages() ? copy(messages[t][0])
+						: messages[t][0]);
+				for (int i = 1; i < NUM_OF_INPUTS; i++) {
+					codec.encode(codec.needsFreshMessages() ? copy(messages[t][i])
+							: messages[t][i]);
+					total += codec.lastSize();
+				}
+				System.out.printf("%-40s %12.1f%n", codec.getName() + "."
+						+ TYPE_NAMES[t], (double) total / (NUM_OF_INPUTS - 1));
+			}
+		}
+		System.out.println();
+	}
+
+	/**
+	 * Runs the benchmarks.
+	 * 
+	 * @param runner
+	 *            the runner used to run the benchmarks
+	 * @throws IOException
+	 *             if a message cannot be encoded
+	 * @throws ClassNotFoundException
+	 *             if a message cannot be decoded
+	 */
+	public void run(BenchmarkRunner runner) throws IOException,
+			ClassNotFoundException {
+		for (int t = 0; t < TYPE_NAMES.length; t++) {
+			final CardGameMessage[] samples = messages[t];
+			runner.run("copy." + TYPE_NAMES[t], i -> copy(samples[i & MASK]));
+		}
+		for (Codec codec : CODECS) {
+			for (int t = 0; t < TYPE_NAMES.length; t++) {
+				final CardGameMessage[] samples = messages[t];
+				final boolean fresh = codec.needsFreshMessages();
+				runner.run("encode." + codec.getName() + "." + TYPE_NAMES[t],
+						i -> {
+							try {
+								return codec.encode(fresh ? copy(samples[i
+										& MASK]) : samples[i & MASK]);
+							} catch (IOException ex) {
+								throw new UncheckedIOException(ex);
+							}
+						});
+			}
+		}
+		for (Codec codec : CODECS) {
+			for (int t = 0; t < TYPE_NAMES.length; t++) {
+				final EncodedStream encoded = encodeAll(codec, messages[t]);
+				final int type = messages[t][0].getType();
+				if (codec.decode(encoded).getType() != type) {
+					throw new IllegalStateException(codec.getName()
+							+ " does not decode " + TYPE_NAMES[t]);
+				}
+				runner.run("decode." + codec.getName() + "." + TYPE_NAMES[t],
+						i -> {
+							try {
+								return codec.decode(encoded);
+							} catch (Exception ex) {
+								throw new IllegalStateException(ex);
+							}
+						});
+			}
+		}
+	}
+
+	/**
+	 * main() method for running the benchmarks.
+	 * 
+	 * @param args
+	 *            an optional regular expression selecting the benchmarks to be
+	 *            run, and "-quick" for shorter iterations
+	 * @throws Exception
+	 *             if a message cannot be encoded or decoded
+	 */
+	public static void main(String[] args) throws Exception {
+		SerializationBenchmark benchmark = new SerializationBenchmark();
+		benchmark.printSizes();
+		benchmark.run(new BenchmarkRunner(args));
+	}
+}
@@ -0,0 +1,112 @@
+import java.util.Random;
+
+/**
+ * This class is used to benchmark the off-heap store of tables (TableStore)
+ * with a million tables, playing greedy games a move at every table in turn,
+ * as the engine of a server running that many tables would. A table whose
+ * game has ended starts another one of a set of prepared deals. The number of
+ * bytes allocated per operation shows that the heap does not grow with the
+ * number of tables.
+ * <p>
+ * Run it with bench/run.sh TableStoreBenchmark [regex] [-quick].
+ *
+ * @author Kwok Chun Yu
+ *
+ */
+public class TableStoreBenchmark {
+	private static final int NUM_OF_TABLES = 1 << 20; // must be a power of two
+	private static final int MASK = NUM_OF_TABLES - 1;
+	private static final int NUM_OF_DEALS = 1024; // must be a power of two
+
+	private final Random random = new Random(1);
+	private final long[][] deals = new long[NUM_OF_DEALS][];
+	private final int[] openers = new int[NUM_OF_DEALS];
+	private final TableStore store = new TableStore(NUM_OF_TABLES);
+	// one state and one array of moves serve every table
+	private final BigTwoState state = new BigTwoState(
+			new long[TableStore.NUM_OF_SEATS], 0, 0, -1);
+	private final long[] moves = new long[BigTwoState.MAX_MOVES];
+
+	/**
+	 * Creates and returns an instance of the TableStoreBenchmark class,
+	 * dealing the cards and starting a game at every table.
+	 */
+	public TableStoreBenchmark() {
+		int[] deck = new int[BigTwoRules.NUM_OF_CARDS];
+		for (int i = 0; i < deck.length; i++) {
+			deck[i] = i;
+		}
+		for (int n = 0; n < NUM_OF_DEALS; n++) {
+			for (int i = deck.length - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int code = deck[i];
+				deck[i] = deck[j];
+				deck[j] = code;
+			}
+			deals[n] = new long[TableStore.NUM_OF_SEATS];
+			for (int i = 0; i < TableStore.NUM_OF_SEATS; i++) {
+				for (int j = i * 13; j < i * 13 + 13; j++) {
+					deals[n][i] |= 1L << deck[j];
+				}
+				if ((deals[n][i] & 1) != 0) {
+					openers[n] = i;
+				}
+			}
+		}
+		for (int n = 0; n < NUM_OF_TABLES; n++) {
+			start(store.allocate());
+		}
+	}
+
+	/**
+	 * Starts a game at a table with one of the prepared deals.
+	 */
+	private void start(int table) {
+		int deal = table & (NUM_OF_DEALS - 1);
+		store.start(table, deals[deal], openers[deal]);
+	}
+
+	/**
+	 * Plays a greedy move at a table, and starts another game there if the
+	 * game has ended.
+	 */
+	private TableStore play(int table) {
+		if (!store.isGameInProgress(table)) {
+			start(table);
+		}
+		store.load(table, state);
+		store.play(table, state.getCurrentIdx(), BigTwoStrategy.GREEDY
+				.chooseMove(state, moves, state.generateMoves(moves), random));
+		return store;
+	}
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param runner
+	 *            the runner of the benchmarks
+	 */
+	public void run(BenchmarkRunner runner) {
+		runner.run("load", i -> {
+			store.load(i & MASK, state);
+			return state;
+		});
+		runner.run("play.greedy", i -> play(i & MASK));
+		runner.run("allocateAndRelease", i -> {
+			store.release(i & MASK);
+			start(store.allocate());
+			return store;
+		});
+	}
+
+	/**
+	 * main() method for running the benchmarks.
+	 *
+	 * @param args
+	 *            an optional regular expression selecting the benchmarks to be
+	 *            run, and "-quick" for shorter iterations
+	 */
+	public static void main(String[] args) {
+		new TableStoreBenchmark().run(new BenchmarkRunner(args));
+	}
+}
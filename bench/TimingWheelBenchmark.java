@@ -0,0 +1,91 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class is used to benchmark the timing wheel (TimingWheel) on turn
+ * timers, which are almost always cancelled by the move of the player before
+ * they expire: scheduling and cancelling a timer on an idle wheel, and on a
+ * wheel holding the timers of many other tables. After the benchmarks, it
+ * checks that short timers all expire soon after their delays, prints how
+ * late the latest one was, and exits with a non-zero status if any is missing.
+ * <p>
+ * Run it with bench/run.sh TimingWheelBenchmark [regex] [-quick].
+ *
+ * @author Kwok Chun Yu
+ *
+ */
+public class TimingWheelBenchmark {
+	private static final long TICK_MILLIS = 10;
+	private static final int NUM_OF_PENDING = 500000;
+	private static final int NUM_OF_SHORT = 1000;
+
+	private final TimingWheel wheel = new TimingWheel(TICK_MILLIS,
+			TimeUnit.MILLISECONDS, 512);
+	private final Runnable task = () -> {
+	};
+
+	/**
+	 * Schedules a turn timer and cancels it, as a move does.
+	 */
+	private TimingWheel.Timeout scheduleAndCancel(int i) {
+		TimingWheel.Timeout timeout = wheel.schedule(task, 30000 + i % 30000,
+				TimeUnit.MILLISECONDS);
+		timeout.cancel();
+		return timeout;
+	}
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param runner
+	 *            the runner of the benchmarks
+	 */
+	public void run(BenchmarkRunner runner) {
+		runner.run("scheduleAndCancel", this::scheduleAndCancel);
+		// the timers of the other tables, which expire after the benchmark
+		for (int i = 0; i < NUM_OF_PENDING; i++) {
+			wheel.schedule(task, 600000 + i % 30000, TimeUnit.MILLISECONDS);
+		}
+		runner.run("scheduleAndCancel.pending" + NUM_OF_PENDING,
+				this::scheduleAndCancel);
+	}
+
+	/**
+	 * Schedules short timers and checks that they have all expired ten ticks
+	 * after the longest delay.
+	 *
+	 * @return true if the check passes; false otherwise
+	 */
+	public boolean checkExpiry() throws InterruptedException {
+		AtomicInteger expired = new AtomicInteger();
+		long[] lateness = new long[1];
+		for (int i = 0; i < NUM_OF_SHORT; i++) {
+			long deadline = System.nanoTime()
+					+ TimeUnit.MILLISECONDS.toNanos(i % 200);
+			wheel.schedule(() -> {
+				expired.incrementAndGet();
+				lateness[0] = Math.max(lateness[0], System.nanoTime()
+						- deadline);
+			}, i % 200, TimeUnit.MILLISECONDS);
+		}
+		Thread.sleep(200 + 10 * TICK_MILLIS);
+		System.out.printf("%d of %d short timers expired, at most %.1f ms late%n",
+				expired.get(), NUM_OF_SHORT, lateness[0] / 1e6);
+		return expired.get() == NUM_OF_SHORT;
+	}
+
+	/**
+	 * main() method for running the benchmarks.
+	 *
+	 * @param args
+	 *            an optional regular expression selecting the benchmarks to be
+	 *            run, and "-quick" for shorter iterations
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		TimingWheelBenchmark benchmark = new TimingWheelBenchmark();
+		benchmark.run(new BenchmarkRunner(args));
+		boolean expired = benchmark.checkExpiry();
+		benchmark.wheel.stop();
+		System.exit(expired ? 0 : 1);
+	}
+}
@@ -0,0 +1,11 @@
+#!/bin/sh
+# Compiles the game and the benchmarks, and runs the specified benchmark class.
+#
+# usage: bench/run.sh <BenchmarkClass> [regex] [-quick]
+#   e.g. bench/run.sh RulesBenchmark composeHand
+cd "$(dirname "$0")/.." || exit 1
+mkdir -p bench/classes
+javac -encoding ISO-8859-1 -nowarn -d bench/classes *.java bench/*.java || exit 1
+main="$1"
+shift
+exec java -Xms1g -Xmx1g -cp bench/classes "$main" "$@"